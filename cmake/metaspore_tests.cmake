@@ -56,6 +56,7 @@ if(BUILD_SERVING_BIN)
     add_cpp_test(test_threadpool common/threadpool_test.cpp)
     add_cpp_test(test_schema_parser common/schema_parser_test.cpp)
     add_cpp_test(test_arrow_plan common/arrow_plan_test.cpp)
+    add_cpp_test(test_arrow_record_batch_serde common/arrow_record_batch_serde_test.cpp)
     add_cpp_test(test_feature_compute_funcs common/feature_compute_funcs_test.cpp)
     add_cpp_test(test_feature_compute_exec common/feature_compute_exec_test.cpp)
 
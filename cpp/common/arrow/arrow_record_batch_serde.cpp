@@ -17,6 +17,7 @@
 #include <common/arrow/arrow_record_batch_serde.h>
 
 #include <arrow/api.h>
+#include <arrow/compute/api.h>
 #include <arrow/io/api.h>
 #include <arrow/ipc/api.h>
 #include <fmt/format.h>
@@ -24,6 +25,46 @@
 
 namespace metaspore {
 
+namespace {
+
+// Clients may send low-cardinality string columns as dictionary<int, utf8>. Feature
+// extraction kernels only take plain utf8 or list<utf8>, so dictionary columns are
+// expanded back to their value type here.
+arrow::Result<std::shared_ptr<arrow::RecordBatch>>
+decode_dictionaries(const std::shared_ptr<arrow::RecordBatch> &batch) {
+    bool has_dictionary = false;
+    for (const auto &field : batch->schema()->fields()) {
+        if (field->type()->id() == arrow::Type::DICTIONARY) {
+            has_dictionary = true;
+            break;
+        }
+    }
+    if (!has_dictionary) {
+        return batch;
+    }
+    std::vector<std::shared_ptr<arrow::Field>> fields;
+    std::vector<std::shared_ptr<arrow::Array>> columns;
+    fields.reserve(batch->num_columns());
+    columns.reserve(batch->num_columns());
+    for (int i = 0; i < batch->num_columns(); ++i) {
+        auto field = batch->schema()->field(i);
+        auto column = batch->column(i);
+        if (field->type()->id() == arrow::Type::DICTIONARY) {
+            const auto &dict_array = static_cast<const arrow::DictionaryArray &>(*column);
+            ARROW_ASSIGN_OR_RAISE(auto decoded,
+                                  arrow::compute::Take(*dict_array.dictionary(), *dict_array.indices()));
+            field = field->WithType(dict_array.dictionary()->type());
+            column = std::move(decoded);
+        }
+        fields.push_back(std::move(field));
+        columns.push_back(std::move(column));
+    }
+    return arrow::RecordBatch::Make(arrow::schema(std::move(fields), batch->schema()->metadata()),
+                                    batch->num_rows(), std::move(columns));
+}
+
+} // namespace
+
 result<std::shared_ptr<arrow::RecordBatch>>
 ArrowRecordBatchSerde::deserialize_from(const std::string &name, const metaspore::serving::PredictRequest &request) {
     auto find = request.payload().find(name);
@@ -36,20 +77,48 @@ ArrowRecordBatchSerde::deserialize_from(const std::string &name, const metaspore
         return absl::InternalError(fmt::format("Create reader from buffer failed for input {}: {}",
                                                name, reader.status()));
     }
-    auto rb_reader_result = arrow::ipc::RecordBatchFileReader::Open(reader->get());
+    // File format payloads start with the magic "ARROW1", otherwise the payload is in stream format
+    static const std::string file_magic = "ARROW1";
+    if (buffer.compare(0, file_magic.size(), file_magic) == 0) {
+        auto rb_reader_result = arrow::ipc::RecordBatchFileReader::Open(reader->get());
+        if (!rb_reader_result.ok()) {
+            return absl::InternalError(
+                fmt::format("Create RecordBatchFileReader failed {}", rb_reader_result.status()));
+        }
+        auto rb_reader = *rb_reader_result;
+        if (rb_reader->num_record_batches() <= 0) {
+            return absl::NotFoundError("Input record batch is empty");
+        }
+        auto result = rb_reader->ReadRecordBatch(0);
+        if (!result.ok()) {
+            return absl::InternalError(fmt::format("Reader record batch failed {}", result.status()));
+        }
+        auto decoded = decode_dictionaries(*result);
+        if (!decoded.ok()) {
+            return absl::InternalError(
+                fmt::format("Decode dictionary columns failed for input {}: {}", name, decoded.status()));
+        }
+        return *decoded;
+    }
+    auto rb_reader_result = arrow::ipc::RecordBatchStreamReader::Open(reader->get());
     if (!rb_reader_result.ok()) {
         return absl::InternalError(
-            fmt::format("Create RecordBatchFileReader failed {}", rb_reader_result.status()));
+            fmt::format("Create RecordBatchStreamReader failed {}", rb_reader_result.status()));
     }
-    auto rb_reader = *rb_reader_result;
-    if (rb_reader->num_record_batches() <= 0) {
+    std::shared_ptr<arrow::RecordBatch> batch;
+    auto status = (*rb_reader_result)->ReadNext(&batch);
+    if (!status.ok()) {
+        return absl::InternalError(fmt::format("Reader record batch failed {}", status));
+    }
+    if (!batch) {
         return absl::NotFoundError("Input record batch is empty");
     }
-    auto result = rb_reader->ReadRecordBatch(0);
-    if (!result.ok()) {
-        return absl::InternalError(fmt::format("Reader record batch failed {}", result.status()));
+    auto decoded = decode_dictionaries(batch);
+    if (!decoded.ok()) {
+        return absl::InternalError(
+            fmt::format("Decode dictionary columns failed for input {}: {}", name, decoded.status()));
     }
-    return *result;
+    return *decoded;
 }
 
 } // namespace metaspore
@@ -107,8 +107,17 @@ arrow::Status StringBKDRHashKernelListString(cp::KernelContext *ctx, const cp::E
     return arrow::Status::OK();
 }
 
+// columns already hashed by client (uint64 or list<uint64> of BKDRHashOneField values)
+// are passed through unchanged, so the client can skip sending strings
+arrow::Status HashedPassThroughKernel(cp::KernelContext *ctx, const cp::ExecBatch &batch,
+                                      arrow::Datum *out) {
+    *out->mutable_array() = *batch[0].array();
+    return arrow::Status::OK();
+}
+
 static const cp::FunctionDoc bkdr_func_doc{"Perform bkdr hash on string array or string list array",
-                                           "Input should be a column of string or list<string>",
+                                           "Input should be a column of string or list<string>, "
+                                           "uint64 or list<uint64> columns are already hashed",
                                            {"input"},
                                            "StringBKDRHashFunctionOption"};
 
@@ -139,10 +148,22 @@ arrow::Status AddStringBKDRHashFunction() {
         /* exec = */ StringBKDRHashKernelListString,
         /* init = */ initfn);
     string_list_kernel.can_write_into_slices = false;
+    cp::ScalarKernel hashed_kernel({cp::InputType::Array(arrow::uint64())}, arrow::uint64(),
+                                   /* exec = */ HashedPassThroughKernel,
+                                   /* init = */ initfn);
+    hashed_kernel.can_write_into_slices = false;
+    auto hashed_list_type = std::make_shared<arrow::ListType>(arrow::uint64());
+    cp::ScalarKernel hashed_list_kernel({cp::InputType::Array(hashed_list_type)},
+                                        std::static_pointer_cast<arrow::DataType>(hashed_list_type),
+                                        /* exec = */ HashedPassThroughKernel,
+                                        /* init = */ initfn);
+    hashed_list_kernel.can_write_into_slices = false;
     auto func =
         std::make_shared<cp::ScalarFunction>("bkdr_hash", cp::Arity::Unary(), &bkdr_func_doc);
     ARROW_RETURN_NOT_OK(func->AddKernel(std::move(string_kernel)));
     ARROW_RETURN_NOT_OK(func->AddKernel(std::move(string_list_kernel)));
+    ARROW_RETURN_NOT_OK(func->AddKernel(std::move(hashed_kernel)));
+    ARROW_RETURN_NOT_OK(func->AddKernel(std::move(hashed_list_kernel)));
     ARROW_RETURN_NOT_OK(registry->AddFunction(func));
     return arrow::Status::OK();
 }
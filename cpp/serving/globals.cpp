@@ -24,6 +24,8 @@ DEFINE_uint64(grpc_server_threads, 4UL, "Thread number for grpc servers");
 DEFINE_uint64(grpc_client_threads, 4UL, "Thread number for grpc clients");
 DEFINE_string(grpc_listen_host, "0.0.0.0", "Listen host for grpc service");
 DEFINE_string(grpc_listen_port, "50051", "Listen port for grpc service");
+DEFINE_string(grpc_listen_unix_socket, "",
+              "Additional unix domain socket path for grpc service, for co-located clients");
 DEFINE_string(init_load_path, ".", "Load path to init during start");
 
 } // namespace metaspore::serving
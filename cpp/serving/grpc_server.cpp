@@ -34,6 +34,7 @@ namespace metaspore::serving {
 
 DECLARE_string(grpc_listen_host);
 DECLARE_string(grpc_listen_port);
+DECLARE_string(grpc_listen_unix_socket);
 DECLARE_uint64(grpc_server_threads);
 
 class GrpcServerContext {
@@ -49,6 +50,11 @@ class GrpcServerContext {
         builder.AddListeningPort(
             fmt::format("{}:{}", FLAGS_grpc_listen_host, FLAGS_grpc_listen_port),
             grpc::InsecureServerCredentials());
+        if (!FLAGS_grpc_listen_unix_socket.empty()) {
+            spdlog::info("Listening on unix:{}", FLAGS_grpc_listen_unix_socket);
+            builder.AddListeningPort(fmt::format("unix:{}", FLAGS_grpc_listen_unix_socket),
+                                     grpc::InsecureServerCredentials());
+        }
         builder.RegisterService(&predict_service);
         builder.RegisterService(&load_service);
         server = builder.BuildAndStart();
@@ -0,0 +1,95 @@
+//
+// Copyright 2022 DMetaSoul
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+#include <common/arrow/arrow_record_batch_serde.h>
+#include <common/test_utils.h>
+
+#include <arrow/api.h>
+#include <arrow/io/api.h>
+#include <arrow/ipc/api.h>
+#include <arrow/testing/gtest_util.h>
+
+using namespace metaspore;
+using namespace metaspore::serving;
+
+namespace {
+
+std::shared_ptr<arrow::RecordBatch> make_plain_batch() {
+    arrow::StringBuilder city_builder;
+    arrow::Int64Builder click_builder;
+    for (int i = 0; i < 8; ++i) {
+        if (i % 3 == 0) {
+            EXPECT_OK(city_builder.AppendNull());
+        } else {
+            EXPECT_OK(city_builder.Append("city-" + std::to_string(i % 2)));
+        }
+        EXPECT_OK(click_builder.Append(i));
+    }
+    std::shared_ptr<arrow::Array> city;
+    std::shared_ptr<arrow::Array> click;
+    EXPECT_OK(city_builder.Finish(&city));
+    EXPECT_OK(click_builder.Finish(&click));
+    auto schema = arrow::schema({arrow::field("city", arrow::utf8()), arrow::field("click", arrow::int64())});
+    return arrow::RecordBatch::Make(schema, 8, {city, click});
+}
+
+// The same rows with the city column sent as dictionary<int8, utf8>, as the java client does
+std::shared_ptr<arrow::RecordBatch> make_dictionary_batch() {
+    auto dictionary = arrow::ArrayFromJSON(arrow::utf8(), R"(["city-0", "city-1"])");
+    auto indices = arrow::ArrayFromJSON(arrow::int8(), "[null, 1, 0, null, 0, 1, null, 1]");
+    auto type = arrow::dictionary(arrow::int8(), arrow::utf8());
+    std::shared_ptr<arrow::Array> city = *arrow::DictionaryArray::FromArrays(type, indices, dictionary);
+    auto click = arrow::ArrayFromJSON(arrow::int64(), "[0, 1, 2, 3, 4, 5, 6, 7]");
+    auto schema = arrow::schema({arrow::field("city", type), arrow::field("click", arrow::int64())});
+    return arrow::RecordBatch::Make(schema, 8, {city, click});
+}
+
+std::string write_batch(const std::shared_ptr<arrow::RecordBatch> &batch, bool file_format) {
+    auto sink = *arrow::io::BufferOutputStream::Create();
+    auto writer = file_format ? *arrow::ipc::MakeFileWriter(sink, batch->schema())
+                              : *arrow::ipc::MakeStreamWriter(sink, batch->schema());
+    EXPECT_OK(writer->WriteRecordBatch(*batch));
+    EXPECT_OK(writer->Close());
+    return (*sink->Finish())->ToString();
+}
+
+} // namespace
+
+TEST(ArrowRecordBatchSerdeTestSuite, TestReadFileAndStream) {
+    auto expected = make_plain_batch();
+    for (bool file_format : {true, false}) {
+        PredictRequest request;
+        (*request.mutable_payload())["input"] = write_batch(expected, file_format);
+        auto result = ArrowRecordBatchSerde::deserialize_from("input", request);
+        ASSERT_TRUE(result.ok()) << result.status();
+        ASSERT_TRUE((*result)->Equals(*expected));
+    }
+}
+
+TEST(ArrowRecordBatchSerdeTestSuite, TestDecodeDictionary) {
+    auto expected = make_plain_batch();
+    for (bool file_format : {true, false}) {
+        PredictRequest request;
+        (*request.mutable_payload())["input"] = write_batch(make_dictionary_batch(), file_format);
+        auto result = ArrowRecordBatchSerde::deserialize_from("input", request);
+        ASSERT_TRUE(result.ok()) << result.status();
+        // Dictionary columns are expanded to plain utf8 so that bkdr_hash can read them
+        ASSERT_TRUE((*result)->schema()->Equals(*expected->schema()));
+        ASSERT_TRUE((*result)->Equals(*expected));
+    }
+}
+
+int main(int argc, char **argv) { return run_all_tests(argc, argv); }
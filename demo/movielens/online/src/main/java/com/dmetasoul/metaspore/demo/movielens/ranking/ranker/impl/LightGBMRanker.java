@@ -56,14 +56,15 @@ public class LightGBMRanker implements Ranker {
 
         List<FeatureTable> featureTables = constructNpsFeatureTables(userModel, itemModels);
         Map<String, ArrowTensor> npsResultMap = npsService.predictBlocking(modelName, featureTables, Collections.emptyMap());
-        List<Float> scores = npsService.getScoresFromNpsResult(npsResultMap, TARGET_KEY, TARGET_INDEX);
+        // read scores from the reply tensor directly, without building a List<Float>
+        ArrowTensor tensor = npsResultMap.get(TARGET_KEY);
+        ArrowTensor.FloatTensorAccessor scores = tensor.getFloatData();
+        long rows = tensor.getShape()[0];
 
         Iterator<ItemModel> itemModelIt = itemModels.iterator();
-        Iterator<Float> scoreIt = scores.iterator();
-        while (itemModelIt.hasNext() && scoreIt.hasNext()) {
+        for (int i = 0; i < rows && itemModelIt.hasNext(); ++i) {
             ItemModel itemModel = itemModelIt.next();
-            Float score = scoreIt.next();
-            itemModel.getOriginalRankingScoreMap().put(ALGO_NAME, (double) score);
+            itemModel.getOriginalRankingScoreMap().put(ALGO_NAME, (double) scores.getFloat(i, TARGET_INDEX));
         }
 
         return itemModels;
@@ -22,6 +22,8 @@ import lombok.extern.slf4j.Slf4j;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * 用于保存数据字段类型与Class信息的映射关系
@@ -30,15 +32,30 @@ import java.util.Objects;
 @Slf4j
 public class DataTypes {
     private static final Map<String, DataTypeEnum> dataTypes = new HashMap<>();
+    private static final Pattern FIXED_SIZE_FLOAT = Pattern.compile("float\\[([1-9][0-9]{0,6})]");
 
     public static boolean typeIsSupport(String type) {
         return dataTypes.containsKey(type);
     }
 
     public static DataTypeEnum getDataType(String name) {
+        if (getListSize(name) > 0) {
+            return DataTypeEnum.EMBEDDING;
+        }
         return dataTypes.get(name);
     }
 
+    /**
+     * 定长float list类型float[dim]的dim， 其他类型返回-1
+     */
+    public static int getListSize(String name) {
+        if (name == null) {
+            return -1;
+        }
+        Matcher matcher = FIXED_SIZE_FLOAT.matcher(name);
+        return matcher.matches() ? Integer.parseInt(matcher.group(1)) : -1;
+    }
+
     @SuppressWarnings("rawtypes")
     public static Class getDataClass(String name) {
         DataTypeEnum dataType = dataTypes.get(name);
@@ -96,6 +113,8 @@ public class DataTypes {
         dataTypes.put("map_str_double", DataTypeEnum.MAP_STR_DOUBLE);
         dataTypes.put("map_str_float", DataTypeEnum.MAP_STR_FLOAT);
         dataTypes.put("list_pair_str_double", DataTypeEnum.LIST_ENTRY_STR_DOUBLE);
+        // 配置为{embedding: dim}， 也可以直接写float[dim]
+        dataTypes.put("embedding", DataTypeEnum.EMBEDDING);
         // 使用时 确定struct具体类型
         dataTypes.put("list_struct", DataTypeEnum.LIST_STRUCT);
     }
@@ -58,6 +58,11 @@ public class TableInfo {
             DataTypeEnum typeEnum = DataTypes.getDataType((String) info);
             Validate.notNull(typeEnum, "config columns type must be support, type：" + info);
             Validate.isTrue(!typeEnum.needChildren(), "type need children!");
+            if (typeEnum.needListSize()) {
+                int listSize = DataTypes.getListSize((String) info);
+                Validate.isTrue(listSize > 0, "embedding type need list size, such as float[64]");
+                return typeEnum.getField(name, listSize);
+            }
             return new Field(name, typeEnum.getType(), typeEnum.getChildFields());
         } else if (info instanceof Map) {
             Map<String, Object> map = (Map<String, Object>) info;
@@ -66,6 +71,10 @@ public class TableInfo {
                 String key = entry.getKey();
                 DataTypeEnum typeEnum = DataTypes.getDataType(key);
                 Validate.notNull(typeEnum, "config columns type must be support, type：" + info);
+                if (typeEnum.needListSize()) {
+                    Validate.isInstanceOf(Number.class, entry.getValue(), "embedding list size must be number");
+                    return typeEnum.getField(name, ((Number) entry.getValue()).intValue());
+                }
                 Validate.isTrue(typeEnum.needChildren(), "column info type config wrong!");
                 List<Field> children = Lists.newArrayList();
                 if (entry.getValue() instanceof Map) {
@@ -0,0 +1,309 @@
+//
+// Copyright 2022 DMetaSoul
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package com.dmetasoul.metaspore.data;
+
+import com.google.common.collect.Lists;
+import org.apache.arrow.memory.ArrowBuf;
+import org.apache.arrow.vector.*;
+import org.apache.arrow.vector.complex.ListVector;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.commons.lang3.Validate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+import static com.dmetasoul.metaspore.operator.ArrowConv.convValue;
+
+/**
+ * DataResult的列视图， 直接读取FeatureTable中的arrow vector， 不复制数据
+ * int/long/float/double/string/list列提供类型化的读取接口， 其他类型按ArrowConv转换
+ * getObject的返回值与DataResult.get(field, index)一致
+ * 列视图的生命周期与DataResult一致， DataResult关闭后不可再使用
+ */
+public abstract class ColumnReader {
+    protected final FieldVector vector;
+
+    protected ColumnReader(FieldVector vector) {
+        this.vector = vector;
+    }
+
+    public static ColumnReader of(FieldVector vector) {
+        Validate.notNull(vector, "column vector must not null");
+        switch (vector.getMinorType()) {
+            case INT:
+                return new IntReader((IntVector) vector);
+            case BIGINT:
+                return new LongReader((BigIntVector) vector);
+            case FLOAT4:
+                return new FloatReader((Float4Vector) vector);
+            case FLOAT8:
+                return new DoubleReader((Float8Vector) vector);
+            case VARCHAR:
+                return new StringReader((VarCharVector) vector);
+            case LIST:
+                return new ListReader((ListVector) vector);
+            default:
+                return new ObjectReader(vector);
+        }
+    }
+
+    public String getName() {
+        return vector.getName();
+    }
+
+    public Field getField() {
+        return vector.getField();
+    }
+
+    public int size() {
+        return vector.getValueCount();
+    }
+
+    public boolean isNull(int row) {
+        return vector.isNull(row);
+    }
+
+    public abstract Object getObject(int row);
+
+    /**
+     * 比较两行不为null的值， 按值的自然顺序
+     */
+    @SuppressWarnings("unchecked")
+    public int compare(int row, int other) {
+        Object value = getObject(row);
+        Validate.isInstanceOf(Comparable.class, value, "col must compareable col:" + getName());
+        return ((Comparable<Object>) value).compareTo(getObject(other));
+    }
+
+    /**
+     * 不复制数据的List视图， 每次get时读取vector， 兼容使用List<Object>的接口
+     */
+    public List<Object> asList() {
+        return new ListView(this);
+    }
+
+    public static final class IntReader extends ColumnReader {
+        private final IntVector values;
+
+        IntReader(IntVector vector) {
+            super(vector);
+            this.values = vector;
+        }
+
+        public int getInt(int row) {
+            return values.get(row);
+        }
+
+        @Override
+        public Object getObject(int row) {
+            return values.isNull(row) ? null : values.get(row);
+        }
+
+        @Override
+        public int compare(int row, int other) {
+            return Integer.compare(values.get(row), values.get(other));
+        }
+    }
+
+    public static final class LongReader extends ColumnReader {
+        private final BigIntVector values;
+
+        LongReader(BigIntVector vector) {
+            super(vector);
+            this.values = vector;
+        }
+
+        public long getLong(int row) {
+            return values.get(row);
+        }
+
+        @Override
+        public Object getObject(int row) {
+            return values.isNull(row) ? null : values.get(row);
+        }
+
+        @Override
+        public int compare(int row, int other) {
+            return Long.compare(values.get(row), values.get(other));
+        }
+    }
+
+    public static final class FloatReader extends ColumnReader {
+        private final Float4Vector values;
+
+        FloatReader(Float4Vector vector) {
+            super(vector);
+            this.values = vector;
+        }
+
+        public float getFloat(int row) {
+            return values.get(row);
+        }
+
+        @Override
+        public Object getObject(int row) {
+            return values.isNull(row) ? null : values.get(row);
+        }
+
+        @Override
+        public int compare(int row, int other) {
+            return Float.compare(values.get(row), values.get(other));
+        }
+    }
+
+    public static final class DoubleReader extends ColumnReader {
+        private final Float8Vector values;
+
+        DoubleReader(Float8Vector vector) {
+            super(vector);
+            this.values = vector;
+        }
+
+        public double getDouble(int row) {
+            return values.get(row);
+        }
+
+        @Override
+        public Object getObject(int row) {
+            return values.isNull(row) ? null : values.get(row);
+        }
+
+        @Override
+        public int compare(int row, int other) {
+            return Double.compare(values.get(row), values.get(other));
+        }
+    }
+
+    public static final class StringReader extends ColumnReader {
+        private final VarCharVector values;
+
+        StringReader(VarCharVector vector) {
+            super(vector);
+            this.values = vector;
+        }
+
+        /**
+         * 直接从数据buffer解码字符串， 不经过Text对象
+         */
+        public String getString(int row) {
+            if (values.isNull(row)) {
+                return null;
+            }
+            int start = values.getStartOffset(row);
+            int length = values.getEndOffset(row) - start;
+            if (length == 0) {
+                return "";
+            }
+            ArrowBuf data = values.getDataBuffer();
+            byte[] bytes = new byte[length];
+            data.getBytes(start, bytes, 0, length);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        public int getLength(int row) {
+            return values.isNull(row) ? 0 : values.getValueLength(row);
+        }
+
+        @Override
+        public Object getObject(int row) {
+            return getString(row);
+        }
+
+        @Override
+        public int compare(int row, int other) {
+            return getString(row).compareTo(getString(other));
+        }
+    }
+
+    /**
+     * list列， 元素通过elements视图读取， 行row的元素位于[getStart(row), getEnd(row))
+     */
+    public static final class ListReader extends ColumnReader {
+        private final ListVector values;
+        private final ColumnReader elements;
+
+        ListReader(ListVector vector) {
+            super(vector);
+            this.values = vector;
+            this.elements = ColumnReader.of(vector.getDataVector());
+        }
+
+        public ColumnReader getElements() {
+            return elements;
+        }
+
+        public int getStart(int row) {
+            return values.getElementStartIndex(row);
+        }
+
+        public int getEnd(int row) {
+            return values.getElementEndIndex(row);
+        }
+
+        public int getLength(int row) {
+            return values.isNull(row) ? 0 : getEnd(row) - getStart(row);
+        }
+
+        @Override
+        public Object getObject(int row) {
+            if (values.isNull(row)) {
+                return null;
+            }
+            int end = getEnd(row);
+            List<Object> list = Lists.newArrayListWithCapacity(end - getStart(row));
+            for (int i = getStart(row); i < end; ++i) {
+                list.add(elements.getObject(i));
+            }
+            return list;
+        }
+    }
+
+    public static final class ObjectReader extends ColumnReader {
+        ObjectReader(FieldVector vector) {
+            super(vector);
+        }
+
+        @Override
+        public Object getObject(int row) {
+            return convValue(vector.getField(), vector.getObject(row));
+        }
+    }
+
+    private static final class ListView extends AbstractList<Object> implements RandomAccess {
+        private final ColumnReader reader;
+        private final int size;
+
+        ListView(ColumnReader reader) {
+            this.reader = reader;
+            this.size = reader.size();
+        }
+
+        @Override
+        public Object get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("index: " + index + ", size: " + size);
+            }
+            return reader.getObject(index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
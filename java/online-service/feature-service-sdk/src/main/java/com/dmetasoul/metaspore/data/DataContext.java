@@ -15,10 +15,16 @@
 //
 package com.dmetasoul.metaspore.data;
 
+import com.dmetasoul.metaspore.serving.ArrowArena;
+import com.dmetasoul.metaspore.serving.FeatureTable;
 import com.google.common.collect.Maps;
 import com.google.gson.Gson;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.Getter;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.arrow.vector.types.pojo.Field;
 import org.apache.commons.collections4.MapUtils;
 import org.apache.commons.lang3.StringUtils;
 
@@ -40,10 +46,48 @@ public class DataContext implements AutoCloseable {
     private Map<String, Object> request;
     private Map<String, Long> timeRecords = Maps.newConcurrentMap();
     private ConcurrentMap<String, DataResult> results = Maps.newConcurrentMap();
+    /**
+     * 本次请求可以使用的arrow内存上限， 需要在创建第一个FeatureTable之前设置
+     */
+    private long memoryLimit = ArrowArena.DEFAULT_LIMIT;
+    /**
+     * 请求级的arrow内存区域， 第一次创建FeatureTable时获取， 请求结束时随context一起关闭
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private volatile ArrowArena arena;
 
     @Override
     public void close() {
         results.forEach((key, value) -> value.close());
+        ArrowArena current;
+        synchronized (this) {
+            current = arena;
+            arena = null;
+        }
+        if (current != null) {
+            current.close();
+        }
+    }
+
+    public ArrowArena getArena() {
+        ArrowArena current = arena;
+        if (current == null) {
+            synchronized (this) {
+                if (arena == null) {
+                    arena = ArrowArena.acquire("context-" + id, memoryLimit);
+                }
+                current = arena;
+            }
+        }
+        return current;
+    }
+
+    /**
+     * 在请求的arena中创建FeatureTable， 请求结束时统一释放
+     */
+    public FeatureTable newFeatureTable(String name, Iterable<Field> fields) {
+        return getArena().newFeatureTable(name, fields);
     }
 
     public DataContext() {
@@ -47,6 +47,10 @@ import static com.dmetasoul.metaspore.operator.ArrowConv.convValue;
 public class DataResult implements AutoCloseable {
     protected String name;
     protected String reqSign;
+    /**
+     * 生成该结果的请求， 签名相同时用于确认请求内容一致
+     */
+    protected ServiceRequest request;
     protected FeatureTable featureTable;
     protected List<DataTypeEnum> dataTypes;
 
@@ -61,13 +65,22 @@ public class DataResult implements AutoCloseable {
     public void reset() {
         this.close();
         reqSign = "";
+        request = null;
         dataTypes = null;
     }
 
     public void setFeatureData(String name, List<Field> fields, List<DataTypeEnum> types, List<Map<String, Object>> data) {
+        setFeatureData(name, fields, types, data, null);
+    }
+
+    /**
+     * context不为空时， FeatureTable在请求的arena中创建
+     */
+    public void setFeatureData(String name, List<Field> fields, List<DataTypeEnum> types, List<Map<String, Object>> data,
+                               DataContext context) {
         this.setName(name);
         this.reset();
-        featureTable = new FeatureTable(name, fields);
+        featureTable = context == null ? new FeatureTable(name, fields) : context.newFeatureTable(name, fields);
         dataTypes = types;
         int row = 0;
         for (Map<String, Object> itemData : data) {
@@ -90,48 +103,119 @@ public class DataResult implements AutoCloseable {
         featureTable.finish();
     }
 
-    public List<Object> get(String field) {
-        if (featureTable == null || featureTable.getVector(field) == null)
-            return List.of();
+    /**
+     * 获取字段field的列视图， 直接读取arrow vector， 不复制数据， 字段不存在时返回null
+     */
+    public ColumnReader getColumn(String field) {
+        if (featureTable == null) return null;
         FieldVector vector = featureTable.getVector(field);
-        List<Object> values = Lists.newArrayList();
-        for (int i = 0; i < vector.getValueCount(); ++i) {
-            values.add(convValue(vector.getField(), vector.getObject(i)));
+        return vector == null ? null : ColumnReader.of(vector);
+    }
+
+    public ColumnReader getColumn(int index) {
+        if (featureTable == null || index < 0 || index >= featureTable.getSchema().getFields().size()) return null;
+        FieldVector vector = featureTable.getVector(index);
+        return vector == null ? null : ColumnReader.of(vector);
+    }
+
+    public ColumnReader.IntReader getIntColumn(String field) {
+        return getTypedColumn(field, ColumnReader.IntReader.class);
+    }
+
+    public ColumnReader.LongReader getLongColumn(String field) {
+        return getTypedColumn(field, ColumnReader.LongReader.class);
+    }
+
+    public ColumnReader.FloatReader getFloatColumn(String field) {
+        return getTypedColumn(field, ColumnReader.FloatReader.class);
+    }
+
+    public ColumnReader.DoubleReader getDoubleColumn(String field) {
+        return getTypedColumn(field, ColumnReader.DoubleReader.class);
+    }
+
+    public ColumnReader.StringReader getStringColumn(String field) {
+        return getTypedColumn(field, ColumnReader.StringReader.class);
+    }
+
+    public ColumnReader.ListReader getListColumn(String field) {
+        return getTypedColumn(field, ColumnReader.ListReader.class);
+    }
+
+    private <T extends ColumnReader> T getTypedColumn(String field, Class<T> cls) {
+        ColumnReader reader = getColumn(field);
+        if (reader == null) {
+            throw new IllegalArgumentException("featureTable is null or field not exist");
         }
-        return values;
+        if (!cls.isInstance(reader)) {
+            throw new IllegalArgumentException(String.format("field %s type %s is not match %s",
+                    field, reader.getField().getType(), cls.getSimpleName()));
+        }
+        return cls.cast(reader);
+    }
+
+    /**
+     * 复制列数据为List， 兼容接口， 内部计算优先使用getColumn
+     */
+    public List<Object> get(String field) {
+        return toList(getColumn(field));
     }
 
     public List<Object> get(int index) {
-        if (featureTable == null || featureTable.getVector(index) == null)
+        return toList(getColumn(index));
+    }
+
+    private static List<Object> toList(ColumnReader reader) {
+        if (reader == null)
             return List.of();
-        FieldVector vector = featureTable.getVector(index);
-        List<Object> values = Lists.newArrayList();
-        for (int i = 0; i < vector.getValueCount(); ++i) {
-            values.add(convValue(vector.getField(), vector.getObject(i)));
+        List<Object> values = Lists.newArrayListWithCapacity(reader.size());
+        for (int i = 0; i < reader.size(); ++i) {
+            values.add(reader.getObject(i));
         }
         return values;
     }
 
     @SuppressWarnings("unchecked")
     public <T> T get(String field, int index) {
-        if (featureTable == null || featureTable.getVector(field) == null) return null;
-        FieldVector vector = featureTable.getVector(field);
-        if (index < vector.getValueCount() && index >= 0) {
-            return (T) convValue(vector.getField(), vector.getObject(index));
-        }
-        return null;
+        return (T) getValue(getColumn(field), index);
     }
 
     @SuppressWarnings("unchecked")
     public <T> T get(int field, int index) {
-        if (featureTable == null || featureTable.getVector(field) == null) return null;
-        FieldVector vector = featureTable.getVector(field);
-        if (index < vector.getValueCount() && index >= 0) {
-            return (T) convValue(vector.getField(), vector.getObject(index));
+        return (T) getValue(getColumn(field), index);
+    }
+
+    private static Object getValue(ColumnReader reader, int index) {
+        if (reader != null && index < reader.size() && index >= 0) {
+            return reader.getObject(index);
         }
         return null;
     }
 
+    /**
+     * 逐行读取数据时使用， 列视图按字段名缓存在columns中， 避免每个单元格重复查找vector
+     */
+    private Object getValue(Map<String, ColumnReader> columns, String field, int index) {
+        ColumnReader reader = columns.get(field);
+        if (reader == null && !columns.containsKey(field)) {
+            reader = getColumn(field);
+            columns.put(field, reader);
+        }
+        return getValue(reader, index);
+    }
+
+    /**
+     * 按schema顺序获取所有列视图
+     */
+    public List<ColumnReader> getColumns() {
+        List<ColumnReader> readers = Lists.newArrayList();
+        if (featureTable == null || featureTable.getSchema() == null) return readers;
+        for (int i = 0; i < featureTable.getSchema().getFields().size(); ++i) {
+            readers.add(ColumnReader.of(featureTable.getVector(i)));
+        }
+        return readers;
+    }
+
     public List<Field> getFields() {
         if (featureTable == null || featureTable.getSchema() == null) return List.of();
         return featureTable.getSchema().getFields();
@@ -163,49 +247,15 @@ public class DataResult implements AutoCloseable {
         }
     }
 
+    /**
+     * 将data的数据合并到mergeFieldData中， dupFields非空时按dupFields组成的key去重， 保留第一次出现的行，
+     * 重复行的数据按mergeOperatorMap合并到保留的行上
+     */
     public void mergeDataResult(DataResult data, List<String> dupFields,
                                 Map<String, MergeOperator> mergeOperatorMap,
                                 Map<String, List<Object>> mergeFieldData,
                                 Map<String, Object> option) {
-        if (this.isNull() || data.isNull() || CollectionUtils.isEmpty(data.dataTypes)) return;
-        for (int i = 0; i < data.getFeatureTable().getRowCount(); ++i) {
-            boolean doDup = false;
-            int rowCount = mergeFieldData.computeIfAbsent(featureTable.getVector(0).getName(), key -> Lists.newArrayList()).size();
-            int index = rowCount;
-            for (int j = 0; j < rowCount; ++j) {
-                if (CollectionUtils.isNotEmpty(dupFields)) {
-                    doDup = true;
-                    for (String col : dupFields) {
-                        List<Object> colData = mergeFieldData.computeIfAbsent(col, key -> Lists.newArrayList());
-                        Object val1 = CommonUtils.get(colData, j, null);
-                        Object val2 = data.get(col, i);
-                        if (!Objects.equals(val1, val2)) {
-                            doDup = false;
-                            break;
-                        }
-                    }
-                }
-                if (doDup) {
-                    index = j;
-                    break;
-                }
-            }
-            if (!doDup) {
-                for (int k = 0; k < dataTypes.size(); ++k) {
-                    FieldVector vector = featureTable.getVector(k);
-                    mergeFieldData.computeIfAbsent(vector.getName(), key -> Lists.newArrayList()).add(data.get(vector.getName(), i));
-                }
-            }
-            if (doDup && MapUtils.isNotEmpty(mergeOperatorMap)) {
-                for (Map.Entry<String, MergeOperator> entry : mergeOperatorMap.entrySet()) {
-                    MergeOperator operator = entry.getValue();
-                    Validate.notNull(operator, "merge operator must not null at col:" + entry.getKey());
-                    List<Object> colData = mergeFieldData.get(entry.getKey());
-                    Object value = operator.merge(colData.get(index), data.get(entry.getKey(), i), option);
-                    colData.set(index, value);
-                }
-            }
-        }
+        new RowMerger(dupFields, mergeOperatorMap, mergeFieldData, option).merge(data, 0);
     }
 
     public void updateDataResult(@NonNull DataResult data, @NotEmpty List<String> input, @NotEmpty List<String> output,
@@ -213,10 +263,11 @@ public class DataResult implements AutoCloseable {
                                  Map<String, List<Object>> updateFieldData,
                                  Map<String, Object> option) {
         if (this.isNull() || data.isNull() || CollectionUtils.isEmpty(data.dataTypes)) return;
+        Map<String, ColumnReader> columns = Maps.newHashMap();
         for (int i = 0; i < data.getFeatureTable().getRowCount(); ++i) {
             List<Object> inputData = Lists.newArrayList();
             for (String field : input) {
-                inputData.add(data.get(field, i));
+                inputData.add(data.getValue(columns, field, i));
             }
             Validate.notNull(operator, "update operator must not null");
             Map<String, Object> outputData = operator.update(inputData, output, option);
@@ -229,9 +280,27 @@ public class DataResult implements AutoCloseable {
                                 List<String> dupFields,
                                 Map<String, MergeOperator> mergeOperatorMap,
                                 Map<String, Object> option) {
+        mergeDataResult(data, dupFields, mergeOperatorMap, null, option);
+    }
+
+    /**
+     * 合并多个DataResult， orderFields非空时合并结果按orderFields排序， 顺序与合并后调用orderAndLimit一致
+     * 所有输入都已按orderFields有序且合并操作不修改orderFields时， 使用k路归并， 不再重新排序
+     */
+    public void mergeDataResult(List<DataResult> data,
+                                List<String> dupFields,
+                                Map<String, MergeOperator> mergeOperatorMap,
+                                List<String> orderFields,
+                                Map<String, Object> option) {
         Map<String, List<Object>> mergeFieldData = Maps.newHashMap();
-        for (DataResult dataResult : data) {
-            mergeDataResult(dataResult, dupFields, mergeOperatorMap, mergeFieldData, option);
+        RowMerger merger = new RowMerger(dupFields, mergeOperatorMap, mergeFieldData, option);
+        if (data != null) {
+            for (int i = 0; i < data.size(); ++i) {
+                merger.merge(data.get(i), i);
+            }
+        }
+        if (CollectionUtils.isNotEmpty(orderFields) && CollectionUtils.isNotEmpty(data)) {
+            merger.order(data, orderFields);
         }
         for (int k = 0; k < dataTypes.size(); ++k) {
             FieldVector vector = featureTable.getVector(k);
@@ -240,6 +309,248 @@ public class DataResult implements AutoCloseable {
         featureTable.finish();
     }
 
+    /**
+     * 按orderAndLimit的规则比较两行的值， 值相等时返回0， null值排在最前， 非null值降序
+     */
+    @SuppressWarnings("unchecked")
+    private static int compareOrderValue(Object val1, Object val2, String col) {
+        if (Objects.equals(val1, val2)) return 0;
+        if (val1 == null) return -1;
+        if (val2 == null) return 1;
+        Validate.isInstanceOf(Comparable.class, val1, "orderBy col must compareable col:" + col);
+        return ((Comparable<Object>) val2).compareTo(val1);
+    }
+
+    /**
+     * 去重key， 各字段按equals比较
+     */
+    private static final class DupKey {
+        private final Object[] values;
+        private final int hash;
+
+        DupKey(Object[] values) {
+            this.values = values;
+            this.hash = Arrays.hashCode(values);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == this) return true;
+            if (!(obj instanceof DupKey)) return false;
+            DupKey other = (DupKey) obj;
+            return hash == other.hash && Arrays.equals(values, other.values);
+        }
+    }
+
+    /**
+     * mergeDataResult的合并过程：
+     * 1, 按dupFields的值构建hash索引， 每行O(1)找到第一个重复的行
+     * 2, mergeOperatorMap会修改dupFields中的字段时， 已保留行的key可能改变， 此时逐行比较， 保证结果与原实现一致
+     * 3, 记录每个保留行来自哪个输入的哪一行， 用于按orderFields排序
+     */
+    private final class RowMerger {
+        private final List<String> dupFields;
+        private final Map<String, MergeOperator> mergeOperatorMap;
+        private final Map<String, List<Object>> mergeFieldData;
+        private final Map<String, Object> option;
+        private final Map<DupKey, Integer> dupIndex;
+        private final List<Integer> sourceInputs = Lists.newArrayList();
+        private final List<Integer> sourceRows = Lists.newArrayList();
+
+        RowMerger(List<String> dupFields, Map<String, MergeOperator> mergeOperatorMap,
+                  Map<String, List<Object>> mergeFieldData, Map<String, Object> option) {
+            this.dupFields = dupFields;
+            this.mergeOperatorMap = mergeOperatorMap;
+            this.mergeFieldData = mergeFieldData;
+            this.option = option;
+            boolean useIndex = CollectionUtils.isNotEmpty(dupFields) && !isNull()
+                    && (MapUtils.isEmpty(mergeOperatorMap) || Collections.disjoint(mergeOperatorMap.keySet(), dupFields));
+            if (useIndex) {
+                dupIndex = Maps.newHashMap();
+                int rowCount = rowCount();
+                for (int j = 0; j < rowCount; ++j) {
+                    dupIndex.putIfAbsent(mergedKey(j), j);
+                }
+            } else {
+                dupIndex = null;
+            }
+        }
+
+        private int rowCount() {
+            return mergeFieldData.computeIfAbsent(featureTable.getVector(0).getName(), key -> Lists.newArrayList()).size();
+        }
+
+        private DupKey mergedKey(int row) {
+            Object[] values = new Object[dupFields.size()];
+            for (int k = 0; k < values.length; ++k) {
+                values[k] = CommonUtils.get(mergeFieldData.computeIfAbsent(dupFields.get(k), key -> Lists.newArrayList()), row, null);
+            }
+            return new DupKey(values);
+        }
+
+        private int findDup(DataResult data, Map<String, ColumnReader> columns, int i, int rowCount) {
+            if (CollectionUtils.isEmpty(dupFields)) {
+                return -1;
+            }
+            if (dupIndex != null) {
+                Object[] values = new Object[dupFields.size()];
+                for (int k = 0; k < values.length; ++k) {
+                    values[k] = data.getValue(columns, dupFields.get(k), i);
+                }
+                Integer index = dupIndex.get(new DupKey(values));
+                return index == null ? -1 : index;
+            }
+            for (int j = 0; j < rowCount; ++j) {
+                boolean doDup = true;
+                for (String col : dupFields) {
+                    List<Object> colData = mergeFieldData.computeIfAbsent(col, key -> Lists.newArrayList());
+                    if (!Objects.equals(CommonUtils.get(colData, j, null), data.getValue(columns, col, i))) {
+                        doDup = false;
+                        break;
+                    }
+                }
+                if (doDup) {
+                    return j;
+                }
+            }
+            return -1;
+        }
+
+        void merge(DataResult data, int input) {
+            if (isNull() || data.isNull() || CollectionUtils.isEmpty(data.dataTypes)) return;
+            Map<String, ColumnReader> columns = Maps.newHashMap();
+            for (int i = 0; i < data.getFeatureTable().getRowCount(); ++i) {
+                int rowCount = rowCount();
+                int index = findDup(data, columns, i, rowCount);
+                if (index < 0) {
+                    for (int k = 0; k < dataTypes.size(); ++k) {
+                        FieldVector vector = featureTable.getVector(k);
+                        mergeFieldData.computeIfAbsent(vector.getName(), key -> Lists.newArrayList()).add(data.getValue(columns, vector.getName(), i));
+                    }
+                    if (dupIndex != null) {
+                        dupIndex.putIfAbsent(mergedKey(rowCount), rowCount);
+                    }
+                    sourceInputs.add(input);
+                    sourceRows.add(i);
+                } else if (MapUtils.isNotEmpty(mergeOperatorMap)) {
+                    for (Map.Entry<String, MergeOperator> entry : mergeOperatorMap.entrySet()) {
+                        MergeOperator operator = entry.getValue();
+                        Validate.notNull(operator, "merge operator must not null at col:" + entry.getKey());
+                        List<Object> colData = mergeFieldData.get(entry.getKey());
+                        Object value = operator.merge(colData.get(index), data.getValue(columns, entry.getKey(), i), option);
+                        colData.set(index, value);
+                    }
+                }
+            }
+        }
+
+        /**
+         * 合并结果按orderFields重新排列， 结果与对合并结果稳定排序一致
+         */
+        void order(List<DataResult> data, List<String> orderFields) {
+            List<String> orders = Lists.newArrayList();
+            for (String col : orderFields) {
+                if (mergeFieldData.containsKey(col) && featureTable.getVector(col) != null) {
+                    orders.add(col);
+                }
+            }
+            int rowCount = sourceRows.size();
+            if (orders.isEmpty() || rowCount < 2 || rowCount != rowCount()) return;
+            int[] permutation = null;
+            if (MapUtils.isEmpty(mergeOperatorMap) || Collections.disjoint(mergeOperatorMap.keySet(), orders)) {
+                permutation = mergeSorted(data, orders);
+            }
+            if (permutation == null) {
+                List<Integer> ids = Lists.newArrayListWithCapacity(rowCount);
+                for (int i = 0; i < rowCount; ++i) {
+                    ids.add(i);
+                }
+                ids.sort((o1, o2) -> {
+                    for (String col : orders) {
+                        List<Object> values = mergeFieldData.get(col);
+                        int ret = compareOrderValue(values.get(o1), values.get(o2), col);
+                        if (ret != 0) return ret;
+                    }
+                    return 0;
+                });
+                permutation = ids.stream().mapToInt(Integer::intValue).toArray();
+            }
+            for (Map.Entry<String, List<Object>> entry : mergeFieldData.entrySet()) {
+                List<Object> values = entry.getValue();
+                if (values.size() != rowCount) continue;
+                List<Object> ordered = Lists.newArrayListWithCapacity(rowCount);
+                for (int index : permutation) {
+                    ordered.add(values.get(index));
+                }
+                entry.setValue(ordered);
+            }
+        }
+
+        private int compareRow(List<Map<String, ColumnReader>> columns, List<DataResult> data, List<String> orders,
+                               int input1, int row1, int input2, int row2) {
+            for (String col : orders) {
+                int ret = compareOrderValue(data.get(input1).getValue(columns.get(input1), col, row1),
+                        data.get(input2).getValue(columns.get(input2), col, row2), col);
+                if (ret != 0) return ret;
+            }
+            return 0;
+        }
+
+        /**
+         * 所有输入已按orders有序时， 对各输入的保留行做k路归并， 相等的行按输入的先后顺序输出
+         * 存在无序的输入时返回null
+         */
+        private int[] mergeSorted(List<DataResult> data, List<String> orders) {
+            List<Map<String, ColumnReader>> columns = Lists.newArrayListWithCapacity(data.size());
+            for (int input = 0; input < data.size(); ++input) {
+                columns.add(Maps.newHashMap());
+                DataResult item = data.get(input);
+                if (item == null || item.isNull()) continue;
+                for (int i = 1; i < item.getFeatureTable().getRowCount(); ++i) {
+                    if (compareRow(columns, data, orders, input, i - 1, input, i) > 0) {
+                        return null;
+                    }
+                }
+            }
+            // 每个输入的保留行在合并结果中按行号递增出现
+            List<List<Integer>> rows = Lists.newArrayListWithCapacity(data.size());
+            for (int input = 0; input < data.size(); ++input) {
+                rows.add(Lists.newArrayList());
+            }
+            for (int i = 0; i < sourceRows.size(); ++i) {
+                rows.get(sourceInputs.get(i)).add(i);
+            }
+            int[] heads = new int[data.size()];
+            PriorityQueue<Integer> heap = new PriorityQueue<>((a, b) -> {
+                int rowA = rows.get(a).get(heads[a]);
+                int rowB = rows.get(b).get(heads[b]);
+                int ret = compareRow(columns, data, orders, a, sourceRows.get(rowA), b, sourceRows.get(rowB));
+                return ret != 0 ? ret : Integer.compare(a, b);
+            });
+            for (int input = 0; input < data.size(); ++input) {
+                if (!rows.get(input).isEmpty()) {
+                    heap.add(input);
+                }
+            }
+            int[] permutation = new int[sourceRows.size()];
+            int size = 0;
+            while (!heap.isEmpty()) {
+                int input = heap.poll();
+                permutation[size++] = rows.get(input).get(heads[input]);
+                heads[input] += 1;
+                if (heads[input] < rows.get(input).size()) {
+                    heap.add(input);
+                }
+            }
+            return permutation;
+        }
+    }
+
     public void updateDataResult(DataResult data,
                                  List<String> input,
                                  List<String> output,
@@ -252,7 +563,8 @@ public class DataResult implements AutoCloseable {
             if (updateFieldData.containsKey(vector.getName())) {
                 dataTypes.get(k).set(featureTable, vector.getName(), updateFieldData.get(vector.getName()));
             } else {
-                dataTypes.get(k).set(featureTable, vector.getName(), data.get(k));
+                ColumnReader reader = data.getColumn(k);
+                dataTypes.get(k).set(featureTable, vector.getName(), reader == null ? List.of() : reader.asList());
             }
         }
         featureTable.finish();
@@ -266,6 +578,8 @@ public class DataResult implements AutoCloseable {
     public void copyDataResult(DataResult data, int from, int to, List<String> dupFields, Map<String, Object> orFilters, Map<String, Object> andFilters) {
         if (data == null || Objects.requireNonNull(data).isNull() ||
                 isNull() || CollectionUtils.isEmpty(dataTypes)) return;
+        Map<String, ColumnReader> columns = Maps.newHashMap();
+        List<ColumnReader> readers = data.getColumns();
         Map<String, Set<Object>> dupSets = Maps.newHashMap();
         if (CollectionUtils.isNotEmpty(dupFields)) {
             for (String col : dupFields) {
@@ -277,9 +591,10 @@ public class DataResult implements AutoCloseable {
             if (MapUtils.isNotEmpty(dupSets)) {
                 boolean isdup = true;
                 for (Map.Entry<String, Set<Object>> entry : dupSets.entrySet()) {
-                    if (!entry.getValue().contains(data.get(entry.getKey(), i))) {
+                    Object value = data.getValue(columns, entry.getKey(), i);
+                    if (!entry.getValue().contains(value)) {
                         isdup = false;
-                        entry.getValue().add(data.get(entry.getKey(), i));
+                        entry.getValue().add(value);
                     }
                 }
                 if (isdup) {
@@ -289,7 +604,7 @@ public class DataResult implements AutoCloseable {
             if (MapUtils.isNotEmpty(orFilters)) {
                 boolean isFilter = false;
                 for (Map.Entry<String, Object> entry : orFilters.entrySet()) {
-                    if (matchFilter(entry.getValue(), data.get(entry.getKey(), i))) {
+                    if (matchFilter(entry.getValue(), data.getValue(columns, entry.getKey(), i))) {
                         isFilter = true;
                         break;
                     }
@@ -301,7 +616,7 @@ public class DataResult implements AutoCloseable {
             if (MapUtils.isNotEmpty(andFilters)) {
                 boolean isFilter = true;
                 for (Map.Entry<String, Object> entry : andFilters.entrySet()) {
-                    if (!matchFilter(entry.getValue(), data.get(entry.getKey(), i))) {
+                    if (!matchFilter(entry.getValue(), data.getValue(columns, entry.getKey(), i))) {
                         isFilter = false;
                         break;
                     }
@@ -314,7 +629,7 @@ public class DataResult implements AutoCloseable {
                 FieldVector fieldVector = featureTable.getVector(k);
                 FieldVector dataVector = data.getFeatureTable().getVector(k);
                 Validate.isTrue(fieldVector.getField().equals(dataVector.getField()), "schema must same!");
-                dataTypes.get(k).set(featureTable, fieldVector.getName(), i, data.get(k, i));
+                dataTypes.get(k).set(featureTable, fieldVector.getName(), i, readers.get(k).getObject(i));
             }
             num += 1;
         }
@@ -334,47 +649,120 @@ public class DataResult implements AutoCloseable {
     public void orderAndLimit(DataResult data, List<String> orderBy, int limit) {
         if (data == null || Objects.requireNonNull(data).isNull() ||
                 isNull() || CollectionUtils.isEmpty(dataTypes)) return;
-        List<Integer> ids = Lists.newArrayList();
-        for (int i = 0; i < data.featureTable.getRowCount(); ++i) {
-            ids.add(i);
-        }
-        ids.sort((o1, o2) -> {
-            int ret = 0;
-            for (String col : orderBy) {
-                Object val1 = data.get(col, o1);
-                Object val2 = data.get(col, o2);
-                if (Objects.equals(val1, val2)) {
-                    continue;
-                }
-                if (val1 == null) return -1;
-                if (val2 == null) return 1;
-                Validate.isInstanceOf(Comparable.class, val1, "orderBy col must compareable col:" + col);
-                @SuppressWarnings("unchecked") Comparable<Object> c = (Comparable<Object>) val2;
-                return c.compareTo(val1);
-            }
-            return ret;
-        });
+        List<ColumnReader> orders = Lists.newArrayList();
+        for (String col : orderBy) {
+            ColumnReader reader = data.getColumn(col);
+            if (reader != null) {
+                orders.add(reader);
+            }
+        }
+        int[] ids = new RowOrder(orders).topK(data.featureTable.getRowCount(), limit);
+        List<ColumnReader> readers = data.getColumns();
         int index = 0;
         for (int i : ids) {
-            if (index >= limit) {
-                break;
-            }
             for (int k = 0; k < dataTypes.size(); ++k) {
                 FieldVector vector = featureTable.getVector(k);
-                dataTypes.get(k).set(featureTable, vector.getName(), index, data.get(k, i));
+                dataTypes.get(k).set(featureTable, vector.getName(), index, readers.get(k).getObject(i));
             }
             index += 1;
         }
     }
 
+    /**
+     * orderAndLimit的行顺序： 按orderBy列降序排列， null值排在最前， 所有列都相等时按行号升序， 与稳定排序的结果一致
+     * 行号为int， 比较时直接读取arrow vector， 不装箱
+     */
+    private static final class RowOrder {
+        private final ColumnReader[] orders;
+
+        RowOrder(List<ColumnReader> orders) {
+            this.orders = orders.toArray(new ColumnReader[0]);
+        }
+
+        int compare(int o1, int o2) {
+            for (ColumnReader reader : orders) {
+                boolean null1 = o1 >= reader.size() || reader.isNull(o1);
+                boolean null2 = o2 >= reader.size() || reader.isNull(o2);
+                if (null1 && null2) {
+                    continue;
+                }
+                if (null1) return -1;
+                if (null2) return 1;
+                int ret = reader.compare(o2, o1);
+                if (ret != 0) {
+                    return ret;
+                }
+            }
+            return Integer.compare(o1, o2);
+        }
+
+        /**
+         * 选出排在最前的limit行并排序， 用大小为limit的堆保存当前选中的行， 堆顶为其中排在最后的行
+         * 复杂度为O(n log k)， limit不小于行数时等价于全排序
+         */
+        int[] topK(int rowCount, int limit) {
+            int k = Math.max(Math.min(limit, rowCount), 0);
+            int[] heap = new int[k];
+            int size = 0;
+            for (int row = 0; row < rowCount && k > 0; ++row) {
+                if (size < k) {
+                    heap[size] = row;
+                    siftUp(heap, size++);
+                } else if (compare(row, heap[0]) < 0) {
+                    heap[0] = row;
+                    siftDown(heap, 0, size);
+                }
+            }
+            // 依次取出堆顶放到末尾， 得到从前到后的顺序
+            for (int end = size - 1; end > 0; --end) {
+                int top = heap[0];
+                heap[0] = heap[end];
+                heap[end] = top;
+                siftDown(heap, 0, end);
+            }
+            return heap;
+        }
+
+        private void siftUp(int[] heap, int index) {
+            int row = heap[index];
+            while (index > 0) {
+                int parent = (index - 1) >>> 1;
+                if (compare(heap[parent], row) >= 0) {
+                    break;
+                }
+                heap[index] = heap[parent];
+                index = parent;
+            }
+            heap[index] = row;
+        }
+
+        private void siftDown(int[] heap, int index, int size) {
+            int row = heap[index];
+            int half = size >>> 1;
+            while (index < half) {
+                int child = (index << 1) + 1;
+                if (child + 1 < size && compare(heap[child + 1], heap[child]) > 0) {
+                    child += 1;
+                }
+                if (compare(row, heap[child]) >= 0) {
+                    break;
+                }
+                heap[index] = heap[child];
+                index = child;
+            }
+            heap[index] = row;
+        }
+    }
+
     public List<Map<String, Object>> output(List<String> columnNames) {
         List<Map<String, Object>> data = Lists.newArrayList();
         if (CollectionUtils.isEmpty(columnNames)) return data;
         if (isNull()) return data;
+        Map<String, ColumnReader> columns = Maps.newHashMap();
         for (int i = 0; i < getFeatureTable().getRowCount(); ++i) {
             Map<String, Object> map = Maps.newHashMap();
             for (String col : columnNames) {
-                map.put(col, get(col, i));
+                map.put(col, getValue(columns, col, i));
             }
             data.add(map);
         }
@@ -384,10 +772,11 @@ public class DataResult implements AutoCloseable {
     public List<Map<String, Object>> output() {
         List<Map<String, Object>> data = Lists.newArrayList();
         if (isNull()) return data;
+        List<ColumnReader> readers = getColumns();
         for (int i = 0; i < getFeatureTable().getRowCount(); ++i) {
             Map<String, Object> map = Maps.newHashMap();
-            for (Field field : featureTable.getSchema().getFields()) {
-                map.put(field.getName(), get(field.getName(), i));
+            for (ColumnReader reader : readers) {
+                map.put(reader.getName(), getValue(reader, i));
             }
             data.add(map);
         }
@@ -15,17 +15,17 @@
 //
 package com.dmetasoul.metaspore.data;
 
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.collections4.MapUtils;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.io.ObjectOutputStream;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
-import java.util.Map;
+import java.util.*;
 
 /**
  * 用于保存服务结果
@@ -40,6 +40,12 @@ public class ServiceRequest implements java.io.Serializable {
     private String parent;
     private Map<String, Object> data;
     private int limit = 100;
+    /**
+     * genRequestSign 计算结果缓存， 请求数据通过setter/put/copy修改后失效
+     */
+    private transient String requestSign;
+
+    private static final HashFunction SIGN_HASH = Hashing.murmur3_128();
 
     public ServiceRequest(DataContext context) {
         if (context != null && MapUtils.isNotEmpty(context.getRequest())) {
@@ -66,25 +72,110 @@ public class ServiceRequest implements java.io.Serializable {
     public void setParent(String parent) {
         if (MapUtils.isEmpty(data)) {
             this.parent = parent;
+            this.requestSign = null;
         }
     }
 
+    public void setData(Map<String, Object> data) {
+        this.data = data;
+        this.requestSign = null;
+    }
+
+    public void setLimit(int limit) {
+        this.limit = limit;
+        this.requestSign = null;
+    }
+
+    /**
+     * 请求签名， 对parent，limit和data按稳定的顺序计算128位murmur3结构化哈希， map和set与元素顺序无关
+     * 签名只用于快速判断， 复用结果前需要再通过sameRequest确认请求内容一致，避免哈希冲突导致错误复用
+     */
     public String genRequestSign() {
-        ByteArrayOutputStream output = new ByteArrayOutputStream(10240);
-        try {
-            ObjectOutputStream oos = new ObjectOutputStream(output);
-            oos.writeObject(this);
-            MessageDigest md = MessageDigest.getInstance("md5");
-            byte[] data = md.digest(output.toByteArray());
-            StringBuilder sb = new StringBuilder();
-            for (byte b : data) {
-                sb.append(Integer.toHexString(b & 0xff));
+        if (requestSign == null) {
+            Hasher hasher = SIGN_HASH.newHasher();
+            putValue(hasher, parent);
+            hasher.putInt(limit);
+            putValue(hasher, data);
+            requestSign = hasher.hash().toString();
+        }
+        return requestSign;
+    }
+
+    /**
+     * 签名相同的情况下， 判断两个请求内容是否一致
+     */
+    public boolean sameRequest(ServiceRequest req) {
+        if (req == this) return true;
+        if (req == null) return false;
+        return limit == req.getLimit() && Objects.equals(parent, req.getParent()) && Objects.deepEquals(data, req.getData());
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static void putValue(Hasher hasher, Object value) {
+        if (value == null) {
+            hasher.putByte((byte) 0);
+        } else if (value instanceof String) {
+            String str = (String) value;
+            hasher.putByte((byte) 1).putInt(str.length()).putUnencodedChars(str);
+        } else if (value instanceof Integer) {
+            hasher.putByte((byte) 2).putInt((Integer) value);
+        } else if (value instanceof Long) {
+            hasher.putByte((byte) 3).putLong((Long) value);
+        } else if (value instanceof Double) {
+            hasher.putByte((byte) 4).putDouble((Double) value);
+        } else if (value instanceof Float) {
+            hasher.putByte((byte) 5).putFloat((Float) value);
+        } else if (value instanceof Boolean) {
+            hasher.putByte((byte) 6).putBoolean((Boolean) value);
+        } else if (value instanceof Short) {
+            hasher.putByte((byte) 7).putShort((Short) value);
+        } else if (value instanceof Byte) {
+            hasher.putByte((byte) 8).putByte((Byte) value);
+        } else if (value instanceof byte[]) {
+            byte[] bytes = (byte[]) value;
+            hasher.putByte((byte) 9).putInt(bytes.length).putBytes(bytes);
+        } else if (value instanceof List) {
+            List list = (List) value;
+            hasher.putByte((byte) 10).putInt(list.size());
+            for (Object item : list) {
+                putValue(hasher, item);
+            }
+        } else if (value instanceof Collection) {
+            List<HashCode> hashCodes = Lists.newArrayListWithCapacity(((Collection) value).size());
+            for (Object item : (Collection) value) {
+                Hasher itemHasher = SIGN_HASH.newHasher();
+                putValue(itemHasher, item);
+                hashCodes.add(itemHasher.hash());
             }
-            oos.close();
-            output.close();
-            return sb.toString();
-        } catch (IOException | NoSuchAlgorithmException e) {
-            throw new RuntimeException(e);
+            putUnordered(hasher, (byte) 11, hashCodes);
+        } else if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            List<HashCode> hashCodes = Lists.newArrayListWithCapacity(map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                Hasher entryHasher = SIGN_HASH.newHasher();
+                putValue(entryHasher, entry.getKey());
+                putValue(entryHasher, entry.getValue());
+                hashCodes.add(entryHasher.hash());
+            }
+            putUnordered(hasher, (byte) 12, hashCodes);
+        } else if (value instanceof Object[]) {
+            Object[] array = (Object[]) value;
+            hasher.putByte((byte) 13).putInt(array.length);
+            for (Object item : array) {
+                putValue(hasher, item);
+            }
+        } else if (value.getClass().isArray()) {
+            hasher.putByte((byte) 14).putInt(Arrays.deepHashCode(new Object[]{value}));
+        } else {
+            // 其他类型使用类名和hashCode， 签名相同时由sameRequest通过equals确认
+            hasher.putByte((byte) 15).putUnencodedChars(value.getClass().getName()).putInt(value.hashCode());
+        }
+    }
+
+    private static void putUnordered(Hasher hasher, byte tag, List<HashCode> hashCodes) {
+        hasher.putByte(tag).putInt(hashCodes.size());
+        if (!hashCodes.isEmpty()) {
+            hasher.putBytes(Hashing.combineUnordered(hashCodes).asBytes());
         }
     }
 
@@ -95,11 +186,13 @@ public class ServiceRequest implements java.io.Serializable {
             data.putAll(req.getData());
         }
         this.limit = req.getLimit();
+        this.requestSign = null;
     }
 
     public <T> void put(String name, T value) {
         if (data == null) data = Maps.newHashMap();
         data.put(name, value);
+        this.requestSign = null;
     }
 
     public <T> T get(String name, T value) {
@@ -4,6 +4,7 @@ import com.dmetasoul.metaspore.configure.TableInfo;
 import com.dmetasoul.metaspore.configure.FieldInfo;
 import com.dmetasoul.metaspore.enums.DataTypeEnum;
 import com.dmetasoul.metaspore.serving.FeatureTable;
+import com.dmetasoul.metaspore.serving.VectorSchemaRootPool;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import lombok.Data;
@@ -90,7 +91,10 @@ public class TableData {
     }
 
     public FeatureTable getFeatureTable(String name, List<Field> resFields) {
-        FeatureTable featureTable = new FeatureTable(name, resFields);
+        return fillFeatureTable(VectorSchemaRootPool.getDefault().newFeatureTable(name, resFields), resFields);
+    }
+
+    private FeatureTable fillFeatureTable(FeatureTable featureTable, List<Field> resFields) {
         for (Field field : resFields) {
             String col = field.getName();
             FieldInfo fieldInfo = getFieldInfo(col);
@@ -112,11 +116,19 @@ public class TableData {
     }
 
     public DataResult getDataResult(String name, List<Field> resFields) {
+        return getDataResult(name, resFields, null);
+    }
+
+    /**
+     * context不为空时， 结果的FeatureTable在请求的arena中创建
+     */
+    public DataResult getDataResult(String name, List<Field> resFields, DataContext context) {
         DataResult result = new DataResult();
         if (CollectionUtils.isEmpty(resFields)) {
             return result;
         }
-        FeatureTable featureTable = getFeatureTable(name, resFields);
+        FeatureTable featureTable = fillFeatureTable(context == null ?
+                new FeatureTable(name, resFields) : context.newFeatureTable(name, resFields), resFields);
         result.setFeatureTable(featureTable);
         List<DataTypeEnum> dataTypes = Lists.newArrayList();
         for (Field field : resFields) {
@@ -167,13 +179,14 @@ public class TableData {
             addFieldInfo(fieldInfo);
             dataTypes.put(fieldInfo, result.getDataTypes().get(k));
             dataSchema.put(fieldInfo, field);
-            List<Object> value = result.get(k);
-            for (int i = 0; i < value.size(); ++i) {
+            ColumnReader reader = result.getColumn(k);
+            int size = reader == null ? 0 : reader.size();
+            for (int i = 0; i < size; ++i) {
                 if (i < data.size()) {
-                    data.get(i).put(fieldInfo, value.get(i));
+                    data.get(i).put(fieldInfo, reader.getObject(i));
                 } else {
                     Map<FieldInfo, Object> item = Maps.newHashMap();
-                    item.put(fieldInfo, value.get(i));
+                    item.put(fieldInfo, reader.getObject(i));
                     data.add(item);
                 }
             }
@@ -0,0 +1,131 @@
+//
+// Copyright 2022 DMetaSoul
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package com.dmetasoul.metaspore.data;
+
+import com.dmetasoul.metaspore.serving.ArrowTensor;
+import com.dmetasoul.metaspore.serving.FeatureTable;
+import org.apache.arrow.vector.Float4Vector;
+import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.complex.ListVector;
+
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * 二维tensor中一行的只读List视图， 不复制数据， 只在get时装箱单个元素
+ * 写入FeatureTable的float/double list列时直接从tensor的buffer写入子vector， 整个过程不装箱
+ */
+public class TensorRow<T> extends AbstractList<T> implements RandomAccess {
+    private final ArrowTensor.TensorAccessor<T> accessor;
+    private final int row;
+    private final int cols;
+
+    public TensorRow(ArrowTensor.TensorAccessor<T> accessor, int row, int cols) {
+        this.accessor = accessor;
+        this.row = row;
+        this.cols = cols;
+    }
+
+    /**
+     * 按行切分二维tensor， 每行一个TensorRow， 可以直接作为TableData中list字段的值
+     */
+    public static List<Object> rows(ArrowTensor tensor) {
+        if (tensor == null) {
+            throw new IllegalArgumentException("tensor or shape is null");
+        }
+        long[] shape = tensor.getShape();
+        if (shape.length != 2) {
+            throw new IllegalArgumentException("Shape length must equal to 2 (batch, vector dim). shape.length: " + shape.length);
+        }
+        ArrowTensor.TensorAccessor<Object> accessor = getTensorAccessor(tensor);
+        int rows = Math.toIntExact(shape[0]);
+        int cols = Math.toIntExact(shape[1]);
+        List<Object> result = new ArrayList<>(rows);
+        for (int i = 0; i < rows; ++i) {
+            result.add(new TensorRow<>(accessor, i, cols));
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> ArrowTensor.TensorAccessor<T> getTensorAccessor(ArrowTensor tensor) {
+        if (tensor.isFloatTensor()) {
+            return (ArrowTensor.TensorAccessor<T>) tensor.getFloatData();
+        } else if (tensor.isDoubleTensor()) {
+            return (ArrowTensor.TensorAccessor<T>) tensor.getDoubleData();
+        } else if (tensor.isLongTensor()) {
+            return (ArrowTensor.TensorAccessor<T>) tensor.getLongData();
+        } else {
+            return (ArrowTensor.TensorAccessor<T>) tensor.getIntData();
+        }
+    }
+
+    @Override
+    public T get(int index) {
+        Objects.checkIndex(index, cols);
+        return accessor.get(row, index);
+    }
+
+    @Override
+    public int size() {
+        return cols;
+    }
+
+    /**
+     * float tensor的行视图， 其他类型返回null
+     */
+    public FloatBuffer getFloatBuffer() {
+        if (accessor instanceof ArrowTensor.FloatTensorAccessor) {
+            return ((ArrowTensor.FloatTensorAccessor) accessor).getRow(row);
+        }
+        return null;
+    }
+
+    /**
+     * double tensor的行视图， 其他类型返回null
+     */
+    public DoubleBuffer getDoubleBuffer() {
+        if (accessor instanceof ArrowTensor.DoubleTensorAccessor) {
+            return ((ArrowTensor.DoubleTensorAccessor) accessor).getRow(row);
+        }
+        return null;
+    }
+
+    /**
+     * tensor与list子vector的类型一致时直接写入并返回true， 否则返回false， 由调用方按普通List写入
+     */
+    public boolean writeTo(FeatureTable featureTable, int index, ListVector listVector) {
+        if (listVector.getDataVector() instanceof Float4Vector) {
+            FloatBuffer values = getFloatBuffer();
+            if (values != null) {
+                featureTable.setFloatList(index, values, listVector);
+                return true;
+            }
+        } else if (listVector.getDataVector() instanceof Float8Vector) {
+            DoubleBuffer values = getDoubleBuffer();
+            if (values != null) {
+                featureTable.setDoubleList(index, values, listVector);
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -19,6 +19,7 @@ import com.dmetasoul.metaspore.annotation.FeatureAnnotation;
 import com.dmetasoul.metaspore.common.CommonUtils;
 import com.dmetasoul.metaspore.configure.FieldInfo;
 import com.dmetasoul.metaspore.enums.DataTypeEnum;
+import com.dmetasoul.metaspore.functions.AsyncFunction;
 import com.dmetasoul.metaspore.relyservice.ModelServingService;
 import com.dmetasoul.metaspore.serving.*;
 import com.google.common.collect.Lists;
@@ -32,6 +33,7 @@ import java.io.IOException;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 @Slf4j
 @FeatureAnnotation("AlgoInference")
@@ -45,7 +47,14 @@ public class AlgoInferenceTask extends AlgoTransformTask {
     protected int targetIndex;
     protected int maxReservation;
     protected String algoName;
-    protected PredictGrpc.PredictBlockingStub client;
+    protected PredictGrpc.PredictStub client;
+    protected PredictBatcher batcher;
+    protected PredictHedger hedger;
+    protected PayloadCompression compression;
+    protected FeatureTableSerDe.Options serDeOptions;
+    protected PredictStreamer streamer;
+    protected Map<String, String> parameters = Collections.emptyMap();
+    protected FeatureHasher hasher;
 
     public boolean initTask() {
         modelName = getOptionOrDefault("modelName", DEFAULT_MODEL_NAME);
@@ -55,7 +64,25 @@ public class AlgoInferenceTask extends AlgoTransformTask {
                 ModelServingService.genKey(algoTransform.getOptions()),
                 ModelServingService.class,
                 algoTransform.getOptions());
-        client = PredictGrpc.newBlockingStub(modelServingService.getChannel());
+        client = PredictGrpc.newStub(modelServingService.getChannel());
+        batcher = modelServingService.getBatcher();
+        hedger = modelServingService.getHedger();
+        compression = modelServingService.getCompression();
+        serDeOptions = modelServingService.getSerDeOptions();
+        streamer = modelServingService.getStreamer();
+        // 模型可以接受低精度输出时， 请服务端按tensorEncoding(fp16/bf16/int8)编码返回的tensor
+        // cpp的serving还不支持该参数， 总是返回float32 tensor， 见TensorEncoding
+        TensorEncoding encoding = TensorEncoding.fromName(getOptionOrDefault("tensorEncoding", ""));
+        if (encoding != null && encoding != TensorEncoding.FLOAT32) {
+            log.warn("tensorEncoding {} needs model serving support, the cpp serving still replies float32 tensors",
+                    encoding.getName());
+            parameters = Map.of(TensorEncoding.PARAMETER_KEY, encoding.getName());
+        }
+        // 配置了模型的combine_schema时， 在客户端把稀疏特征的字符串列哈希为uint64后发送
+        String combineSchema = getOptionOrDefault("combineSchema", "");
+        if (!combineSchema.isEmpty()) {
+            hasher = FeatureHasher.parse(combineSchema);
+        }
         maxReservation = getOptionOrDefault("maxReservation", DEFAULT_MAX_RESERVATION);
         algoName = getOptionOrDefault("algo-name", "two_tower");
         return true;
@@ -64,7 +91,7 @@ public class AlgoInferenceTask extends AlgoTransformTask {
     @SuppressWarnings("unchecked")
     @Override
     public void addFunctions() {
-        addFunction("genEmbedding", (fieldTableData, fieldAction, taskPool) -> {
+        addFunction("genEmbedding", (AsyncFunction) (fieldTableData, fieldAction, taskPool) -> {
             Assert.isTrue(CollectionUtils.isNotEmpty(fieldAction.getAlgoColumns()), "AlgoColumns must not be empty");
             List<FeatureTable> featureTables = Lists.newArrayList();
             for (Map<String, List<String>> item : fieldAction.getAlgoColumns()) {
@@ -79,28 +106,22 @@ public class AlgoInferenceTask extends AlgoTransformTask {
                             columns.add(name);
                         }
                     }
-                    FeatureTable featureTable = convFeatureTable(entry.getKey(), columns, fieldTableData);
+                    FeatureTable featureTable = hashFeatureTable(convFeatureTable(entry.getKey(), columns, fieldTableData));
                     if (featureTable.getRowCount() == 0) {
                         log.error("model input is empty! at fieldAction: {}, fieldTableData: {}", fieldAction, fieldTableData);
-                        return true;
+                        return CompletableFuture.completedFuture(true);
                     }
                     featureTables.add(featureTable);
                 }
             }
             String targetName = CommonUtils.getField(fieldAction.getOptions(), "targetKey", targetKey);
             String model = CommonUtils.getField(fieldAction.getOptions(), "modelName", modelName);
-            try (ArrowAllocator allocator = new ArrowAllocator("AlgoInfer", Integer.MAX_VALUE)) {
-                ArrowTensor arrowTensor = predict(featureTables, allocator, model, targetName);
-                List<Object> res = Lists.newArrayList();
-                res.addAll(getFromTensor(arrowTensor));
-                fieldTableData.addValueList(fieldAction.getNames().get(0), res);
-                for (FeatureTable featureTable : featureTables) {
-                    featureTable.close();
-                }
+            return predictAsync(featureTables, model, targetName).thenApplyAsync(arrowTensor -> {
+                fieldTableData.addValueList(fieldAction.getNames().get(0), getRowsFromTensor(arrowTensor));
                 return true;
-            }
+            }, taskPool);
         });
-        addFunction("predictScore", (fieldTableData, fieldAction, taskPool) -> {
+        addFunction("predictScore", (AsyncFunction) (fieldTableData, fieldAction, taskPool) -> {
             Assert.isTrue(CollectionUtils.isNotEmpty(fieldAction.getAlgoColumns()), "AlgoColumns must not empty");
             List<FeatureTable> featureTables = Lists.newArrayList();
             for (Map<String, List<String>> item : fieldAction.getAlgoColumns()) {
@@ -115,11 +136,11 @@ public class AlgoInferenceTask extends AlgoTransformTask {
                             columns.add(name);
                         }
                     }
-                    FeatureTable featureTable = convFeatureTable(entry.getKey(), columns, fieldTableData);
+                    FeatureTable featureTable = hashFeatureTable(convFeatureTable(entry.getKey(), columns, fieldTableData));
                     if (featureTable.getRowCount() == 0) {
                         log.error("model input is empty! at fieldAction: {}, fieldTableData {}", fieldAction, fieldTableData);
                         fieldTableData.addValueList(fieldAction.getNames().get(0), List.of());
-                        return true;
+                        return CompletableFuture.completedFuture(true);
                     }
                     featureTables.add(featureTable);
                 }
@@ -127,16 +148,12 @@ public class AlgoInferenceTask extends AlgoTransformTask {
             String targetName = CommonUtils.getField(fieldAction.getOptions(), "targetKey", targetKey);
             int index = CommonUtils.getField(fieldAction.getOptions(), "targetIndex", targetIndex);
             String model = CommonUtils.getField(fieldAction.getOptions(), "modelName", modelName);
-            try (ArrowAllocator allocator = new ArrowAllocator("AlgoInfer", Integer.MAX_VALUE)) {
-                ArrowTensor arrowTensor = predict(featureTables, allocator, model, targetName);
+            return predictAsync(featureTables, model, targetName).thenApplyAsync(arrowTensor -> {
                 List<Object> res = Lists.newArrayList();
                 res.addAll(getFromTensor(arrowTensor, index));
                 fieldTableData.addValueList(fieldAction.getNames().get(0), res);
-                for (FeatureTable featureTable : featureTables) {
-                    featureTable.close();
-                }
                 return true;
-            }
+            }, taskPool);
         });
         addFunction("rankCollectItem", (fieldTableData, config, taskPool) -> {
             Map<String, Object> options = config.getOptions();
@@ -172,16 +189,59 @@ public class AlgoInferenceTask extends AlgoTransformTask {
         });
     }
 
-    protected ArrowTensor predict(List<FeatureTable> featureTables, ArrowAllocator allocator,
-                                  String modelName, String targetKey) {
-        Map<String, ArrowTensor> npsResultMap;
+    /**
+     * 没有配置combineSchema时原样返回， 否则返回哈希后的table并关闭原table
+     */
+    protected FeatureTable hashFeatureTable(FeatureTable featureTable) {
+        if (hasher == null) {
+            return featureTable;
+        }
         try {
-            npsResultMap = ServingClient.predictBlocking(client, modelName,
-                    featureTables, allocator, Collections.emptyMap());
+            return hasher.hashTable(featureTable);
+        } finally {
+            featureTable.close();
+        }
+    }
+
+    protected ArrowTensor predict(List<FeatureTable> featureTables, String modelName, String targetKey) {
+        return join(predictAsync(featureTables, modelName, targetKey));
+    }
+
+    /**
+     * 异步请求模型服务， 返回的future在grpc回调中完成， 请求结束后关闭featureTables
+     * 返回的tensor是reply payload上的只读视图， 不需要另外分配arrow内存
+     */
+    protected CompletableFuture<ArrowTensor> predictAsync(List<FeatureTable> featureTables, String modelName, String targetKey) {
+        // 低精度编码的输出解码为float tensor， 后续按float处理
+        return sendAsync(featureTables, modelName, targetKey)
+                .thenApply(tensor -> tensor == null ? null : tensor.toFloatTensor())
+                .whenComplete((tensor, e) -> {
+                    for (FeatureTable featureTable : featureTables) {
+                        featureTable.close();
+                    }
+                });
+    }
+
+    private CompletableFuture<ArrowTensor> sendAsync(List<FeatureTable> featureTables, String modelName, String targetKey) {
+        // 行数较多的请求按chunk流式发送， 不参与合并和对冲
+        if (streamer != null && streamer.shouldStream(featureTables)) {
+            return streamer.predictAsync(modelName, featureTables, parameters)
+                    .thenApply(npsResultMap -> npsResultMap.get(targetKey));
+        }
+        if (batcher != null) {
+            return batcher.predictAsync(modelName, featureTables, parameters)
+                    .thenApply(npsResultMap -> npsResultMap.get(targetKey));
+        }
+        try {
+            PredictRequest request = ServingClient.buildRequest(modelName, featureTables, parameters, serDeOptions, compression);
+            if (hedger != null) {
+                return hedger.predictAsync(request).thenApply(npsResultMap -> npsResultMap.get(targetKey));
+            }
+            return ServingClient.predictAsync(client, request, compression)
+                    .thenApply(npsResultMap -> npsResultMap.get(targetKey));
         } catch (IOException e) {
             log.error("TwoTower request nps fail!");
-            throw new RuntimeException(e);
+            return CompletableFuture.failedFuture(new RuntimeException(e));
         }
-        return npsResultMap.get(targetKey);
     }
 }
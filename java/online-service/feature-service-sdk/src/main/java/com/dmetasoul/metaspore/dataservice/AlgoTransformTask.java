@@ -23,7 +23,9 @@ import com.dmetasoul.metaspore.data.DataContext;
 import com.dmetasoul.metaspore.data.DataResult;
 import com.dmetasoul.metaspore.data.ServiceRequest;
 import com.dmetasoul.metaspore.data.TableData;
+import com.dmetasoul.metaspore.data.TensorRow;
 import com.dmetasoul.metaspore.enums.DataTypeEnum;
+import com.dmetasoul.metaspore.functions.AsyncFunction;
 import com.dmetasoul.metaspore.functions.Function;
 import com.dmetasoul.metaspore.serving.ArrowTensor;
 import com.dmetasoul.metaspore.serving.FeatureTable;
@@ -35,12 +37,11 @@ import org.apache.arrow.vector.types.pojo.Field;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.util.Assert;
-import org.springframework.util.StopWatch;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.stream.Collectors;
 
@@ -50,7 +51,6 @@ public class AlgoTransformTask extends DataService {
     protected ExecutorService taskPool;
     protected AlgoTransform algoTransform;
     protected Map<String, Function> additionFunctions;
-    protected Map<String, String> actionTypes;
 
     public <T> T getOptionOrDefault(String key, T value) {
         return CommonUtils.getField(algoTransform.getOptions(), key, value);
@@ -77,7 +77,6 @@ public class AlgoTransformTask extends DataService {
         additionFunctions = Maps.newHashMap();
         initFunctions();
         addFunctions();
-        actionTypes = Maps.newHashMap();
         return initTask();
     }
 
@@ -90,12 +89,6 @@ public class AlgoTransformTask extends DataService {
         return super.makeRequest(depend, null, context);
     }
 
-    @Override
-    protected void preCondition(ServiceRequest request, DataContext context) {
-        super.preCondition(request, context);
-        actionTypes.clear();
-    }
-
     public void initFunctions() {
         addFunction("setValue", (fieldTableData, options, taskPool) -> {
             Object object = CommonUtils.getObject(options.getOptions(), "value");
@@ -132,40 +125,62 @@ public class AlgoTransformTask extends DataService {
 
     @Override
     public DataResult process(ServiceRequest request, DataContext context) {
+        return join(processAsync(request, context));
+    }
+
+    /**
+     * 依次执行actionList中的函数， AsyncFunction完成后在完成future的线程中继续执行后面的函数
+     * 没有AsyncFunction时在调用线程中同步执行完毕
+     */
+    @Override
+    protected CompletableFuture<DataResult> processAsync(ServiceRequest request, DataContext context) {
         TableData fieldTableData = new TableData();
         addDataResults(fieldTableData, algoTransform.getFeature(), context);
         addDataResults(fieldTableData, algoTransform.getAlgoTransform(), context);
-        StopWatch timeRecorder = new StopWatch(UUID.randomUUID().toString());
+        CompletableFuture<Void> chain = CompletableFuture.completedFuture(null);
         for (FieldAction fieldAction : algoTransform.getActionList()) {
-            if (StringUtils.isEmpty(fieldAction.getFunc())) {
-                if (CollectionUtils.isNotEmpty(fieldAction.getNames())) {
-                    int fieldSize = 0;
-                    if (CollectionUtils.isNotEmpty(fieldAction.getFields())) {
-                        fieldSize = fieldAction.getFields().size();
-                    }
-                    for (int i = 0; i < fieldAction.getNames().size(); ++i) {
-                        if (i < fieldSize) {
-                            fieldTableData.copyField(fieldAction.getFields().get(i), fieldAction.getNames().get(i));
-                        } else if (CollectionUtils.isNotEmpty(fieldAction.getInput()) && i < fieldSize + fieldAction.getInput().size()) {
-                            fieldTableData.copyField(fieldAction.getInput().get(i - fieldSize), fieldAction.getNames().get(i));
-                        }
-                    }
+            chain = chain.thenCompose(ignore -> processAction(fieldTableData, fieldAction));
+        }
+        return chain.thenApply(ignore -> fieldTableData.getDataResult(name, resFields, context));
+    }
+
+    protected CompletableFuture<Void> processAction(TableData fieldTableData, FieldAction fieldAction) {
+        if (StringUtils.isEmpty(fieldAction.getFunc())) {
+            if (CollectionUtils.isNotEmpty(fieldAction.getNames())) {
+                int fieldSize = 0;
+                if (CollectionUtils.isNotEmpty(fieldAction.getFields())) {
+                    fieldSize = fieldAction.getFields().size();
                 }
-            } else {
-                Function function = additionFunctions.get(fieldAction.getFunc());
-                if (function == null) {
-                    function = serviceManager.getFunction(fieldAction.getFunc());
-                    if (function == null) {
-                        throw new RuntimeException("function get fail at " + fieldAction.getFunc());
+                for (int i = 0; i < fieldAction.getNames().size(); ++i) {
+                    if (i < fieldSize) {
+                        fieldTableData.copyField(fieldAction.getFields().get(i), fieldAction.getNames().get(i));
+                    } else if (CollectionUtils.isNotEmpty(fieldAction.getInput()) && i < fieldSize + fieldAction.getInput().size()) {
+                        fieldTableData.copyField(fieldAction.getInput().get(i - fieldSize), fieldAction.getNames().get(i));
                     }
                 }
-                fieldTableData.addFieldList(fieldAction.getNames(), fieldAction.getTypes());
-                if (!function.process(fieldTableData, fieldAction, taskPool)) {
-                    throw new RuntimeException("the function process fail. func:" + fieldAction.getFunc());
-                }
             }
+            return CompletableFuture.completedFuture(null);
+        }
+        Function function = additionFunctions.get(fieldAction.getFunc());
+        if (function == null) {
+            function = serviceManager.getFunction(fieldAction.getFunc());
+            if (function == null) {
+                throw new RuntimeException("function get fail at " + fieldAction.getFunc());
+            }
+        }
+        fieldTableData.addFieldList(fieldAction.getNames(), fieldAction.getTypes());
+        if (function instanceof AsyncFunction) {
+            return ((AsyncFunction) function).processAsync(fieldTableData, fieldAction, taskPool)
+                    .thenAccept(success -> checkFunction(success, fieldAction));
+        }
+        checkFunction(function.process(fieldTableData, fieldAction, taskPool), fieldAction);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    private void checkFunction(Boolean success, FieldAction fieldAction) {
+        if (!Boolean.TRUE.equals(success)) {
+            throw new RuntimeException("the function process fail. func:" + fieldAction.getFunc());
         }
-        return fieldTableData.getDataResult(name, resFields);
     }
 
     public void setFieldData(FeatureTable featureTable, String col, DataTypeEnum dataType, List<Object> data) {
@@ -199,6 +214,13 @@ public class AlgoTransformTask extends DataService {
         return vectors;
     }
 
+    /**
+     * 与getFromTensor相同按行返回， 每行是tensor的只读视图， 不复制数据也不装箱
+     */
+    public List<Object> getRowsFromTensor(ArrowTensor tensor) {
+        return TensorRow.rows(tensor);
+    }
+
     public <T> List<T> getFromTensor(ArrowTensor tensor, int targetIndex) {
         if (tensor == null) {
             throw new IllegalArgumentException("tensor or shape is null");
@@ -33,7 +33,9 @@ import org.apache.commons.lang3.StringUtils;
 
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
 
 /**
  * DataService的base类
@@ -57,18 +59,18 @@ public abstract class DataService {
      */
     protected TableInfo tableConfig;
     /**
-     * DataService的依赖任务队列。
-     * 为了支持更灵活的DataService任务，相关依赖任务执行过程中，可以根据需要动态的添加相关的依赖任务，来完成更复杂的数据转换计算任务
-     */
-    protected LinkedBlockingQueue<Chain> taskFlow;
-    /**
-     * DataService的依赖任务流chain未能执行成功重新加入执行队列的次数。
+     * DataService的依赖任务执行失败后重新执行的次数，在initService中设置，用于编译执行计划。
      */
     protected int executeNum = 1;
     /**
-     * 对于某些依赖任务执行比较确定的DataService，初始化过程中确定的依赖任务执行流程chain。
+     * 对于某些依赖任务执行比较确定的DataService，初始化过程中确定的依赖任务执行流程chain，用于编译执行计划。
      */
     protected Chain depend;
+    /**
+     * initService完成后编译生成的执行计划，之后不再修改，所有请求共享
+     * 每次请求的可变状态保存在请求级的ExecutionState中
+     */
+    protected ExecutionPlan plan = ExecutionPlan.EMPTY;
 
     protected List<Field> resFields;
     protected List<DataTypeEnum> dataTypes;
@@ -92,11 +94,14 @@ public abstract class DataService {
         this.workFlowPool = workFlowPool;
         this.tableConfig = tableConfig;
         this.serviceManager = serviceManager;
-        this.taskFlow = new LinkedBlockingQueue<>();
         resFields = Lists.newArrayList();
         dataTypes = Lists.newArrayList();
         this.isInit = true;
-        return initService();
+        if (!initService()) {
+            return false;
+        }
+        this.plan = compilePlan();
+        return true;
     }
 
     /**
@@ -104,6 +109,20 @@ public abstract class DataService {
      */
     protected abstract boolean initService();
 
+    /**
+     * 编译DataService的执行计划，由base类init函数在initService成功后调用一次
+     */
+    protected ExecutionPlan compilePlan() {
+        return new ExecutionPlan(depend == null ? null : List.of(depend), executeNum);
+    }
+
+    /**
+     * 为每次执行构建请求级状态，子类需要保存额外的执行状态时可以覆盖此函数
+     */
+    protected ExecutionState newExecutionState() {
+        return new ExecutionState(plan);
+    }
+
     /**
      * 用于DataService 具体实现子类关闭外部服务连接等操作
      */
@@ -170,12 +189,23 @@ public abstract class DataService {
         return dataResults;
     }
 
+    protected FeatureTable newFeatureTable(DataContext context) {
+        return context == null ? new FeatureTable(name, resFields) : context.newFeatureTable(name, resFields);
+    }
+
     public DataResult setDataResult(List<Map<String, Object>> res) {
+        return setDataResult(res, null);
+    }
+
+    /**
+     * context不为空时， 结果的FeatureTable在请求的arena中创建
+     */
+    public DataResult setDataResult(List<Map<String, Object>> res, DataContext context) {
         if (res == null) {
             return null;
         }
         DataResult result = new DataResult();
-        FeatureTable featureTable = new FeatureTable(name, resFields);
+        FeatureTable featureTable = newFeatureTable(context);
         result.setFeatureTable(featureTable);
         result.setDataTypes(dataTypes);
         if (CollectionUtils.isEmpty(res)) {
@@ -198,11 +228,15 @@ public abstract class DataService {
     }
 
     public DataResult setDataResult(Map<String, List<Object>> res) {
+        return setDataResult(res, null);
+    }
+
+    public DataResult setDataResult(Map<String, List<Object>> res, DataContext context) {
         if (res == null) {
             return null;
         }
         DataResult result = new DataResult();
-        FeatureTable featureTable = new FeatureTable(name, resFields);
+        FeatureTable featureTable = newFeatureTable(context);
         result.setFeatureTable(featureTable);
         result.setDataTypes(dataTypes);
         if (MapUtils.isEmpty(res)) {
@@ -261,65 +295,10 @@ public abstract class DataService {
     }
 
     /**
-     * 执行DataService所依赖的任务执行流chain
+     * 基于当前DataService的请求数据、上下文数据和本次执行的状态，构建依赖任务name的请求
      */
-    public Chain executeChain(Chain chain, ServiceRequest request, DataContext context) {
-        // lastChain 用于记录未执行成功的task
-        Chain lastChain = new Chain();
-        List<String> then = chain.getThen();
-        // 顺序执行任务then
-        if (CollectionUtils.isNotEmpty(then)) {
-            int i = 0;
-            for (; i < then.size(); ++i) {
-                String taskName = then.get(i);
-                if (execute(taskName, request, context) == null) {
-                    log.warn("task:{} depend:{} exec fail!", name, taskName);
-                    break;
-                }
-            }
-            lastChain.setThen(then.subList(i, then.size()));
-        }
-        // 并行执行任务when
-        if (CollectionUtils.isNotEmpty(chain.getWhen())) {
-            List<CompletableFuture<?>> whenList = Lists.newArrayList();
-            for (String taskName : chain.getWhen()) {
-                whenList.add(CompletableFuture.supplyAsync(() -> execute(taskName, request, context), workFlowPool)
-                        .whenComplete(((dataResult, throwable) -> {
-                            if (!checkResult(dataResult)) {
-                                log.error("task:{} depend:{} exec fail!", name, taskName);
-                            }
-                            if (throwable != null) {
-                                log.error("exception:{}", throwable.getMessage());
-                            }
-                        }))
-                );
-            }
-            CompletableFuture<?> resultFuture;
-            // 设置any or all
-            if (chain.isAny()) {
-                resultFuture = CompletableFuture.anyOf(whenList.toArray(new CompletableFuture[]{}));
-            } else {
-                resultFuture = CompletableFuture.allOf(whenList.toArray(new CompletableFuture[]{}));
-            }
-            // 获取并发执行结果
-            try {
-                resultFuture.get(chain.getTimeOut(), chain.getTimeOutUnit());
-            } catch (InterruptedException | ExecutionException | TimeoutException e) {
-                log.error(String.format("the service: %s there was an error when executing the CompletableFuture", name), e);
-            }
-            // 记录未执行成功的when任务
-            List<String> noExecuteTasks = Lists.newArrayList();
-            for (String taskName : chain.getWhen()) {
-                if (getDataResultByName(taskName, context) == null) {
-                    noExecuteTasks.add(taskName);
-                }
-            }
-            if (chain.isAny() && noExecuteTasks.size() == chain.getWhen().size() || !chain.isAny() && !noExecuteTasks.isEmpty()) {
-                lastChain.setWhen(noExecuteTasks);
-                lastChain.setAny(chain.isAny());
-            }
-        }
-        return lastChain;
+    public ServiceRequest makeRequest(String name, ServiceRequest request, DataContext context, ExecutionState state) {
+        return makeRequest(name, request, context);
     }
 
     /**
@@ -328,92 +307,130 @@ public abstract class DataService {
     public void afterProcess(String taskName, ServiceRequest request, DataContext context) {
     }
 
+    public void afterProcess(String taskName, ServiceRequest request, DataContext context, ExecutionState state) {
+        afterProcess(taskName, request, context);
+    }
+
     /**
      * 执行DataService所依赖的任务taskName
      */
     public DataResult execute(String taskName, ServiceRequest request, DataContext context) {
+        return execute(taskName, request, context, newExecutionState());
+    }
+
+    public DataResult execute(String taskName, ServiceRequest request, DataContext context, ExecutionState state) {
+        return join(executeAsync(taskName, request, context, state));
+    }
+
+    /**
+     * 异步执行DataService所依赖的任务taskName， 依赖任务等待外部服务时不占用workFlowPool的线程
+     */
+    public CompletableFuture<DataResult> executeAsync(String taskName, ServiceRequest request, DataContext context, ExecutionState state) {
         // 如果任务已经被执行过，则直接获取结果
         DataResult result = getDataResultByName(taskName, context);
         if (result != null) {
-            return result;
+            return CompletableFuture.completedFuture(result);
         }
         if (StringUtils.isNotEmpty(request.getParent())) {
             result = getDataResultByName(request.getParent(), taskName, context);
             if (result != null) {
                 context.setResult(name, taskName, result);
-                return result;
+                return CompletableFuture.completedFuture(result);
             }
         }
         DataService dataService = serviceManager.getDataService(taskName);
         if (dataService == null) {
             log.error("task:{} depend:{} service init fail!", name, taskName);
-            return null;
+            return CompletableFuture.completedFuture(null);
         }
         // 调用服务为被调用任务构建请求数据
-        ServiceRequest taskRequest = makeRequest(taskName, request, context);
+        ServiceRequest taskRequest = makeRequest(taskName, request, context, state);
         if (taskRequest == null) {
-            return null;
+            return CompletableFuture.completedFuture(null);
         }
         taskRequest.setParent(name);
-        result = dataService.execute(taskRequest, context);
-        if (checkResult(result)) {
-            context.setResult(name, taskName, result);
-            // 根据需要，执行taskName执行完毕后的处理逻辑
-            afterProcess(taskName, request, context);
-            return result;
-        }
-        return null;
+        return dataService.executeAsync(taskRequest, context).thenApply(taskResult -> {
+            if (checkResult(taskResult)) {
+                context.setResult(name, taskName, taskResult);
+                // 根据需要，执行taskName执行完毕后的处理逻辑
+                afterProcess(taskName, request, context, state);
+                return taskResult;
+            }
+            return null;
+        });
     }
 
     /**
      * 执行DataService任务前，进行任务的预处理操作
      */
-    protected void preCondition(ServiceRequest request, DataContext context) {
-        if (depend != null && !depend.isEmpty()) {
-            taskFlow.offer(depend);
-        }
+    protected void preCondition(ServiceRequest request, DataContext context, ExecutionState state) {
     }
 
     /**
      * 执行DataService任务流程
      */
     public DataResult execute(ServiceRequest request, DataContext context) {
+        return join(executeAsync(request, context));
+    }
+
+    /**
+     * 异步执行DataService任务流程
+     * 依赖任务和处理函数都同步完成时， 整个流程在调用线程中执行完毕
+     */
+    public CompletableFuture<DataResult> executeAsync(ServiceRequest request, DataContext context) {
         // 0, 跟上次请求没变化，则直接使用上次处理结果
-        DataResult result = getDataResultByName(name, context);
+        DataResult cached = getDataResultByName(name, context);
         String reqSign = request.genRequestSign();
-        if (result != null && result.getReqSign().equals(reqSign)) {
-            return result;
+        if (cached != null && reqSign.equals(cached.getReqSign()) && request.sameRequest(cached.getRequest())) {
+            return CompletableFuture.completedFuture(cached);
         }
-        // 1, 执行depend任务前预处理
-        preCondition(request, context);
-        // 2, 执行chain，计算依赖depend服务结果
-        int num = executeNum * taskFlow.size();
-        Chain chain = taskFlow.poll();
-        while (chain != null && !chain.isEmpty()) {
-            Chain newChain = executeChain(chain, request, context);
-            if (newChain != null && !newChain.isEmpty()) {
-                taskFlow.offer(newChain);
-                if (newChain.noChanged(chain)) {
-                    num -= 1;
-                    if (num < 0) {
-                        break;
-                    }
-                }
+        // 1, 执行depend任务前预处理， 本次执行的状态由执行计划初始化
+        ExecutionState state = newExecutionState();
+        preCondition(request, context, state);
+        // 2, 按照执行计划的DAG调度依赖任务，计算依赖depend服务结果
+        return state.runAsync(this, request, context).thenCompose(success -> {
+            if (!success) {
+                return CompletableFuture.failedFuture(new RuntimeException(String.format("task:%s exec fail!", name)));
             }
-            chain = taskFlow.poll();
-        }
-        if (chain == null || chain.isEmpty()) {
             // 3, 执行服务处理函数
-            result = process(request, context);
+            return processAsync(request, context);
+        }).thenApply(result -> {
             if (checkResult(result)) {
                 result.setReqSign(reqSign);
+                result.setRequest(request);
                 result.setName(name);
                 // 缓存结果， 相同的请求不重复计算
                 context.setResult(name, result);
                 return result;
             }
+            throw new RuntimeException(String.format("task:%s exec fail!", name));
+        });
+    }
+
+    /**
+     * 异步的处理流程， 默认在当前线程中同步执行process
+     * 需要等待外部服务的DataService可以覆盖此函数， 在回调中完成返回的future
+     */
+    protected CompletableFuture<DataResult> processAsync(ServiceRequest request, DataContext context) {
+        try {
+            return CompletableFuture.completedFuture(process(request, context));
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * 等待future完成， 异步流程中抛出的RuntimeException原样抛出
+     */
+    protected static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
         }
-        throw new RuntimeException(String.format("task:%s exec fail!", name));
     }
 
     /**
@@ -0,0 +1,236 @@
+//
+// Copyright 2022 DMetaSoul
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package com.dmetasoul.metaspore.dataservice;
+
+import com.dmetasoul.metaspore.configure.Chain;
+import com.google.common.collect.Lists;
+import lombok.Getter;
+import org.apache.commons.collections4.CollectionUtils;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DataService编译后的执行计划
+ * 在initService完成后构建一次，之后不再修改，同一个DataService实例的所有并发请求共享同一个执行计划
+ * 依赖任务执行流chain被编译为DAG， 节点按拓扑序保存：
+ * 1, 任务节点对应一个依赖任务， 所有前驱节点执行成功后开始执行
+ * 2, 汇合节点不执行任务， 用于表示when的all/any语义以及chain之间的先后关系
+ * 请求执行过程中的可变数据保存在ExecutionState中
+ */
+@Getter
+public final class ExecutionPlan {
+    public static final ExecutionPlan EMPTY = new ExecutionPlan(null, 1);
+    /**
+     * 编译前的依赖任务执行流chain
+     */
+    private final List<Chain> chains;
+    /**
+     * 依赖任务执行失败后重新执行的次数
+     */
+    private final int retryTimes;
+    /**
+     * DAG节点， 按拓扑序排列
+     */
+    private final List<Node> nodes;
+    /**
+     * DAG的最终汇合节点， 该节点执行成功表示所有依赖任务执行完成， 没有节点时为-1
+     */
+    private final int sink;
+
+    public ExecutionPlan(List<Chain> chains, int retryTimes) {
+        this(compile(chains, retryTimes));
+    }
+
+    private ExecutionPlan(Builder builder) {
+        this.chains = Collections.unmodifiableList(builder.chains);
+        this.retryTimes = Math.max(builder.retryTimes, 1);
+        List<Node> list = Lists.newArrayList(builder.nodes);
+        if (!list.isEmpty()) {
+            List<Integer> tails = Lists.newArrayList();
+            boolean[] hasSucc = new boolean[list.size()];
+            for (Node node : list) {
+                for (int pred : node.preds) {
+                    hasSucc[pred] = true;
+                }
+            }
+            for (int i = 0; i < list.size(); ++i) {
+                if (!hasSucc[i]) {
+                    tails.add(i);
+                }
+            }
+            if (tails.size() == 1 && list.get(tails.get(0)).isBarrier() && !list.get(tails.get(0)).isAny()) {
+                this.sink = tails.get(0);
+            } else {
+                list.add(new Node(null, false, 0L, tails.stream().mapToInt(Integer::intValue).toArray()));
+                this.sink = list.size() - 1;
+            }
+            int[] succNum = new int[list.size()];
+            for (Node node : list) {
+                for (int pred : node.preds) {
+                    succNum[pred] += 1;
+                }
+            }
+            for (int i = 0; i < list.size(); ++i) {
+                list.get(i).succs = new int[succNum[i]];
+                succNum[i] = 0;
+            }
+            for (int i = 0; i < list.size(); ++i) {
+                for (int pred : list.get(i).preds) {
+                    list.get(pred).succs[succNum[pred]++] = i;
+                }
+            }
+        } else {
+            this.sink = -1;
+        }
+        this.nodes = Collections.unmodifiableList(list);
+    }
+
+    public static Builder builder(int retryTimes) {
+        return new Builder(retryTimes);
+    }
+
+    public boolean isEmpty() {
+        return nodes.isEmpty();
+    }
+
+    private static Builder compile(List<Chain> chains, int retryTimes) {
+        Builder builder = new Builder(retryTimes);
+        if (chains != null) {
+            for (Chain chain : chains) {
+                builder.addChain(chain);
+            }
+        }
+        return builder;
+    }
+
+    /**
+     * DAG节点， name为空时表示汇合节点
+     */
+    public static final class Node {
+        @Getter
+        private final String name;
+        /**
+         * 汇合节点使用， true表示任一前驱节点成功即成功， false表示所有前驱节点成功才成功
+         */
+        @Getter
+        private final boolean any;
+        /**
+         * 汇合节点使用， 第一个前驱任务开始执行后， 超过此时间仍未完成则认为失败， 0表示不限制
+         */
+        @Getter
+        private final long timeOutNanos;
+        final int[] preds;
+        int[] succs;
+
+        Node(String name, boolean any, long timeOutNanos, int[] preds) {
+            this.name = name;
+            this.any = any;
+            this.timeOutNanos = timeOutNanos;
+            this.preds = preds;
+        }
+
+        public boolean isBarrier() {
+            return name == null;
+        }
+    }
+
+    /**
+     * 执行计划构建类， 节点只能依赖已经添加的节点， 保证节点按拓扑序排列
+     */
+    public static final class Builder {
+        private final int retryTimes;
+        private final List<Chain> chains = Lists.newArrayList();
+        private final List<Node> nodes = Lists.newArrayList();
+        /**
+         * 上一个chain的汇合节点， 下一个chain在其完成后开始执行
+         */
+        private int tail = -1;
+
+        private Builder(int retryTimes) {
+            this.retryTimes = retryTimes;
+        }
+
+        public int addTask(String name, int... preds) {
+            if (name == null) {
+                throw new IllegalArgumentException("task name must not be null");
+            }
+            return addNode(new Node(name, false, 0L, preds));
+        }
+
+        public int addBarrier(boolean any, long timeOut, TimeUnit unit, int... preds) {
+            return addNode(new Node(null, any, timeOut > 0 && unit != null ? unit.toNanos(timeOut) : 0L, preds));
+        }
+
+        private int addNode(Node node) {
+            for (int pred : node.preds) {
+                if (pred < 0 || pred >= nodes.size()) {
+                    throw new IllegalArgumentException("node depend on unknown node: " + pred);
+                }
+            }
+            nodes.add(node);
+            return nodes.size() - 1;
+        }
+
+        /**
+         * chain编译为DAG：
+         * then中的任务依次执行， when中的任务并行执行， then和when都在上一个chain完成后开始执行
+         * when按照any设置汇合，并受chain的超时时间限制， then和when都完成后该chain完成
+         */
+        public Builder addChain(Chain chain) {
+            if (chain == null || chain.isEmpty()) {
+                return this;
+            }
+            chains.add(copyChain(chain));
+            int[] start = tail < 0 ? new int[0] : new int[]{tail};
+            List<Integer> parts = Lists.newArrayList();
+            if (CollectionUtils.isNotEmpty(chain.getThen())) {
+                int[] prev = start;
+                for (String taskName : chain.getThen()) {
+                    prev = new int[]{addTask(taskName, prev)};
+                }
+                parts.add(prev[0]);
+            }
+            if (CollectionUtils.isNotEmpty(chain.getWhen())) {
+                int[] when = new int[chain.getWhen().size()];
+                for (int i = 0; i < when.length; ++i) {
+                    when[i] = addTask(chain.getWhen().get(i), start);
+                }
+                long timeOut = chain.getTimeOut() == null ? 0L : chain.getTimeOut();
+                parts.add(addBarrier(chain.isAny(), timeOut, chain.getTimeOutUnit(), when));
+            }
+            tail = addBarrier(false, 0L, null, parts.stream().mapToInt(Integer::intValue).toArray());
+            return this;
+        }
+
+        public ExecutionPlan build() {
+            return new ExecutionPlan(this);
+        }
+    }
+
+    /**
+     * 复制chain， then和when任务列表不可修改， 避免执行过程中修改执行计划
+     */
+    private static Chain copyChain(Chain chain) {
+        Chain copy = new Chain(
+                chain.getThen() == null ? null : List.copyOf(chain.getThen()),
+                chain.getWhen() == null ? null : List.copyOf(chain.getWhen()),
+                chain.isAny(), chain.getTimeOut(), chain.getTimeOutUnit());
+        copy.setName(chain.getName());
+        return copy;
+    }
+}
@@ -0,0 +1,357 @@
+//
+// Copyright 2022 DMetaSoul
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package com.dmetasoul.metaspore.dataservice;
+
+import com.dmetasoul.metaspore.data.DataContext;
+import com.dmetasoul.metaspore.data.DataResult;
+import com.dmetasoul.metaspore.data.ServiceRequest;
+import com.google.common.collect.Lists;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DataService单次执行的请求级状态
+ * 每次执行DataService时根据ExecutionPlan新建， 只在本次执行中使用， 不同请求之间互不影响
+ * 依赖任务按照执行计划中的DAG调度： 节点的所有前驱完成后由完成回调直接提交到workFlowPool执行， 不轮询也不重新入队
+ * 执行失败的任务节点在其他任务完成后重新执行， 最多重新执行plan.retryTimes次
+ * 依赖任务异步执行， 等待外部服务期间不占用workFlowPool的线程， 任务完成的回调可能在其他线程中执行
+ * 依赖任务可能在workFlowPool中并发执行， 子类中新增的状态需要保证线程安全
+ * 汇合节点的超时定时器在汇合节点完成或本次执行结束时取消， 不在定时器队列中持有已结束请求的状态
+ */
+@Slf4j
+public class ExecutionState {
+    private static final int PENDING = 0;
+    private static final int RUNNING = 1;
+    private static final int DEFERRED = 2;
+    private static final int SUCCESS = 3;
+    private static final int FAILED = 4;
+    private static final ScheduledThreadPoolExecutor TIMER = newTimer();
+
+    @Getter
+    private final ExecutionPlan plan;
+    private final int[] status;
+    private final int[] remaining;
+    private final int[] failedPreds;
+    private final int[] attempts;
+    private final ScheduledFuture<?>[] timers;
+    private final long[] startNanos;
+    private final long[] finishNanos;
+    private final List<Integer> deferred = Lists.newArrayList();
+    private final CompletableFuture<Boolean> done = new CompletableFuture<>();
+    private int running;
+
+    private DataService service;
+    private ServiceRequest request;
+    private DataContext context;
+
+    public ExecutionState(ExecutionPlan plan) {
+        this.plan = plan == null ? ExecutionPlan.EMPTY : plan;
+        int size = this.plan.getNodes().size();
+        status = new int[size];
+        remaining = new int[size];
+        failedPreds = new int[size];
+        attempts = new int[size];
+        timers = new ScheduledFuture<?>[size];
+        startNanos = new long[size];
+        finishNanos = new long[size];
+        for (int i = 0; i < size; ++i) {
+            remaining[i] = this.plan.getNodes().get(i).preds.length;
+        }
+    }
+
+    /**
+     * 按照执行计划执行service的依赖任务， 阻塞等待最终汇合节点完成
+     * 返回true表示所有依赖任务按照then/when/any的语义执行成功
+     */
+    public boolean run(DataService service, ServiceRequest request, DataContext context) {
+        try {
+            return runAsync(service, request, context).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            log.error("task:{} schedule depend tasks fail!", service.getName(), e);
+            return false;
+        }
+    }
+
+    /**
+     * 按照执行计划执行service的依赖任务， 返回最终汇合节点完成的future， 不阻塞调用线程
+     */
+    public CompletableFuture<Boolean> runAsync(DataService service, ServiceRequest request, DataContext context) {
+        if (plan.isEmpty()) {
+            return CompletableFuture.completedFuture(true);
+        }
+        this.service = service;
+        this.request = request;
+        this.context = context;
+        List<Integer> launch = Lists.newArrayList();
+        synchronized (this) {
+            for (int i = 0; i < status.length; ++i) {
+                if (plan.getNodes().get(i).preds.length == 0 && status[i] == PENDING) {
+                    ready(i, launch);
+                }
+            }
+        }
+        launch(launch);
+        if (log.isDebugEnabled()) {
+            return done.whenComplete((success, e) -> log.debug("task:{} critical path: {}", service.getName(), reportCriticalPath()));
+        }
+        return done;
+    }
+
+    private static ScheduledThreadPoolExecutor newTimer() {
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "execution-timeout");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.setRemoveOnCancelPolicy(true);
+        return timer;
+    }
+
+    /**
+     * 节点的所有前驱满足条件， 汇合节点直接完成， 任务节点加入待执行列表
+     */
+    private void ready(int node, List<Integer> launch) {
+        ExecutionPlan.Node info = plan.getNodes().get(node);
+        long now = System.nanoTime();
+        if (startNanos[node] == 0L) {
+            startNanos[node] = now;
+        }
+        if (info.isBarrier()) {
+            finish(node, true, launch);
+            return;
+        }
+        status[node] = RUNNING;
+        attempts[node] += 1;
+        running += 1;
+        for (int succ : info.succs) {
+            ExecutionPlan.Node barrier = plan.getNodes().get(succ);
+            if (barrier.isBarrier() && barrier.getTimeOutNanos() > 0L && timers[succ] == null
+                    && status[succ] == PENDING) {
+                startNanos[succ] = now;
+                timers[succ] = TIMER.schedule(() -> timeout(succ), barrier.getTimeOutNanos(), TimeUnit.NANOSECONDS);
+            }
+        }
+        launch.add(node);
+    }
+
+    /**
+     * 节点完成， 通知后继节点： 前驱失败时all语义的后继直接失败， any语义的后继在所有前驱失败后失败
+     */
+    private void finish(int node, boolean success, List<Integer> launch) {
+        if (status[node] == SUCCESS || status[node] == FAILED) {
+            return;
+        }
+        status[node] = success ? SUCCESS : FAILED;
+        finishNanos[node] = System.nanoTime();
+        if (startNanos[node] == 0L) {
+            startNanos[node] = finishNanos[node];
+        }
+        if (timers[node] != null) {
+            timers[node].cancel(false);
+        }
+        if (node == plan.getSink()) {
+            // 本次执行结束， 其他汇合节点的定时器也不再需要
+            for (ScheduledFuture<?> timer : timers) {
+                if (timer != null) {
+                    timer.cancel(false);
+                }
+            }
+            done.complete(success);
+            return;
+        }
+        for (int succ : plan.getNodes().get(node).succs) {
+            if (status[succ] != PENDING) {
+                continue;
+            }
+            ExecutionPlan.Node next = plan.getNodes().get(succ);
+            if (success) {
+                remaining[succ] -= 1;
+                if (next.isAny() || remaining[succ] == 0) {
+                    ready(succ, launch);
+                }
+            } else {
+                failedPreds[succ] += 1;
+                if (!next.isAny() || failedPreds[succ] == next.preds.length) {
+                    finish(succ, false, launch);
+                }
+            }
+        }
+    }
+
+    private void timeout(int node) {
+        List<Integer> launch = Lists.newArrayList();
+        synchronized (this) {
+            if (status[node] != PENDING) {
+                return;
+            }
+            List<String> tasks = Lists.newArrayList();
+            for (int pred : plan.getNodes().get(node).preds) {
+                if (status[pred] != SUCCESS) {
+                    tasks.add(plan.getNodes().get(pred).getName());
+                }
+            }
+            log.error("task:{} depend:{} exec timeout!", service.getName(), tasks);
+            finish(node, false, launch);
+        }
+        launch(launch);
+    }
+
+    private void launch(List<Integer> launch) {
+        for (int node : launch) {
+            if (done.isDone()) {
+                return;
+            }
+            try {
+                CompletableFuture.runAsync(() -> runNode(node), service.getWorkFlowPool());
+            } catch (RuntimeException e) {
+                log.error("task:{} depend:{} submit fail!", service.getName(), plan.getNodes().get(node).getName(), e);
+                List<Integer> next = Lists.newArrayList();
+                synchronized (this) {
+                    running -= 1;
+                    finish(node, false, next);
+                }
+                launch(next);
+            }
+        }
+    }
+
+    /**
+     * 执行任务节点， 依赖任务异步完成时在完成回调中通知后继节点， 不阻塞workFlowPool的线程
+     */
+    private void runNode(int node) {
+        String taskName = plan.getNodes().get(node).getName();
+        CompletableFuture<DataResult> future;
+        try {
+            future = service.executeAsync(taskName, request, context, this);
+        } catch (RuntimeException e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+        future.whenComplete((result, e) -> {
+            boolean success = false;
+            if (e != null) {
+                Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                log.error("task:{} depend:{} exec exception:{}", service.getName(), taskName, cause.getMessage());
+            } else {
+                success = service.checkResult(result);
+            }
+            nodeDone(node, success);
+        });
+    }
+
+    private void nodeDone(int node, boolean success) {
+        if (!success) {
+            log.warn("task:{} depend:{} exec fail!", service.getName(), plan.getNodes().get(node).getName());
+        }
+        List<Integer> launch = Lists.newArrayList();
+        synchronized (this) {
+            running -= 1;
+            if (success) {
+                finish(node, true, launch);
+                // 其他任务完成后， 之前因依赖数据未就绪而失败的任务重新执行
+                redo(launch);
+            } else if (attempts[node] <= plan.getRetryTimes() && !done.isDone()) {
+                status[node] = DEFERRED;
+                deferred.add(node);
+            } else {
+                finish(node, false, launch);
+            }
+            if (running == 0 && launch.isEmpty() && !done.isDone()) {
+                redo(launch);
+            }
+        }
+        launch(launch);
+    }
+
+    private void redo(List<Integer> launch) {
+        for (int node : deferred) {
+            if (status[node] == DEFERRED) {
+                ready(node, launch);
+            }
+        }
+        deferred.clear();
+    }
+
+    /**
+     * 定时器队列中尚未触发也未取消的超时任务数
+     */
+    static int pendingTimeouts() {
+        return TIMER.getQueue().size();
+    }
+
+    public synchronized long getStartNanos(int node) {
+        return startNanos[node];
+    }
+
+    public synchronized long getFinishNanos(int node) {
+        return finishNanos[node];
+    }
+
+    /**
+     * 关键路径： 从最终汇合节点开始， all语义取最晚完成的前驱， any语义取最早成功的前驱，依次回溯， 返回路径上的任务节点
+     */
+    public synchronized List<Integer> getCriticalPath() {
+        List<Integer> path = Lists.newArrayList();
+        int node = plan.getSink();
+        while (node >= 0 && finishNanos[node] > 0L) {
+            ExecutionPlan.Node info = plan.getNodes().get(node);
+            if (!info.isBarrier()) {
+                path.add(node);
+            }
+            int next = -1;
+            for (int pred : info.preds) {
+                if (finishNanos[pred] == 0L) {
+                    continue;
+                }
+                if (info.isAny()) {
+                    if (status[pred] == SUCCESS && (next < 0 || finishNanos[pred] < finishNanos[next])) {
+                        next = pred;
+                    }
+                } else if (next < 0 || finishNanos[pred] > finishNanos[next]) {
+                    next = pred;
+                }
+            }
+            node = next;
+        }
+        Collections.reverse(path);
+        return path;
+    }
+
+    public synchronized String reportCriticalPath() {
+        StringBuilder builder = new StringBuilder();
+        for (int node : getCriticalPath()) {
+            if (builder.length() > 0) {
+                builder.append(" -> ");
+            }
+            builder.append(plan.getNodes().get(node).getName())
+                    .append('(')
+                    .append(TimeUnit.NANOSECONDS.toMicros(finishNanos[node] - startNanos[node]) / 1000.0)
+                    .append("ms)");
+        }
+        return builder.toString();
+    }
+}
@@ -20,11 +20,13 @@ import com.dmetasoul.metaspore.configure.Chain;
 import com.dmetasoul.metaspore.configure.Condition;
 import com.dmetasoul.metaspore.configure.Feature;
 import com.dmetasoul.metaspore.configure.FieldInfo;
+import com.dmetasoul.metaspore.data.ColumnReader;
 import com.dmetasoul.metaspore.data.DataContext;
 import com.dmetasoul.metaspore.data.DataResult;
 import com.dmetasoul.metaspore.data.ServiceRequest;
 import com.dmetasoul.metaspore.enums.ConditionTypeEnum;
 import com.dmetasoul.metaspore.enums.JoinTypeEnum;
+import com.dmetasoul.metaspore.operator.HashJoin;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
@@ -33,6 +35,7 @@ import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.collections4.MapUtils;
 import org.apache.commons.lang3.tuple.Pair;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -53,31 +56,44 @@ public class FeatureTask extends DataService {
      */
     private Feature feature;
     /**
-     * 不需要设置查询条件，直接获取数据的数据表集合
-     * 比如request数据，
-     * 其他可直接计算的数据（参与join的feature数据被认为是直接可以计算获得数据的数据）
+     * 需要根据join条件构建查询请求的数据表集合，即from中除immediateFrom以外的数据表，初始化时确定
      */
-    private Set<String> immediateTables;
+    private List<String> dependTables;
     /**
      * select字段，按照from的表分类，生成表-->字段的映射，用于计算数据的辅助数据
      */
     private Map<String, List<FieldInfo>> fieldMap;
     /**
-     * join条件处理：
-     * 如果 A inner join B on A.a = B.b, B inner join C on B.b = C.c
-     * 如果获取A表的数据，需要构建查询条件 where A.a = B.b
-     * 获取B表的数据，需要构建查询条件 where B.b = A.a and B.b = C.c
-     * 获取C表的数据，需要构建查询条件 where C.c = B.b
-     * 假设C表的数据已经成功获取到了， 可构建rewritedField映射 B.b -> C.c, A.a -> C.c
-     * 如果获取A表的数据，需要构建查询条件 where A.a = C.c
-     * 获取B表的数据，需要构建查询条件 where B.b = C.c and B.b = C.c
+     * 类似于FeatureState中的rewritedField， immediateRewritedField主要在初始化过程中构建
      */
-    private Map<FieldInfo, FieldInfo> rewritedField;
+    private Map<FieldInfo, FieldInfo> immediateRewritedField;
 
     /**
-     * 类似于rewritedField， immediateRewritedField主要在初始化过程中构建
+     * FeatureTask单次执行的请求级状态
      */
-    private Map<FieldInfo, FieldInfo> immediateRewritedField;
+    static class FeatureState extends ExecutionState {
+        /**
+         * 不需要设置查询条件，直接获取数据的数据表集合
+         * 比如request数据，
+         * 其他可直接计算的数据（参与join的feature数据被认为是直接可以计算获得数据的数据）
+         */
+        private final Set<String> immediateTables = Sets.newConcurrentHashSet();
+        /**
+         * join条件处理：
+         * 如果 A inner join B on A.a = B.b, B inner join C on B.b = C.c
+         * 如果获取A表的数据，需要构建查询条件 where A.a = B.b
+         * 获取B表的数据，需要构建查询条件 where B.b = A.a and B.b = C.c
+         * 获取C表的数据，需要构建查询条件 where C.c = B.b
+         * 假设C表的数据已经成功获取到了， 可构建rewritedField映射 B.b -> C.c, A.a -> C.c
+         * 如果获取A表的数据，需要构建查询条件 where A.a = C.c
+         * 获取B表的数据，需要构建查询条件 where B.b = C.c and B.b = C.c
+         */
+        private final Map<FieldInfo, FieldInfo> rewritedField = Maps.newConcurrentMap();
+
+        FeatureState(ExecutionPlan plan) {
+            super(plan);
+        }
+    }
 
     /**
      * 初始化FeatureTask
@@ -85,10 +101,9 @@ public class FeatureTask extends DataService {
     @Override
     public boolean initService() {
         feature = (Feature) tableConfig;
-        rewritedField = Maps.newHashMap();
         immediateRewritedField = Maps.newHashMap();
         fieldMap = Maps.newHashMap();
-        executeNum = 5; // 由于每次执行都是部分构建rewritedField，所以需要多次入队执行，确保makeRequest构建正确
+        executeNum = 5; // 依赖关系无法静态确定的数据表，需要在其他数据表完成后多次执行，确保makeRequest构建正确
         for (FieldInfo field : feature.getFields()) {
             resFields.add(feature.getFieldMap().get(field.getFieldName()));
             dataTypes.add(feature.getColumnMap().get(field.getFieldName()));
@@ -97,41 +112,100 @@ public class FeatureTask extends DataService {
         for (String table : feature.getImmediateFrom()) {
             setRewritedField(table, immediateRewritedField);
         }
-        immediateTables = Sets.newHashSet();
+        dependTables = Lists.newArrayList();
+        for (String table : feature.getFrom()) {
+            if (!feature.getImmediateFrom().contains(table)) {
+                dependTables.add(table);
+            }
+        }
         return true;
     }
 
+    /**
+     * 按照join条件将依赖的数据表编译为DAG：
+     * 从immediateFrom开始模拟rewritedField的构建过程， 数据表构建查询请求时需要的数据表作为其前驱节点
+     * 无法静态确定依赖关系的数据表不设置前驱， 执行时依赖数据未就绪则在其他数据表完成后重新执行
+     * 已经获取到数据的数据表在执行时直接使用已有结果
+     */
+    @Override
+    protected ExecutionPlan compilePlan() {
+        ExecutionPlan.Builder builder = ExecutionPlan.builder(executeNum);
+        if (dependTables.isEmpty()) {
+            return builder.build();
+        }
+        Map<String, Integer> nodes = Maps.newHashMap();
+        Map<FieldInfo, FieldInfo> rewrited = Maps.newHashMap(immediateRewritedField);
+        List<String> remaining = Lists.newArrayList(dependTables);
+        while (!remaining.isEmpty()) {
+            Map<String, int[]> resolved = Maps.newLinkedHashMap();
+            for (String table : remaining) {
+                Set<String> depends = requestDepends(table, rewrited);
+                if (depends.stream().allMatch(item -> nodes.containsKey(item) || feature.getImmediateFrom().contains(item))) {
+                    resolved.put(table, depends.stream().filter(nodes::containsKey).mapToInt(nodes::get).toArray());
+                }
+            }
+            if (resolved.isEmpty()) {
+                break;
+            }
+            for (Map.Entry<String, int[]> entry : resolved.entrySet()) {
+                nodes.put(entry.getKey(), builder.addTask(entry.getKey(), entry.getValue()));
+                setRewritedField(entry.getKey(), rewrited);
+            }
+            remaining.removeAll(resolved.keySet());
+        }
+        for (String table : remaining) {
+            nodes.put(table, builder.addTask(table));
+        }
+        Chain defaults = new Chain();
+        builder.addBarrier(false, defaults.getTimeOut(), defaults.getTimeOutUnit(),
+                nodes.values().stream().mapToInt(Integer::intValue).toArray());
+        return builder.build();
+    }
+
+    /**
+     * 与makeRequest一致， 获取数据表table构建查询请求时需要的数据表
+     */
+    private Set<String> requestDepends(String table, Map<FieldInfo, FieldInfo> rewritedField) {
+        Set<String> depends = Sets.newHashSet();
+        List<Condition> conditions = feature.getConditionMap().get(table);
+        if (CollectionUtils.isEmpty(conditions)) {
+            return depends;
+        }
+        for (Condition cond : conditions) {
+            if (cond.getType() == JoinTypeEnum.RIGHT || cond.getType() == JoinTypeEnum.INNER) {
+                depends.add(rewritedField.getOrDefault(cond.getRight(), cond.getRight()).getTable());
+            }
+        }
+        return depends;
+    }
+
+    @Override
+    protected ExecutionState newExecutionState() {
+        return new FeatureState(plan);
+    }
+
     /**
      * 每次请求处理前，预处理
      */
     @Override
-    protected void preCondition(ServiceRequest request, DataContext context) {
-        immediateTables.clear();
-        immediateTables.addAll(feature.getImmediateFrom());
+    protected void preCondition(ServiceRequest request, DataContext context, ExecutionState state) {
+        FeatureState featureState = (FeatureState) state;
+        featureState.immediateTables.addAll(feature.getImmediateFrom());
         for (String table : feature.getImmediateFrom()) {
-            DataResult result = execute(table, request, context);
+            DataResult result = execute(table, request, context, state);
             if (result == null) {
                 result = new DataResult();
                 result.setName(table);
                 setDataResultByName(table, result, context);
             }
         }
-        rewritedField.clear();
-        rewritedField.putAll(immediateRewritedField);
-        List<String> executeTables = Lists.newArrayList();
-        for (String table : feature.getFrom()) {
-            if (!immediateTables.contains(table)) {
-                if (getDataResultByName(table, context) == null) {
-                    executeTables.add(table);
-                } else if (getDataResultByName(request.getParent(), table, context) == null) {
-                    executeTables.add(table);
-                } else {
-                    setRewritedField(table, rewritedField);
-                    immediateTables.add(table);
-                }
+        featureState.rewritedField.putAll(immediateRewritedField);
+        for (String table : dependTables) {
+            if (getDataResultByName(table, context) != null && getDataResultByName(request.getParent(), table, context) != null) {
+                setRewritedField(table, featureState.rewritedField);
+                featureState.immediateTables.add(table);
             }
         }
-        taskFlow.offer(new Chain(null, executeTables, false));
     }
 
     protected void setRewritedField(String depend, Map<FieldInfo, FieldInfo> rewritedField) {
@@ -159,15 +233,16 @@ public class FeatureTask extends DataService {
     }
 
     @Override
-    public void afterProcess(String taskName, ServiceRequest request, DataContext context) {
-        setRewritedField(taskName, rewritedField);
+    public void afterProcess(String taskName, ServiceRequest request, DataContext context, ExecutionState state) {
+        setRewritedField(taskName, ((FeatureState) state).rewritedField);
     }
 
     @Override
-    public ServiceRequest makeRequest(String depend, ServiceRequest request, DataContext context) {
+    public ServiceRequest makeRequest(String depend, ServiceRequest request, DataContext context, ExecutionState state) {
         ServiceRequest req = super.makeRequest(depend, null, context);
+        FeatureState featureState = (FeatureState) state;
         // 直接获取数据的数据表集合不需要生成查询条件，不参与makeRequest计算
-        if (!immediateTables.contains(depend)) {
+        if (!featureState.immediateTables.contains(depend)) {
             // 获取depend表相关的join条件， 所有条件已经经过预处理，depend位于condition的左侧
             List<Condition> conditions = feature.getConditionMap().get(depend);
             if (CollectionUtils.isEmpty(conditions)) {
@@ -175,7 +250,7 @@ public class FeatureTask extends DataService {
             }
             for (Condition cond : conditions) {
                 if (cond.getType() == JoinTypeEnum.RIGHT || cond.getType() == JoinTypeEnum.INNER) {
-                    FieldInfo field = rewritedField.getOrDefault(cond.getRight(), cond.getRight());
+                    FieldInfo field = featureState.rewritedField.getOrDefault(cond.getRight(), cond.getRight());
                     DataResult dependResult = getDataResultByName(field.getTable(), context);
                     if (dependResult == null) {
                         return null;
@@ -193,12 +268,19 @@ public class FeatureTask extends DataService {
     }
 
     public boolean FilterTableArray(FieldInfo left, FieldInfo right, Pair<Integer, Integer> pair, List<Object> joinedData, List<Object> tableData) {
+        return FilterTableArray(left, right,
+                pair.getKey() == null ? HashJoin.NULL_INDEX : pair.getKey(),
+                pair.getRight() == null ? HashJoin.NULL_INDEX : pair.getRight(),
+                joinedData, tableData);
+    }
+
+    public boolean FilterTableArray(FieldInfo left, FieldInfo right, int joinedIndex, int tableIndex, List<Object> joinedData, List<Object> tableData) {
         if (MapUtils.isEmpty(feature.getFilterMap())) return true;
         Map<FieldInfo, String> fieldMap = feature.getFilterMap().get(left);
         if (MapUtils.isEmpty(fieldMap) || !fieldMap.containsKey(right)) return true;
         ConditionTypeEnum type = getEnumByName(fieldMap.get(right));
-        Object leftValue = pair.getKey() != null && pair.getKey() < joinedData.size() ? joinedData.get(pair.getKey()) : null;
-        Object rightValue = pair.getRight() != null && pair.getRight() < tableData.size() ? tableData.get(pair.getRight()) : null;
+        Object leftValue = joinedIndex >= 0 && joinedIndex < joinedData.size() ? joinedData.get(joinedIndex) : null;
+        Object rightValue = tableIndex >= 0 && tableIndex < tableData.size() ? tableData.get(tableIndex) : null;
         return type.Op(leftValue, rightValue);
     }
 
@@ -209,8 +291,10 @@ public class FeatureTask extends DataService {
         if (result == null) {
             return featureArray;
         }
+        // join和过滤只在本次请求中读取数据， 直接使用列视图， 不复制数据
         for (String fieldName : feature.getFromColumns().get(table)) {
-            featureArray.put(new FieldInfo(table, fieldName), result.get(fieldName));
+            ColumnReader reader = result.getColumn(fieldName);
+            featureArray.put(new FieldInfo(table, fieldName), reader == null ? List.of() : reader.asList());
         }
         return featureArray;
     }
@@ -237,75 +321,90 @@ public class FeatureTask extends DataService {
     }
 
     public Map<FieldInfo, List<Object>> JoinFeatureArray(List<Condition> conditions, Map<FieldInfo, List<Object>> data, Map<FieldInfo, List<Object>> joinTable) {
+        long[] indexResult = null;
+        // 多个inner join条件按复合key一次完成join， 结果为空时按单条件逐个join， 保证与逐条件求交集的结果一致
+        if (conditions.size() > 1 && conditions.stream().allMatch(cond -> cond.getType() == JoinTypeEnum.INNER)) {
+            indexResult = joinByCompositeKey(conditions, data, joinTable);
+        }
+        if (indexResult == null || indexResult.length == 0) {
+            indexResult = joinByCondition(conditions, data, joinTable);
+        }
         Map<FieldInfo, List<Object>> result = Maps.newHashMap();
-        Set<Pair<Integer, Integer>> indexSet = Sets.newHashSet();
-        List<Pair<Integer, Integer>> indexResult = Lists.newArrayList();
-        // conditions 中只包含一张待join表和table， indexList始终在固定的两张表之间
+        if (indexResult.length == 0) {
+            return result;
+        }
+        for (Map.Entry<FieldInfo, List<Object>> entry : joinTable.entrySet()) {
+            List<Object> values = entry.getValue();
+            List<Object> list = Lists.newArrayListWithCapacity(indexResult.length);
+            for (long pair : indexResult) {
+                int index = HashJoin.joinedIndex(pair);
+                list.add(index == HashJoin.NULL_INDEX ? null : values.get(index));
+            }
+            result.put(entry.getKey(), list);
+        }
+        for (Map.Entry<FieldInfo, List<Object>> entry : data.entrySet()) {
+            List<Object> values = entry.getValue();
+            List<Object> list = Lists.newArrayListWithCapacity(indexResult.length);
+            for (long pair : indexResult) {
+                int index = HashJoin.tableIndex(pair);
+                list.add(index == HashJoin.NULL_INDEX ? null : values.get(index));
+            }
+            result.put(entry.getKey(), list);
+        }
+        return result;
+    }
+
+    /**
+     * 逐个join条件进行hash join， 各条件的结果依次求交集，结果顺序以最后一个条件的join结果为准
+     * conditions 中只包含一张待join表和table， 行号对始终在固定的两张表之间
+     */
+    private long[] joinByCondition(List<Condition> conditions, Map<FieldInfo, List<Object>> data, Map<FieldInfo, List<Object>> joinTable) {
+        HashJoin.PairSet indexSet = new HashJoin.PairSet(0);
+        long[] indexResult = new long[0];
         for (Condition cond : conditions) {
             FieldInfo fieldJoined = cond.getRight();
             FieldInfo fieldTable = cond.getLeft();
             List<Object> joinedData = joinTable.getOrDefault(fieldJoined, Lists.newArrayList());
             List<Object> tableData = data.getOrDefault(fieldTable, Lists.newArrayList());
-            List<Pair<Integer, Integer>> indexList = Lists.newArrayList();
-            for (int j = 0; j < tableData.size(); ++j) {
-                boolean noHit = true;
-                for (int i = 0; i < joinedData.size(); ++i) {
-                    if (joinedData.get(i) != null && joinedData.get(i).equals(tableData.get(j))) {
-                        if (cond.getType() == JoinTypeEnum.LEFT) {
-                            indexList.add(Pair.of(i, j));
-                        }
-                        noHit = false;
-                    }
-                }
-                if (noHit && (cond.getType() == JoinTypeEnum.LEFT || cond.getType() == JoinTypeEnum.FULL)) {
-                    indexList.add(Pair.of(null, j));
-                }
-            }
-            for (int i = 0; i < joinedData.size(); ++i) {
-                boolean noHit = true;
-                for (int j = 0; j < tableData.size(); ++j) {
-                    if (joinedData.get(i) != null && joinedData.get(i).equals(tableData.get(j))) {
-                        if (cond.getType() != JoinTypeEnum.LEFT) {
-                            indexList.add(Pair.of(i, j));
-                        }
-                        noHit = false;
-                    }
-                }
-                if (noHit && (cond.getType() == JoinTypeEnum.RIGHT || cond.getType() == JoinTypeEnum.FULL)) {
-                    indexList.add(Pair.of(i, null));
-                }
-            }
-            indexResult.clear();
+            long[] indexList = HashJoin.join(joinedData, tableData, cond.getType());
             if (indexSet.isEmpty()) {
-                indexSet.addAll(indexList);
+                indexSet = new HashJoin.PairSet(indexList);
             }
-            for (Pair<Integer, Integer> item : indexList) {
-                if (indexSet.contains(item) && FilterTableArray(fieldJoined, fieldTable, item, joinedData, tableData)) {
-                    indexResult.add(item);
+            int size = 0;
+            indexResult = new long[indexList.length];
+            for (long pair : indexList) {
+                if (indexSet.contains(pair) && FilterTableArray(fieldJoined, fieldTable,
+                        HashJoin.joinedIndex(pair), HashJoin.tableIndex(pair), joinedData, tableData)) {
+                    indexResult[size++] = pair;
                 }
             }
-            indexSet.clear();
-            indexSet.addAll(indexResult);
+            indexResult = Arrays.copyOf(indexResult, size);
+            indexSet = new HashJoin.PairSet(indexResult);
         }
-        for (Pair<Integer, Integer> pair : indexResult) {
-            for (Map.Entry<FieldInfo, List<Object>> entry : joinTable.entrySet()) {
-                List<Object> list = result.computeIfAbsent(entry.getKey(), key -> Lists.newArrayList());
-                if (pair.getKey() == null) {
-                    list.add(null);
-                } else {
-                    list.add(entry.getValue().get(pair.getKey()));
-                }
+        return indexResult;
+    }
+
+    private long[] joinByCompositeKey(List<Condition> conditions, Map<FieldInfo, List<Object>> data, Map<FieldInfo, List<Object>> joinTable) {
+        List<List<Object>> joinedKeys = Lists.newArrayListWithCapacity(conditions.size());
+        List<List<Object>> tableKeys = Lists.newArrayListWithCapacity(conditions.size());
+        for (Condition cond : conditions) {
+            joinedKeys.add(joinTable.getOrDefault(cond.getRight(), Lists.newArrayList()));
+            tableKeys.add(data.getOrDefault(cond.getLeft(), Lists.newArrayList()));
+        }
+        long[] indexList = HashJoin.joinComposite(joinedKeys, tableKeys, JoinTypeEnum.INNER);
+        int size = 0;
+        for (long pair : indexList) {
+            boolean matched = true;
+            for (int k = 0; k < conditions.size() && matched; ++k) {
+                Condition cond = conditions.get(k);
+                matched = FilterTableArray(cond.getRight(), cond.getLeft(),
+                        HashJoin.joinedIndex(pair), HashJoin.tableIndex(pair), joinedKeys.get(k), tableKeys.get(k));
             }
-            for (Map.Entry<FieldInfo, List<Object>> entry : data.entrySet()) {
-                List<Object> list = result.computeIfAbsent(entry.getKey(), key -> Lists.newArrayList());
-                if (pair.getValue() == null) {
-                    list.add(null);
-                } else {
-                    list.add(entry.getValue().get(pair.getValue()));
-                }
+            if (matched) {
+                indexList[size++] = pair;
             }
         }
-        return result;
+        return Arrays.copyOf(indexList, size);
     }
 
     @Override
@@ -320,7 +419,7 @@ public class FeatureTask extends DataService {
         if (feature.getFrom().size() == 1) {
             String table = feature.getFrom().get(0);
             setFeatureArray(fieldMap.get(table), data.get(table), featureArrays);
-            return setDataResult(featureArrays);
+            return setDataResult(featureArrays, context);
         }
         // while 每次完成一次join，已join好的表跟另一个表join，不存在join关系的表直接concat
         Set<String> joinedTables = Sets.newHashSet();
@@ -367,6 +466,6 @@ public class FeatureTask extends DataService {
                 joinTable = data.get(nextTable);
             }
         }
-        return setDataResult(featureArrays);
+        return setDataResult(featureArrays, context);
     }
 }
@@ -69,7 +69,7 @@ public class MilvusSearchTask extends AlgoTransformTask {
             Map<String, Object> options = config.getOptions();
             Assert.isTrue(CollectionUtils.isNotEmpty(config.getInputFields()),
                     "input fields must not null");
-            Assert.isTrue(DataTypeEnum.LIST_FLOAT.equals(fieldTableData.getType(config.getInputFields().get(0))),
+            Assert.isTrue(isEmbedding(fieldTableData.getType(config.getInputFields().get(0))),
                     "milvusSearch input[0] embedding is list float");
             List<List<Float>> embedding = Lists.newArrayList();
             List<Object> result = fieldTableData.getValueList(config.getInputFields().get(0));
@@ -84,7 +84,7 @@ public class MilvusSearchTask extends AlgoTransformTask {
             Map<String, Object> options = config.getOptions();
             Assert.isTrue(CollectionUtils.isNotEmpty(config.getInputFields()),
                     "input fields must not null");
-            Assert.isTrue(DataTypeEnum.LIST_FLOAT.equals(fieldTableData.getType(config.getInputFields().get(0))),
+            Assert.isTrue(isEmbedding(fieldTableData.getType(config.getInputFields().get(0))),
                     "milvusSearch input[0] embedding is list float");
             List<List<Float>> embedding = Lists.newArrayList();
             List<Object> result = fieldTableData.getValueList(config.getInputFields().get(0));
@@ -97,6 +97,10 @@ public class MilvusSearchTask extends AlgoTransformTask {
         });
     }
 
+    private static boolean isEmbedding(DataTypeEnum type) {
+        return DataTypeEnum.LIST_FLOAT.equals(type) || DataTypeEnum.EMBEDDING.equals(type);
+    }
+
     protected SearchResultsWrapper requestMilvus(List<List<Float>> embedding, List<String> names, Map<String, Object> options) {
         String collection = CommonUtils.getField(options, "collectionName", collectionName);
         int limit = CommonUtils.getField(options, "maxReservation", maxReservation);
@@ -78,7 +78,7 @@ public class SourceTableTask extends DataService {
         do {
             CompletableFuture<DataResult> future = CompletableFuture.supplyAsync(() -> {
                 List<Map<String, Object>> res = processRequest(request, context);
-                DataResult result = setDataResult(res);
+                DataResult result = setDataResult(res, context);
                 if (checkResult(result)) {
                     return result;
                 } else {
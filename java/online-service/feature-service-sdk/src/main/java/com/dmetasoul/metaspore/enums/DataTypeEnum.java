@@ -16,6 +16,7 @@
 package com.dmetasoul.metaspore.enums;
 
 import com.dmetasoul.metaspore.operator.ArrowOperator;
+import com.dmetasoul.metaspore.operator.FixedSizeListOperator;
 import com.dmetasoul.metaspore.operator.ListOperator;
 import com.dmetasoul.metaspore.operator.MapOperator;
 import com.dmetasoul.metaspore.serving.FeatureTable;
@@ -36,7 +37,6 @@ import org.apache.arrow.vector.types.pojo.Field;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
-import java.nio.charset.StandardCharsets;
 import java.sql.Blob;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
@@ -60,20 +60,22 @@ public enum DataTypeEnum {
                 log.error("set featureTable fail! value type is not match String value:{}!", value);
                 return false;
             }
-            VarCharVector vector = featureTable.getVector(col);
-            if (value == null) {
-                vector.setNull(index);
-            } else {
-                byte[] b = data.getBytes(StandardCharsets.UTF_8);
-                VarCharHolder vch = new VarCharHolder();
-                vch.start = 0;
-                vch.end = b.length;
-                vch.buffer = vector.getAllocator().buffer(b.length);
-                vch.buffer.setBytes(0, b);
-                vector.setSafe(index, vch);
-                featureTable.addBuffer(vch.buffer);
+            featureTable.setString(index, data, featureTable.getVector(col));
+            return true;
+        }
+
+        @Override
+        public boolean set(FeatureTable featureTable, String col, List<Object> values) {
+            List<String> data = Lists.newArrayListWithCapacity(values.size());
+            for (Object value : values) {
+                String str = parseString(value);
+                if (value != null && str == null) {
+                    log.error("set featureTable fail! value type is not match String value:{}!", value);
+                    return false;
+                }
+                data.add(str);
             }
-            featureTable.setRowCount(index + 1);
+            featureTable.setStrings(0, data, featureTable.getVector(col));
             return true;
         }
     }),
@@ -332,7 +334,9 @@ public enum DataTypeEnum {
                     Field.notNullable("key", ArrowType.Utf8.INSTANCE),
                     Field.notNullable("value", new ArrowType.FloatingPoint(FloatingPointPrecision.SINGLE))
             ))), new MapOperator<String, Float>()),
-    LIST_STRUCT(24, List.class, FieldType.nullable(ArrowType.List.INSTANCE), List.of(new Field("object", FieldType.notNullable(ArrowType.Struct.INSTANCE), null)), new ListOperator<>());
+    LIST_STRUCT(24, List.class, FieldType.nullable(ArrowType.List.INSTANCE), List.of(new Field("object", FieldType.notNullable(ArrowType.Struct.INSTANCE), null)), new ListOperator<>()),
+    // 定长float list， 实际的listSize在配置列类型时确定， 例如float[64]
+    EMBEDDING(25, List.class, FieldType.nullable(new ArrowType.FixedSizeList(1)), List.of(Field.notNullable("item", new ArrowType.FloatingPoint(FloatingPointPrecision.SINGLE))), new FixedSizeListOperator());
 
     private final Integer id;
 
@@ -366,12 +370,7 @@ public enum DataTypeEnum {
 
     public boolean set(FeatureTable featureTable, String col, List<Object> data) {
         if (CollectionUtils.isNotEmpty(data)) {
-            for (int i = 0; i < data.size(); ++i) {
-                Object value = data.get(i);
-                if (!this.op.set(featureTable, i, col, value)) {
-                    return false;
-                }
-            }
+            return this.op.set(featureTable, col, data);
         }
         return true;
     }
@@ -384,6 +383,18 @@ public enum DataTypeEnum {
         return this.equals(LIST_STRUCT);
     }
 
+    public boolean needListSize() {
+        return this.equals(EMBEDDING);
+    }
+
+    /**
+     * 定长list类型按listSize生成字段
+     */
+    public Field getField(String name, int listSize) {
+        Assert.isTrue(needListSize() && listSize > 0, "only embedding type has positive list size");
+        return new Field(name, FieldType.nullable(new ArrowType.FixedSizeList(listSize)), childFields);
+    }
+
     public Class<?> getCls() {
         return cls;
     }
@@ -406,6 +417,9 @@ public enum DataTypeEnum {
     }
 
     public static DataTypeEnum getEnumByType(ArrowType type) {
+        if (type instanceof ArrowType.FixedSizeList) {
+            return DataTypeEnum.EMBEDDING;
+        }
         for (DataTypeEnum e : DataTypeEnum.values()) {
             if (e.getType().equals(type)) {
                 return e;
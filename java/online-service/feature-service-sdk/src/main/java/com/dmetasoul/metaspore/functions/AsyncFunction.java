@@ -0,0 +1,39 @@
+//
+// Copyright 2022 DMetaSoul
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package com.dmetasoul.metaspore.functions;
+
+import com.dmetasoul.metaspore.configure.FieldAction;
+import com.dmetasoul.metaspore.data.TableData;
+import lombok.NonNull;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * 需要等待外部服务（如模型服务）的Function
+ * processAsync发出请求后立即返回， 在外部服务的回调中完成future， 等待期间不占用taskPool的线程
+ * 后续的函数在完成future的线程中执行， 外部服务的回调线程不应处理数据， 需要先切换到taskPool中再完成future
+ */
+public interface AsyncFunction extends Function {
+    CompletableFuture<Boolean> processAsync(@NonNull TableData fieldTableData,
+                                            @NonNull FieldAction config, @NonNull ExecutorService taskPool);
+
+    @Override
+    default boolean process(@NonNull TableData fieldTableData,
+                            @NonNull FieldAction config, @NonNull ExecutorService taskPool) {
+        return processAsync(fieldTableData, config, taskPool).join();
+    }
+}
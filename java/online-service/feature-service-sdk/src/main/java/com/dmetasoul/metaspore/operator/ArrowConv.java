@@ -34,7 +34,7 @@ public class ArrowConv {
             if (ArrowDataCovers.containsKey(minorType)) {
                 return ArrowDataCovers.get(minorType).getValue(value);
             }
-        } else if (minorType == Types.MinorType.LIST) {
+        } else if (minorType == Types.MinorType.LIST || minorType == Types.MinorType.FIXED_SIZE_LIST) {
             if (value == null) return null;
             Validate.isInstanceOf(List.class, value);
             List<Object> result = Lists.newArrayList();
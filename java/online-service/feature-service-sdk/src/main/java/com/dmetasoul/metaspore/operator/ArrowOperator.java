@@ -26,6 +26,18 @@ import static org.apache.arrow.util.Preconditions.checkArgument;
 public abstract class ArrowOperator {
     public abstract boolean set(FeatureTable featureTable, int index, String col, Object data);
 
+    /**
+     * 从第0行开始写入整列数据， 支持批量写入的类型可以覆盖该方法
+     */
+    public boolean set(FeatureTable featureTable, String col, List<Object> data) {
+        for (int i = 0; i < data.size(); ++i) {
+            if (!set(featureTable, i, col, data.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     public VarCharHolder getVarCharHolder(String str, BufferAllocator allocator) {
         byte[] b = str.getBytes(StandardCharsets.UTF_8);
         VarCharHolder vch = new VarCharHolder();
@@ -0,0 +1,56 @@
+package com.dmetasoul.metaspore.operator;
+
+import com.dmetasoul.metaspore.data.TensorRow;
+import com.dmetasoul.metaspore.serving.FeatureTable;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.arrow.vector.complex.FixedSizeListVector;
+import org.springframework.util.Assert;
+
+import java.nio.FloatBuffer;
+import java.util.List;
+
+/**
+ * 定长float list列， 用于维度固定的embedding， 每行的长度必须等于列的listSize
+ * value可以是float[]、TensorRow或List<Number>， 前两种直接写入子vector， 不装箱
+ */
+@Slf4j
+@Data
+public class FixedSizeListOperator extends ArrowOperator {
+    @Override
+    public boolean set(FeatureTable featureTable, int index, String col, Object value) {
+        FixedSizeListVector vector = featureTable.getVector(col);
+        Assert.notNull(vector, "fixed size list vector is not null at col:" + col);
+        if (value == null) {
+            vector.setNull(index);
+            featureTable.setRowCount(index + 1);
+            return true;
+        }
+        int size = value instanceof float[] ? ((float[]) value).length : value instanceof List ? ((List<?>) value).size() : -1;
+        if (size != vector.getListSize()) {
+            log.error("set featureTable fail! value type or size is not match list size {} at col: {}!", vector.getListSize(), col);
+            return false;
+        }
+        if (value instanceof float[]) {
+            featureTable.setFloatVector(index, (float[]) value, vector);
+            return true;
+        }
+        FloatBuffer buffer = value instanceof TensorRow ? ((TensorRow<?>) value).getFloatBuffer() : null;
+        if (buffer != null) {
+            featureTable.setFloatVector(index, buffer, vector);
+            return true;
+        }
+        float[] data = new float[size];
+        List<?> list = (List<?>) value;
+        for (int i = 0; i < size; ++i) {
+            Object item = list.get(i);
+            if (!(item instanceof Number)) {
+                log.error("set featureTable fail! embedding item is not number: {} at col: {}!", item, col);
+                return false;
+            }
+            data[i] = ((Number) item).floatValue();
+        }
+        featureTable.setFloatVector(index, data, vector);
+        return true;
+    }
+}
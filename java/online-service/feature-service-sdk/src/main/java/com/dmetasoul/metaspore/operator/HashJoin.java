@@ -0,0 +1,267 @@
+//
+// Copyright 2022 DMetaSoul
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package com.dmetasoul.metaspore.operator;
+
+import com.dmetasoul.metaspore.enums.JoinTypeEnum;
+import com.google.common.collect.Maps;
+import org.apache.commons.collections4.CollectionUtils;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * build/probe 方式的hash join， 用于替代FeatureTask中嵌套循环的join
+ * join结果为 (joined表行号, table表行号) 组成的行号对， 编码为long数组， 输出顺序与原嵌套循环的实现保持一致：
+ * 1, 遍历table表的每一行， LEFT join输出所有匹配行对， LEFT/FULL join输出未匹配的(null, j)
+ * 2, 遍历joined表的每一行， 非LEFT join输出所有匹配行对， RIGHT/FULL join输出未匹配的(i, null)
+ * 值为null的key不参与匹配，key的比较与原实现一致，使用equals语义
+ */
+public class HashJoin {
+    /**
+     * 行号对中表示不存在对应行（null）的行号
+     */
+    public static final int NULL_INDEX = -1;
+
+    private HashJoin() {
+    }
+
+    public static long encode(int joinedIndex, int tableIndex) {
+        return ((long) (joinedIndex + 1) << 32) | ((tableIndex + 1) & 0xFFFFFFFFL);
+    }
+
+    public static int joinedIndex(long pair) {
+        return (int) (pair >>> 32) - 1;
+    }
+
+    public static int tableIndex(long pair) {
+        return (int) pair - 1;
+    }
+
+    /**
+     * 单列key join
+     */
+    public static long[] join(List<Object> joinedData, List<Object> tableData, JoinTypeEnum type) {
+        return joinComposite(List.of(joinedData), List.of(tableData), type);
+    }
+
+    /**
+     * 多列key join， joinedKeys与tableKeys的列一一对应， 所有列都相等才认为匹配
+     */
+    public static long[] joinComposite(List<List<Object>> joinedKeys, List<List<Object>> tableKeys, JoinTypeEnum type) {
+        if (CollectionUtils.isEmpty(joinedKeys) || CollectionUtils.isEmpty(tableKeys) || joinedKeys.size() != tableKeys.size()) {
+            throw new IllegalArgumentException("join keys must not be empty and must have same columns");
+        }
+        int joinedRows = rowCount(joinedKeys);
+        int tableRows = rowCount(tableKeys);
+        PairBuffer pairs = new PairBuffer(Math.max(joinedRows, tableRows));
+        // 1, 以joined表为build侧， 按table表的行顺序probe
+        if (type == JoinTypeEnum.LEFT || type == JoinTypeEnum.FULL) {
+            Map<Object, RowList> joinedIndex = build(joinedKeys, joinedRows);
+            for (int j = 0; j < tableRows; ++j) {
+                Object key = key(tableKeys, j);
+                RowList rows = key == null ? null : joinedIndex.get(key);
+                if (rows == null) {
+                    pairs.add(encode(NULL_INDEX, j));
+                } else if (type == JoinTypeEnum.LEFT) {
+                    for (int k = 0; k < rows.size; ++k) {
+                        pairs.add(encode(rows.rows[k], j));
+                    }
+                }
+            }
+        }
+        // 2, 以table表为build侧， 按joined表的行顺序probe
+        if (type != JoinTypeEnum.LEFT) {
+            Map<Object, RowList> tableIndex = build(tableKeys, tableRows);
+            for (int i = 0; i < joinedRows; ++i) {
+                Object key = key(joinedKeys, i);
+                RowList rows = key == null ? null : tableIndex.get(key);
+                if (rows == null) {
+                    if (type == JoinTypeEnum.RIGHT || type == JoinTypeEnum.FULL) {
+                        pairs.add(encode(i, NULL_INDEX));
+                    }
+                } else {
+                    for (int k = 0; k < rows.size; ++k) {
+                        pairs.add(encode(i, rows.rows[k]));
+                    }
+                }
+            }
+        }
+        return pairs.toArray();
+    }
+
+    private static int rowCount(List<List<Object>> keys) {
+        int rows = Integer.MAX_VALUE;
+        for (List<Object> column : keys) {
+            rows = Math.min(rows, column == null ? 0 : column.size());
+        }
+        return rows;
+    }
+
+    private static Map<Object, RowList> build(List<List<Object>> keys, int rows) {
+        Map<Object, RowList> index = Maps.newHashMapWithExpectedSize(rows);
+        for (int i = 0; i < rows; ++i) {
+            Object key = key(keys, i);
+            if (key != null) {
+                index.computeIfAbsent(key, k -> new RowList()).add(i);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * 单列直接使用列值作为key， 多列使用CompositeKey， 任一列为null则该行不参与匹配
+     */
+    private static Object key(List<List<Object>> keys, int row) {
+        if (keys.size() == 1) {
+            return keys.get(0).get(row);
+        }
+        Object[] values = new Object[keys.size()];
+        for (int i = 0; i < values.length; ++i) {
+            values[i] = keys.get(i).get(row);
+            if (values[i] == null) {
+                return null;
+            }
+        }
+        return new CompositeKey(values);
+    }
+
+    private static final class CompositeKey {
+        private final Object[] values;
+        private final int hash;
+
+        CompositeKey(Object[] values) {
+            this.values = values;
+            this.hash = Arrays.hashCode(values);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == this) return true;
+            if (!(obj instanceof CompositeKey)) return false;
+            CompositeKey other = (CompositeKey) obj;
+            return hash == other.hash && Arrays.equals(values, other.values);
+        }
+    }
+
+    private static final class RowList {
+        private int[] rows = new int[1];
+        private int size;
+
+        void add(int row) {
+            if (size == rows.length) {
+                rows = Arrays.copyOf(rows, size << 1);
+            }
+            rows[size++] = row;
+        }
+    }
+
+    private static final class PairBuffer {
+        private long[] pairs;
+        private int size;
+
+        PairBuffer(int capacity) {
+            pairs = new long[Math.max(capacity, 16)];
+        }
+
+        void add(long pair) {
+            if (size == pairs.length) {
+                pairs = Arrays.copyOf(pairs, size << 1);
+            }
+            pairs[size++] = pair;
+        }
+
+        long[] toArray() {
+            return Arrays.copyOf(pairs, size);
+        }
+    }
+
+    /**
+     * 行号对集合，open addressing实现， 用于多个join条件结果求交集，避免Pair装箱
+     */
+    public static final class PairSet {
+        private static final long EMPTY = 0L;
+        private long[] table;
+        private int size;
+
+        public PairSet(int expected) {
+            int capacity = 16;
+            while (capacity < expected * 2) {
+                capacity <<= 1;
+            }
+            table = new long[capacity];
+        }
+
+        public PairSet(long[] pairs) {
+            this(pairs.length);
+            for (long pair : pairs) {
+                add(pair);
+            }
+        }
+
+        public boolean isEmpty() {
+            return size == 0;
+        }
+
+        public void add(long pair) {
+            // 编码后的行号对最小为encode(NULL_INDEX, NULL_INDEX) = 0， 该值不会出现在join结果中，可作为空槽位
+            if (pair == EMPTY) return;
+            if ((size + 1) * 2 > table.length) {
+                rehash(table.length << 1);
+            }
+            int mask = table.length - 1;
+            int slot = mix(pair) & mask;
+            while (table[slot] != EMPTY) {
+                if (table[slot] == pair) return;
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = pair;
+            size += 1;
+        }
+
+        public boolean contains(long pair) {
+            if (pair == EMPTY) return false;
+            int mask = table.length - 1;
+            int slot = mix(pair) & mask;
+            while (table[slot] != EMPTY) {
+                if (table[slot] == pair) return true;
+                slot = (slot + 1) & mask;
+            }
+            return false;
+        }
+
+        private void rehash(int capacity) {
+            long[] old = table;
+            table = new long[capacity];
+            size = 0;
+            for (long pair : old) {
+                if (pair != EMPTY) {
+                    add(pair);
+                }
+            }
+        }
+
+        private static int mix(long pair) {
+            long h = pair * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+}
@@ -1,8 +1,11 @@
 package com.dmetasoul.metaspore.operator;
 
+import com.dmetasoul.metaspore.data.TensorRow;
 import com.dmetasoul.metaspore.serving.FeatureTable;
+import com.google.common.collect.Lists;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.arrow.vector.VarCharVector;
 import org.apache.arrow.vector.complex.ListVector;
 import org.apache.arrow.vector.complex.impl.UnionListWriter;
 import org.springframework.util.Assert;
@@ -22,8 +25,18 @@ public class ListOperator<T> extends ArrowOperator {
         Assert.notNull(listVector, "listvector is not null at col:" + col);
         if (value == null) {
             listVector.setNull(index);
+        } else if (value instanceof TensorRow && ((TensorRow<?>) value).writeTo(featureTable, index, listVector)) {
+            // 模型输出的embedding从tensor直接写入， 不装箱
+            return true;
         } else {
             @SuppressWarnings("unchecked") List<T> data = (List<T>) value;
+            if (listVector.getDataVector() instanceof VarCharVector) {
+                // 字符串list直接写入子vector的buffer
+                List<String> strings = Lists.newArrayListWithCapacity(data.size());
+                data.forEach(item -> strings.add(item == null ? null : String.valueOf(item)));
+                featureTable.setStringList(index, strings, listVector);
+                return true;
+            }
             UnionListWriter writer = listVector.getWriter();
             writer.setPosition(index);
             writeList(writer, data, listVector.getField().getChildren(), featureTable, listVector.getAllocator());
@@ -0,0 +1,209 @@
+//
+// Copyright 2022 DMetaSoul
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package com.dmetasoul.metaspore.relyservice;
+
+import com.dmetasoul.metaspore.serving.PredictHedger;
+import com.google.common.collect.ImmutableList;
+import io.grpc.*;
+import org.apache.commons.lang3.Validate;
+
+import java.util.List;
+import java.util.Set;
+import java.util.function.IntFunction;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * 多个模型服务副本的channel池
+ * 每个副本可以建立多个subchannel， 每次调用按负载均衡策略选择一个subchannel， 并统计每个subchannel上未完成的调用数
+ * P2C: 随机选两个subchannel， 使用未完成调用数较少的一个
+ * LEAST: 使用未完成调用数最少的subchannel， 数量相同时从随机位置开始选择
+ * CallOptions中带有PredictHedger.TRIED_REPLICAS时， 优先选择其中未尝试过的副本， 并记录本次选择的副本
+ * 可以为每个副本指定interceptor， 如按副本记录压缩协商的状态
+ */
+public class ChannelPool extends ManagedChannel {
+    public enum Policy {
+        P2C,
+        LEAST
+    }
+
+    private final List<ManagedChannel> channels;
+    private final List<Channel> targets;
+    private final List<Integer> replicas;
+    private final AtomicInteger[] outstanding;
+    private final Policy policy;
+
+    public ChannelPool(List<ManagedChannel> channels, Policy policy) {
+        this(channels, IntStream.range(0, channels.size()).boxed().collect(Collectors.toList()), policy);
+    }
+
+    /**
+     * replicas[i]为第i个subchannel所属的副本
+     */
+    public ChannelPool(List<ManagedChannel> channels, List<Integer> replicas, Policy policy) {
+        this(channels, replicas, policy, null);
+    }
+
+    /**
+     * replicaInterceptor不为null时， 发往副本r的调用经过replicaInterceptor.apply(r)
+     */
+    public ChannelPool(List<ManagedChannel> channels, List<Integer> replicas, Policy policy,
+                       IntFunction<ClientInterceptor> replicaInterceptor) {
+        Validate.isTrue(!channels.isEmpty(), "channel pool must not be empty!");
+        Validate.isTrue(channels.size() == replicas.size(), "every channel must has replica!");
+        this.channels = ImmutableList.copyOf(channels);
+        this.replicas = ImmutableList.copyOf(replicas);
+        ImmutableList.Builder<Channel> targets = ImmutableList.builder();
+        for (int i = 0; i < channels.size(); ++i) {
+            targets.add(replicaInterceptor == null ? channels.get(i)
+                    : ClientInterceptors.intercept(channels.get(i), replicaInterceptor.apply(replicas.get(i))));
+        }
+        this.targets = targets.build();
+        this.policy = policy;
+        this.outstanding = new AtomicInteger[channels.size()];
+        for (int i = 0; i < outstanding.length; ++i) {
+            outstanding[i] = new AtomicInteger();
+        }
+    }
+
+    public List<ManagedChannel> getChannels() {
+        return channels;
+    }
+
+    public int getOutstanding(int index) {
+        return outstanding[index].get();
+    }
+
+    protected int pick() {
+        int size = channels.size();
+        if (size == 1) {
+            return 0;
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (policy == Policy.P2C) {
+            int first = random.nextInt(size);
+            int second = random.nextInt(size - 1);
+            if (second >= first) {
+                ++second;
+            }
+            return outstanding[second].get() < outstanding[first].get() ? second : first;
+        }
+        int start = random.nextInt(size);
+        int best = start;
+        int min = outstanding[start].get();
+        for (int i = 1; i < size && min > 0; ++i) {
+            int index = (start + i) % size;
+            int count = outstanding[index].get();
+            if (count < min) {
+                min = count;
+                best = index;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 在未尝试过的副本中选择未完成调用数最少的subchannel， 没有时返回-1
+     */
+    protected int pickExcluding(Set<Object> tried) {
+        int best = -1;
+        int min = Integer.MAX_VALUE;
+        for (int i = 0; i < channels.size(); ++i) {
+            int count = outstanding[i].get();
+            if (count < min && !tried.contains(replicas.get(i))) {
+                min = count;
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    @Override
+    public <ReqT, RespT> ClientCall<ReqT, RespT> newCall(MethodDescriptor<ReqT, RespT> methodDescriptor,
+                                                         CallOptions callOptions) {
+        int index = pick();
+        Set<Object> tried = callOptions.getOption(PredictHedger.TRIED_REPLICAS);
+        if (tried != null) {
+            if (tried.contains(replicas.get(index))) {
+                int other = pickExcluding(tried);
+                if (other >= 0) {
+                    index = other;
+                }
+            }
+            tried.add(replicas.get(index));
+        }
+        AtomicInteger counter = outstanding[index];
+        return new ForwardingClientCall.SimpleForwardingClientCall<>(targets.get(index).newCall(methodDescriptor, callOptions)) {
+            @Override
+            public void start(Listener<RespT> responseListener, Metadata headers) {
+                counter.incrementAndGet();
+                try {
+                    super.start(new ForwardingClientCallListener.SimpleForwardingClientCallListener<>(responseListener) {
+                        @Override
+                        public void onClose(Status status, Metadata trailers) {
+                            counter.decrementAndGet();
+                            super.onClose(status, trailers);
+                        }
+                    }, headers);
+                } catch (RuntimeException e) {
+                    counter.decrementAndGet();
+                    throw e;
+                }
+            }
+        };
+    }
+
+    @Override
+    public String authority() {
+        return channels.get(0).authority();
+    }
+
+    @Override
+    public ManagedChannel shutdown() {
+        channels.forEach(ManagedChannel::shutdown);
+        return this;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return channels.stream().allMatch(ManagedChannel::isShutdown);
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return channels.stream().allMatch(ManagedChannel::isTerminated);
+    }
+
+    @Override
+    public ManagedChannel shutdownNow() {
+        channels.forEach(ManagedChannel::shutdownNow);
+        return this;
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (ManagedChannel channel : channels) {
+            if (!channel.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -1,31 +1,230 @@
 package com.dmetasoul.metaspore.relyservice;
 
 import com.dmetasoul.metaspore.common.CommonUtils;
+import com.dmetasoul.metaspore.serving.FeatureTableSerDe;
 import com.dmetasoul.metaspore.serving.LoadGrpc;
+import com.dmetasoul.metaspore.serving.PayloadCompression;
+import com.dmetasoul.metaspore.serving.PredictBatcher;
+import com.dmetasoul.metaspore.serving.PredictGrpc;
+import com.dmetasoul.metaspore.serving.PredictHedger;
+import com.dmetasoul.metaspore.serving.PredictStreamer;
 import com.dmetasoul.metaspore.serving.ServingClient;
+import com.google.common.collect.Lists;
 import io.grpc.ManagedChannel;
 import io.grpc.netty.shaded.io.grpc.netty.NegotiationType;
 import io.grpc.netty.shaded.io.grpc.netty.NettyChannelBuilder;
+import io.grpc.netty.shaded.io.netty.channel.EventLoopGroup;
+import io.grpc.netty.shaded.io.netty.channel.epoll.Epoll;
+import io.grpc.netty.shaded.io.netty.channel.epoll.EpollDomainSocketChannel;
+import io.grpc.netty.shaded.io.netty.channel.epoll.EpollEventLoopGroup;
+import io.grpc.netty.shaded.io.netty.channel.epoll.EpollSocketChannel;
+import io.grpc.netty.shaded.io.netty.channel.nio.NioEventLoopGroup;
+import io.grpc.netty.shaded.io.netty.channel.socket.nio.NioSocketChannel;
+import io.grpc.netty.shaded.io.netty.channel.unix.DomainSocketAddress;
+import io.grpc.netty.shaded.io.netty.util.concurrent.DefaultThreadFactory;
 import lombok.Data;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.arrow.vector.compression.CompressionUtil;
+import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.logging.log4j.util.Strings;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 @Slf4j
 @Data
 public class ModelServingService implements RelyService {
+    /**
+     * 配置了多个副本地址hosts或者channelsPerHost > 1时为ChannelPool
+     */
     protected ManagedChannel channel;
+    /**
+     * 每个副本一个channel， 用于通知各个副本加载模型
+     */
+    protected List<ManagedChannel> replicaChannels;
+    /**
+     * 配置batchMaxDelayMillis > 0时开启， 合并同一模型的并发predict请求
+     */
+    protected PredictBatcher batcher;
+    /**
+     * 配置hedgePercentile > 0时开启， 请求超过最近请求耗时的该分位数仍未返回时向另一个副本发送对冲请求
+     */
+    protected PredictHedger hedger;
+    /**
+     * 配置compression为lz4或zstd时开启， 所有副本都确认支持后， 不小于compressionMinBytes的FeatureTable压缩发送
+     * arrow 7的lz4使用commons-compress的纯java实现， 压缩比zstd慢一个数量级以上， 建议使用zstd
+     * cpp的serving还没有实现压缩协商， 对它请求始终不压缩， 见PayloadCompression
+     */
+    protected PayloadCompression compression;
+    /**
+     * 配置streamChunkRows > 0时开启， 行数超过该值的请求按chunk使用PredictStream发送
+     * 每个流式调用的deadline为streamDeadlineMillis， serving未注册PredictStreaming服务时回退为Predict
+     */
+    protected PredictStreamer streamer;
+    /**
+     * FeatureTable的序列化选项， 默认使用已部署的serving都能读取的file格式， serving支持stream格式后可以配置payloadFormat为stream
+     * serving支持arrow dictionary batch时可以配置dictionaryEncode， 只对本模型服务的请求生效
+     */
+    protected FeatureTableSerDe.Options serDeOptions = FeatureTableSerDe.Options.DEFAULT;
     public static final String KEY_PREFEX = "modelserving_";
+    /**
+     * 与serving同机部署时使用unix domain socket， 地址为unix:/path/to/serving.sock， 需要native epoll
+     */
+    public static final String UNIX_SOCKET_PREFIX = "unix:";
+    public static final int DEFAULT_BATCH_MAX_ROWS = 1024;
+    public static final int DEFAULT_CHANNELS_PER_HOST = 1;
+    public static final double DEFAULT_HEDGE_BUDGET = 0.05;
+    public static final long DEFAULT_HEDGE_MIN_DELAY_MILLIS = 1L;
+    /**
+     * init中读取的服务选项， 同一地址上选项不同的模型服务使用不同的实例， 见genKey
+     */
+    public static final List<String> SERVICE_OPTIONS = List.of("channelsPerHost", "loadBalance",
+            "payloadFormat", "dictionaryEncode", "dictionaryMaxCardinalityRatio", "dictionaryMinRows",
+            "compression", "compressionMinBytes", "hedgePercentile", "hedgeMinDelayMillis", "hedgeBudget",
+            "streamChunkRows", "streamDeadlineMillis", "batchMaxDelayMillis", "batchMaxRows");
+
+    /**
+     * 所有channel共享的event loop， 支持时使用native epoll
+     */
+    private static class SharedEventLoop {
+        static final boolean EPOLL = Epoll.isAvailable();
+        static final EventLoopGroup GROUP = EPOLL
+                ? new EpollEventLoopGroup(0, new DefaultThreadFactory("model-serving-epoll", true))
+                : new NioEventLoopGroup(0, new DefaultThreadFactory("model-serving-nio", true));
+    }
+
     @Override
     public void init(Map<String, Object> option) {
-        this.channel = initManagedChannel(option);
+        List<String> hosts = getHosts(option);
+        int channelsPerHost = CommonUtils.getField(option, "channelsPerHost", DEFAULT_CHANNELS_PER_HOST, Integer.class);
+        this.replicaChannels = Lists.newArrayList();
+        List<ManagedChannel> channels = Lists.newArrayList();
+        List<Integer> replicas = Lists.newArrayList();
+        for (int replica = 0; replica < hosts.size(); ++replica) {
+            for (int i = 0; i < channelsPerHost; ++i) {
+                ManagedChannel subchannel = initManagedChannel(hosts.get(replica), option);
+                if (i == 0) {
+                    replicaChannels.add(subchannel);
+                }
+                channels.add(subchannel);
+                replicas.add(replica);
+            }
+        }
+        CompressionUtil.CodecType codec = PayloadCompression.parseCodec(CommonUtils.getField(option, "compression", "none"));
+        if (codec != CompressionUtil.CodecType.NO_COMPRESSION) {
+            this.compression = new PayloadCompression(codec,
+                    CommonUtils.getField(option, "compressionMinBytes", PayloadCompression.DEFAULT_MIN_BYTES, Long.class),
+                    hosts.size());
+        }
+        if (channels.size() == 1) {
+            this.channel = channels.get(0);
+        } else {
+            ChannelPool.Policy policy = ChannelPool.Policy.valueOf(
+                    Strings.toRootUpperCase(CommonUtils.getField(option, "loadBalance", "p2c")));
+            this.channel = new ChannelPool(channels, replicas, policy, compression == null ? null : compression::interceptor);
+        }
+        FeatureTableSerDe.Format format = FeatureTableSerDe.Format.valueOf(
+                Strings.toRootUpperCase(CommonUtils.getField(option, "payloadFormat", "file")));
+        FeatureTableSerDe.DictionaryOptions dictionary = FeatureTableSerDe.DictionaryOptions.DISABLED;
+        if (CommonUtils.getField(option, "dictionaryEncode", false, Boolean.class)) {
+            dictionary = new FeatureTableSerDe.DictionaryOptions(
+                    CommonUtils.getField(option, "dictionaryMaxCardinalityRatio",
+                            FeatureTableSerDe.DictionaryOptions.DEFAULT.getMaxCardinalityRatio(), Double.class),
+                    CommonUtils.getField(option, "dictionaryMinRows",
+                            FeatureTableSerDe.DictionaryOptions.DEFAULT.getMinRows(), Integer.class));
+        }
+        this.serDeOptions = new FeatureTableSerDe.Options(format, dictionary);
+        double hedgePercentile = CommonUtils.getField(option, "hedgePercentile", 0.0, Double.class);
+        if (hedgePercentile > 0) {
+            this.hedger = new PredictHedger(PredictGrpc.newStub(channel), hedgePercentile,
+                    CommonUtils.getField(option, "hedgeMinDelayMillis", DEFAULT_HEDGE_MIN_DELAY_MILLIS, Long.class),
+                    CommonUtils.getField(option, "hedgeBudget", DEFAULT_HEDGE_BUDGET, Double.class));
+            hedger.setCompression(compression);
+        }
+        int streamChunkRows = CommonUtils.getField(option, "streamChunkRows", 0, Integer.class);
+        if (streamChunkRows > 0) {
+            this.streamer = new PredictStreamer(channel, streamChunkRows);
+            streamer.setDeadlineMillis(CommonUtils.getField(option, "streamDeadlineMillis",
+                    PredictStreamer.DEFAULT_DEADLINE_MILLIS, Long.class));
+            streamer.setCompression(compression);
+            streamer.setSerDeOptions(serDeOptions);
+        }
+        long batchMaxDelayMillis = CommonUtils.getField(option, "batchMaxDelayMillis", 0L, Long.class);
+        if (batchMaxDelayMillis > 0) {
+            int batchMaxRows = CommonUtils.getField(option, "batchMaxRows", DEFAULT_BATCH_MAX_ROWS, Integer.class);
+            PredictGrpc.PredictStub stub = PredictGrpc.newStub(channel);
+            this.batcher = hedger != null
+                    ? new PredictBatcher(hedger::predictAsync, batchMaxDelayMillis, batchMaxRows)
+                    : new PredictBatcher(request -> ServingClient.predictAsync(stub, request, compression),
+                    batchMaxDelayMillis, batchMaxRows);
+            batcher.setCompression(compression);
+            batcher.setSerDeOptions(serDeOptions);
+        }
+    }
+
+    /**
+     * 副本地址列表， 配置hosts时为host:port或unix:path的列表或逗号分隔的字符串， 否则为unixSocket或host和port
+     */
+    public static List<String> getHosts(Map<String, Object> option) {
+        Object hosts = CommonUtils.getObject(option, "hosts");
+        List<String> addresses = Lists.newArrayList();
+        if (hosts instanceof Collection) {
+            for (Object item : (Collection<?>) hosts) {
+                addresses.add(String.valueOf(item).trim());
+            }
+        } else if (hosts instanceof String && StringUtils.isNotBlank((String) hosts)) {
+            for (String item : ((String) hosts).split(",")) {
+                if (StringUtils.isNotBlank(item)) {
+                    addresses.add(item.trim());
+                }
+            }
+        }
+        String unixSocket = CommonUtils.getField(option, "unixSocket", "");
+        if (addresses.isEmpty() && StringUtils.isNotBlank(unixSocket)) {
+            addresses.add(UNIX_SOCKET_PREFIX + unixSocket.trim());
+        }
+        if (addresses.isEmpty()) {
+            String host = CommonUtils.getField(option, "host", "127.0.0.1");
+            int port = CommonUtils.getField(option, "port", 50000, Integer.class);
+            addresses.add(String.format("%s:%d", host, port));
+        }
+        return addresses;
     }
 
+    /**
+     * 缓存key由地址和配置了的SERVICE_OPTIONS组成， 只有地址和选项都相同的任务共享同一个实例
+     */
     public static String genKey(Map<String, Object> option) {
+        StringBuilder key = new StringBuilder(genAddressKey(option));
+        String separator = "?";
+        for (String name : SERVICE_OPTIONS) {
+            Object value = CommonUtils.getObject(option, name);
+            if (value != null) {
+                key.append(separator).append(name).append('=').append(value);
+                separator = "&";
+            }
+        }
+        return key.toString();
+    }
+
+    private static String genAddressKey(Map<String, Object> option) {
+        if (CommonUtils.getObject(option, "hosts") != null) {
+            List<String> hosts = getHosts(option);
+            for (int i = 0; i < hosts.size(); ++i) {
+                if (StringUtils.startsWithIgnoreCase(hosts.get(i), "localhost:")) {
+                    hosts.set(i, "127.0.0.1" + hosts.get(i).substring("localhost".length()));
+                }
+            }
+            return KEY_PREFEX + String.join(",", hosts);
+        }
+        String unixSocket = CommonUtils.getField(option, "unixSocket", "");
+        if (StringUtils.isNotBlank(unixSocket)) {
+            return KEY_PREFEX + UNIX_SOCKET_PREFIX + unixSocket.trim();
+        }
         String host = CommonUtils.getField(option, "host", "127.0.0.1");
         int port = CommonUtils.getField(option, "port", 50000, Integer.class);
         if (host.equalsIgnoreCase("localhost")) {
@@ -41,12 +240,35 @@ public class ModelServingService implements RelyService {
     public ManagedChannel initManagedChannel(Map<String, Object> option) {
         String host = CommonUtils.getField(option, "host", "127.0.0.1");
         int port = CommonUtils.getField(option, "port", 50000, Integer.class);
+        return initManagedChannel(String.format("%s:%d", host, port), option);
+    }
+
+    public ManagedChannel initManagedChannel(String address, Map<String, Object> option) {
+        NettyChannelBuilder channelBuilder;
+        if (address.startsWith(UNIX_SOCKET_PREFIX)) {
+            // unix domain socket只有epoll实现
+            if (!SharedEventLoop.EPOLL) {
+                throw new IllegalStateException("unix domain socket requires native epoll, address: " + address);
+            }
+            channelBuilder = NettyChannelBuilder.forAddress(new DomainSocketAddress(address.substring(UNIX_SOCKET_PREFIX.length())))
+                    .channelType(EpollDomainSocketChannel.class)
+                    .overrideAuthority("localhost");
+        } else {
+            int index = address.lastIndexOf(':');
+            if (index <= 0) {
+                throw new IllegalArgumentException("model serving address must be host:port, address: " + address);
+            }
+            String host = address.substring(0, index);
+            int port = Integer.parseInt(address.substring(index + 1));
+            channelBuilder = NettyChannelBuilder.forAddress(host, port)
+                    .channelType(SharedEventLoop.EPOLL ? EpollSocketChannel.class : NioSocketChannel.class);
+        }
         NegotiationType negotiationType = NegotiationType.valueOf(Strings.toRootUpperCase((String) option.getOrDefault("negotiationType", "plaintext")));
-        NettyChannelBuilder channelBuilder = NettyChannelBuilder.forAddress(host, port)
-                .keepAliveWithoutCalls((Boolean) option.getOrDefault("enableKeepAliveWithoutCalls", false))
+        channelBuilder.keepAliveWithoutCalls((Boolean) option.getOrDefault("enableKeepAliveWithoutCalls", false))
                 .negotiationType(negotiationType)
                 .keepAliveTime((Long) option.getOrDefault("keepAliveTime", 300L), TimeUnit.SECONDS)
-                .keepAliveTimeout((Long) option.getOrDefault("keepAliveTimeout", 10L), TimeUnit.SECONDS);
+                .keepAliveTimeout((Long) option.getOrDefault("keepAliveTimeout", 10L), TimeUnit.SECONDS)
+                .eventLoopGroup(SharedEventLoop.GROUP);
         return channelBuilder.build();
     }
 
@@ -55,13 +277,23 @@ public class ModelServingService implements RelyService {
             log.error("load model request is loss, current req: model name: {}, version: {}, dir: {}", modelName, version, dirPath);
             return false;
         }
-        LoadGrpc.LoadBlockingStub client = LoadGrpc.newBlockingStub(channel);
-        return ServingClient.loadModel(client, modelName, version, dirPath);
+        boolean success = true;
+        for (ManagedChannel replica : CollectionUtils.isEmpty(replicaChannels) ? List.of(channel) : replicaChannels) {
+            LoadGrpc.LoadBlockingStub client = LoadGrpc.newBlockingStub(replica);
+            success &= ServingClient.loadModel(client, modelName, version, dirPath);
+        }
+        return success;
     }
 
     @SneakyThrows
     @Override
     public void close() {
+        if (batcher != null) {
+            batcher.close();
+        }
+        if (hedger != null) {
+            hedger.close();
+        }
         if (channel == null || channel.isShutdown()) return;
         channel.shutdown().awaitTermination(1, TimeUnit.SECONDS);
     }
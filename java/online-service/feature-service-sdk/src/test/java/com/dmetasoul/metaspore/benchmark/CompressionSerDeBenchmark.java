@@ -0,0 +1,126 @@
+//
+// Copyright 2022 DMetaSoul
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package com.dmetasoul.metaspore.benchmark;
+
+import com.dmetasoul.metaspore.serving.ArrowArena;
+import com.dmetasoul.metaspore.serving.FeatureTable;
+import com.dmetasoul.metaspore.serving.FeatureTableSerDe;
+import com.google.common.collect.Lists;
+import com.google.protobuf.ByteString;
+import org.apache.arrow.vector.compression.CompressionUtil;
+import org.apache.arrow.vector.types.FloatingPointPrecision;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.FieldType;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 模拟精排请求的模型输入， rows个候选， 用户特征列在每行重复， 另有类目列、item_id列和denseColumns个float特征列
+ * 对比不压缩、lz4 frame和zstd三种方式序列化和反序列化的耗时， 每种方式的payload大小在setup时打印
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompressionSerDeBenchmark {
+    @Param({"1000"})
+    public int rows;
+
+    @Param({"8"})
+    public int userColumns;
+
+    @Param({"16"})
+    public int denseColumns;
+
+    @Param({"NO_COMPRESSION", "LZ4_FRAME", "ZSTD"})
+    public String codec;
+
+    private ArrowArena arena;
+    private FeatureTable table;
+    private CompressionUtil.CodecType codecType;
+    private ByteString payload;
+
+    @Setup
+    public void setUp() throws IOException {
+        List<Field> fields = Lists.newArrayList();
+        for (int i = 0; i < userColumns; ++i) {
+            fields.add(new Field("user_feature_" + i, FieldType.nullable(new ArrowType.Utf8()), null));
+        }
+        fields.add(new Field("category", FieldType.nullable(new ArrowType.Utf8()), null));
+        fields.add(new Field("item_id", FieldType.nullable(new ArrowType.Utf8()), null));
+        for (int i = 0; i < denseColumns; ++i) {
+            fields.add(new Field("dense_" + i,
+                    FieldType.nullable(new ArrowType.FloatingPoint(FloatingPointPrecision.SINGLE)), null));
+        }
+        arena = ArrowArena.acquire("benchmark", ArrowArena.DEFAULT_LIMIT);
+        table = arena.newFeatureTable("rank", fields);
+        Random random = new Random(42);
+        for (int row = 0; row < rows; ++row) {
+            for (int i = 0; i < userColumns; ++i) {
+                table.setString(row, "user-profile-value-" + i + "-5f1c9a", table.getVector(i));
+            }
+            table.setString(row, "category-" + row % 20, table.getVector("category"));
+            table.setString(row, "item-" + (100000000L + row * 7919L), table.getVector("item_id"));
+            for (int i = 0; i < denseColumns; ++i) {
+                table.setFloat(row, random.nextFloat(), table.getVector("dense_" + i));
+            }
+        }
+        table.finish();
+        codecType = CompressionUtil.CodecType.valueOf(codec);
+        payload = serialize();
+        System.out.printf("%n payload bytes %s: %d%n", codec, payload.size());
+    }
+
+    @TearDown
+    public void tearDown() {
+        arena.close();
+    }
+
+    @Benchmark
+    public ByteString serialize() throws IOException {
+        if (codecType == CompressionUtil.CodecType.NO_COMPRESSION) {
+            return FeatureTableSerDe.serialize(table, FeatureTableSerDe.Format.STREAM,
+                    FeatureTableSerDe.DictionaryOptions.DISABLED);
+        }
+        return FeatureTableSerDe.serialize(table, FeatureTableSerDe.DictionaryOptions.DISABLED, codecType);
+    }
+
+    @Benchmark
+    public int deserialize() throws IOException {
+        try (FeatureTable result = FeatureTableSerDe.deserializeFrom("rank", payload, arena)) {
+            return result.getRowCount();
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(CompressionSerDeBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build();
+        new Runner(options).run();
+    }
+}
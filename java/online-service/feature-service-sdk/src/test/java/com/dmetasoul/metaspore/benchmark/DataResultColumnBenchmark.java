@@ -0,0 +1,133 @@
+//
+// Copyright 2022 DMetaSoul
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package com.dmetasoul.metaspore.benchmark;
+
+import com.dmetasoul.metaspore.data.ColumnReader;
+import com.dmetasoul.metaspore.data.DataResult;
+import com.dmetasoul.metaspore.enums.DataTypeEnum;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static com.dmetasoul.metaspore.operator.ArrowConv.convValue;
+
+/**
+ * 5k行DataResult逐行读取item_id/score/click三列的耗时与内存分配对比：
+ * legacyCell: 原DataResult.get(field, index)的实现， 每个单元格查找vector并经ArrowConv转换
+ * boxedList: DataResult.get(field)兼容接口， 按列复制为List<Object>
+ * typedColumn: 类型化列视图， 直接读取arrow vector
+ * 运行: 在test classpath下执行main函数， 内存分配见gc.alloc.rate.norm
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DataResultColumnBenchmark {
+    private static final List<DataTypeEnum> TYPES = List.of(DataTypeEnum.STRING, DataTypeEnum.DOUBLE, DataTypeEnum.LONG);
+    private static final List<String> COLUMNS = List.of("item_id", "score", "click");
+
+    @Param({"5000"})
+    public int rows;
+
+    private DataResult result;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(20220801);
+        List<Field> fields = Lists.newArrayList();
+        for (int i = 0; i < TYPES.size(); ++i) {
+            fields.add(new Field(COLUMNS.get(i), TYPES.get(i).getType(), TYPES.get(i).getChildFields()));
+        }
+        List<Map<String, Object>> data = Lists.newArrayListWithCapacity(rows);
+        for (int i = 0; i < rows; ++i) {
+            Map<String, Object> row = Maps.newHashMap();
+            row.put("item_id", "item-" + random.nextInt(1000000));
+            row.put("score", random.nextDouble());
+            row.put("click", (long) random.nextInt(100));
+            data.add(row);
+        }
+        result = new DataResult();
+        result.setFeatureData("items", fields, TYPES, data);
+    }
+
+    @TearDown
+    public void tearDown() {
+        result.close();
+    }
+
+    private Object legacyGet(String field, int index) {
+        FieldVector vector = result.getFeatureTable().getVector(field);
+        return convValue(vector.getField(), vector.getObject(index));
+    }
+
+    @Benchmark
+    public double legacyCell() {
+        double sum = 0.0;
+        for (int i = 0; i < rows; ++i) {
+            String itemId = (String) legacyGet("item_id", i);
+            Double score = (Double) legacyGet("score", i);
+            Long click = (Long) legacyGet("click", i);
+            sum += itemId.length() + score * click;
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double boxedList() {
+        List<Object> itemIds = result.get("item_id");
+        List<Object> scores = result.get("score");
+        List<Object> clicks = result.get("click");
+        double sum = 0.0;
+        for (int i = 0; i < rows; ++i) {
+            sum += ((String) itemIds.get(i)).length() + (Double) scores.get(i) * (Long) clicks.get(i);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double typedColumn() {
+        ColumnReader.StringReader itemIds = result.getStringColumn("item_id");
+        ColumnReader.DoubleReader scores = result.getDoubleColumn("score");
+        ColumnReader.LongReader clicks = result.getLongColumn("click");
+        double sum = 0.0;
+        for (int i = 0; i < rows; ++i) {
+            sum += itemIds.getLength(i) + scores.getDouble(i) * clicks.getLong(i);
+        }
+        return sum;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(DataResultColumnBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,106 @@
+//
+// Copyright 2022 DMetaSoul
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package com.dmetasoul.metaspore.benchmark;
+
+import com.dmetasoul.metaspore.serving.ArrowArena;
+import com.dmetasoul.metaspore.serving.FeatureTable;
+import com.dmetasoul.metaspore.serving.FeatureTableSerDe;
+import com.google.common.collect.Lists;
+import com.google.protobuf.ByteString;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.FieldType;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 模拟精排请求的模型输入， rows个候选， userColumns个在每行重复的用户/上下文特征列， 一个低基数的类目列和一个各行不同的item_id列
+ * plain: 不使用字典编码， dictionary: 低基数的字符串列按字典编码
+ * 两种方式的payload大小在setup时打印
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DictionarySerDeBenchmark {
+    @Param({"1000"})
+    public int rows;
+
+    @Param({"12"})
+    public int userColumns;
+
+    private ArrowArena arena;
+    private FeatureTable table;
+
+    @Setup
+    public void setUp() throws IOException {
+        List<Field> fields = Lists.newArrayList();
+        for (int i = 0; i < userColumns; ++i) {
+            fields.add(new Field("user_feature_" + i, FieldType.nullable(new ArrowType.Utf8()), null));
+        }
+        fields.add(new Field("category", FieldType.nullable(new ArrowType.Utf8()), null));
+        fields.add(new Field("item_id", FieldType.nullable(new ArrowType.Utf8()), null));
+        arena = ArrowArena.acquire("benchmark", ArrowArena.DEFAULT_LIMIT);
+        table = arena.newFeatureTable("rank", fields);
+        for (int row = 0; row < rows; ++row) {
+            for (int i = 0; i < userColumns; ++i) {
+                table.setString(row, "user-profile-value-" + i + "-5f1c9a", table.getVector(i));
+            }
+            table.setString(row, "category-" + row % 20, table.getVector("category"));
+            table.setString(row, "item-" + (100000000L + row * 7919L), table.getVector("item_id"));
+        }
+        table.finish();
+        ByteString plain = FeatureTableSerDe.serialize(table, FeatureTableSerDe.Format.STREAM,
+                FeatureTableSerDe.DictionaryOptions.DISABLED);
+        ByteString dictionary = FeatureTableSerDe.serialize(table, FeatureTableSerDe.Format.STREAM,
+                FeatureTableSerDe.DictionaryOptions.DEFAULT);
+        System.out.printf("%n payload bytes plain: %d, dictionary: %d%n", plain.size(), dictionary.size());
+    }
+
+    @TearDown
+    public void tearDown() {
+        arena.close();
+    }
+
+    @Benchmark
+    public ByteString plain() throws IOException {
+        return FeatureTableSerDe.serialize(table, FeatureTableSerDe.Format.STREAM,
+                FeatureTableSerDe.DictionaryOptions.DISABLED);
+    }
+
+    @Benchmark
+    public ByteString dictionary() throws IOException {
+        return FeatureTableSerDe.serialize(table, FeatureTableSerDe.Format.STREAM,
+                FeatureTableSerDe.DictionaryOptions.DEFAULT);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(DictionarySerDeBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,85 @@
+//
+// Copyright 2022 DMetaSoul
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package com.dmetasoul.metaspore.benchmark;
+
+import com.dmetasoul.metaspore.enums.JoinTypeEnum;
+import com.dmetasoul.metaspore.operator.HashJoin;
+import com.dmetasoul.metaspore.operator.NestedLoopJoin;
+import com.google.common.collect.Lists;
+import org.apache.commons.lang3.tuple.Pair;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 召回候选(1k)与物品特征表(10k)join的耗时对比， 嵌套循环 vs hash join
+ * 运行: 在test classpath下执行main函数
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FeatureJoinBenchmark {
+    @Param({"1000"})
+    public int joinedRows;
+
+    @Param({"10000"})
+    public int tableRows;
+
+    @Param({"INNER", "LEFT"})
+    public JoinTypeEnum type;
+
+    private List<Object> joinedData;
+    private List<Object> tableData;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(20220801);
+        joinedData = Lists.newArrayListWithCapacity(joinedRows);
+        for (int i = 0; i < joinedRows; ++i) {
+            joinedData.add((long) random.nextInt(tableRows * 2));
+        }
+        tableData = Lists.newArrayListWithCapacity(tableRows);
+        for (int i = 0; i < tableRows; ++i) {
+            tableData.add((long) i);
+        }
+    }
+
+    @Benchmark
+    public List<Pair<Integer, Integer>> nestedLoopJoin() {
+        return NestedLoopJoin.join(joinedData, tableData, type);
+    }
+
+    @Benchmark
+    public long[] hashJoin() {
+        return HashJoin.join(joinedData, tableData, type);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(FeatureJoinBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,124 @@
+//
+// Copyright 2022 DMetaSoul
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package com.dmetasoul.metaspore.benchmark;
+
+import com.dmetasoul.metaspore.data.DataResult;
+import com.dmetasoul.metaspore.enums.DataTypeEnum;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 排序阶段的截断： 5k行按score、item_id排序后保留前200行
+ * sortAll: 原实现， 对装箱的行号列表全排序后截断
+ * topK: DataResult.orderAndLimit， 大小为limit的堆选出前limit行
+ * 运行: 在test classpath下执行main函数
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OrderAndLimitBenchmark {
+    private static final List<DataTypeEnum> TYPES = List.of(DataTypeEnum.STRING, DataTypeEnum.DOUBLE, DataTypeEnum.LONG);
+    private static final List<String> COLUMNS = List.of("item_id", "score", "click");
+    private static final List<String> ORDER_BY = List.of("score", "item_id");
+
+    @Param({"5000"})
+    public int rows;
+
+    @Param({"200"})
+    public int limit;
+
+    private List<Field> fields;
+    private DataResult result;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(20220801);
+        fields = Lists.newArrayList();
+        for (int i = 0; i < TYPES.size(); ++i) {
+            fields.add(new Field(COLUMNS.get(i), TYPES.get(i).getType(), TYPES.get(i).getChildFields()));
+        }
+        List<Map<String, Object>> data = Lists.newArrayListWithCapacity(rows);
+        for (int i = 0; i < rows; ++i) {
+            Map<String, Object> row = Maps.newHashMap();
+            row.put("item_id", "item-" + random.nextInt(1000000));
+            row.put("score", (double) random.nextInt(1000));
+            row.put("click", (long) random.nextInt(100));
+            data.add(row);
+        }
+        result = new DataResult();
+        result.setFeatureData("items", fields, TYPES, data);
+    }
+
+    @TearDown
+    public void tearDown() {
+        result.close();
+    }
+
+    @SuppressWarnings("unchecked")
+    @Benchmark
+    public int sortAll() {
+        List<Integer> ids = Lists.newArrayList();
+        for (int i = 0; i < rows; ++i) {
+            ids.add(i);
+        }
+        ids.sort((o1, o2) -> {
+            for (String col : ORDER_BY) {
+                Comparable<Object> val1 = result.get(col, o1);
+                Comparable<Object> val2 = result.get(col, o2);
+                if (val1 == null && val2 == null) continue;
+                if (val1 == null) return -1;
+                if (val2 == null) return 1;
+                int ret = val2.compareTo(val1);
+                if (ret != 0) return ret;
+            }
+            return 0;
+        });
+        return ids.subList(0, limit).get(limit - 1);
+    }
+
+    @Benchmark
+    public int topK() {
+        DataResult ordered = new DataResult();
+        ordered.setFeatureData("ordered", fields, TYPES, List.of());
+        ordered.orderAndLimit(result, ORDER_BY, limit);
+        ordered.getFeatureTable().finish();
+        int count = ordered.getFeatureTable().getRowCount();
+        ordered.close();
+        return count;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(OrderAndLimitBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,116 @@
+//
+// Copyright 2022 DMetaSoul
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package com.dmetasoul.metaspore.benchmark;
+
+import com.dmetasoul.metaspore.data.DataContext;
+import com.dmetasoul.metaspore.serving.ArrowArena;
+import com.dmetasoul.metaspore.serving.FeatureTable;
+import com.google.common.collect.Lists;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.types.FloatingPointPrecision;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.FieldType;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 64个线程并发模拟请求， 每个请求创建tables个FeatureTable并写入rows行， 请求结束后释放
+ * perTableAllocator: 原实现， 每个FeatureTable创建自己的child allocator
+ * requestArena: 同一请求的FeatureTable在DataContext的arena中创建， 请求结束时统一释放， allocator在请求间复用
+ * SampleTime模式输出p99等分位延迟， allocator的创建次数在结束时打印
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(64)
+@Fork(1)
+public class RequestArenaBenchmark {
+    private static final List<Field> FIELDS = List.of(
+            new Field("item_id", FieldType.nullable(new ArrowType.Utf8()), null),
+            new Field("score", FieldType.nullable(new ArrowType.FloatingPoint(FloatingPointPrecision.DOUBLE)), null),
+            new Field("click", FieldType.nullable(new ArrowType.Int(64, true)), null));
+
+    @Param({"8"})
+    public int tables;
+
+    @Param({"200"})
+    public int rows;
+
+    private void fill(FeatureTable table) {
+        VarCharVector items = table.getVector("item_id");
+        Float8Vector scores = table.getVector("score");
+        BigIntVector clicks = table.getVector("click");
+        for (int i = 0; i < rows; ++i) {
+            table.setString(i, "item-" + i, items);
+            table.setDouble(i, i * 0.5, scores);
+            table.setLong(i, i, clicks);
+        }
+        table.finish();
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.out.printf("%n arena allocators created: %d%n", ArrowArena.getCreatedCount());
+    }
+
+    @Benchmark
+    public int perTableAllocator() {
+        List<FeatureTable> list = Lists.newArrayListWithCapacity(tables);
+        for (int i = 0; i < tables; ++i) {
+            FeatureTable table = new FeatureTable("table" + i, FIELDS);
+            fill(table);
+            list.add(table);
+        }
+        int count = 0;
+        for (FeatureTable table : list) {
+            count += table.getRowCount();
+            table.close();
+        }
+        return count;
+    }
+
+    @Benchmark
+    public int requestArena() {
+        int count = 0;
+        try (DataContext context = new DataContext()) {
+            for (int i = 0; i < tables; ++i) {
+                FeatureTable table = context.newFeatureTable("table" + i, FIELDS);
+                fill(table);
+                count += table.getRowCount();
+            }
+        }
+        return count;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(RequestArenaBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build();
+        new Runner(options).run();
+    }
+}
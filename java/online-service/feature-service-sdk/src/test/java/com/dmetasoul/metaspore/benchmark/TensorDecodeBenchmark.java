@@ -0,0 +1,103 @@
+//
+// Copyright 2022 DMetaSoul
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package com.dmetasoul.metaspore.benchmark;
+
+import com.dmetasoul.metaspore.serving.ArrowArena;
+import com.dmetasoul.metaspore.serving.ArrowMessage;
+import com.dmetasoul.metaspore.serving.ArrowTensor;
+import com.dmetasoul.metaspore.serving.PredictReply;
+import com.google.common.collect.Lists;
+import com.google.protobuf.ByteString;
+import org.apache.arrow.flatbuf.Tensor;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 解码模型服务返回的10k个score， 并按AlgoInferenceTask的方式读出所有score
+ * messageReader: 原实现， 通过MessageChannelReader把body拷贝到arrow buffer后读取
+ * byteStringView: ArrowTensor.readFromByteString， 直接在ByteString的数组上解析， 读取float不装箱
+ * 运行: 在test classpath下执行main函数
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TensorDecodeBenchmark {
+    @Param({"10000"})
+    public int size;
+
+    private ByteString payload;
+
+    @Setup
+    public void setup() throws IOException {
+        Random random = new Random(20221017L);
+        float[] scores = new float[size];
+        for (int i = 0; i < size; ++i) {
+            scores[i] = random.nextFloat();
+        }
+        ByteString bytes = ArrowTensor.writeToByteString(ArrowTensor.createFromFloatArray(new long[]{size, 1}, scores, null, null));
+        // 与grpc收到的reply一样， payload是解析protobuf得到的ByteString
+        PredictReply reply = PredictReply.parseFrom(PredictReply.newBuilder().putPayload("output", bytes).build().toByteArray());
+        payload = reply.getPayloadOrThrow("output");
+    }
+
+    @Benchmark
+    public double messageReader() throws IOException {
+        try (ArrowArena arena = ArrowArena.acquire("bench", ArrowArena.DEFAULT_LIMIT)) {
+            ArrowMessage message = ArrowMessage.readFromByteString(payload, arena);
+            ArrowTensor tensor = new ArrowTensor((Tensor) message.message.header(new Tensor()), message.body.nioBuffer());
+            ArrowTensor.FloatTensorAccessor accessor = tensor.getFloatData();
+            List<Float> scores = Lists.newArrayList();
+            for (int i = 0; i < tensor.getShape()[0]; ++i) {
+                scores.add(accessor.get(i, 0));
+            }
+            double sum = 0.0;
+            for (Float score : scores) {
+                sum += score;
+            }
+            return sum;
+        }
+    }
+
+    @Benchmark
+    public double byteStringView() throws IOException {
+        ArrowTensor tensor = ArrowTensor.readFromByteString(payload);
+        ArrowTensor.FloatTensorAccessor accessor = tensor.getFloatData();
+        double sum = 0.0;
+        for (int i = 0; i < tensor.getShape()[0]; ++i) {
+            sum += accessor.getFloat(i, 0);
+        }
+        return sum;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(TensorDecodeBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,122 @@
+//
+// Copyright 2022 DMetaSoul
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package com.dmetasoul.metaspore.benchmark;
+
+import com.dmetasoul.metaspore.data.TensorRow;
+import com.dmetasoul.metaspore.enums.DataTypeEnum;
+import com.dmetasoul.metaspore.serving.ArrowArena;
+import com.dmetasoul.metaspore.serving.ArrowTensor;
+import com.dmetasoul.metaspore.serving.FeatureTable;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 模型返回rows x dim的embedding， 按AlgoInferenceTask的genEmbedding取出后写入FeatureTable的list_float列
+ * boxedList: 原实现， getFromTensor把每个元素装箱成List<Float>， 再由ListOperator通过UnionListWriter写入
+ * tensorRow: 每行是TensorRow视图， ListOperator从tensor的FloatBuffer直接写入子vector
+ * fixedSizeList: TensorRow写入float[dim]的定长list列， 没有offset buffer
+ * 运行: 在test classpath下执行main函数， gc profiler的gc.alloc.rate.norm即每次调用分配的字节数
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TensorRowBenchmark {
+    @Param({"1000"})
+    public int rows;
+
+    @Param({"64", "512"})
+    public int dim;
+
+    private ArrowTensor tensor;
+    private ArrowArena arena;
+    private List<Field> fields;
+    private List<Field> fixedSizeFields;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(20221017L);
+        float[] data = new float[rows * dim];
+        for (int i = 0; i < data.length; ++i) {
+            data[i] = random.nextFloat();
+        }
+        tensor = ArrowTensor.createFromFloatArray(new long[]{rows, dim}, data, null, null);
+        arena = ArrowArena.acquire("benchmark", ArrowArena.DEFAULT_LIMIT);
+        DataTypeEnum type = DataTypeEnum.LIST_FLOAT;
+        fields = List.of(new Field("embedding", type.getType(), type.getChildFields()));
+        fixedSizeFields = List.of(DataTypeEnum.EMBEDDING.getField("embedding", dim));
+    }
+
+    @TearDown
+    public void tearDown() {
+        arena.close();
+    }
+
+    private int write(List<Object> values) {
+        return write(values, fields, DataTypeEnum.LIST_FLOAT);
+    }
+
+    private int write(List<Object> values, List<Field> fields, DataTypeEnum type) {
+        try (FeatureTable table = arena.newFeatureTable("embedding", fields)) {
+            type.set(table, "embedding", values);
+            table.finish();
+            return table.getRowCount();
+        }
+    }
+
+    @Benchmark
+    public int boxedList() {
+        ArrowTensor.FloatTensorAccessor accessor = tensor.getFloatData();
+        List<Object> values = new ArrayList<>();
+        for (int i = 0; i < rows; ++i) {
+            List<Float> vector = new ArrayList<>();
+            for (int j = 0; j < dim; ++j) {
+                vector.add(accessor.get(i, j));
+            }
+            values.add(vector);
+        }
+        return write(values);
+    }
+
+    @Benchmark
+    public int tensorRow() {
+        return write(TensorRow.rows(tensor));
+    }
+
+    @Benchmark
+    public int fixedSizeList() {
+        return write(TensorRow.rows(tensor), fixedSizeFields, DataTypeEnum.EMBEDDING);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(TensorRowBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,185 @@
+//
+// Copyright 2022 DMetaSoul
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package com.dmetasoul.metaspore.benchmark;
+
+import com.dmetasoul.metaspore.relyservice.ModelServingService;
+import com.dmetasoul.metaspore.serving.*;
+import com.google.common.collect.Lists;
+import com.google.protobuf.ByteString;
+import io.grpc.Server;
+import io.grpc.netty.shaded.io.grpc.netty.NettyServerBuilder;
+import io.grpc.netty.shaded.io.netty.channel.EventLoopGroup;
+import io.grpc.netty.shaded.io.netty.channel.epoll.EpollEventLoopGroup;
+import io.grpc.netty.shaded.io.netty.channel.epoll.EpollServerDomainSocketChannel;
+import io.grpc.netty.shaded.io.netty.channel.epoll.EpollServerSocketChannel;
+import io.grpc.netty.shaded.io.netty.channel.unix.DomainSocketAddress;
+import io.grpc.stub.StreamObserver;
+import org.apache.arrow.vector.types.FloatingPointPrecision;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.FieldType;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 同机部署时recommend-service与serving之间的传输， 本进程内的Predict服务返回rows个score
+ * tcp: 经过loopback的tcp连接， unix: unix domain socket， 两端都使用native epoll
+ * 请求为rows行的精排输入， payload在setup时序列化， 只测量grpc调用的耗时
+ * 每个trial结束时打印进程(客户端和服务端合计)每次调用的cpu时间
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UnixSocketBenchmark {
+    @Param({"1", "1000"})
+    public int rows;
+
+    @Param({"tcp", "unix"})
+    public String transport;
+
+    private Path dir;
+    private EventLoopGroup group;
+    private Server server;
+    private ModelServingService service;
+    private PredictGrpc.PredictStub stub;
+    private PredictRequest request;
+    private long calls;
+    private long startCpuNanos;
+
+    /**
+     * 返回rows x 1的score
+     */
+    static class ScorePredict extends PredictGrpc.PredictImplBase {
+        private final ByteString reply;
+
+        ScorePredict(int rows) throws IOException {
+            reply = ArrowTensor.writeToByteString(ArrowTensor.createFromFloatArray(new long[]{rows, 1}, new float[rows], null, null));
+        }
+
+        @Override
+        public void predict(PredictRequest request, StreamObserver<PredictReply> responseObserver) {
+            responseObserver.onNext(PredictReply.newBuilder().putPayload("output", reply).build());
+            responseObserver.onCompleted();
+        }
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        group = new EpollEventLoopGroup(2);
+        NettyServerBuilder builder;
+        Map<String, Object> option;
+        if (transport.equals("unix")) {
+            dir = Files.createTempDirectory("serving");
+            String socket = dir.resolve("serving.sock").toString();
+            builder = NettyServerBuilder.forAddress(new DomainSocketAddress(socket))
+                    .channelType(EpollServerDomainSocketChannel.class);
+            option = Map.of("unixSocket", socket);
+        } else {
+            builder = NettyServerBuilder.forAddress(new InetSocketAddress("127.0.0.1", 0))
+                    .channelType(EpollServerSocketChannel.class);
+            option = null;
+        }
+        server = builder.bossEventLoopGroup(group).workerEventLoopGroup(group)
+                .addService(new ScorePredict(rows)).build().start();
+        if (option == null) {
+            option = Map.of("host", "127.0.0.1", "port", server.getPort());
+        }
+        service = new ModelServingService();
+        service.init(option);
+        stub = PredictGrpc.newStub(service.getChannel());
+
+        List<Field> fields = Lists.newArrayList(
+                new Field("user_id", FieldType.nullable(new ArrowType.Utf8()), null),
+                new Field("item_id", FieldType.nullable(new ArrowType.Utf8()), null));
+        for (int i = 0; i < 8; ++i) {
+            fields.add(new Field("dense_" + i,
+                    FieldType.nullable(new ArrowType.FloatingPoint(FloatingPointPrecision.SINGLE)), null));
+        }
+        Random random = new Random(20221017L);
+        try (ArrowArena arena = ArrowArena.acquire("benchmark", ArrowArena.DEFAULT_LIMIT)) {
+            FeatureTable table = arena.newFeatureTable("rank", fields);
+            for (int i = 0; i < rows; ++i) {
+                table.setString(i, "user_42", table.getVector("user_id"));
+                table.setString(i, "item_" + random.nextInt(1000000), table.getVector("item_id"));
+                for (int j = 0; j < 8; ++j) {
+                    table.setFloat(i, random.nextFloat(), table.getVector("dense_" + j));
+                }
+            }
+            table.finish();
+            request = ServingClient.buildRequest("model", List.of(table), Map.of());
+            table.close();
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void startCpu() {
+        calls = 0;
+        startCpuNanos = processCpuNanos();
+    }
+
+    @TearDown(Level.Iteration)
+    public void printCpu() {
+        if (calls > 0) {
+            System.out.printf("%n%s rows %d: cpu %.1f us/op%n", transport, rows,
+                    (processCpuNanos() - startCpuNanos) / 1000.0 / calls);
+        }
+    }
+
+    private static long processCpuNanos() {
+        return ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean()).getProcessCpuTime();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        service.close();
+        server.shutdownNow();
+        group.shutdownGracefully();
+        if (dir != null) {
+            Files.deleteIfExists(dir.resolve("serving.sock"));
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    @Benchmark
+    public int predict() {
+        ++calls;
+        return ServingClient.predictAsync(stub, request).join().size();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(UnixSocketBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build();
+        new Runner(options).run();
+    }
+}
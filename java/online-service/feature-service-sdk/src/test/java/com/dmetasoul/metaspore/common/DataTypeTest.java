@@ -1,14 +1,18 @@
 package com.dmetasoul.metaspore.common;
 
+import com.dmetasoul.metaspore.configure.TableInfo;
 import com.dmetasoul.metaspore.data.DataResult;
+import com.dmetasoul.metaspore.data.TensorRow;
 import com.dmetasoul.metaspore.enums.DataTypeEnum;
 import com.dmetasoul.metaspore.operator.ArrowConv;
+import com.dmetasoul.metaspore.serving.ArrowTensor;
 import com.dmetasoul.metaspore.serving.FeatureTable;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import lombok.Data;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.arrow.vector.types.pojo.ArrowType;
 import org.apache.arrow.vector.types.pojo.Field;
 import org.junit.Assert;
 import org.junit.Test;
@@ -202,6 +206,59 @@ public class DataTypeTest {
         }
     }
 
+    @Test
+    public void TestTensorRowInArrow() {
+        float[] floats = new float[]{0.1f, -0.2f, 0.3f, 1.4f, 2.5f, -3.6f};
+        double[] doubles = new double[]{1.5, -2.5, 3.5, 4.5, 5.5, 6.5};
+        List<Object> floatRows = TensorRow.rows(ArrowTensor.createFromFloatArray(new long[]{2, 3}, floats, null, null));
+        List<Object> doubleRows = TensorRow.rows(ArrowTensor.createFromDoubleArray(new long[]{3, 2}, doubles, null, null));
+        List<Object> longRows = TensorRow.rows(ArrowTensor.createFromLongArray(new long[]{1, 2}, new long[]{7L, -8L}, null, null));
+        Assert.assertEquals(List.of(1.4f, 2.5f, -3.6f), floatRows.get(1));
+
+        List<DataTypeEnum> types = List.of(DataTypeEnum.LIST_FLOAT, DataTypeEnum.LIST_DOUBLE, DataTypeEnum.LIST_LONG);
+        List<Field> inferenceFields = types.stream().map(type -> new Field("field" + type.getId(), type.getType(), type.getChildFields())).collect(Collectors.toList());
+        try (FeatureTable featureTable = new FeatureTable("table", inferenceFields)) {
+            DataResult result = new DataResult();
+            result.setFeatureTable(featureTable);
+            // float行直接写入， float行写入double列和long行写入long列时按普通List写入
+            List<Object> mixed = Lists.newArrayList(floatRows.get(0), null, doubleRows.get(2));
+            Assert.assertTrue(DataTypeEnum.LIST_FLOAT.set(featureTable, "field" + DataTypeEnum.LIST_FLOAT.getId(), floatRows));
+            Assert.assertTrue(DataTypeEnum.LIST_DOUBLE.set(featureTable, "field" + DataTypeEnum.LIST_DOUBLE.getId(), mixed.subList(1, 3)));
+            Assert.assertTrue(DataTypeEnum.LIST_LONG.set(featureTable, "field" + DataTypeEnum.LIST_LONG.getId(), longRows));
+            featureTable.finish();
+            Assert.assertEquals(List.of(0.1f, -0.2f, 0.3f), result.get("field" + DataTypeEnum.LIST_FLOAT.getId(), 0));
+            Assert.assertEquals(List.of(1.4f, 2.5f, -3.6f), result.get("field" + DataTypeEnum.LIST_FLOAT.getId(), 1));
+            Assert.assertNull(result.get("field" + DataTypeEnum.LIST_DOUBLE.getId(), 0));
+            Assert.assertEquals(List.of(5.5, 6.5), result.get("field" + DataTypeEnum.LIST_DOUBLE.getId(), 1));
+            Assert.assertEquals(List.of(7L, -8L), result.get("field" + DataTypeEnum.LIST_LONG.getId(), 0));
+        }
+    }
+
+    @Test
+    public void TestEmbeddingInArrow() {
+        Assert.assertEquals(DataTypeEnum.EMBEDDING, DataTypes.getDataType("float[3]"));
+        Assert.assertEquals(DataTypeEnum.LIST_FLOAT, DataTypes.getDataType("float[]"));
+        Field field = TableInfo.getField("embedding", "float[3]");
+        Assert.assertEquals(field, TableInfo.getField("embedding", Map.of("embedding", 3)));
+        Assert.assertEquals(new ArrowType.FixedSizeList(3), field.getType());
+
+        List<Object> rows = TensorRow.rows(ArrowTensor.createFromFloatArray(new long[]{1, 3}, new float[]{0.5f, 1.5f, -2.5f}, null, null));
+        List<Object> data = Lists.newArrayList(new float[]{1.0f, 2.0f, 3.0f}, null, rows.get(0), List.of(4.0, 5, 6.5f));
+        try (FeatureTable featureTable = new FeatureTable("table", List.of(field))) {
+            DataResult result = new DataResult();
+            result.setFeatureTable(featureTable);
+            Assert.assertTrue(DataTypeEnum.EMBEDDING.set(featureTable, "embedding", data));
+            Assert.assertFalse(DataTypeEnum.EMBEDDING.set(featureTable, "embedding", 4, List.of(1.0f, 2.0f)));
+            Assert.assertFalse(DataTypeEnum.EMBEDDING.set(featureTable, "embedding", 4, "1.0,2.0,3.0"));
+            featureTable.finish();
+            Assert.assertEquals(4, featureTable.getRowCount());
+            Assert.assertEquals(List.of(1.0f, 2.0f, 3.0f), result.get("embedding", 0));
+            Assert.assertNull(result.get("embedding", 1));
+            Assert.assertEquals(List.of(0.5f, 1.5f, -2.5f), result.get("embedding", 2));
+            Assert.assertEquals(List.of(4.0f, 5.0f, 6.5f), result.get("embedding", 3));
+        }
+    }
+
     @Data
     public static class KVEntry {
         private String key;
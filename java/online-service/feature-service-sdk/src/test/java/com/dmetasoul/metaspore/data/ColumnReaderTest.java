@@ -0,0 +1,113 @@
+//
+// Copyright 2022 DMetaSoul
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package com.dmetasoul.metaspore.data;
+
+import com.dmetasoul.metaspore.enums.DataTypeEnum;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static com.dmetasoul.metaspore.operator.ArrowConv.convValue;
+
+public class ColumnReaderTest {
+    private static final List<DataTypeEnum> TYPES = List.of(
+            DataTypeEnum.STRING, DataTypeEnum.LONG, DataTypeEnum.INT, DataTypeEnum.DOUBLE, DataTypeEnum.FLOAT,
+            DataTypeEnum.BOOL, DataTypeEnum.LIST_STR, DataTypeEnum.LIST_FLOAT, DataTypeEnum.MAP_STR_DOUBLE);
+
+    private DataResult result;
+
+    private static String col(DataTypeEnum type) {
+        return "col" + type.getId();
+    }
+
+    @Before
+    public void setUp() {
+        List<Field> fields = TYPES.stream().map(type -> new Field(col(type), type.getType(), type.getChildFields())).collect(Collectors.toList());
+        List<Map<String, Object>> data = Lists.newArrayList();
+        for (int i = 0; i < 20; ++i) {
+            Map<String, Object> row = Maps.newHashMap();
+            row.put(col(DataTypeEnum.STRING), i % 5 == 0 ? null : "商品-" + i);
+            row.put(col(DataTypeEnum.LONG), (long) i * 1000000007L);
+            row.put(col(DataTypeEnum.INT), i % 7 == 0 ? null : i % 4);
+            row.put(col(DataTypeEnum.DOUBLE), i * 0.5);
+            row.put(col(DataTypeEnum.FLOAT), (float) i / 3);
+            row.put(col(DataTypeEnum.BOOL), i % 2 == 0);
+            row.put(col(DataTypeEnum.LIST_STR), i % 6 == 0 ? null : List.of("a" + i, "", "b"));
+            row.put(col(DataTypeEnum.LIST_FLOAT), List.of(1.0f * i, 2.0f));
+            row.put(col(DataTypeEnum.MAP_STR_DOUBLE), Map.of("k" + i, (double) i));
+            data.add(row);
+        }
+        result = new DataResult();
+        result.setFeatureData("table", fields, TYPES, data);
+    }
+
+    @After
+    public void tearDown() {
+        result.close();
+    }
+
+    @Test
+    public void TestSameAsConvValue() {
+        for (DataTypeEnum type : TYPES) {
+            FieldVector vector = result.getVector(col(type));
+            ColumnReader reader = result.getColumn(col(type));
+            Assert.assertEquals(vector.getValueCount(), reader.size());
+            for (int i = 0; i < vector.getValueCount(); ++i) {
+                Assert.assertEquals(convValue(vector.getField(), vector.getObject(i)), reader.getObject(i));
+                Assert.assertEquals(vector.isNull(i), reader.isNull(i));
+            }
+            Assert.assertEquals(result.get(col(type)), reader.asList());
+        }
+    }
+
+    @Test
+    public void TestTypedColumns() {
+        ColumnReader.LongReader longs = result.getLongColumn(col(DataTypeEnum.LONG));
+        ColumnReader.DoubleReader doubles = result.getDoubleColumn(col(DataTypeEnum.DOUBLE));
+        ColumnReader.FloatReader floats = result.getFloatColumn(col(DataTypeEnum.FLOAT));
+        ColumnReader.IntReader ints = result.getIntColumn(col(DataTypeEnum.INT));
+        ColumnReader.StringReader strings = result.getStringColumn(col(DataTypeEnum.STRING));
+        ColumnReader.ListReader lists = result.getListColumn(col(DataTypeEnum.LIST_STR));
+        ColumnReader.StringReader elements = (ColumnReader.StringReader) lists.getElements();
+        for (int i = 0; i < 20; ++i) {
+            Assert.assertEquals(i * 1000000007L, longs.getLong(i));
+            Assert.assertEquals(i * 0.5, doubles.getDouble(i), 0.0);
+            Assert.assertEquals((float) i / 3, floats.getFloat(i), 0.0f);
+            if (i % 7 != 0) {
+                Assert.assertEquals(i % 4, ints.getInt(i));
+            }
+            Assert.assertEquals(i % 5 == 0 ? null : "商品-" + i, strings.getString(i));
+            if (i % 6 == 0) {
+                Assert.assertEquals(0, lists.getLength(i));
+            } else {
+                Assert.assertEquals(3, lists.getLength(i));
+                Assert.assertEquals("a" + i, elements.getString(lists.getStart(i)));
+                Assert.assertEquals("", elements.getString(lists.getStart(i) + 1));
+            }
+        }
+        Assert.assertNull(result.getColumn("not_exist"));
+        Assert.assertThrows(IllegalArgumentException.class, () -> result.getIntColumn(col(DataTypeEnum.LONG)));
+    }
+}
@@ -0,0 +1,206 @@
+//
+// Copyright 2022 DMetaSoul
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package com.dmetasoul.metaspore.data;
+
+import com.dmetasoul.metaspore.common.CommonUtils;
+import com.dmetasoul.metaspore.enums.DataTypeEnum;
+import com.dmetasoul.metaspore.recommend.interfaces.MergeOperator;
+import com.dmetasoul.metaspore.serving.FeatureTable;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+/**
+ * 随机生成输入， 比较hash去重的mergeDataResult与原逐行比较实现的结果
+ */
+public class MergeDataResultTest {
+    private static final List<String> COLUMNS = List.of("item_id", "score", "cnt");
+    private static final List<DataTypeEnum> TYPES = List.of(DataTypeEnum.STRING, DataTypeEnum.DOUBLE, DataTypeEnum.LONG);
+
+    private static final MergeOperator MAX_SCORE = (field, data, option) -> {
+        if (field instanceof Number && data instanceof Number) {
+            if (((Number) field).doubleValue() < ((Number) data).doubleValue()) {
+                return data;
+            }
+        }
+        return field;
+    };
+
+    private static final MergeOperator SUM = (field, data, option) -> {
+        if (field instanceof Long && data instanceof Long) {
+            return (Long) field + (Long) data;
+        }
+        return field;
+    };
+
+    private static List<Field> fields(int columns) {
+        List<Field> fields = Lists.newArrayList();
+        for (int i = 0; i < columns; ++i) {
+            fields.add(new Field(COLUMNS.get(i), TYPES.get(i).getType(), TYPES.get(i).getChildFields()));
+        }
+        return fields;
+    }
+
+    private static DataResult target() {
+        DataResult result = new DataResult();
+        result.setFeatureTable(new FeatureTable("merge", fields(COLUMNS.size())));
+        result.setDataTypes(TYPES);
+        return result;
+    }
+
+    /**
+     * 原mergeDataResult的实现， 每行与已合并的所有行逐一比较
+     */
+    private static Map<String, List<Object>> legacyMerge(List<List<Map<String, Object>>> inputs, List<String> dupFields,
+                                                         Map<String, MergeOperator> operators) {
+        Map<String, List<Object>> merged = Maps.newHashMap();
+        for (List<Map<String, Object>> rows : inputs) {
+            for (Map<String, Object> row : rows) {
+                int rowCount = merged.computeIfAbsent(COLUMNS.get(0), key -> Lists.newArrayList()).size();
+                int index = -1;
+                for (int j = 0; j < rowCount && !dupFields.isEmpty(); ++j) {
+                    boolean doDup = true;
+                    for (String col : dupFields) {
+                        if (!Objects.equals(CommonUtils.get(merged.computeIfAbsent(col, key -> Lists.newArrayList()), j, null), row.get(col))) {
+                            doDup = false;
+                            break;
+                        }
+                    }
+                    if (doDup) {
+                        index = j;
+                        break;
+                    }
+                }
+                if (index < 0) {
+                    for (String col : COLUMNS) {
+                        merged.computeIfAbsent(col, key -> Lists.newArrayList()).add(row.get(col));
+                    }
+                } else {
+                    for (Map.Entry<String, MergeOperator> entry : operators.entrySet()) {
+                        List<Object> colData = merged.get(entry.getKey());
+                        colData.set(index, entry.getValue().merge(colData.get(index), row.get(entry.getKey()), null));
+                    }
+                }
+            }
+        }
+        return merged;
+    }
+
+    private static List<Map<String, Object>> randomRows(Random random, int columns, boolean sorted) {
+        List<Map<String, Object>> rows = Lists.newArrayList();
+        int size = random.nextInt(51);
+        for (int i = 0; i < size; ++i) {
+            Map<String, Object> row = Maps.newHashMap();
+            row.put("item_id", random.nextInt(10) == 0 ? null : "item-" + random.nextInt(30));
+            row.put("score", random.nextInt(8) == 0 ? null : (double) random.nextInt(20));
+            if (columns > 2) {
+                row.put("cnt", (long) random.nextInt(3));
+            }
+            rows.add(row);
+        }
+        if (sorted) {
+            // 与orderAndLimit一致： null在前， 其余降序
+            rows.sort((o1, o2) -> {
+                Double v1 = (Double) o1.get("score");
+                Double v2 = (Double) o2.get("score");
+                if (Objects.equals(v1, v2)) return 0;
+                if (v1 == null) return -1;
+                if (v2 == null) return 1;
+                return v2.compareTo(v1);
+            });
+        }
+        return rows;
+    }
+
+    private static DataResult toDataResult(List<Map<String, Object>> rows, int columns) {
+        DataResult result = new DataResult();
+        result.setFeatureData("input", fields(columns), TYPES.subList(0, columns), rows);
+        return result;
+    }
+
+    /**
+     * 从DataResult读回输入行， 参考实现与mergeDataResult使用相同的输入
+     */
+    private static List<Map<String, Object>> rows(DataResult result) {
+        List<Map<String, Object>> rows = Lists.newArrayList();
+        for (int i = 0; i < result.getFeatureTable().getRowCount(); ++i) {
+            Map<String, Object> row = Maps.newHashMap();
+            for (Field field : result.getFields()) {
+                row.put(field.getName(), result.get(field.getName(), i));
+            }
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    private static Map<String, List<Object>> columns(DataResult result) {
+        return COLUMNS.stream().collect(Collectors.toMap(col -> col, col -> Lists.newArrayList(result.get(col))));
+    }
+
+    @Test
+    public void TestSameAsLegacyMerge() {
+        List<List<String>> dupFieldsChoices = List.of(List.of(), List.of("item_id"), List.of("item_id", "cnt"), List.of("cnt", "score"));
+        Random random = new Random(20221017L);
+        for (int trial = 0; trial < 300; ++trial) {
+            int inputNum = 1 + random.nextInt(5);
+            boolean sorted = random.nextBoolean();
+            List<String> dupFields = dupFieldsChoices.get(random.nextInt(dupFieldsChoices.size()));
+            Map<String, MergeOperator> operators = Maps.newHashMap();
+            if (random.nextBoolean()) {
+                operators.put("score", MAX_SCORE);
+            }
+            if (random.nextInt(4) == 0) {
+                operators.put("cnt", SUM);
+            }
+            List<List<Map<String, Object>>> inputs = Lists.newArrayList();
+            List<DataResult> data = Lists.newArrayList();
+            for (int i = 0; i < inputNum; ++i) {
+                int columns = random.nextInt(4) == 0 ? 2 : 3;
+                DataResult item = toDataResult(randomRows(random, columns, sorted), columns);
+                data.add(item);
+                inputs.add(rows(item));
+            }
+            Map<String, List<Object>> expected = legacyMerge(inputs, dupFields, operators);
+            String message = String.format("trial:%d dupFields:%s operators:%s", trial, dupFields, operators.keySet());
+
+            DataResult result = target();
+            result.mergeDataResult(data, dupFields, operators, null);
+            for (String col : COLUMNS) {
+                Assert.assertEquals(message, expected.get(col), result.get(col));
+            }
+
+            DataResult ordered = target();
+            ordered.mergeDataResult(data, dupFields, operators, List.of("score"), null);
+            DataResult reference = target();
+            reference.orderAndLimit(result, List.of("score"), Integer.MAX_VALUE);
+            reference.getFeatureTable().finish();
+            Assert.assertEquals(message, columns(reference), columns(ordered));
+
+            result.close();
+            ordered.close();
+            reference.close();
+            data.forEach(DataResult::close);
+        }
+    }
+}
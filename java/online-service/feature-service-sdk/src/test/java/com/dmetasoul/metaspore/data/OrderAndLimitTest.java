@@ -0,0 +1,114 @@
+//
+// Copyright 2022 DMetaSoul
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package com.dmetasoul.metaspore.data;
+
+import com.dmetasoul.metaspore.enums.DataTypeEnum;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+/**
+ * DataResult.orderAndLimit： 按多列降序、null在前排序后截取前limit行， 与稳定排序的结果一致
+ */
+public class OrderAndLimitTest {
+    private static final List<DataTypeEnum> TYPES = List.of(DataTypeEnum.INT, DataTypeEnum.DOUBLE);
+
+    private static String col(DataTypeEnum type) {
+        return "col" + type.getId();
+    }
+
+    private static List<Field> fields(List<DataTypeEnum> types) {
+        return types.stream().map(type -> new Field(col(type), type.getType(), type.getChildFields())).collect(Collectors.toList());
+    }
+
+    @Test
+    public void TestOrderAndLimit() {
+        List<Map<String, Object>> data = Lists.newArrayList();
+        for (int i = 0; i < 20; ++i) {
+            Map<String, Object> row = Maps.newHashMap();
+            row.put(col(DataTypeEnum.INT), i % 7 == 0 ? null : i % 4);
+            row.put(col(DataTypeEnum.DOUBLE), i * 0.5);
+            data.add(row);
+        }
+        DataResult result = new DataResult();
+        result.setFeatureData("table", fields(TYPES), TYPES, data);
+        DataResult ordered = new DataResult();
+        ordered.setFeatureData("ordered", fields(TYPES), TYPES, List.of());
+        ordered.orderAndLimit(result, List.of(col(DataTypeEnum.INT), col(DataTypeEnum.DOUBLE)), 8);
+        ordered.getFeatureTable().finish();
+        List<Object> ints = ordered.get(col(DataTypeEnum.INT));
+        List<Object> doubles = ordered.get(col(DataTypeEnum.DOUBLE));
+        // int列为null的行排在最前， 按int降序、double降序
+        Assert.assertEquals(Lists.newArrayList(null, null, null, 3, 3, 3, 3, 2), ints.subList(0, 8));
+        Assert.assertEquals(List.of(7.0, 3.5, 0.0, 9.5, 7.5, 5.5, 1.5, 9.0), doubles.subList(0, 8));
+        ordered.close();
+        result.close();
+    }
+
+    @Test
+    public void TestOrderAndLimitSameAsStableSort() {
+        List<DataTypeEnum> types = List.of(DataTypeEnum.INT, DataTypeEnum.STRING, DataTypeEnum.DOUBLE);
+        List<Field> fields = fields(types);
+        List<String> orderBy = List.of(col(DataTypeEnum.INT), col(DataTypeEnum.STRING));
+        Random random = new Random(20221017L);
+        for (int trial = 0; trial < 100; ++trial) {
+            List<Map<String, Object>> data = Lists.newArrayList();
+            int rows = 1 + random.nextInt(300);
+            for (int i = 0; i < rows; ++i) {
+                Map<String, Object> row = Maps.newHashMap();
+                row.put(col(DataTypeEnum.INT), random.nextInt(6) == 0 ? null : random.nextInt(5));
+                row.put(col(DataTypeEnum.STRING), random.nextInt(6) == 0 ? null : "s" + random.nextInt(4));
+                row.put(col(DataTypeEnum.DOUBLE), (double) i);
+                data.add(row);
+            }
+            DataResult input = new DataResult();
+            input.setFeatureData("input", fields, types, data);
+            // 参考实现： 对行号做稳定排序
+            List<Integer> ids = Lists.newArrayList();
+            for (int i = 0; i < rows; ++i) {
+                ids.add(i);
+            }
+            ids.sort((o1, o2) -> {
+                for (String col : orderBy) {
+                    Comparable<Object> val1 = input.get(col, o1);
+                    Comparable<Object> val2 = input.get(col, o2);
+                    if (val1 == null && val2 == null) continue;
+                    if (val1 == null) return -1;
+                    if (val2 == null) return 1;
+                    int ret = val2.compareTo(val1);
+                    if (ret != 0) return ret;
+                }
+                return 0;
+            });
+            int limit = random.nextInt(rows + 20);
+            List<Object> expected = ids.subList(0, Math.min(limit, rows)).stream().map(i -> (Object) (double) i).collect(Collectors.toList());
+            DataResult ordered = new DataResult();
+            ordered.setFeatureData("ordered", fields, types, List.of());
+            ordered.orderAndLimit(input, orderBy, limit);
+            ordered.getFeatureTable().finish();
+            Assert.assertEquals("trial:" + trial, expected, ordered.get(col(DataTypeEnum.DOUBLE)));
+            ordered.close();
+            input.close();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+//
+// Copyright 2022 DMetaSoul
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package com.dmetasoul.metaspore.data;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class ServiceRequestTest {
+
+    private static ServiceRequest makeRequest(Map<String, Object> data) {
+        ServiceRequest request = new ServiceRequest(data);
+        request.setLimit(200);
+        return request;
+    }
+
+    @Test
+    public void TestSignStableForMapOrder() {
+        Map<String, Object> data1 = new LinkedHashMap<>();
+        Map<String, Object> data2 = new LinkedHashMap<>();
+        List<Object> ids = Lists.newArrayList();
+        for (int i = 0; i < 1000; ++i) {
+            ids.add("item" + i);
+            data1.put("key" + i, i);
+        }
+        for (int i = 999; i >= 0; --i) {
+            data2.put("key" + i, i);
+        }
+        data1.put("ids", ids);
+        data2.put("ids", Lists.newArrayList(ids));
+        data1.put("tags", Sets.newHashSet("a", "b", "c"));
+        data2.put("tags", Sets.newLinkedHashSet(List.of("c", "b", "a")));
+        ServiceRequest req1 = makeRequest(data1);
+        ServiceRequest req2 = makeRequest(data2);
+        Assert.assertEquals(req1.genRequestSign(), req2.genRequestSign());
+        Assert.assertTrue(req1.sameRequest(req2));
+    }
+
+    @Test
+    public void TestSignDistinguishValues() {
+        Map<String, Object> data = Maps.newHashMap();
+        data.put("ids", List.of("a", "b"));
+        String sign = makeRequest(data).genRequestSign();
+        Assert.assertNotEquals(sign, makeRequest(Map.of("ids", List.of("b", "a"))).genRequestSign());
+        Assert.assertNotEquals(sign, makeRequest(Map.of("ids", List.of("ab"))).genRequestSign());
+        Assert.assertNotEquals(makeRequest(Map.of("id", 1)).genRequestSign(), makeRequest(Map.of("id", 1L)).genRequestSign());
+        Assert.assertNotEquals(makeRequest(Map.of("id", "1")).genRequestSign(), makeRequest(Map.of("id", 1)).genRequestSign());
+        ServiceRequest other = makeRequest(data);
+        other.setLimit(100);
+        Assert.assertNotEquals(sign, other.genRequestSign());
+        Assert.assertFalse(other.sameRequest(makeRequest(data)));
+        Assert.assertEquals(makeRequest(Map.of("bytes", new byte[]{1, 2})).genRequestSign(),
+                makeRequest(Map.of("bytes", new byte[]{1, 2})).genRequestSign());
+    }
+
+    @Test
+    public void TestSignInvalidatedOnUpdate() {
+        ServiceRequest request = makeRequest(Map.of("user", "u1"));
+        String sign = request.genRequestSign();
+        Assert.assertSame(sign, request.genRequestSign());
+        request.put("item", "i1");
+        String newSign = request.genRequestSign();
+        Assert.assertNotEquals(sign, newSign);
+        ServiceRequest copy = new ServiceRequest(Map.of());
+        copy.copy(request);
+        copy.setLimit(request.getLimit());
+        Assert.assertEquals(newSign, copy.genRequestSign());
+        Assert.assertTrue(copy.sameRequest(request));
+    }
+}
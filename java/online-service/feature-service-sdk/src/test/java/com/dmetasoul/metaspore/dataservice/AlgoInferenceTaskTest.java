@@ -0,0 +1,191 @@
+//
+// Copyright 2022 DMetaSoul
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package com.dmetasoul.metaspore.dataservice;
+
+import com.dmetasoul.metaspore.FeatureServiceManager;
+import com.dmetasoul.metaspore.configure.AlgoTransform;
+import com.dmetasoul.metaspore.serving.*;
+import com.google.common.collect.Lists;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.Status;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.FieldType;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+
+public class AlgoInferenceTaskTest {
+    private static final long LATENCY_MILLIS = 300;
+    private static final int POOL_SIZE = 2;
+    private static final int REQUESTS = 8;
+
+    private ScheduledExecutorService timer;
+    private ExecutorService taskPool;
+    private Server server;
+    private ManagedChannel channel;
+    private AlgoInferenceTask task;
+
+    /**
+     * 模拟模型服务， 延迟LATENCY_MILLIS后返回， 模型名为model-i时score为i， 按请求的tensor_encoding编码返回的tensor
+     */
+    class DelayedPredict extends PredictGrpc.PredictImplBase {
+        @Override
+        public void predict(PredictRequest request, StreamObserver<PredictReply> responseObserver) {
+            timer.schedule(() -> {
+                if (!request.getModelName().startsWith("model-")) {
+                    responseObserver.onError(Status.NOT_FOUND.withDescription(request.getModelName()).asRuntimeException());
+                    return;
+                }
+                float score = Float.parseFloat(request.getModelName().substring("model-".length()));
+                try {
+                    TensorEncoding encoding = TensorEncoding.fromName(request.getParametersMap().get(TensorEncoding.PARAMETER_KEY));
+                    ArrowTensor tensor = ArrowTensor.createFromFloatArray(new long[]{1, 1}, new float[]{score}, null, null, encoding);
+                    responseObserver.onNext(PredictReply.newBuilder()
+                            .putPayload("output", ArrowTensor.writeToByteString(tensor)).build());
+                    responseObserver.onCompleted();
+                } catch (IOException e) {
+                    responseObserver.onError(e);
+                }
+            }, LATENCY_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        timer = Executors.newScheduledThreadPool(1);
+        taskPool = Executors.newFixedThreadPool(POOL_SIZE);
+        String name = InProcessServerBuilder.generateName();
+        server = InProcessServerBuilder.forName(name).directExecutor().addService(new DelayedPredict()).build().start();
+        channel = InProcessChannelBuilder.forName(name).directExecutor().build();
+        task = new AlgoInferenceTask();
+        task.client = PredictGrpc.newStub(channel);
+    }
+
+    @After
+    public void tearDown() {
+        channel.shutdownNow();
+        server.shutdownNow();
+        taskPool.shutdownNow();
+        timer.shutdownNow();
+    }
+
+    private static List<FeatureTable> newFeatureTables() {
+        FeatureTable table = new FeatureTable("input", List.of(new Field("id", FieldType.nullable(new ArrowType.Int(64, true)), null)));
+        table.setLong(0, 1L, table.getVector("id"));
+        table.finish();
+        return Lists.newArrayList(table);
+    }
+
+    @Test
+    public void TestPredictNotBlockPool() {
+        long start = System.nanoTime();
+        List<CompletableFuture<Float>> futures = Lists.newArrayList();
+        for (int i = 0; i < REQUESTS; ++i) {
+            String model = "model-" + i;
+            futures.add(CompletableFuture.supplyAsync(() -> task.predictAsync(newFeatureTables(), model, "output"), taskPool)
+                    .thenCompose(future -> future)
+                    .thenApplyAsync(tensor -> tensor.getFloatData().getFloat(0, 0), taskPool));
+        }
+        for (int i = 0; i < REQUESTS; ++i) {
+            Assert.assertEquals(i, futures.get(i).join(), 0.0f);
+        }
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        // 同步等待时每个线程依次处理REQUESTS / POOL_SIZE个请求
+        Assert.assertTrue("elapsed " + elapsed, elapsed < LATENCY_MILLIS * REQUESTS / POOL_SIZE / 2);
+    }
+
+    @Test
+    public void TestStreamFallback() {
+        // 模拟的模型服务没有注册PredictStreaming服务， 超过chunkRows的请求回退为Predict
+        task.streamer = new PredictStreamer(channel, 1);
+        List<FeatureTable> featureTables = newFeatureTables();
+        featureTables.get(0).setLong(1, 2L, featureTables.get(0).getVector("id"));
+        Assert.assertTrue(task.streamer.shouldStream(featureTables));
+        Assert.assertEquals(3.0f, task.predictAsync(featureTables, "model-3", "output").join().getFloatData().getFloat(0, 0), 0.0f);
+        Assert.assertFalse(task.streamer.shouldStream(featureTables));
+    }
+
+    @Test
+    public void TestTensorEncoding() {
+        task.parameters = Map.of(TensorEncoding.PARAMETER_KEY, TensorEncoding.BFLOAT16.getName());
+        ArrowTensor tensor = task.predictAsync(newFeatureTables(), "model-0.1", "output").join();
+        Assert.assertTrue(tensor.isFloatTensor());
+        float expected = TensorEncoding.bfloat16ToFloat(TensorEncoding.floatToBfloat16(0.1f));
+        Assert.assertNotEquals(0.1f, expected, 0.0f);
+        Assert.assertEquals(expected, tensor.getFloatData().getFloat(0, 0), 0.0f);
+    }
+
+    @Test
+    public void TestPredictError() {
+        CompletableFuture<ArrowTensor> future = task.predictAsync(newFeatureTables(), "missing", "output");
+        CompletionException e = Assert.assertThrows(CompletionException.class, future::join);
+        Assert.assertEquals(Status.Code.NOT_FOUND, Status.fromThrowable(e.getCause()).getCode());
+        Assert.assertThrows(RuntimeException.class, () -> task.predict(newFeatureTables(), "missing", "output"));
+    }
+
+    private static AlgoInferenceTask initTask(FeatureServiceManager serviceManager, Map<String, Object> options) {
+        AlgoInferenceTask task = new AlgoInferenceTask();
+        task.serviceManager = serviceManager;
+        task.algoTransform = new AlgoTransform();
+        task.algoTransform.setOptions(options);
+        Assert.assertTrue(task.initTask());
+        return task;
+    }
+
+    @Test
+    public void TestServiceOptionsPerTask() throws Exception {
+        FeatureServiceManager serviceManager = new FeatureServiceManager();
+        try {
+            // 同一地址上的两个任务， 选项不同时各自使用自己的模型服务实例
+            AlgoInferenceTask plain = initTask(serviceManager, Map.of("host", "127.0.0.1", "port", 50000));
+            AlgoInferenceTask tuned = initTask(serviceManager, Map.of("host", "localhost", "port", 50000,
+                    "dictionaryEncode", true, "payloadFormat", "stream", "compression", "zstd",
+                    "batchMaxDelayMillis", 5L, "streamChunkRows", 100));
+            Assert.assertEquals(FeatureTableSerDe.Format.FILE, plain.serDeOptions.getFormat());
+            Assert.assertSame(FeatureTableSerDe.DictionaryOptions.DISABLED, plain.serDeOptions.getDictionary());
+            Assert.assertNull(plain.compression);
+            Assert.assertNull(plain.batcher);
+            Assert.assertNull(plain.streamer);
+            Assert.assertEquals(FeatureTableSerDe.Format.STREAM, tuned.serDeOptions.getFormat());
+            Assert.assertEquals(FeatureTableSerDe.DictionaryOptions.DEFAULT.getMaxCardinalityRatio(),
+                    tuned.serDeOptions.getDictionary().getMaxCardinalityRatio(), 0.0);
+            Assert.assertNotNull(tuned.compression);
+            Assert.assertNotNull(tuned.batcher);
+            Assert.assertEquals(100, tuned.streamer.getChunkRows());
+            Assert.assertEquals(2, serviceManager.getRelyServices().size());
+
+            // 地址和选项都相同时共享同一个实例
+            AlgoInferenceTask shared = initTask(serviceManager, Map.of("host", "127.0.0.1", "port", 50000,
+                    "dictionaryEncode", true, "payloadFormat", "stream", "compression", "zstd",
+                    "batchMaxDelayMillis", 5L, "streamChunkRows", 100));
+            Assert.assertSame(tuned.batcher, shared.batcher);
+            Assert.assertEquals(2, serviceManager.getRelyServices().size());
+        } finally {
+            serviceManager.close();
+        }
+    }
+}
@@ -0,0 +1,241 @@
+//
+// Copyright 2022 DMetaSoul
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package com.dmetasoul.metaspore.dataservice;
+
+import com.dmetasoul.metaspore.FeatureServiceManager;
+import com.dmetasoul.metaspore.configure.Chain;
+import com.dmetasoul.metaspore.data.DataContext;
+import com.dmetasoul.metaspore.data.DataResult;
+import com.dmetasoul.metaspore.data.ServiceRequest;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class DataServiceTest {
+    private ExecutorService workFlowPool;
+    private FeatureServiceManager serviceManager;
+
+    static class LeafTask extends DataService {
+        final AtomicInteger calls = new AtomicInteger();
+        final AtomicBoolean fail = new AtomicBoolean();
+        final AtomicLong finishNanos = new AtomicLong();
+        volatile long sleepMillis;
+
+        @Override
+        protected boolean initService() {
+            return true;
+        }
+
+        @Override
+        protected DataResult process(ServiceRequest request, DataContext context) {
+            calls.incrementAndGet();
+            if (sleepMillis > 0) {
+                try {
+                    Thread.sleep(sleepMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            finishNanos.set(System.nanoTime());
+            if (fail.get()) {
+                return null;
+            }
+            return setDataResult(Maps.<String, List<Object>>newHashMap());
+        }
+    }
+
+    static class ParentTask extends DataService {
+        @Override
+        protected boolean initService() {
+            depend = new Chain(null, Lists.newArrayList("a", "b"), false);
+            return true;
+        }
+
+        @Override
+        protected DataResult process(ServiceRequest request, DataContext context) {
+            Assert.assertNotNull(getDataResultByName("a", context));
+            Assert.assertNotNull(getDataResultByName("b", context));
+            return setDataResult(Maps.<String, List<Object>>newHashMap());
+        }
+    }
+
+    /**
+     * a, b 并行执行， c 只依赖 b
+     */
+    static class GraphTask extends DataService {
+        ExecutionState lastState;
+
+        @Override
+        protected boolean initService() {
+            return true;
+        }
+
+        @Override
+        protected ExecutionPlan compilePlan() {
+            ExecutionPlan.Builder builder = ExecutionPlan.builder(executeNum);
+            builder.addTask("a");
+            int b = builder.addTask("b");
+            builder.addTask("c", b);
+            return builder.build();
+        }
+
+        @Override
+        protected ExecutionState newExecutionState() {
+            lastState = super.newExecutionState();
+            return lastState;
+        }
+
+        @Override
+        protected DataResult process(ServiceRequest request, DataContext context) {
+            return setDataResult(Maps.<String, List<Object>>newHashMap());
+        }
+    }
+
+    private LeafTask leafA;
+    private LeafTask leafB;
+    private LeafTask leafC;
+    private ParentTask parent;
+
+    @Before
+    public void setUp() {
+        workFlowPool = Executors.newFixedThreadPool(8);
+        serviceManager = new FeatureServiceManager();
+        leafA = new LeafTask();
+        leafB = new LeafTask();
+        leafC = new LeafTask();
+        parent = new ParentTask();
+        Assert.assertTrue(leafA.init("a", null, serviceManager, workFlowPool));
+        Assert.assertTrue(leafB.init("b", null, serviceManager, workFlowPool));
+        Assert.assertTrue(leafC.init("c", null, serviceManager, workFlowPool));
+        Assert.assertTrue(parent.init("parent", null, serviceManager, workFlowPool));
+        serviceManager.addDataService("a", leafA);
+        serviceManager.addDataService("b", leafB);
+        serviceManager.addDataService("c", leafC);
+        serviceManager.addDataService("parent", parent);
+    }
+
+    @After
+    public void tearDown() {
+        workFlowPool.shutdownNow();
+    }
+
+    @Test
+    public void TestPlanIsImmutable() {
+        ExecutionPlan plan = parent.getPlan();
+        Assert.assertEquals(1, plan.getChains().size());
+        Assert.assertEquals(List.of("a", "b"), plan.getChains().get(0).getWhen());
+        Assert.assertThrows(UnsupportedOperationException.class, () -> plan.getChains().add(new Chain("c")));
+        Assert.assertThrows(UnsupportedOperationException.class, () -> plan.getChains().get(0).getWhen().add("c"));
+        parent.getDepend().getWhen().add("c");
+        Assert.assertEquals(List.of("a", "b"), plan.getChains().get(0).getWhen());
+    }
+
+    @Test
+    public void TestConcurrentRequests() throws Exception {
+        ExecutorService callers = Executors.newFixedThreadPool(16);
+        try {
+            List<Future<DataResult>> futures = Lists.newArrayList();
+            for (int i = 0; i < 200; ++i) {
+                futures.add(callers.submit(() -> parent.execute(new DataContext())));
+            }
+            for (Future<DataResult> future : futures) {
+                Assert.assertNotNull(future.get());
+            }
+        } finally {
+            callers.shutdownNow();
+        }
+        Assert.assertEquals(200, leafA.calls.get());
+        Assert.assertEquals(200, leafB.calls.get());
+    }
+
+    @Test
+    public void TestFailedRequestNotAffectNext() {
+        leafB.fail.set(true);
+        Assert.assertThrows(RuntimeException.class, () -> parent.execute(new DataContext()));
+        int failedCalls = leafB.calls.get();
+        Assert.assertTrue(failedCalls > 1);
+        leafB.fail.set(false);
+        Assert.assertNotNull(parent.execute(new DataContext()));
+        Assert.assertEquals(failedCalls + 1, leafB.calls.get());
+    }
+
+    @Test
+    public void TestThenAndAnyChains() {
+        ExecutionPlan plan = ExecutionPlan.builder(1)
+                .addChain(new Chain(List.of("a", "b"), null, false))
+                .addChain(new Chain(null, List.of("b", "c"), true))
+                .build();
+        // a -> b, 汇合, when(b, c)的any汇合, 汇合
+        Assert.assertEquals(7, plan.getNodes().size());
+        Assert.assertEquals(6, plan.getSink());
+        leafC.fail.set(true);
+        leafC.sleepMillis = 50;
+        ExecutionState state = new ExecutionState(plan);
+        Assert.assertTrue(state.run(parent, new ServiceRequest(new DataContext()), new DataContext()));
+        Assert.assertTrue(leafA.finishNanos.get() <= state.getStartNanos(1));
+    }
+
+    @Test
+    public void TestStartWhenInputsReady() {
+        GraphTask graph = new GraphTask();
+        Assert.assertTrue(graph.init("graph", null, serviceManager, workFlowPool));
+        serviceManager.addDataService("graph", graph);
+        leafA.sleepMillis = 200;
+        Assert.assertNotNull(graph.execute(new DataContext()));
+        // c 在 b 完成后立即执行， 不等待并行的 a
+        Assert.assertTrue(leafC.finishNanos.get() < leafA.finishNanos.get());
+        ExecutionState state = graph.lastState;
+        Assert.assertEquals(List.of(0), state.getCriticalPath());
+        Assert.assertTrue(state.getFinishNanos(0) - state.getStartNanos(0) >= TimeUnit.MILLISECONDS.toNanos(200));
+        Assert.assertTrue(state.reportCriticalPath().startsWith("a("));
+    }
+
+    @Test
+    public void TestWhenTimeOut() {
+        ExecutionPlan plan = ExecutionPlan.builder(1)
+                .addChain(new Chain(null, List.of("a", "b"), false, 50L, TimeUnit.MILLISECONDS))
+                .build();
+        leafA.sleepMillis = 1000;
+        long start = System.nanoTime();
+        Assert.assertFalse(new ExecutionState(plan).run(parent, new ServiceRequest(new DataContext()), new DataContext()));
+        Assert.assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(900));
+    }
+
+    @Test
+    public void TestTimeOutCancelledWhenDone() {
+        ExecutionPlan plan = ExecutionPlan.builder(1)
+                .addChain(new Chain(null, List.of("a", "b"), false, 30L, TimeUnit.SECONDS))
+                .build();
+        int pending = ExecutionState.pendingTimeouts();
+        for (int i = 0; i < 100; ++i) {
+            Assert.assertTrue(new ExecutionState(plan).run(parent, new ServiceRequest(new DataContext()), new DataContext()));
+        }
+        // 执行结束后定时器已取消并移出队列， 不再持有请求状态
+        Assert.assertEquals(pending, ExecutionState.pendingTimeouts());
+    }
+}
@@ -0,0 +1,96 @@
+//
+// Copyright 2022 DMetaSoul
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package com.dmetasoul.metaspore.operator;
+
+import com.dmetasoul.metaspore.enums.JoinTypeEnum;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import org.apache.commons.lang3.tuple.Pair;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * FeatureTask原有的嵌套循环join实现， 作为HashJoin的对照
+ */
+public class NestedLoopJoin {
+
+    public static List<Pair<Integer, Integer>> join(List<Object> joinedData, List<Object> tableData, JoinTypeEnum type) {
+        List<Pair<Integer, Integer>> indexList = Lists.newArrayList();
+        for (int j = 0; j < tableData.size(); ++j) {
+            boolean noHit = true;
+            for (int i = 0; i < joinedData.size(); ++i) {
+                if (joinedData.get(i) != null && joinedData.get(i).equals(tableData.get(j))) {
+                    if (type == JoinTypeEnum.LEFT) {
+                        indexList.add(Pair.of(i, j));
+                    }
+                    noHit = false;
+                }
+            }
+            if (noHit && (type == JoinTypeEnum.LEFT || type == JoinTypeEnum.FULL)) {
+                indexList.add(Pair.of(null, j));
+            }
+        }
+        for (int i = 0; i < joinedData.size(); ++i) {
+            boolean noHit = true;
+            for (int j = 0; j < tableData.size(); ++j) {
+                if (joinedData.get(i) != null && joinedData.get(i).equals(tableData.get(j))) {
+                    if (type != JoinTypeEnum.LEFT) {
+                        indexList.add(Pair.of(i, j));
+                    }
+                    noHit = false;
+                }
+            }
+            if (noHit && (type == JoinTypeEnum.RIGHT || type == JoinTypeEnum.FULL)) {
+                indexList.add(Pair.of(i, null));
+            }
+        }
+        return indexList;
+    }
+
+    /**
+     * 多个条件依次join并对结果求交集
+     */
+    public static List<Pair<Integer, Integer>> join(List<List<Object>> joinedKeys, List<List<Object>> tableKeys, List<JoinTypeEnum> types) {
+        Set<Pair<Integer, Integer>> indexSet = Sets.newHashSet();
+        List<Pair<Integer, Integer>> indexResult = Lists.newArrayList();
+        for (int k = 0; k < types.size(); ++k) {
+            List<Pair<Integer, Integer>> indexList = join(joinedKeys.get(k), tableKeys.get(k), types.get(k));
+            indexResult.clear();
+            if (indexSet.isEmpty()) {
+                indexSet.addAll(indexList);
+            }
+            for (Pair<Integer, Integer> item : indexList) {
+                if (indexSet.contains(item)) {
+                    indexResult.add(item);
+                }
+            }
+            indexSet.clear();
+            indexSet.addAll(indexResult);
+        }
+        return indexResult;
+    }
+
+    public static List<Pair<Integer, Integer>> decode(long[] pairs) {
+        List<Pair<Integer, Integer>> result = Lists.newArrayListWithCapacity(pairs.length);
+        for (long pair : pairs) {
+            int i = HashJoin.joinedIndex(pair);
+            int j = HashJoin.tableIndex(pair);
+            result.add(Pair.of(i == HashJoin.NULL_INDEX ? null : i, j == HashJoin.NULL_INDEX ? null : j));
+        }
+        return result;
+    }
+}
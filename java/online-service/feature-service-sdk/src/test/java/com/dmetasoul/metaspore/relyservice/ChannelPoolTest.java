@@ -0,0 +1,192 @@
+//
+// Copyright 2022 DMetaSoul
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package com.dmetasoul.metaspore.relyservice;
+
+import com.dmetasoul.metaspore.serving.PayloadCompression;
+import com.dmetasoul.metaspore.serving.PredictGrpc;
+import com.dmetasoul.metaspore.serving.PredictReply;
+import com.dmetasoul.metaspore.serving.PredictRequest;
+import com.google.common.collect.Lists;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+import org.apache.arrow.vector.compression.CompressionUtil;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ChannelPoolTest {
+    private static final int REPLICAS = 3;
+
+    private final List<Replica> replicas = Lists.newArrayList();
+    private final List<Server> servers = Lists.newArrayList();
+    private final List<ManagedChannel> channels = Lists.newArrayList();
+
+    /**
+     * 模拟一个serving副本， hold为true时请求一直不返回， advertise为true时声明支持压缩的请求
+     */
+    static class Replica extends PredictGrpc.PredictImplBase {
+        final AtomicInteger calls = new AtomicInteger();
+        final List<StreamObserver<PredictReply>> held = new CopyOnWriteArrayList<>();
+        volatile boolean hold;
+        volatile boolean advertise;
+
+        @Override
+        public void predict(PredictRequest request, StreamObserver<PredictReply> responseObserver) {
+            calls.incrementAndGet();
+            if (hold) {
+                held.add(responseObserver);
+                return;
+            }
+            responseObserver.onNext(advertise
+                    ? PredictReply.newBuilder().putExtras(PayloadCompression.ACCEPT_KEY, PayloadCompression.acceptedCodecs()).build()
+                    : PredictReply.getDefaultInstance());
+            responseObserver.onCompleted();
+        }
+
+        void release() {
+            hold = false;
+            for (StreamObserver<PredictReply> observer : held) {
+                observer.onNext(PredictReply.getDefaultInstance());
+                observer.onCompleted();
+            }
+            held.clear();
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        for (int i = 0; i < REPLICAS; ++i) {
+            Replica replica = new Replica();
+            String name = InProcessServerBuilder.generateName();
+            servers.add(InProcessServerBuilder.forName(name).directExecutor().addService(replica).build().start());
+            channels.add(InProcessChannelBuilder.forName(name).directExecutor().build());
+            replicas.add(replica);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        channels.forEach(ManagedChannel::shutdownNow);
+        servers.forEach(Server::shutdownNow);
+    }
+
+    @Test
+    public void TestSpreadAcrossReplicas() {
+        for (ChannelPool.Policy policy : ChannelPool.Policy.values()) {
+            replicas.forEach(replica -> replica.calls.set(0));
+            ChannelPool pool = new ChannelPool(channels, policy);
+            PredictGrpc.PredictBlockingStub stub = PredictGrpc.newBlockingStub(pool);
+            for (int i = 0; i < 300; ++i) {
+                stub.predict(PredictRequest.getDefaultInstance());
+            }
+            for (int i = 0; i < REPLICAS; ++i) {
+                Assert.assertTrue(policy + " replica " + i, replicas.get(i).calls.get() > 50);
+                Assert.assertEquals(0, pool.getOutstanding(i));
+            }
+        }
+    }
+
+    @Test
+    public void TestAvoidBusyReplica() {
+        for (ChannelPool.Policy policy : ChannelPool.Policy.values()) {
+            replicas.forEach(replica -> replica.calls.set(0));
+            Replica busy = replicas.get(0);
+            busy.hold = true;
+            ChannelPool pool = new ChannelPool(channels, policy);
+            PredictGrpc.PredictStub stub = PredictGrpc.newStub(pool);
+            AtomicInteger replies = new AtomicInteger();
+            for (int i = 0; i < 30; ++i) {
+                stub.predict(PredictRequest.getDefaultInstance(), new StreamObserver<>() {
+                    @Override
+                    public void onNext(PredictReply value) {
+                        replies.incrementAndGet();
+                    }
+
+                    @Override
+                    public void onError(Throwable t) {
+                    }
+
+                    @Override
+                    public void onCompleted() {
+                    }
+                });
+            }
+            // 有未完成请求的副本不再被选中
+            Assert.assertTrue(policy + " busy calls " + busy.calls.get(), busy.calls.get() <= 1);
+            Assert.assertEquals(busy.calls.get(), pool.getOutstanding(0));
+            busy.release();
+            Assert.assertEquals(30, replies.get());
+            Assert.assertEquals(0, pool.getOutstanding(0));
+        }
+    }
+
+    @Test
+    public void TestModelServingServicePool() {
+        Map<String, Object> option = Map.of("hosts", "127.0.0.1:50001, localhost:50002", "channelsPerHost", 2);
+        Assert.assertEquals("modelserving_127.0.0.1:50001,127.0.0.1:50002?channelsPerHost=2", ModelServingService.genKey(option));
+        ModelServingService service = new ModelServingService();
+        service.init(option);
+        Assert.assertTrue(service.getChannel() instanceof ChannelPool);
+        Assert.assertEquals(4, ((ChannelPool) service.getChannel()).getChannels().size());
+        Assert.assertEquals(2, service.getReplicaChannels().size());
+        service.close();
+        Assert.assertTrue(service.getChannel().isShutdown());
+
+        ModelServingService single = new ModelServingService();
+        single.init(Map.of("host", "127.0.0.1", "port", 50003));
+        Assert.assertFalse(single.getChannel() instanceof ChannelPool);
+        single.close();
+    }
+
+    @Test
+    public void TestCompressionNegotiatedPerReplica() {
+        PayloadCompression compression = new PayloadCompression(CompressionUtil.CodecType.ZSTD, 0, REPLICAS);
+        ChannelPool pool = new ChannelPool(channels, List.of(0, 1, 2), ChannelPool.Policy.P2C, compression::interceptor);
+        PredictGrpc.PredictBlockingStub stub = PredictGrpc.newBlockingStub(pool);
+        // 滚动升级中只有部分副本支持时， 请求可能发往旧版副本， 不压缩
+        replicas.get(0).advertise = true;
+        replicas.get(1).advertise = true;
+        for (int i = 0; i < 100; ++i) {
+            compression.onReply(stub.predict(PredictRequest.getDefaultInstance()));
+        }
+        Assert.assertTrue(compression.isServerAccepts(0));
+        Assert.assertTrue(compression.isServerAccepts(1));
+        Assert.assertFalse(compression.isServerAccepts());
+        Assert.assertEquals(CompressionUtil.CodecType.NO_COMPRESSION, compression.chooseCodec(1 << 20));
+        replicas.get(2).advertise = true;
+        for (int i = 0; i < 100; ++i) {
+            stub.predict(PredictRequest.getDefaultInstance());
+        }
+        Assert.assertTrue(compression.isServerAccepts());
+        Assert.assertEquals(CompressionUtil.CodecType.ZSTD, compression.chooseCodec(1 << 20));
+        // 副本回退到旧版后停止压缩
+        replicas.get(1).advertise = false;
+        for (int i = 0; i < 100; ++i) {
+            stub.predict(PredictRequest.getDefaultInstance());
+        }
+        Assert.assertFalse(compression.isServerAccepts());
+    }
+}
@@ -0,0 +1,186 @@
+//
+// Copyright 2022 DMetaSoul
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package com.dmetasoul.metaspore.relyservice;
+
+import com.dmetasoul.metaspore.serving.*;
+import com.google.common.collect.Lists;
+import io.grpc.Server;
+import io.grpc.netty.shaded.io.grpc.netty.NettyServerBuilder;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class HedgedPredictTest {
+    private static final long SLOW_MILLIS = 300;
+
+    private ScheduledExecutorService timer;
+    private final List<Server> servers = Lists.newArrayList();
+    private final AtomicInteger cancelled = new AtomicInteger();
+    private final AtomicInteger received = new AtomicInteger();
+
+    /**
+     * 模拟serving副本， 大部分请求1~3ms返回， slowRatio的请求slowMillis后返回
+     */
+    class RandomDelayPredict extends PredictGrpc.PredictImplBase {
+        private final Random random;
+        private final double slowRatio;
+        private final long slowMillis;
+
+        RandomDelayPredict(long seed, double slowRatio, long slowMillis) {
+            this.random = new Random(seed);
+            this.slowRatio = slowRatio;
+            this.slowMillis = slowMillis;
+        }
+
+        @Override
+        public void predict(PredictRequest request, StreamObserver<PredictReply> responseObserver) {
+            received.incrementAndGet();
+            ServerCallStreamObserver<PredictReply> observer = (ServerCallStreamObserver<PredictReply>) responseObserver;
+            observer.setOnCancelHandler(cancelled::incrementAndGet);
+            long delay;
+            synchronized (random) {
+                delay = random.nextDouble() < slowRatio ? slowMillis : 1 + random.nextInt(3);
+            }
+            timer.schedule(() -> {
+                if (observer.isCancelled()) {
+                    return;
+                }
+                try {
+                    ArrowTensor tensor = ArrowTensor.createFromFloatArray(new long[]{1, 1}, new float[]{1.0f}, null, null);
+                    observer.onNext(PredictReply.newBuilder().putPayload("output", ArrowTensor.writeToByteString(tensor)).build());
+                    observer.onCompleted();
+                } catch (IOException e) {
+                    observer.onError(e);
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Before
+    public void setUp() {
+        timer = Executors.newScheduledThreadPool(2);
+    }
+
+    @After
+    public void tearDown() {
+        servers.forEach(Server::shutdownNow);
+        timer.shutdownNow();
+    }
+
+    private String startServer(long seed, double slowRatio) throws IOException {
+        return startServer(seed, slowRatio, SLOW_MILLIS);
+    }
+
+    private String startServer(long seed, double slowRatio, long slowMillis) throws IOException {
+        Server server = NettyServerBuilder.forPort(0).addService(new RandomDelayPredict(seed, slowRatio, slowMillis)).build().start();
+        servers.add(server);
+        return "127.0.0.1:" + server.getPort();
+    }
+
+    private long[] runCalls(ModelServingService service, int count) {
+        PredictRequest request = PredictRequest.newBuilder().setModelName("model").build();
+        long[] latency = new long[count];
+        for (int i = 0; i < count; ++i) {
+            long start = System.nanoTime();
+            CompletableFuture<Map<String, ArrowTensor>> future = service.getHedger() != null
+                    ? service.getHedger().predictAsync(request)
+                    : ServingClient.predictAsync(PredictGrpc.newStub(service.getChannel()), request);
+            Assert.assertEquals(1.0f, future.join().get("output").getFloatData().getFloat(0), 0.0f);
+            latency[i] = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        }
+        return latency;
+    }
+
+    private static long percentile(long[] latency, double percentile) {
+        long[] sorted = latency.clone();
+        Arrays.sort(sorted);
+        return sorted[(int) Math.ceil(percentile / 100.0 * sorted.length) - 1];
+    }
+
+    @Test
+    public void TestHedgeCutsTail() throws Exception {
+        String hosts = startServer(1L, 0.05) + "," + startServer(2L, 0.05);
+        ModelServingService plain = new ModelServingService();
+        plain.init(Map.of("hosts", hosts));
+        ModelServingService hedged = new ModelServingService();
+        hedged.init(Map.of("hosts", hosts, "hedgePercentile", 90, "hedgeBudget", 0.2));
+        try {
+            long[] plainLatency = runCalls(plain, 200);
+            // 预热， 积累足够的耗时样本
+            runCalls(hedged, PredictHedger.MIN_SAMPLES * 2);
+            long hedgesBefore = hedged.getHedger().getHedgeCount();
+            long[] hedgedLatency = runCalls(hedged, 200);
+            long hedges = hedged.getHedger().getHedgeCount() - hedgesBefore;
+            Assert.assertTrue(percentile(plainLatency, 99) >= SLOW_MILLIS);
+            Assert.assertTrue("p99 " + percentile(hedgedLatency, 99), percentile(hedgedLatency, 99) < SLOW_MILLIS / 2);
+            Assert.assertTrue(hedged.getHedger().getDelayNanos() > 0);
+            // 对冲请求数受budget限制
+            Assert.assertTrue("hedges " + hedges, hedges > 0 && hedges <= 200 * 0.2 + 10);
+            // 较慢的请求被取消
+            for (int i = 0; i < 100 && cancelled.get() == 0; ++i) {
+                Thread.sleep(10);
+            }
+            Assert.assertTrue(cancelled.get() > 0);
+        } finally {
+            plain.close();
+            hedged.close();
+        }
+    }
+
+    @Test
+    public void TestBudgetLimitsHedges() throws Exception {
+        String hosts = startServer(3L, 0.0) + "," + startServer(4L, 0.0);
+        ModelServingService hedged = new ModelServingService();
+        hedged.init(Map.of("hosts", hosts, "hedgePercentile", 50, "hedgeBudget", 0.0));
+        try {
+            runCalls(hedged, 300);
+            // budget为0时只能使用初始的令牌
+            Assert.assertTrue(hedged.getHedger().getHedgeCount() <= 10);
+            Assert.assertTrue(received.get() >= 300);
+        } finally {
+            hedged.close();
+        }
+    }
+
+    @Test
+    public void TestDelayNotBiasedByHedges() throws Exception {
+        // 大部分请求较慢时， 对冲的请求通常先返回， 只记录获胜请求自身的耗时会让对冲等待时间缩短到最小值
+        String hosts = startServer(5L, 0.6, 40) + "," + startServer(6L, 0.6, 40);
+        ModelServingService hedged = new ModelServingService();
+        hedged.init(Map.of("hosts", hosts, "hedgePercentile", 50, "hedgeBudget", 1.0));
+        try {
+            runCalls(hedged, PredictHedger.MIN_SAMPLES * 6);
+            Assert.assertTrue("delay " + hedged.getHedger().getDelayNanos(),
+                    hedged.getHedger().getDelayNanos() >= TimeUnit.MILLISECONDS.toNanos(25));
+        } finally {
+            hedged.close();
+        }
+    }
+}
@@ -0,0 +1,120 @@
+//
+// Copyright 2022 DMetaSoul
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package com.dmetasoul.metaspore.relyservice;
+
+import com.dmetasoul.metaspore.serving.ArrowTensor;
+import com.dmetasoul.metaspore.serving.PredictGrpc;
+import com.dmetasoul.metaspore.serving.PredictReply;
+import com.dmetasoul.metaspore.serving.PredictRequest;
+import com.dmetasoul.metaspore.serving.ServingClient;
+import io.grpc.Server;
+import io.grpc.netty.shaded.io.grpc.netty.NettyServerBuilder;
+import io.grpc.netty.shaded.io.netty.channel.EventLoopGroup;
+import io.grpc.netty.shaded.io.netty.channel.epoll.Epoll;
+import io.grpc.netty.shaded.io.netty.channel.epoll.EpollEventLoopGroup;
+import io.grpc.netty.shaded.io.netty.channel.epoll.EpollServerDomainSocketChannel;
+import io.grpc.netty.shaded.io.netty.channel.unix.DomainSocketAddress;
+import io.grpc.stub.StreamObserver;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+public class UnixSocketTest {
+    private Path dir;
+    private EventLoopGroup group;
+    private Server server;
+    private String socket;
+
+    /**
+     * 返回score为1的tensor
+     */
+    static class ConstantPredict extends PredictGrpc.PredictImplBase {
+        @Override
+        public void predict(PredictRequest request, StreamObserver<PredictReply> responseObserver) {
+            try {
+                ArrowTensor tensor = ArrowTensor.createFromFloatArray(new long[]{1, 1}, new float[]{1.0f}, null, null);
+                responseObserver.onNext(PredictReply.newBuilder().putPayload("output", ArrowTensor.writeToByteString(tensor)).build());
+                responseObserver.onCompleted();
+            } catch (IOException e) {
+                responseObserver.onError(e);
+            }
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        Assume.assumeTrue(Epoll.isAvailable());
+        dir = Files.createTempDirectory("serving");
+        socket = dir.resolve("serving.sock").toString();
+        group = new EpollEventLoopGroup(1);
+        server = NettyServerBuilder.forAddress(new DomainSocketAddress(socket))
+                .channelType(EpollServerDomainSocketChannel.class)
+                .bossEventLoopGroup(group)
+                .workerEventLoopGroup(group)
+                .addService(new ConstantPredict())
+                .build().start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (server != null) {
+            server.shutdownNow();
+            group.shutdownGracefully();
+            Files.deleteIfExists(Path.of(socket));
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    private static float predict(ModelServingService service) {
+        PredictRequest request = PredictRequest.newBuilder().setModelName("model").build();
+        return ServingClient.predictAsync(PredictGrpc.newStub(service.getChannel()), request)
+                .join().get("output").getFloatData().getFloat(0);
+    }
+
+    @Test
+    public void TestPredictOverUnixSocket() {
+        Map<String, Object> option = Map.of("unixSocket", socket);
+        Assert.assertEquals("modelserving_unix:" + socket, ModelServingService.genKey(option));
+        Assert.assertEquals(List.of("unix:" + socket), ModelServingService.getHosts(option));
+        ModelServingService service = new ModelServingService();
+        service.init(option);
+        try {
+            Assert.assertEquals(1.0f, predict(service), 0.0f);
+        } finally {
+            service.close();
+        }
+
+        // hosts中也可以配置unix socket地址， 与tcp地址一样组成ChannelPool
+        ModelServingService pool = new ModelServingService();
+        pool.init(Map.of("hosts", List.of("unix:" + socket), "channelsPerHost", 2));
+        try {
+            Assert.assertTrue(pool.getChannel() instanceof ChannelPool);
+            for (int i = 0; i < 4; ++i) {
+                Assert.assertEquals(1.0f, predict(pool), 0.0f);
+            }
+        } finally {
+            pool.close();
+        }
+    }
+}
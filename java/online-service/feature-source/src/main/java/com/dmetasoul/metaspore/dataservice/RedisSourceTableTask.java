@@ -39,11 +39,16 @@ import java.util.Map;
 @Slf4j
 @FeatureAnnotation("RedisSourceTable")
 public class RedisSourceTableTask extends SourceTableTask {
+    public static final int DEFAULT_BATCH_SIZE = 100;
 
     private RedisSource dataSource;
     private String columnKey;
     private String keyFormat;
     private RedisTypeEnum redisType;
+    /**
+     * 单次redis请求（MGET或pipeline）中包含的key的最大数量
+     */
+    private int batchSize;
 
     @Override
     public boolean initService() {
@@ -60,15 +65,18 @@ public class RedisSourceTableTask extends SourceTableTask {
         columnKey = columnNames.get(0);
         redisType = RedisTypeEnum.getEnumByName(getOptionOrDefault("redisType", "hash"));
         redisType.init(keyFormat, dataSource.getRedisTemplate(), columnNames);
+        batchSize = getOptionOrDefault("batchSize", DEFAULT_BATCH_SIZE);
         return true;
     }
 
     @SuppressWarnings("rawtypes")
     private void fillDataList(Object value, List<Map<String, Object>> list, int limit) {
         if (value instanceof Collection) {
+            List<String> keys = Lists.newArrayListWithCapacity(((Collection) value).size());
             for (Object item : (Collection) value) {
-                list.addAll(redisType.process(String.valueOf(item), limit));
+                keys.add(String.valueOf(item));
             }
+            list.addAll(redisType.process(keys, limit, batchSize));
         } else {
             list.addAll(redisType.process(String.valueOf(value), limit));
         }
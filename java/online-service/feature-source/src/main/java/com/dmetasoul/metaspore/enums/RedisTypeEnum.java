@@ -22,8 +22,12 @@ import com.google.gson.JsonParser;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
 import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.lang.NonNull;
 
 import java.util.List;
 import java.util.Map;
@@ -33,24 +37,37 @@ import java.util.Set;
 public enum RedisTypeEnum {
     VALUE(0, "value", new RedisOpsFor<>() {
         @Override
-        protected Object ops(String key, int limit) {
-            return redisTemplate.opsForValue().get(getRedisKey(key));
+        protected Object ops(RedisOperations<String, Object> operations, String key, int limit) {
+            return operations.opsForValue().get(getRedisKey(key));
         }
 
         @Override
-        protected List<Map<String, Object>> process(String key, int limit) {
-            return List.of(getMap(key, ops(key, limit)));
+        protected List<Map<String, Object>> convert(String key, Object value) {
+            return List.of(getMap(key, value));
+        }
+
+        /**
+         * value类型直接使用MGET批量获取
+         */
+        @Override
+        protected List<Object> batchOps(List<String> keys, int limit) {
+            List<String> redisKeys = Lists.newArrayListWithCapacity(keys.size());
+            for (String key : keys) {
+                redisKeys.add(getRedisKey(key));
+            }
+            return redisTemplate.opsForValue().multiGet(redisKeys);
         }
     }),
     HASH(1, "hash", new RedisOpsFor<Map<String, Object>>() {
+        @SuppressWarnings("unchecked")
         @Override
-        protected Map ops(String key, int limit) {
-            return redisTemplate.opsForHash().entries(getRedisKey(key));
+        protected Map ops(RedisOperations<String, Object> operations, String key, int limit) {
+            return operations.opsForHash().entries(getRedisKey(key));
         }
 
         @Override
-        protected List<Map<String, Object>> process(String key, int limit) {
-            Map<String, Object> map = getMap(key, ops(key, limit));
+        protected List<Map<String, Object>> convert(String key, Map<String, Object> value) {
+            Map<String, Object> map = getMap(key, value);
             map.put(columnNames.get(0), key);
             for (int i = 1; i < columnNames.size(); ++i) {
                 String col = columnNames.get(i);
@@ -61,51 +78,54 @@ public enum RedisTypeEnum {
     }),
     LIST(2, "list", new RedisOpsFor<List>() {
         @Override
-        protected List ops(String key, int limit) {
-            return redisTemplate.opsForList().range(getRedisKey(key), 0, limit);
+        protected List ops(RedisOperations<String, Object> operations, String key, int limit) {
+            return operations.opsForList().range(getRedisKey(key), 0, limit);
         }
 
         @Override
-        protected List<Map<String, Object>> process(String key, int limit) {
+        protected List<Map<String, Object>> convert(String key, List value) {
             List<Map<String, Object>> data = Lists.newArrayList();
-            for (Object value : ops(key, limit)) {
-                data.add(getMap(key, value));
+            if (value == null) return data;
+            for (Object item : value) {
+                data.add(getMap(key, item));
             }
             return data;
         }
     }),
     SET(3, "set", new RedisOpsFor<Set>() {
         @Override
-        protected Set ops(String key, int limit) {
-            return redisTemplate.opsForSet().members(getRedisKey(key));
+        protected Set ops(RedisOperations<String, Object> operations, String key, int limit) {
+            return operations.opsForSet().members(getRedisKey(key));
         }
 
         @Override
-        protected List<Map<String, Object>> process(String key, int limit) {
+        protected List<Map<String, Object>> convert(String key, Set value) {
             List<Map<String, Object>> data = Lists.newArrayList();
-            for (Object value : ops(key, limit)) {
-                data.add(getMap(key, value));
+            if (value == null) return data;
+            for (Object item : value) {
+                data.add(getMap(key, item));
             }
             return data;
         }
     }),
     ZSET(4, "zset", new RedisOpsFor<Set<ZSetOperations.TypedTuple<Object>>>() {
         @Override
-        protected Set<ZSetOperations.TypedTuple<Object>> ops(String key, int limit) {
-            return redisTemplate.opsForZSet().rangeWithScores(getRedisKey(key), 0, limit);
+        protected Set<ZSetOperations.TypedTuple<Object>> ops(RedisOperations<String, Object> operations, String key, int limit) {
+            return operations.opsForZSet().rangeWithScores(getRedisKey(key), 0, limit);
         }
 
         @Override
-        protected List<Map<String, Object>> process(String key, int limit) {
+        protected List<Map<String, Object>> convert(String key, Set<ZSetOperations.TypedTuple<Object>> value) {
             List<Map<String, Object>> data = Lists.newArrayList();
-            for (ZSetOperations.TypedTuple<Object> value : ops(key, limit)) {
+            if (value == null) return data;
+            for (ZSetOperations.TypedTuple<Object> item : value) {
                 Map<String, Object> map = Maps.newHashMap();
                 map.put(columnNames.get(0), key);
                 if (columnNames.size() > 1) {
-                    map.put(columnNames.get(1), value.getValue());
+                    map.put(columnNames.get(1), item.getValue());
                 }
                 if (columnNames.size() > 2) {
-                    map.put(columnNames.get(2), value.getScore());
+                    map.put(columnNames.get(2), item.getScore());
                 }
                 data.add(map);
             }
@@ -137,6 +157,16 @@ public enum RedisTypeEnum {
         return ops.process(key, limit);
     }
 
+    /**
+     * 批量获取多个key的数据， 每batchSize个key合并为一次redis请求（MGET或pipeline）， 结果按keys的顺序排列
+     */
+    public List<Map<String, Object>> process(List<String> keys, int limit, int batchSize) {
+        if (!ops.isInit) {
+            throw new RuntimeException("redis ops is not init!");
+        }
+        return ops.process(keys, limit, batchSize);
+    }
+
     public void init(String keyFormat, RedisTemplate<String, Object> redisTemplate, List<String> columnNames) {
         ops.init(keyFormat, redisTemplate, columnNames);
     }
@@ -180,9 +210,50 @@ public enum RedisTypeEnum {
             isInit = true;
         }
 
-        protected abstract R ops(String key, int limit);
+        protected abstract R ops(RedisOperations<String, Object> operations, String key, int limit);
+
+        protected abstract List<Map<String, Object>> convert(String key, R value);
 
-        protected abstract List<Map<String, Object>> process(String key, int limit);
+        protected R ops(String key, int limit) {
+            return ops(redisTemplate, key, limit);
+        }
+
+        protected List<Map<String, Object>> process(String key, int limit) {
+            return convert(key, ops(key, limit));
+        }
+
+        /**
+         * 使用pipeline在一次网络往返中执行keys对应的全部命令， 返回结果与keys一一对应
+         */
+        protected List<Object> batchOps(List<String> keys, int limit) {
+            return redisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public <K, V> Object execute(@NonNull RedisOperations<K, V> operations) throws DataAccessException {
+                    for (String key : keys) {
+                        ops((RedisOperations<String, Object>) operations, key, limit);
+                    }
+                    return null;
+                }
+            });
+        }
+
+        @SuppressWarnings("unchecked")
+        protected List<Map<String, Object>> process(List<String> keys, int limit, int batchSize) {
+            List<Map<String, Object>> data = Lists.newArrayList();
+            if (keys == null || keys.isEmpty()) return data;
+            if (keys.size() == 1) {
+                return process(keys.get(0), limit);
+            }
+            for (List<String> batch : Lists.partition(keys, Math.max(batchSize, 1))) {
+                List<Object> values = batchOps(batch, limit);
+                for (int i = 0; i < batch.size(); ++i) {
+                    Object value = values != null && i < values.size() ? values.get(i) : null;
+                    data.addAll(convert(batch.get(i), (R) value));
+                }
+            }
+            return data;
+        }
 
         protected String getRedisKey(String key) {
             if (StringUtils.isNotEmpty(keyFormat)) {
@@ -0,0 +1,178 @@
+//
+// Copyright 2022 DMetaSoul
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package com.dmetasoul.metaspore.enums;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.springframework.data.redis.connection.DefaultTuple;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisZSetCommands;
+
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 进程内的redis替身， 以RedisConnectionFactory的形式提供给RedisTemplate使用
+ * 只实现测试中用到的string/hash/list/set/zset命令， 并统计客户端与服务端之间的网络往返次数：
+ * 非pipeline模式下每条命令一次往返， pipeline模式下closePipeline时一次往返
+ */
+public class InProcessRedis {
+    private final Map<ByteBuffer, Object> store = Maps.newConcurrentMap();
+    private final AtomicInteger roundTrips = new AtomicInteger();
+
+    public int getRoundTrips() {
+        return roundTrips.get();
+    }
+
+    public void resetRoundTrips() {
+        roundTrips.set(0);
+    }
+
+    public RedisConnectionFactory getConnectionFactory() {
+        return (RedisConnectionFactory) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class[]{RedisConnectionFactory.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getConnection":
+                            return newConnection();
+                        case "getConvertPipelineAndTxResults":
+                            return true;
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        default:
+                            return null;
+                    }
+                });
+    }
+
+    private RedisConnection newConnection() {
+        List<Object> pipeline = Lists.newArrayList();
+        boolean[] state = new boolean[2]; // 0: pipelined, 1: closed
+        return (RedisConnection) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class[]{RedisConnection.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "openPipeline":
+                            state[0] = true;
+                            pipeline.clear();
+                            return null;
+                        case "closePipeline":
+                            state[0] = false;
+                            roundTrips.incrementAndGet();
+                            List<Object> results = Lists.newArrayList(pipeline);
+                            pipeline.clear();
+                            return results;
+                        case "isPipelined":
+                            return state[0];
+                        case "isQueueing":
+                            return false;
+                        case "close":
+                            state[1] = true;
+                            return null;
+                        case "isClosed":
+                            return state[1];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        case "toString":
+                            return "InProcessRedisConnection";
+                        default:
+                    }
+                    Object result = command(method.getName(), args);
+                    if (state[0]) {
+                        pipeline.add(result);
+                        return null;
+                    }
+                    roundTrips.incrementAndGet();
+                    return result;
+                });
+    }
+
+    @SuppressWarnings("unchecked")
+    private Object command(String name, Object[] args) {
+        ByteBuffer key = args != null && args.length > 0 && args[0] instanceof byte[] ? ByteBuffer.wrap((byte[]) args[0]) : null;
+        switch (name) {
+            case "set":
+                store.put(key, args[1]);
+                return true;
+            case "get":
+                return store.get(key);
+            case "mGet": {
+                List<byte[]> values = Lists.newArrayList();
+                for (byte[] item : (byte[][]) args[0]) {
+                    values.add((byte[]) store.get(ByteBuffer.wrap(item)));
+                }
+                return values;
+            }
+            case "hMSet":
+                ((Map<ByteBuffer, byte[]>) store.computeIfAbsent(key, k -> new LinkedHashMap<>()))
+                        .putAll(wrapKeys((Map<byte[], byte[]>) args[1]));
+                return null;
+            case "hGetAll": {
+                Map<byte[], byte[]> result = new LinkedHashMap<>();
+                ((Map<ByteBuffer, byte[]>) store.getOrDefault(key, Map.of()))
+                        .forEach((field, value) -> result.put(field.array(), value));
+                return result;
+            }
+            case "rPush": {
+                List<byte[]> list = (List<byte[]>) store.computeIfAbsent(key, k -> Lists.newArrayList());
+                list.addAll(Arrays.asList((byte[][]) args[1]));
+                return (long) list.size();
+            }
+            case "lRange": {
+                List<byte[]> list = (List<byte[]>) store.getOrDefault(key, List.of());
+                int from = (int) (long) args[1];
+                int to = (int) Math.min((long) args[2] + 1, list.size());
+                return from >= to ? List.of() : Lists.newArrayList(list.subList(from, to));
+            }
+            case "sAdd": {
+                Map<ByteBuffer, byte[]> set = (Map<ByteBuffer, byte[]>) store.computeIfAbsent(key, k -> new LinkedHashMap<>());
+                for (byte[] item : (byte[][]) args[1]) {
+                    set.put(ByteBuffer.wrap(item), item);
+                }
+                return (long) set.size();
+            }
+            case "sMembers":
+                return new LinkedHashSet<>(((Map<ByteBuffer, byte[]>) store.getOrDefault(key, Map.of())).values());
+            case "zAdd": {
+                TreeMap<ByteBuffer, Double> zset = (TreeMap<ByteBuffer, Double>) store.computeIfAbsent(key, k -> new TreeMap<>());
+                zset.put(ByteBuffer.wrap((byte[]) args[2]), (Double) args[1]);
+                return true;
+            }
+            case "zRangeWithScores": {
+                List<RedisZSetCommands.Tuple> tuples = Lists.newArrayList();
+                ((TreeMap<ByteBuffer, Double>) store.getOrDefault(key, new TreeMap<>()))
+                        .forEach((member, score) -> tuples.add(new DefaultTuple(member.array(), score)));
+                tuples.sort(Comparator.comparing(RedisZSetCommands.Tuple::getScore));
+                int from = (int) (long) args[1];
+                int to = (int) Math.min((long) args[2] + 1, tuples.size());
+                return from >= to ? Set.of() : new LinkedHashSet<>(tuples.subList(from, to));
+            }
+            default:
+                throw new UnsupportedOperationException("in process redis not support command: " + name);
+        }
+    }
+
+    private static Map<ByteBuffer, byte[]> wrapKeys(Map<byte[], byte[]> map) {
+        Map<ByteBuffer, byte[]> result = new LinkedHashMap<>();
+        map.forEach((k, v) -> result.put(ByteBuffer.wrap(k), v));
+        return result;
+    }
+}
@@ -0,0 +1,107 @@
+//
+// Copyright 2022 DMetaSoul
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package com.dmetasoul.metaspore.enums;
+
+import com.dmetasoul.metaspore.datasource.RedisSource;
+import com.google.common.collect.Lists;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.util.List;
+import java.util.Map;
+
+@Slf4j
+public class RedisTypeEnumTest {
+    private static final int KEY_NUM = 200;
+    private static final int BATCH_SIZE = 64;
+
+    private InProcessRedis redis;
+    private RedisTemplate<String, Object> redisTemplate;
+    private List<String> keys;
+
+    @Before
+    public void setUp() {
+        redis = new InProcessRedis();
+        redisTemplate = new RedisSource().getRedisTemplate(redis.getConnectionFactory());
+        keys = Lists.newArrayList();
+        for (int i = 0; i < KEY_NUM; ++i) {
+            // 部分key不存在， 验证缺失数据的处理与逐个获取一致
+            keys.add(String.valueOf(i));
+            if (i % 7 == 0) continue;
+            redisTemplate.opsForValue().set("value_" + i, "item" + i);
+            redisTemplate.opsForHash().putAll("hash_" + i, Map.of("name", "item" + i, "price", i));
+            redisTemplate.opsForList().rightPushAll("list_" + i, "a" + i, "b" + i, "c" + i);
+            redisTemplate.opsForSet().add("set_" + i, "s" + i, "t" + i);
+            redisTemplate.opsForZSet().add("zset_" + i, "z" + i, i * 0.5);
+            redisTemplate.opsForZSet().add("zset_" + i, "y" + i, i * 0.1);
+        }
+    }
+
+    private void checkBatchProcess(RedisTypeEnum type, List<String> columns) {
+        type.init(type.getName() + "_%s", redisTemplate, columns);
+        redis.resetRoundTrips();
+        List<Map<String, Object>> expect = Lists.newArrayList();
+        for (String key : keys) {
+            expect.addAll(type.process(key, 10));
+        }
+        int singleRoundTrips = redis.getRoundTrips();
+        redis.resetRoundTrips();
+        List<Map<String, Object>> actual = type.process(keys, 10, BATCH_SIZE);
+        int batchRoundTrips = redis.getRoundTrips();
+        log.info("redis type: {}, round trips per key: {}, batch: {}", type, singleRoundTrips, batchRoundTrips);
+        Assert.assertTrue(expect.stream().anyMatch(row -> row.get(columns.get(1)) != null));
+        Assert.assertEquals("type: " + type, expect, actual);
+        Assert.assertEquals(KEY_NUM, singleRoundTrips);
+        Assert.assertEquals((KEY_NUM + BATCH_SIZE - 1) / BATCH_SIZE, batchRoundTrips);
+    }
+
+    @Test
+    public void TestValueBatchProcess() {
+        checkBatchProcess(RedisTypeEnum.VALUE, List.of("id", "value"));
+    }
+
+    @Test
+    public void TestHashBatchProcess() {
+        checkBatchProcess(RedisTypeEnum.HASH, List.of("id", "value"));
+    }
+
+    @Test
+    public void TestListBatchProcess() {
+        checkBatchProcess(RedisTypeEnum.LIST, List.of("id", "value"));
+    }
+
+    @Test
+    public void TestSetBatchProcess() {
+        checkBatchProcess(RedisTypeEnum.SET, List.of("id", "value"));
+    }
+
+    @Test
+    public void TestZSetBatchProcess() {
+        checkBatchProcess(RedisTypeEnum.ZSET, List.of("id", "value", "score"));
+    }
+
+    @Test
+    public void TestSingleKeyNotPipelined() {
+        RedisTypeEnum.HASH.init("hash_%s", redisTemplate, List.of("id", "value"));
+        redis.resetRoundTrips();
+        List<Map<String, Object>> data = RedisTypeEnum.HASH.process(List.of("1"), 10, BATCH_SIZE);
+        Assert.assertEquals(1, data.size());
+        Assert.assertEquals(1, redis.getRoundTrips());
+    }
+}
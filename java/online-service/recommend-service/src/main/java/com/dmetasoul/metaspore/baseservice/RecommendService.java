@@ -211,7 +211,7 @@ public class RecommendService {
                             types.add(serviceConfig.getColumnMap().get(col));
                         }
                         DataResult resultItem = new DataResult();
-                        resultItem.setFeatureData(item, fields, types, data);
+                        resultItem.setFeatureData(item, fields, types, data, context);
                         taskService.setDataResultByName(item, resultItem, context);
                     }
                 }
@@ -324,16 +324,17 @@ public class RecommendService {
             return ServiceResult.of(-1, "itemSummary need itemId!");
         }
         req.put(item_key, id);
-        DataContext context = new DataContext(req);
-        DataResult result;
-        StopWatch timeRecorder = new StopWatch(UUID.randomUUID().toString());
-        timeRecorder.start("itemSummary_total");
-        result = taskService.execute(new ServiceRequest(req), context);
-        timeRecorder.stop();
-        context.updateTimeRecords(Utils.getTimeRecords(timeRecorder));
-        if (result == null) {
-            return ServiceResult.of(-1, "itemSummary execute fail!");
+        try (DataContext context = new DataContext(req)) {
+            DataResult result;
+            StopWatch timeRecorder = new StopWatch(UUID.randomUUID().toString());
+            timeRecorder.start("itemSummary_total");
+            result = taskService.execute(new ServiceRequest(req), context);
+            timeRecorder.stop();
+            context.updateTimeRecords(Utils.getTimeRecords(timeRecorder));
+            if (result == null) {
+                return ServiceResult.of(-1, "itemSummary execute fail!");
+            }
+            return ServiceResult.of(result.output()).addTimeRecord(context.getTimeRecords());
         }
-        return ServiceResult.of(result.output()).addTimeRecord(context.getTimeRecords());
     }
 }
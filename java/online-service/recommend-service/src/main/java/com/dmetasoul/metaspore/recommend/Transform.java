@@ -63,12 +63,13 @@ public abstract class Transform {
         addFunction("summary", (data, results, context, option) -> {
             Assert.isTrue(CollectionUtils.isNotEmpty(resFields), "summary need configure columns info!");
             DataResult result = new DataResult();
-            FeatureTable featureTable = new FeatureTable(name, resFields);
+            FeatureTable featureTable = newFeatureTable(context, name, resFields);
             result.setFeatureTable(featureTable);
             result.setDataTypes(dataTypes);
             result.setName(name);
             List<String> dupFields = getOptionFields("dupFields", option);
-            result.mergeDataResult(data, dupFields, getMergeOperators(option), option);
+            List<String> orderFields = getOptionFields("mergeOrderFields", option);
+            result.mergeDataResult(data, dupFields, getMergeOperators(option), orderFields, option);
             featureTable.finish();
             results.add(result);
             if (data != null) {
@@ -81,11 +82,12 @@ public abstract class Transform {
                 DataResult item = data.get(0);
                 DataResult result = new DataResult();
                 result.setName(name);
-                FeatureTable featureTable = new FeatureTable(String.format("%s.summaryBySchema", name), item.getFields());
+                FeatureTable featureTable = newFeatureTable(context, String.format("%s.summaryBySchema", name), item.getFields());
                 result.setFeatureTable(featureTable);
                 result.setDataTypes(item.getDataTypes());
                 List<String> dupFields = getOptionFields("dupFields", option);
-                result.mergeDataResult(data, dupFields, getMergeOperators(option), option);
+                List<String> orderFields = getOptionFields("mergeOrderFields", option);
+                result.mergeDataResult(data, dupFields, getMergeOperators(option), orderFields, option);
                 featureTable.finish();
                 results.add(result);
                 data.forEach(DataResult::close);
@@ -96,7 +98,7 @@ public abstract class Transform {
             if (CollectionUtils.isNotEmpty(data)) {
                 for (DataResult item : data) {
                     DataResult result = new DataResult();
-                    FeatureTable featureTable = new FeatureTable(item.getFeatureTable().getName(), item.getFields());
+                    FeatureTable featureTable = newFeatureTable(context, item.getFeatureTable().getName(), item.getFields());
                     result.setFeatureTable(featureTable);
                     result.setDataTypes(item.getDataTypes());
                     List<String> orderFields = getOptionFields("orderFields", option);
@@ -141,7 +143,7 @@ public abstract class Transform {
             if (CollectionUtils.isNotEmpty(data)) {
                 for (DataResult item : data) {
                     DataResult result = new DataResult();
-                    FeatureTable featureTable = new FeatureTable(item.getFeatureTable().getName(), item.getFields());
+                    FeatureTable featureTable = newFeatureTable(context, item.getFeatureTable().getName(), item.getFields());
                     result.setFeatureTable(featureTable);
                     result.setDataTypes(item.getDataTypes());
                     List<String> dupFields = getOptionFields("dupFields", option);
@@ -183,7 +185,7 @@ public abstract class Transform {
                             dataTypes.add(TableInfo.getType(outputTypes.get(i)));
                         }
                     }
-                    FeatureTable featureTable = new FeatureTable(item.getFeatureTable().getName(), fields);
+                    FeatureTable featureTable = newFeatureTable(context, item.getFeatureTable().getName(), fields);
                     result.setFeatureTable(featureTable);
                     result.setDataTypes(dataTypes);
 
@@ -266,6 +268,10 @@ public abstract class Transform {
         updateOperators.put(name, operator);
     }
 
+    private static FeatureTable newFeatureTable(DataContext context, String name, List<Field> fields) {
+        return context == null ? new FeatureTable(name, fields) : context.newFeatureTable(name, fields);
+    }
+
     @SuppressWarnings("rawtypes")
     private <T> List<T> getOptionFields(String name, Map<String, Object> option) {
         List<T> dupFields = Lists.newArrayList();
@@ -29,10 +29,18 @@ public class ArrowAllocator implements AutoCloseable {
     private List<ArrowBuf> buffers;
 
     public ArrowAllocator(String name, long limit) {
-        this.alloc = allocator.newChildAllocator(name, 0, limit);
+        this(allocator.newChildAllocator(name, 0, limit));
+    }
+
+    protected ArrowAllocator(BufferAllocator alloc) {
+        this.alloc = alloc;
         this.buffers = Lists.newArrayList();
     }
 
+    protected static BufferAllocator newChildAllocator(String name, long limit) {
+        return allocator.newChildAllocator(name, 0, limit);
+    }
+
     public BufferAllocator getAlloc() {
         return this.alloc;
     }
@@ -46,17 +54,30 @@ public class ArrowAllocator implements AutoCloseable {
         }
     }
 
+    /**
+     * 使用该allocator创建FeatureTable时调用
+     */
+    void register(FeatureTable table) {
+    }
+
+    /**
+     * 释放通过addBuffer登记的buffer， 不关闭allocator
+     */
+    protected void releaseBuffers() {
+        if (buffers != null) {
+            buffers.forEach(item -> {
+                item.clear();
+                item.close();
+            });
+            buffers.clear();
+        }
+    }
+
     @Override
     public void close() {
         if (alloc != null) {
-            if (buffers != null) {
-                buffers.forEach(item -> {
-                    item.clear();
-                    item.close();
-                });
-                buffers.clear();
-                buffers = null;
-            }
+            releaseBuffers();
+            buffers = null;
             alloc.close();
             alloc = null;
         }
@@ -0,0 +1,142 @@
+//
+// Copyright 2022 DMetaSoul
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package com.dmetasoul.metaspore.serving;
+
+import com.google.common.collect.Lists;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.arrow.memory.ArrowBuf;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.vector.types.pojo.Field;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 请求级的arrow内存区域
+ * 同一个请求中的FeatureTable都使用arena的allocator创建， 不再为每个FeatureTable单独创建child allocator
+ * 请求结束时close arena， 统一关闭其中创建的FeatureTable并释放登记的buffer， 之后allocator放回池中供后续请求复用
+ * allocator设置了内存上限， 单个请求申请的内存超过上限时arrow抛出OutOfMemoryException
+ * buffer的内存由arrow-memory-netty的池化allocator按大小分级复用
+ * 同一请求的任务可能并发执行， arena是线程安全的
+ */
+@Slf4j
+public class ArrowArena extends ArrowAllocator {
+    public static final long DEFAULT_LIMIT = Integer.MAX_VALUE;
+    private static final int MAX_POOL_SIZE = 256;
+    private static final Queue<BufferAllocator> pool = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger poolSize = new AtomicInteger();
+    private static final AtomicLong created = new AtomicLong();
+
+    private final String name;
+    private final List<FeatureTable> tables = Lists.newArrayList();
+    private boolean closed;
+
+    private ArrowArena(String name, BufferAllocator alloc) {
+        super(alloc);
+        this.name = name;
+    }
+
+    /**
+     * 从池中获取allocator创建arena， 池为空时新建， limit为本次请求可以使用的内存上限
+     */
+    public static ArrowArena acquire(String name, long limit) {
+        BufferAllocator alloc = pool.poll();
+        if (alloc != null) {
+            poolSize.decrementAndGet();
+        } else {
+            alloc = newChildAllocator("arena-" + created.incrementAndGet(), limit);
+        }
+        alloc.setLimit(limit);
+        return new ArrowArena(name, alloc);
+    }
+
+    /**
+     * 已创建的allocator数量， 请求数远大于该值说明allocator被复用
+     */
+    public static long getCreatedCount() {
+        return created.get();
+    }
+
+    public static int getPoolSize() {
+        return poolSize.get();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getLimit() {
+        return getAlloc().getLimit();
+    }
+
+    public long getAllocatedMemory() {
+        return getAlloc().getAllocatedMemory();
+    }
+
+    public synchronized int getTableCount() {
+        return tables.size();
+    }
+
+    public FeatureTable newFeatureTable(String tableName, Iterable<Field> fields) {
+        return new FeatureTable(tableName, fields, this);
+    }
+
+    @Override
+    synchronized void register(FeatureTable table) {
+        if (closed) {
+            throw new IllegalStateException("arena is closed: " + name);
+        }
+        tables.add(table);
+    }
+
+    @Override
+    public synchronized void addBuffer(ArrowBuf buf) {
+        super.addBuffer(buf);
+    }
+
+    @Override
+    public void close() {
+        BufferAllocator alloc;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            tables.forEach(FeatureTable::close);
+            tables.clear();
+            releaseBuffers();
+            alloc = getAlloc();
+        }
+        if (alloc.getAllocatedMemory() == 0) {
+            if (poolSize.incrementAndGet() <= MAX_POOL_SIZE) {
+                pool.offer(alloc);
+                return;
+            }
+            poolSize.decrementAndGet();
+        } else {
+            log.error("arena: {} has {} bytes not released at close!", name, alloc.getAllocatedMemory());
+        }
+        try {
+            alloc.close();
+        } catch (IllegalStateException e) {
+            log.error("arena: {} close allocator fail!", name, e);
+        }
+    }
+}
@@ -18,6 +18,7 @@ package com.dmetasoul.metaspore.serving;
 
 import com.google.flatbuffers.FlatBufferBuilder;
 import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
 import org.apache.arrow.flatbuf.*;
 import org.apache.arrow.vector.ipc.WriteChannel;
 import org.apache.arrow.vector.ipc.message.IpcOption;
@@ -25,9 +26,16 @@ import org.apache.arrow.vector.ipc.message.MessageSerializer;
 import org.apache.arrow.vector.types.FloatingPointPrecision;
 import org.apache.arrow.vector.types.pojo.ArrowType;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.*;
 import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 
 /*
  * A wrapper class for Arrow's Tensor.
@@ -36,54 +44,112 @@ import java.nio.channels.Channels;
 public class ArrowTensor {
 
     public static ArrowTensor readFromByteString(ByteString bs, ArrowAllocator alloc) throws IOException {
-        ArrowMessage m = ArrowMessage.readFromByteString(bs, alloc);
-        if (m.message.headerType() == MessageHeader.Tensor) {
-            Tensor tensor = (Tensor) m.message.header(new Tensor());
-            if (m.body != null) {
-                return new ArrowTensor(tensor, m.body.nioBuffer());
-            } else {
-                return new ArrowTensor(tensor, null);
+        return readFromByteString(bs);
+    }
+
+    /*
+     * Decode an IPC tensor message without copying the body.
+     * The tensor data is a read-only view over the ByteString's backing buffer,
+     * which stays alive as long as the returned tensor is referenced.
+     */
+    public static ArrowTensor readFromByteString(ByteString bs) throws IOException {
+        ByteBuffer buffer = bs.asReadOnlyByteBuffer().slice().order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.limit() < 8) {
+            throw new IOException("Invalid tensor message of " + buffer.limit() + " bytes");
+        }
+        int offset = 4;
+        int metadataLength = buffer.getInt(0);
+        if (metadataLength == MessageSerializer.IPC_CONTINUATION_TOKEN) {
+            metadataLength = buffer.getInt(4);
+            offset = 8;
+        }
+        if (metadataLength <= 0 || (long) offset + metadataLength > buffer.limit()) {
+            throw new IOException("Invalid tensor metadata length " + metadataLength);
+        }
+        Message message = Message.getRootAsMessage(slice(buffer, offset, metadataLength));
+        if (message.headerType() != MessageHeader.Tensor) {
+            return null;
+        }
+        Tensor tensor = (Tensor) message.header(new Tensor());
+        long start = (long) offset + metadataLength;
+        long length = 0;
+        if (tensor.data() != null) {
+            start += tensor.data().offset();
+            length = tensor.data().length();
+        }
+        if (start + length > buffer.limit()) {
+            throw new IOException("Tensor body is truncated, need " + (start + length) + " bytes, got " + buffer.limit());
+        }
+        ArrowTensor result = new ArrowTensor(tensor, slice(buffer, (int) start, (int) length));
+        result.readMetadata(message);
+        return result;
+    }
+
+    /*
+     * bfloat16 and int8 tensors are marked by custom metadata of the message, see TensorEncoding.
+     */
+    private void readMetadata(Message message) throws IOException {
+        String encodingName = null;
+        String scaleValue = null;
+        for (int i = 0; i < message.customMetadataLength(); ++i) {
+            KeyValue kv = message.customMetadata(i);
+            if (TensorEncoding.ENCODING_METADATA_KEY.equals(kv.key())) {
+                encodingName = kv.value();
+            } else if (TensorEncoding.SCALE_METADATA_KEY.equals(kv.key())) {
+                scaleValue = kv.value();
             }
         }
-        return null;
+        if (encodingName == null) {
+            return;
+        }
+        try {
+            TensorEncoding encoding = TensorEncoding.fromName(encodingName);
+            if (encoding == null || !Objects.equals(encoding.getType(), type)) {
+                throw new IOException("Tensor encoding " + encodingName + " does not match type " + type);
+            }
+            this.encoding = encoding;
+            if (scaleValue != null) {
+                this.scale = Float.parseFloat(scaleValue);
+            }
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid tensor encoding " + encodingName + " scale " + scaleValue, e);
+        }
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int start, int length) {
+        ByteBuffer view = buffer.duplicate();
+        view.limit(start + length);
+        view.position(start);
+        return view.slice().order(ByteOrder.LITTLE_ENDIAN);
     }
 
     public static ByteString writeToByteString(ArrowTensor tensor) throws IOException {
         FlatBufferBuilder builder = new FlatBufferBuilder();
 
-        ByteBuffer data = tensor.data;
-
         // build Tensor table
         int typeOffset = 0;
         Runnable addTypeTypeFunc = null;
         if (tensor.isDoubleTensor()) {
             addTypeTypeFunc = () -> Tensor.addTypeType(builder, Type.FloatingPoint);
             typeOffset = FloatingPoint.createFloatingPoint(builder, Precision.DOUBLE);
-            if (data == null) {
-                data = ByteBuffer.allocate(tensor.doubleData.capacity() * 8);
-                data.order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer().put(tensor.doubleData);
-            }
         } else if (tensor.isFloatTensor()) {
             addTypeTypeFunc = () -> Tensor.addTypeType(builder, Type.FloatingPoint);
             typeOffset = FloatingPoint.createFloatingPoint(builder, Precision.SINGLE);
-            if (data == null) {
-                data = ByteBuffer.allocate(tensor.floatData.capacity() * 4);
-                data.order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().put(tensor.floatData);
-            }
         } else if (tensor.isIntegerTensor()) {
             addTypeTypeFunc = () -> Tensor.addTypeType(builder, Type.Int);
             typeOffset = Int.createInt(builder, 32, true);
-            if (data == null) {
-                data = ByteBuffer.allocate(tensor.intData.capacity() * 4);
-                data.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().put(tensor.intData);
-            }
         } else if (tensor.isLongTensor()) {
             addTypeTypeFunc = () -> Tensor.addTypeType(builder, Type.Int);
             typeOffset = Int.createInt(builder, 64, true);
-            if (data == null) {
-                data = ByteBuffer.allocate(tensor.longData.capacity() * 8);
-                data.order(ByteOrder.LITTLE_ENDIAN).asLongBuffer().put(tensor.longData);
-            }
+        } else if (tensor.type instanceof ArrowType.FloatingPoint) {
+            addTypeTypeFunc = () -> Tensor.addTypeType(builder, Type.FloatingPoint);
+            typeOffset = FloatingPoint.createFloatingPoint(builder, ((ArrowType.FloatingPoint) tensor.type).getPrecision().getFlatbufID());
+        } else if (tensor.type instanceof ArrowType.Int) {
+            ArrowType.Int intType = (ArrowType.Int) tensor.type;
+            addTypeTypeFunc = () -> Tensor.addTypeType(builder, Type.Int);
+            typeOffset = Int.createInt(builder, intType.getBitWidth(), intType.getIsSigned());
+        } else {
+            throw new IOException("Unsupported tensor type " + tensor.type);
         }
 
         // create shape vector of tensordim
@@ -119,18 +185,121 @@ public class ArrowTensor {
         int tensorTableOffset = Tensor.endTensor(builder);
 
         // build Message Table and get ByteBuffer
-        ByteBuffer messageHeader = MessageSerializer.serializeMessage(
-                builder, MessageHeader.Tensor, tensorTableOffset, bodyLength, IpcOption.DEFAULT);
+        ByteBuffer messageHeader = serializeMessage(builder, tensorTableOffset, bodyLength, tensor.getMetadata());
 
-        // we need to use MessageSerializer to get final ByteString with 8-byte padding
-        ByteString.Output headerOut = ByteString.newOutput();
+        // we need to use MessageSerializer to get final header with 8-byte padding
+        ByteArrayOutputStream headerOut = new ByteArrayOutputStream();
         WriteChannel out = new WriteChannel(Channels.newChannel(headerOut));
         MessageSerializer.writeMessageBuffer(out, messageHeader.remaining(), messageHeader);
-        ByteString bodyBS = ByteString.copyFrom(data);
-        ByteString headerBS = headerOut.toByteString();
 
-        // concat body ByteString
-        return headerBS.concat(bodyBS);
+        // header and body are written into one array, the typed data is encoded in place
+        byte[] bytes = new byte[Math.toIntExact(headerOut.size() + bodyLength)];
+        System.arraycopy(headerOut.toByteArray(), 0, bytes, 0, headerOut.size());
+        ByteBuffer body = ByteBuffer.wrap(bytes, headerOut.size(), (int) bodyLength).slice().order(ByteOrder.LITTLE_ENDIAN);
+        tensor.copyData(body);
+        return UnsafeByteOperations.unsafeWrap(bytes);
+    }
+
+    /*
+     * Same as MessageSerializer.serializeMessage, plus the custom metadata of encoded tensors.
+     */
+    private static ByteBuffer serializeMessage(FlatBufferBuilder builder, int tensorOffset, long bodyLength,
+                                               Map<String, String> metadata) {
+        if (metadata.isEmpty()) {
+            return MessageSerializer.serializeMessage(builder, MessageHeader.Tensor, tensorOffset, bodyLength, IpcOption.DEFAULT);
+        }
+        int[] entries = new int[metadata.size()];
+        int i = 0;
+        for (Map.Entry<String, String> entry : metadata.entrySet()) {
+            int key = builder.createString(entry.getKey());
+            int value = builder.createString(entry.getValue());
+            entries[i++] = KeyValue.createKeyValue(builder, key, value);
+        }
+        int customMetadata = Message.createCustomMetadataVector(builder, entries);
+        Message.startMessage(builder);
+        Message.addHeaderType(builder, MessageHeader.Tensor);
+        Message.addHeader(builder, tensorOffset);
+        Message.addVersion(builder, IpcOption.DEFAULT.metadataVersion.toFlatbufID());
+        Message.addBodyLength(builder, bodyLength);
+        Message.addCustomMetadata(builder, customMetadata);
+        builder.finish(Message.endMessage(builder));
+        return builder.dataBuffer();
+    }
+
+    private Map<String, String> getMetadata() {
+        Map<String, String> metadata = new LinkedHashMap<>();
+        if (encoding == TensorEncoding.BFLOAT16 || encoding == TensorEncoding.INT8) {
+            metadata.put(TensorEncoding.ENCODING_METADATA_KEY, encoding.getName());
+        }
+        if (encoding == TensorEncoding.INT8) {
+            metadata.put(TensorEncoding.SCALE_METADATA_KEY, Float.toString(scale));
+        }
+        return metadata;
+    }
+
+    /**
+     * 把tensor的数据按little endian写入body的当前位置， 并移动body的position
+     */
+    private void copyData(ByteBuffer body) {
+        int bodyLength = Math.toIntExact(dataElems * elemBytes);
+        ByteBuffer view = body.slice().order(ByteOrder.LITTLE_ENDIAN);
+        if (data != null) {
+            ByteBuffer source = data.duplicate();
+            source.limit(source.position() + bodyLength);
+            view.put(source);
+        } else if (isDoubleTensor()) {
+            view.asDoubleBuffer().put(doubleData.duplicate());
+        } else if (isFloatTensor()) {
+            view.asFloatBuffer().put(floatData.duplicate());
+        } else if (isIntegerTensor()) {
+            view.asIntBuffer().put(intData.duplicate());
+        } else if (isLongTensor()) {
+            view.asLongBuffer().put(longData.duplicate());
+        }
+        body.position(body.position() + bodyLength);
+    }
+
+    /**
+     * 沿第0维按顺序拼接类型和其余维度都相同的tensor， 数据拷贝到新的buffer中
+     */
+    public static ArrowTensor concatRows(List<ArrowTensor> tensors) {
+        ArrowTensor first = tensors.get(0);
+        // 各个int8 tensor的scale不同时无法直接拼接， 先解码为float
+        for (ArrowTensor tensor : tensors) {
+            if (tensor.encoding == TensorEncoding.INT8 && (first.encoding != TensorEncoding.INT8 || tensor.scale != first.scale)) {
+                List<ArrowTensor> decoded = new ArrayList<>(tensors.size());
+                for (ArrowTensor t : tensors) {
+                    decoded.add(t.toFloatTensor());
+                }
+                return concatRows(decoded);
+            }
+        }
+        long rows = 0;
+        long elems = 0;
+        for (ArrowTensor tensor : tensors) {
+            if (tensor.shape.length == 0 || tensor.shape.length != first.shape.length
+                    || !Arrays.equals(tensor.shape, 1, tensor.shape.length, first.shape, 1, first.shape.length)
+                    || !Objects.equals(tensor.type, first.type) || tensor.encoding != first.encoding) {
+                throw new IllegalArgumentException("can not concat tensor of shape " + Arrays.toString(tensor.shape)
+                        + " to shape " + Arrays.toString(first.shape));
+            }
+            rows += tensor.shape[0];
+            elems += tensor.dataElems;
+        }
+        long[] shape = first.shape.clone();
+        shape[0] = rows;
+        ArrowTensor result = new ArrowTensor(shape, first.names, first.strides);
+        result.type = first.type;
+        result.encoding = first.encoding;
+        result.scale = first.scale;
+        ByteBuffer data = ByteBuffer.allocate(Math.toIntExact(elems * first.elemBytes)).order(ByteOrder.LITTLE_ENDIAN);
+        for (ArrowTensor tensor : tensors) {
+            tensor.copyData(data);
+        }
+        data.flip();
+        result.data = data;
+        result.setTypedData();
+        return result;
     }
 
     public static ArrowTensor createFromFloatArray(long[] shape, float[] data, String[] dimNames, long[] strides) {
@@ -142,6 +311,15 @@ public class ArrowTensor {
         return tensor;
     }
 
+    /**
+     * 按encoding编码float数据， encoding为null或FLOAT32时与createFromFloatArray相同
+     */
+    public static ArrowTensor createFromFloatArray(long[] shape, float[] data, String[] dimNames, long[] strides,
+                                                   TensorEncoding encoding) {
+        ArrowTensor tensor = createFromFloatArray(shape, data, dimNames, strides);
+        return encoding == null ? tensor : tensor.encode(encoding);
+    }
+
     public static ArrowTensor createFromDoubleArray(long[] shape, double[] data, String[] dimNames, long[] strides) {
         ArrowTensor tensor = new ArrowTensor(shape, dimNames, strides);
         tensor.doubleData = DoubleBuffer.wrap(data);
@@ -197,17 +375,84 @@ public class ArrowTensor {
     public void setTypedData() {
         if (isDoubleTensor()) {
             this.doubleData = data.order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
-            this.dataElems = this.doubleData.limit() / 8;
+            this.dataElems = this.doubleData.limit();
+            this.elemBytes = 8;
         } else if (isFloatTensor()) {
             this.floatData = data.order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
-            this.dataElems = this.floatData.limit() / 4;
+            this.dataElems = this.floatData.limit();
+            this.elemBytes = 4;
         } else if (isIntegerTensor()) {
             this.intData = data.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
-            this.dataElems = this.intData.limit() / 4;
+            this.dataElems = this.intData.limit();
+            this.elemBytes = 4;
         } else if (isLongTensor()) {
             this.longData = data.order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
-            this.dataElems = this.longData.limit() / 8;
+            this.dataElems = this.longData.limit();
+            this.elemBytes = 8;
+        } else if (isHalfTensor()) {
+            this.encoding = TensorEncoding.FLOAT16;
+            this.dataElems = data.remaining() / 2;
+            this.elemBytes = 2;
+        } else if (type instanceof ArrowType.Int && ((ArrowType.Int) type).getBitWidth() < 32) {
+            // 8和16位整数只保留原始数据， 由encoding决定如何解码
+            this.elemBytes = ((ArrowType.Int) type).getBitWidth() / 8;
+            this.dataElems = data.remaining() / elemBytes;
+        }
+    }
+
+    /**
+     * float tensor按encoding编码， 非float tensor抛出IllegalStateException
+     */
+    public ArrowTensor encode(TensorEncoding encoding) {
+        if (!isFloatTensor()) {
+            throw new IllegalStateException("only float tensor can be encoded, type: " + type);
+        }
+        if (encoding == TensorEncoding.FLOAT32) {
+            return this;
+        }
+        FloatBuffer values = floatData.duplicate();
+        ArrowTensor tensor = new ArrowTensor(shape, names, strides);
+        tensor.type = encoding.getType();
+        tensor.encoding = encoding;
+        tensor.scale = encoding == TensorEncoding.INT8 ? TensorEncoding.int8Scale(values) : 1.0f;
+        tensor.data = encoding.encode(values, tensor.scale);
+        tensor.dataElems = values.remaining();
+        tensor.elemBytes = encoding.getElemBytes();
+        return tensor;
+    }
+
+    /**
+     * 解码为float数组， 支持float和fp16/bf16/int8编码的tensor
+     */
+    public float[] toFloatArray() {
+        int count = Math.toIntExact(dataElems);
+        float[] values = new float[count];
+        if (isFloatTensor()) {
+            floatData.duplicate().get(values);
+        } else if (encoding != null && data != null) {
+            encoding.decode(data, scale, values, count);
+        } else {
+            throw new IllegalStateException("tensor of type " + type + " can not convert to float");
+        }
+        return values;
+    }
+
+    /**
+     * fp16/bf16/int8编码的tensor解码为float tensor， 其他tensor原样返回
+     */
+    public ArrowTensor toFloatTensor() {
+        if (encoding == null || isFloatTensor()) {
+            return this;
         }
+        return createFromFloatArray(shape, toFloatArray(), names, strides);
+    }
+
+    public TensorEncoding getEncoding() {
+        return encoding;
+    }
+
+    public float getScale() {
+        return scale;
     }
 
     public static ArrowType getTensorArrowType(Tensor tensor) {
@@ -232,6 +477,14 @@ public class ArrowTensor {
         return false;
     }
 
+    public boolean isHalfTensor() {
+        if (getType() instanceof ArrowType.FloatingPoint) {
+            ArrowType.FloatingPoint fpType = (ArrowType.FloatingPoint) getType();
+            return fpType.getPrecision() == FloatingPointPrecision.HALF;
+        }
+        return false;
+    }
+
     public boolean isDoubleTensor() {
         if (getType() instanceof ArrowType.FloatingPoint) {
             ArrowType.FloatingPoint fpType = (ArrowType.FloatingPoint) getType();
@@ -287,6 +540,49 @@ public class ArrowTensor {
         return prod;
     }
 
+    /**
+     * 沿第0维截取[start, start + rows)行， 与原tensor共享数据
+     */
+    public ArrowTensor sliceRows(int start, int rows) {
+        if (shape.length == 0 || start < 0 || rows < 0 || start + rows > shape[0]) {
+            throw new IndexOutOfBoundsException("slice rows [" + start + ", " + (start + rows) + ") out of shape " + Arrays.toString(shape));
+        }
+        long[] sliceShape = shape.clone();
+        sliceShape[0] = rows;
+        ArrowTensor tensor = new ArrowTensor(sliceShape, names, strides);
+        tensor.type = type;
+        tensor.encoding = encoding;
+        tensor.scale = scale;
+        tensor.elemBytes = elemBytes;
+        int rowElems = shape[0] == 0 ? 0 : (int) (dataElems / shape[0]);
+        int from = start * rowElems;
+        int length = rows * rowElems;
+        if (data != null) {
+            tensor.data = slice(data, from * elemBytes, length * elemBytes);
+            tensor.setTypedData();
+            return tensor;
+        }
+        if (floatData != null) {
+            FloatBuffer view = floatData.duplicate();
+            view.position(from).limit(from + length);
+            tensor.floatData = view.slice();
+        } else if (doubleData != null) {
+            DoubleBuffer view = doubleData.duplicate();
+            view.position(from).limit(from + length);
+            tensor.doubleData = view.slice();
+        } else if (intData != null) {
+            IntBuffer view = intData.duplicate();
+            view.position(from).limit(from + length);
+            tensor.intData = view.slice();
+        } else if (longData != null) {
+            LongBuffer view = longData.duplicate();
+            view.position(from).limit(from + length);
+            tensor.longData = view.slice();
+        }
+        tensor.dataElems = length;
+        return tensor;
+    }
+
     static public abstract class TensorAccessor<T> {
         public abstract T get(int index);
 
@@ -310,6 +606,35 @@ public class ArrowTensor {
             return buffer.get(row * cols + col);
         }
 
+        public float getFloat(int index) {
+            return buffer.get(index);
+        }
+
+        public float getFloat(int row, int col) {
+            return buffer.get(row * cols + col);
+        }
+
+        /*
+         * Read-only view of the tensor data, no element is copied or boxed.
+         */
+        public FloatBuffer getBuffer() {
+            return buffer.asReadOnlyBuffer();
+        }
+
+        public int getCols() {
+            return cols;
+        }
+
+        /*
+         * Read-only view of one row of a 2-d tensor, no element is copied or boxed.
+         */
+        public FloatBuffer getRow(int row) {
+            FloatBuffer view = buffer.asReadOnlyBuffer();
+            view.limit((row + 1) * cols);
+            view.position(row * cols);
+            return view.slice();
+        }
+
         private final int cols;
 
         private final FloatBuffer buffer;
@@ -330,6 +655,32 @@ public class ArrowTensor {
             return buffer.get(row * cols + col);
         }
 
+        public double getDouble(int index) {
+            return buffer.get(index);
+        }
+
+        public double getDouble(int row, int col) {
+            return buffer.get(row * cols + col);
+        }
+
+        public DoubleBuffer getBuffer() {
+            return buffer.asReadOnlyBuffer();
+        }
+
+        public int getCols() {
+            return cols;
+        }
+
+        /*
+         * Read-only view of one row of a 2-d tensor, no element is copied or boxed.
+         */
+        public DoubleBuffer getRow(int row) {
+            DoubleBuffer view = buffer.asReadOnlyBuffer();
+            view.limit((row + 1) * cols);
+            view.position(row * cols);
+            return view.slice();
+        }
+
         private final int cols;
 
         private final DoubleBuffer buffer;
@@ -350,6 +701,32 @@ public class ArrowTensor {
             return buffer.get(row * cols + col);
         }
 
+        public int getInt(int index) {
+            return buffer.get(index);
+        }
+
+        public int getInt(int row, int col) {
+            return buffer.get(row * cols + col);
+        }
+
+        public IntBuffer getBuffer() {
+            return buffer.asReadOnlyBuffer();
+        }
+
+        public int getCols() {
+            return cols;
+        }
+
+        /*
+         * Read-only view of one row of a 2-d tensor, no element is copied or boxed.
+         */
+        public IntBuffer getRow(int row) {
+            IntBuffer view = buffer.asReadOnlyBuffer();
+            view.limit((row + 1) * cols);
+            view.position(row * cols);
+            return view.slice();
+        }
+
         private final int cols;
 
         private final IntBuffer buffer;
@@ -370,6 +747,32 @@ public class ArrowTensor {
             return buffer.get(row * cols + col);
         }
 
+        public long getLong(int index) {
+            return buffer.get(index);
+        }
+
+        public long getLong(int row, int col) {
+            return buffer.get(row * cols + col);
+        }
+
+        public LongBuffer getBuffer() {
+            return buffer.asReadOnlyBuffer();
+        }
+
+        public int getCols() {
+            return cols;
+        }
+
+        /*
+         * Read-only view of one row of a 2-d tensor, no element is copied or boxed.
+         */
+        public LongBuffer getRow(int row) {
+            LongBuffer view = buffer.asReadOnlyBuffer();
+            view.limit((row + 1) * cols);
+            view.position(row * cols);
+            return view.slice();
+        }
+
         private final int cols;
 
         private final LongBuffer buffer;
@@ -387,6 +790,22 @@ public class ArrowTensor {
         return new String(hexChars);
     }
 
+    public FloatBuffer getFloatBuffer() {
+        return floatData == null ? null : floatData.asReadOnlyBuffer();
+    }
+
+    public DoubleBuffer getDoubleBuffer() {
+        return doubleData == null ? null : doubleData.asReadOnlyBuffer();
+    }
+
+    public IntBuffer getIntBuffer() {
+        return intData == null ? null : intData.asReadOnlyBuffer();
+    }
+
+    public LongBuffer getLongBuffer() {
+        return longData == null ? null : longData.asReadOnlyBuffer();
+    }
+
     public FloatTensorAccessor getFloatData() {
         if (floatData != null) {
             return new FloatTensorAccessor(floatData, shape.length == 2 ? (int) shape[1] : 0);
@@ -420,6 +839,8 @@ public class ArrowTensor {
     }
 
     private ArrowType type;
+    private TensorEncoding encoding;
+    private float scale = 1.0f;
     private long[] shape;
     private String[] names;
     private long[] strides;
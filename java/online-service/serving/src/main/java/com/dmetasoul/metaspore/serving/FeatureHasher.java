@@ -0,0 +1,346 @@
+//
+// Copyright 2022 DMetaSoul
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package com.dmetasoul.metaspore.serving;
+
+import org.apache.arrow.memory.ArrowBuf;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.UInt8Vector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.complex.ListVector;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.FieldType;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 与C++ serving的sparse特征抽取(cpp/common/features)相同的combine schema哈希， 结果与服务端bit一致
+ * 单列特征: CombineHashCodes(BKDRHash(name + "="), BKDRHash(value))， BKDRHash按有符号char累加， 与x86上的服务端一致
+ * 组合特征a#b: 各列哈希值的笛卡尔积， 第一列变化最慢， 依次用CombineHashCodes合并
+ * null和空字符串按缺失处理， list中的null跳过， list中的空字符串哈希为0
+ * hashTable把schema中用到的string/list<string>列替换为uint64/list<uint64>的单列哈希值，
+ * 服务端的bkdr_hash对uint64列直接透传， 不再解析字符串， join key保持原样
+ */
+public class FeatureHasher {
+    public static final ArrowType HASH_TYPE = new ArrowType.Int(64, false);
+
+    private static final Pattern COMBINE_PATTERN = Pattern.compile("[A-Za-z_0-9]+(#[A-Za-z_0-9]+)*");
+    private static final Pattern JOIN_PATTERN = Pattern.compile("[A-Za-z_0-9]+#[A-Za-z_0-9]+\\(([A-Za-z_0-9]+)\\)=>[A-Za-z_0-9]+");
+
+    private final List<List<String>> combines;
+    private final Set<String> columns;
+    private final Set<String> joinKeys;
+
+    public FeatureHasher(List<List<String>> combines, Set<String> joinKeys) {
+        this.combines = combines;
+        this.joinKeys = joinKeys;
+        this.columns = new LinkedHashSet<>();
+        for (List<String> combine : combines) {
+            columns.addAll(combine);
+        }
+    }
+
+    /**
+     * 解析combine_schema.txt， 与FeatureSchemaParser相同， 有"# table:"时按新格式读取"# join"和"# combine"段，
+     * 否则每行一个组合特征， 遇到空行结束
+     */
+    public static FeatureHasher parse(String schema) {
+        List<String> lines = new ArrayList<>();
+        schema.lines().forEach(line -> lines.add(line.strip()));
+        boolean newFormat = lines.stream().anyMatch(line -> line.startsWith("#") && trim(line).startsWith("table:"));
+        List<List<String>> combines = new ArrayList<>();
+        Set<String> joinKeys = new HashSet<>();
+        if (!newFormat) {
+            parseCombines(lines, 0, combines);
+            return new FeatureHasher(combines, joinKeys);
+        }
+        for (int i = 0; i < lines.size(); ++i) {
+            String line = lines.get(i);
+            if (!line.startsWith("#")) {
+                continue;
+            }
+            line = trim(line);
+            if (line.equals("join")) {
+                for (++i; i < lines.size() && !trim(lines.get(i)).isEmpty(); ++i) {
+                    Matcher matcher = JOIN_PATTERN.matcher(trim(lines.get(i)));
+                    if (!matcher.matches()) {
+                        throw new IllegalArgumentException("Parsing join rule failed " + lines.get(i));
+                    }
+                    joinKeys.add(matcher.group(1));
+                }
+            } else if (line.equals("combine")) {
+                i = parseCombines(lines, i + 1, combines);
+            }
+        }
+        return new FeatureHasher(combines, joinKeys);
+    }
+
+    private static int parseCombines(List<String> lines, int start, List<List<String>> combines) {
+        int i = start;
+        for (; i < lines.size(); ++i) {
+            String line = trim(lines.get(i));
+            if (line.isEmpty()) {
+                break;
+            }
+            if (!COMBINE_PATTERN.matcher(line).matches()) {
+                throw new IllegalArgumentException("Parsing combine rule failed " + lines.get(i));
+            }
+            combines.add(Arrays.asList(line.split("#")));
+        }
+        return i;
+    }
+
+    private static String trim(String line) {
+        int begin = 0;
+        int end = line.length();
+        while (begin < end && "# \t\n\r".indexOf(line.charAt(begin)) >= 0) {
+            ++begin;
+        }
+        while (end > begin && "# \t\n\r".indexOf(line.charAt(end - 1)) >= 0) {
+            --end;
+        }
+        return line.substring(begin, end);
+    }
+
+    public List<List<String>> getCombines() {
+        return Collections.unmodifiableList(combines);
+    }
+
+    public Set<String> getColumns() {
+        return Collections.unmodifiableSet(columns);
+    }
+
+    public Set<String> getJoinKeys() {
+        return Collections.unmodifiableSet(joinKeys);
+    }
+
+    public static long bkdrHash(byte[] bytes, long seed) {
+        for (byte b : bytes) {
+            seed = seed * 131 + b;
+        }
+        return seed;
+    }
+
+    private static long bkdrHash(ArrowBuf data, long start, long end, long seed) {
+        for (long i = start; i < end; ++i) {
+            seed = seed * 131 + data.getByte(i);
+        }
+        return seed;
+    }
+
+    public static long combineHashCodes(long h, long x) {
+        return h ^ (x + 0x9e3779b9L + (h << 6) + (h >>> 2));
+    }
+
+    /**
+     * 列名的哈希， 即BKDRHash(name + "=")
+     */
+    public static long nameSeed(String name) {
+        return bkdrHash(name.getBytes(StandardCharsets.UTF_8), 0) * 131 + '=';
+    }
+
+    /**
+     * 单列特征的哈希值， value为null或空时返回null
+     */
+    public static Long hashValue(String name, String value) {
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        return combineHashCodes(nameSeed(name), bkdrHash(value.getBytes(StandardCharsets.UTF_8), 0));
+    }
+
+    /**
+     * 计算table第row行所有组合特征的id， 顺序与schema相同， 缺失的特征为{0}， 与serving传给sparse模型的indices相同
+     * 列可以是string、list<string>， 或者hashTable生成的uint64、list<uint64>
+     */
+    public long[][] compute(FeatureTable table, int row) {
+        long[][] result = new long[combines.size()][];
+        for (int i = 0; i < combines.size(); ++i) {
+            List<String> combine = combines.get(i);
+            long[][] lists = new long[combine.size()][];
+            int total = 1;
+            for (int j = 0; j < combine.size(); ++j) {
+                String name = combine.get(j);
+                FieldVector vector = table.getVector(name);
+                if (vector == null) {
+                    throw new IllegalArgumentException("FeatureHasher column not found " + name);
+                }
+                lists[j] = fieldHashes(vector, nameSeed(name), row);
+                total *= lists[j].length;
+            }
+            result[i] = total == 0 ? new long[]{0L} : cartesianCombine(lists, total);
+        }
+        return result;
+    }
+
+    private static long[] cartesianCombine(long[][] lists, int total) {
+        long[] result = new long[total];
+        int repeat = total;
+        for (int k = 0; k < lists.length; ++k) {
+            long[] list = lists[k];
+            repeat /= list.length;
+            for (int i = 0; i < total; ++i) {
+                long h = list[(i / repeat) % list.length];
+                result[i] = k == 0 ? h : combineHashCodes(result[i], h);
+            }
+        }
+        return result;
+    }
+
+    private static long[] fieldHashes(FieldVector vector, long seed, int row) {
+        if (vector.isNull(row)) {
+            return new long[0];
+        }
+        if (vector instanceof VarCharVector) {
+            VarCharVector strings = (VarCharVector) vector;
+            long start = strings.getStartOffset(row);
+            long end = strings.getEndOffset(row);
+            if (start == end) {
+                return new long[0];
+            }
+            return new long[]{combineHashCodes(seed, bkdrHash(strings.getDataBuffer(), start, end, 0))};
+        }
+        if (vector instanceof UInt8Vector) {
+            return new long[]{((UInt8Vector) vector).get(row)};
+        }
+        if (vector instanceof ListVector) {
+            ListVector list = (ListVector) vector;
+            int start = list.getOffsetBuffer().getInt((long) row * ListVector.OFFSET_WIDTH);
+            int end = list.getOffsetBuffer().getInt((long) (row + 1) * ListVector.OFFSET_WIDTH);
+            FieldVector data = list.getDataVector();
+            long[] hashes = new long[end - start];
+            int size = 0;
+            for (int i = start; i < end; ++i) {
+                if (data.isNull(i)) {
+                    continue;
+                }
+                if (data instanceof VarCharVector) {
+                    hashes[size++] = itemHash((VarCharVector) data, seed, i);
+                } else if (data instanceof UInt8Vector) {
+                    hashes[size++] = ((UInt8Vector) data).get(i);
+                } else {
+                    throw new IllegalArgumentException("FeatureHasher only accepts list of string or uint64, but got " + data.getField());
+                }
+            }
+            return size == hashes.length ? hashes : Arrays.copyOf(hashes, size);
+        }
+        throw new IllegalArgumentException("FeatureHasher only accepts string, uint64 or list column, but got " + vector.getField());
+    }
+
+    private static long itemHash(VarCharVector strings, long seed, int index) {
+        long start = strings.getStartOffset(index);
+        long end = strings.getEndOffset(index);
+        // 服务端对list中的空字符串追加null， 组合时读到的是null slot中的0
+        return start == end ? 0L : combineHashCodes(seed, bkdrHash(strings.getDataBuffer(), start, end, 0));
+    }
+
+    /**
+     * 复制table， schema用到的string/list<string>列(join key除外)替换为同名的uint64/list<uint64>单列哈希列，
+     * 其他列原样复制， 返回的table使用自己的allocator， 由调用方关闭
+     */
+    public FeatureTable hashTable(FeatureTable table) {
+        List<Field> fields = new ArrayList<>();
+        for (Field field : table.getSchema().getFields()) {
+            fields.add(shouldHash(field) ? hashedField(field) : field);
+        }
+        FeatureTable result = new FeatureTable(table.getName(), fields);
+        int rows = table.getRowCount();
+        for (Field field : table.getSchema().getFields()) {
+            FieldVector source = table.getVector(field.getName());
+            FieldVector target = result.getVector(field.getName());
+            if (!shouldHash(field)) {
+                target.setInitialCapacity(rows);
+                target.allocateNew();
+                for (int i = 0; i < rows; ++i) {
+                    target.copyFromSafe(i, i, source);
+                }
+            } else if (source instanceof VarCharVector) {
+                writeHashes((VarCharVector) source, nameSeed(field.getName()), (UInt8Vector) target, rows);
+            } else {
+                writeHashList((ListVector) source, nameSeed(field.getName()), (ListVector) target, rows);
+            }
+            target.setValueCount(rows);
+        }
+        result.setRowCount(rows);
+        result.finish();
+        return result;
+    }
+
+    private boolean shouldHash(Field field) {
+        if (!columns.contains(field.getName()) || joinKeys.contains(field.getName())) {
+            return false;
+        }
+        if (field.getType() instanceof ArrowType.Utf8) {
+            return true;
+        }
+        return field.getType() instanceof ArrowType.List && field.getChildren().size() == 1
+                && field.getChildren().get(0).getType() instanceof ArrowType.Utf8;
+    }
+
+    private static Field hashedField(Field field) {
+        if (field.getType() instanceof ArrowType.Utf8) {
+            return new Field(field.getName(), FieldType.nullable(HASH_TYPE), null);
+        }
+        return new Field(field.getName(), FieldType.nullable(ArrowType.List.INSTANCE),
+                List.of(Field.nullable("item", HASH_TYPE)));
+    }
+
+    private static void writeHashes(VarCharVector source, long seed, UInt8Vector target, int rows) {
+        target.setInitialCapacity(rows);
+        target.allocateNew();
+        for (int i = 0; i < rows; ++i) {
+            long start = source.getStartOffset(i);
+            long end = source.getEndOffset(i);
+            if (source.isNull(i) || start == end) {
+                target.setNull(i);
+            } else {
+                target.set(i, combineHashCodes(seed, bkdrHash(source.getDataBuffer(), start, end, 0)));
+            }
+        }
+    }
+
+    private static void writeHashList(ListVector source, long seed, ListVector target, int rows) {
+        VarCharVector strings = (VarCharVector) source.getDataVector();
+        UInt8Vector hashes = (UInt8Vector) target.getDataVector();
+        target.allocateNew();
+        for (int i = 0; i < rows; ++i) {
+            int start = source.getOffsetBuffer().getInt((long) i * ListVector.OFFSET_WIDTH);
+            int end = source.getOffsetBuffer().getInt((long) (i + 1) * ListVector.OFFSET_WIDTH);
+            if (source.isNull(i) || start == end) {
+                target.setNull(i);
+                continue;
+            }
+            int offset = target.startNewValue(i);
+            int size = 0;
+            for (int j = start; j < end; ++j) {
+                if (!strings.isNull(j)) {
+                    hashes.setSafe(offset + size++, itemHash(strings, seed, j));
+                }
+            }
+            target.endValue(i, size);
+        }
+    }
+}
@@ -16,23 +16,26 @@
 
 package com.dmetasoul.metaspore.serving;
 
+import com.google.common.collect.Lists;
 import org.apache.arrow.memory.ArrowBuf;
 import org.apache.arrow.memory.BufferAllocator;
 import org.apache.arrow.vector.*;
+import org.apache.arrow.vector.complex.FixedSizeListVector;
 import org.apache.arrow.vector.complex.ListVector;
 import org.apache.arrow.vector.complex.impl.UnionListWriter;
-import org.apache.arrow.vector.holders.VarCharHolder;
 import org.apache.arrow.vector.types.pojo.Field;
 import org.apache.arrow.vector.types.pojo.Schema;
-import org.apache.arrow.vector.util.Text;
 
-import java.nio.charset.StandardCharsets;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.util.List;
 
 public class FeatureTable implements AutoCloseable {
 
     public FeatureTable(String name, Iterable<Field> fields, ArrowAllocator allocator) {
         this.name = name;
         this.allocator = allocator;
+        allocator.register(this);
         Schema schema = new Schema(fields);
         root = VectorSchemaRoot.create(schema, this.allocator.getAlloc());
     }
@@ -45,8 +48,29 @@ public class FeatureTable implements AutoCloseable {
         root = VectorSchemaRoot.create(schema, allocator.getAlloc());
     }
 
+    /**
+     * 使用VectorSchemaRootPool中的root， close时root放回池中
+     */
+    FeatureTable(String name, VectorSchemaRoot root, VectorSchemaRootPool pool) {
+        this.name = name;
+        this.root = root;
+        this.pool = pool;
+        this.allocator = new ArrowAllocator(pool.getAlloc());
+    }
+
     @Override
     public void close() {
+        if (pool != null) {
+            if (root != null) {
+                pool.release(root);
+                root = null;
+            }
+            if (allocator != null) {
+                allocator.releaseBuffers();
+                allocator = null;
+            }
+            return;
+        }
         if (root != null) {
             root.clear();
             root.close();
@@ -66,6 +90,7 @@ public class FeatureTable implements AutoCloseable {
     public FeatureTable(String name, VectorSchemaRoot root) {
         this.name = name;
         this.root = root;
+        this.rowCount = root.getRowCount();
     }
 
     public Schema getSchema() {
@@ -119,25 +144,31 @@ public class FeatureTable implements AutoCloseable {
     }
 
     public void setString(int index, String value, VarCharVector v) {
-        v.setSafe(index, new Text(value));
+        StringColumnWriter.write(v, index, value);
         setRowCount(index + 1);
     }
 
+    /**
+     * 从index开始批量写入字符串到连续的行
+     */
+    public void setStrings(int index, String[] values, VarCharVector v) {
+        StringColumnWriter.write(v, index, values);
+        setRowCount(index + values.length);
+    }
+
+    public void setStrings(int index, List<String> values, VarCharVector v) {
+        StringColumnWriter.write(v, index, values);
+        setRowCount(index + values.size());
+    }
+
     public void setStringList(int index, Iterable<String> values, ListVector v) {
-        UnionListWriter writer = v.getWriter();
-        writer.setPosition(index);
-        writer.startList();
-        for (String s : values) {
-            byte[] b = s.getBytes(StandardCharsets.UTF_8);
-            VarCharHolder vch = new VarCharHolder();
-            vch.start = 0;
-            vch.end = b.length;
-            vch.buffer = v.getAllocator().buffer(b.length);
-            vch.buffer.setBytes(0, b);
-            this.allocator.addBuffer(vch.buffer);
-            writer.write(vch);
-        }
-        writer.endList();
+        List<String> list = values instanceof List ? (List<String>) values : Lists.newArrayList(values);
+        StringColumnWriter.writeList(v, index, list);
+        setRowCount(index + 1);
+    }
+
+    public void setStringList(int index, String[] values, ListVector v) {
+        StringColumnWriter.writeList(v, index, values);
         setRowCount(index + 1);
     }
 
@@ -207,6 +238,31 @@ public class FeatureTable implements AutoCloseable {
         setRowCount(index + 1);
     }
 
+    /**
+     * 直接写入子vector， 不经过UnionListWriter， values从position读到limit
+     */
+    public void setFloatList(int index, FloatBuffer values, ListVector v) {
+        Float4Vector data = (Float4Vector) v.getDataVector();
+        int offset = v.startNewValue(index);
+        int size = values.remaining();
+        for (int i = 0; i < size; ++i) {
+            data.setSafe(offset + i, values.get(values.position() + i));
+        }
+        v.endValue(index, size);
+        setRowCount(index + 1);
+    }
+
+    public void setDoubleList(int index, DoubleBuffer values, ListVector v) {
+        Float8Vector data = (Float8Vector) v.getDataVector();
+        int offset = v.startNewValue(index);
+        int size = values.remaining();
+        for (int i = 0; i < size; ++i) {
+            data.setSafe(offset + i, values.get(values.position() + i));
+        }
+        v.endValue(index, size);
+        setRowCount(index + 1);
+    }
+
     public void setDoubleList(int index, Iterable<Double> values, ListVector v) {
         UnionListWriter writer = v.getWriter();
         writer.setPosition(index);
@@ -229,6 +285,63 @@ public class FeatureTable implements AutoCloseable {
         setRowCount(index + 1);
     }
 
+    /**
+     * 写入定长list列的一行， values的长度必须等于listSize
+     */
+    public void setFloatVector(int index, float[] values, FixedSizeListVector v) {
+        Float4Vector data = reserveFloatVectors(index + 1, values.length, v);
+        int offset = index * values.length;
+        v.setNotNull(index);
+        for (int i = 0; i < values.length; ++i) {
+            data.set(offset + i, values[i]);
+        }
+        setRowCount(index + 1);
+    }
+
+    /**
+     * values从position读到limit， 例如tensor的行视图
+     */
+    public void setFloatVector(int index, FloatBuffer values, FixedSizeListVector v) {
+        int size = values.remaining();
+        Float4Vector data = reserveFloatVectors(index + 1, size, v);
+        int offset = index * size;
+        v.setNotNull(index);
+        for (int i = 0; i < size; ++i) {
+            data.set(offset + i, values.get(values.position() + i));
+        }
+        setRowCount(index + 1);
+    }
+
+    /**
+     * 从index开始批量写入连续的行， values按行连续存放， 长度必须是listSize的整数倍， 例如rows x dim的二维tensor
+     */
+    public void setFloatVectors(int index, float[] values, FixedSizeListVector v) {
+        int listSize = v.getListSize();
+        if (listSize == 0 || values.length % listSize != 0) {
+            throw new IllegalArgumentException("values length " + values.length + " is not multiple of list size " + listSize);
+        }
+        int rows = values.length / listSize;
+        Float4Vector data = reserveFloatVectors(index + rows, listSize, v);
+        for (int i = 0; i < rows; ++i) {
+            v.setNotNull(index + i);
+        }
+        int offset = index * listSize;
+        for (int i = 0; i < values.length; ++i) {
+            data.set(offset + i, values[i]);
+        }
+        setRowCount(index + rows);
+    }
+
+    private static Float4Vector reserveFloatVectors(int rows, int size, FixedSizeListVector v) {
+        if (size != v.getListSize()) {
+            throw new IllegalArgumentException("vector size " + size + " does not match list size " + v.getListSize());
+        }
+        while (v.getValueCapacity() < rows) {
+            v.reAlloc();
+        }
+        return (Float4Vector) v.getDataVector();
+    }
+
     public void finish() {
         root.setRowCount(rowCount);
     }
@@ -239,4 +352,5 @@ public class FeatureTable implements AutoCloseable {
     private ArrowAllocator allocator;
     private String name;
     private boolean shouldCloseAllocator = false;
+    private VectorSchemaRootPool pool;
 }
\ No newline at end of file
@@ -17,36 +17,589 @@
 package com.dmetasoul.metaspore.serving;
 
 import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
+import org.apache.arrow.compression.CommonsCompressionFactory;
+import org.apache.arrow.memory.ArrowBuf;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.vector.BaseFixedWidthVector;
+import org.apache.arrow.vector.BaseVariableWidthVector;
+import org.apache.arrow.vector.BitVectorHelper;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.ValueVector;
+import org.apache.arrow.vector.VarCharVector;
 import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.VectorUnloader;
+import org.apache.arrow.vector.compression.CompressionCodec;
+import org.apache.arrow.vector.compression.CompressionUtil;
+import org.apache.arrow.vector.dictionary.Dictionary;
+import org.apache.arrow.vector.dictionary.DictionaryEncoder;
+import org.apache.arrow.vector.dictionary.DictionaryProvider;
+import org.apache.arrow.vector.ipc.ArrowFileReader;
 import org.apache.arrow.vector.ipc.ArrowFileWriter;
+import org.apache.arrow.vector.ipc.ArrowReader;
 import org.apache.arrow.vector.ipc.ArrowStreamReader;
+import org.apache.arrow.vector.ipc.ArrowStreamWriter;
+import org.apache.arrow.vector.ipc.ArrowWriter;
+import org.apache.arrow.vector.ipc.SeekableReadChannel;
+import org.apache.arrow.vector.ipc.WriteChannel;
+import org.apache.arrow.vector.ipc.message.ArrowDictionaryBatch;
+import org.apache.arrow.vector.ipc.message.ArrowFieldNode;
+import org.apache.arrow.vector.ipc.message.ArrowRecordBatch;
+import org.apache.arrow.vector.ipc.message.IpcOption;
+import org.apache.arrow.vector.ipc.message.MessageSerializer;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.DictionaryEncoding;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.FieldType;
+import org.apache.arrow.vector.types.pojo.Schema;
+import org.apache.arrow.vector.util.ByteArrayReadableSeekableByteChannel;
+import org.apache.arrow.vector.util.DictionaryUtility;
+import org.apache.arrow.vector.util.TransferPair;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
 import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 
+/**
+ * FeatureTable的arrow ipc序列化
+ * 默认使用file格式， 已部署的serving只能读取file格式； serving支持stream格式后， 可以通过Options按模型服务选择Format.STREAM，
+ * stream格式没有file格式的footer
+ * 序列化时先计算payload的长度， 再把arrow buffer写入一个同样大小的数组并直接包装为ByteString，
+ * 每个buffer只拷贝一次
+ * 反序列化根据magic自动识别stream和file格式
+ * 可选字典编码： 精排请求中用户特征、上下文特征等列在每个候选行上重复同一个值， 开启后序列化时统计每个字符串列的基数，
+ * 不同值的个数不超过行数的maxCardinalityRatio时， 该列只发送一份去重后的字典和每行的整数下标
+ * 字典编码需要serving端支持arrow dictionary batch（ArrowRecordBatchSerde解码后再做特征计算）， 默认关闭，
+ * 通过Options按模型服务开启， 反序列化时字典编码的列还原为普通的字符串列
+ * 可选压缩： 传入PayloadCompression时， payload不小于阈值的table使用arrow ipc的body compression，
+ * 每个buffer按lz4 frame或zstd单独压缩， 压缩后的大小事先未知， 此时写入可增长的输出， 不再使用定长数组
+ * 压缩的payload总是stream格式， 只有确认可以读取压缩请求的serving才会收到， 这样的serving同时支持stream格式
+ * 反序列化时自动识别压缩的record batch
+ */
 public class FeatureTableSerDe {
+    private static final byte[] FILE_MAGIC = "ARROW1".getBytes(StandardCharsets.UTF_8);
+
+    public enum Format {
+        STREAM,
+        FILE
+    }
+
+    /**
+     * 字典编码的选项， 只对顶层的字符串列生效
+     * 行数不少于minRows， 且不同值的个数不超过行数的maxCardinalityRatio时， 该列按字典编码发送
+     */
+    public static class DictionaryOptions {
+        public static final DictionaryOptions DISABLED = new DictionaryOptions(0.0, Integer.MAX_VALUE);
+        public static final DictionaryOptions DEFAULT = new DictionaryOptions(0.25, 16);
+
+        private final double maxCardinalityRatio;
+        private final int minRows;
+
+        public DictionaryOptions(double maxCardinalityRatio, int minRows) {
+            this.maxCardinalityRatio = maxCardinalityRatio;
+            this.minRows = minRows;
+        }
+
+        public double getMaxCardinalityRatio() {
+            return maxCardinalityRatio;
+        }
+
+        public int getMinRows() {
+            return minRows;
+        }
+
+        boolean shouldTry(int rows) {
+            return maxCardinalityRatio > 0 && rows > 0 && rows >= minRows;
+        }
+    }
+
+    /**
+     * 模型服务级别的序列化选项， 由模型服务的配置决定， 与PayloadCompression一起传给serializeTo
+     */
+    public static class Options {
+        public static final Options DEFAULT = new Options(Format.FILE, DictionaryOptions.DISABLED);
+
+        private final Format format;
+        private final DictionaryOptions dictionary;
+
+        public Options(Format format) {
+            this(format, DictionaryOptions.DISABLED);
+        }
+
+        public Options(Format format, DictionaryOptions dictionary) {
+            this.format = format == null ? Format.FILE : format;
+            this.dictionary = dictionary == null ? DictionaryOptions.DISABLED : dictionary;
+        }
+
+        public Format getFormat() {
+            return format;
+        }
+
+        public DictionaryOptions getDictionary() {
+            return dictionary;
+        }
+    }
 
     public static void serializeTo(FeatureTable table, PredictRequest.Builder builder) throws IOException {
-        String name = table.getName();
-        ByteString.Output out = ByteString.newOutput();
+        serializeTo(table, builder, Format.FILE);
+    }
+
+    public static void serializeTo(FeatureTable table, PredictRequest.Builder builder, Format format) throws IOException {
+        builder.putPayload(table.getName(), serialize(table, format));
+    }
+
+    /**
+     * 按options中的格式和字典编码选项序列化， 并按compression协商的结果决定是否压缩，
+     * options为null时使用Options.DEFAULT， compression为null时不压缩
+     */
+    public static void serializeTo(FeatureTable table, PredictRequest.Builder builder, Options options,
+                                   PayloadCompression compression) throws IOException {
+        Options serDeOptions = options == null ? Options.DEFAULT : options;
+        builder.putPayload(table.getName(),
+                serialize(table, serDeOptions.getFormat(), serDeOptions.getDictionary(), compression));
+    }
+
+    public static ByteString serialize(FeatureTable table, Format format) throws IOException {
+        return serialize(table, format, DictionaryOptions.DISABLED);
+    }
+
+    public static ByteString serialize(FeatureTable table, Format format, DictionaryOptions options) throws IOException {
+        return serialize(table, format, options, null);
+    }
+
+    /**
+     * 使用指定的codec压缩， 只支持stream格式， 不检查阈值和服务端是否支持
+     */
+    public static ByteString serialize(FeatureTable table, DictionaryOptions options,
+                                       CompressionUtil.CodecType codec) throws IOException {
         table.finish();
-        ArrowFileWriter writer = new ArrowFileWriter(table.getRoot(),
-                /*DictionaryProvider=*/null, Channels.newChannel(out));
-        writer.start();
-        writer.writeBatch();
-        writer.end();
-        ByteString payload = out.toByteString();
-        builder.putPayload(name, payload);
-        writer.close();
+        try (DictionaryEncoded encoded = DictionaryEncoded.encode(table.getRoot(), options)) {
+            return writeCompressed(encoded.root, encoded.provider, codec);
+        }
+    }
+
+    public static ByteString serialize(FeatureTable table, Format format, DictionaryOptions options,
+                                       PayloadCompression compression) throws IOException {
+        table.finish();
+        try (DictionaryEncoded encoded = DictionaryEncoded.encode(table.getRoot(), options)) {
+            CountingChannel counter = new CountingChannel();
+            write(encoded.root, encoded.provider, format, counter);
+            CompressionUtil.CodecType codec = compression == null
+                    ? CompressionUtil.CodecType.NO_COMPRESSION : compression.chooseCodec(counter.size);
+            if (codec != CompressionUtil.CodecType.NO_COMPRESSION) {
+                return writeCompressed(encoded.root, encoded.provider, codec);
+            }
+            if (counter.size > Integer.MAX_VALUE) {
+                throw new IOException("FeatureTable " + table.getName() + " is too large to serialize: " + counter.size);
+            }
+            byte[] bytes = new byte[(int) counter.size];
+            ArrayChannel out = new ArrayChannel(bytes);
+            write(encoded.root, encoded.provider, format, out);
+            if (out.buffer.hasRemaining()) {
+                throw new IOException("FeatureTable " + table.getName() + " serialized size changed");
+            }
+            return UnsafeByteOperations.unsafeWrap(bytes);
+        }
     }
 
     public static FeatureTable deserializeFrom(String name, ByteString bytes, ArrowAllocator alloc) throws IOException {
-        ArrowStreamReader reader = new ArrowStreamReader(bytes.newInput(), alloc.getAlloc());
-        if (!reader.loadNextBatch()) {
-            throw new IOException("Empty record batch received");
+        BufferAllocator allocator = alloc.getAlloc();
+        CompressionCodec.Factory factory = CommonsCompressionFactory.INSTANCE;
+        try (ArrowReader reader = isFileFormat(bytes)
+                ? new ArrowFileReader(new SeekableReadChannel(new ByteArrayReadableSeekableByteChannel(bytes.toByteArray())), allocator, factory)
+                : new ArrowStreamReader(bytes.newInput(), allocator, factory)) {
+            if (!reader.loadNextBatch()) {
+                throw new IOException("Empty record batch received");
+            }
+            // reader关闭时会释放自己的VectorSchemaRoot， 数据转移到新的root中
+            VectorSchemaRoot root = reader.getVectorSchemaRoot();
+            List<FieldVector> vectors = new ArrayList<>(root.getFieldVectors().size());
+            List<Field> fields = new ArrayList<>(root.getFieldVectors().size());
+            boolean hasDictionary = false;
+            for (FieldVector vector : root.getFieldVectors()) {
+                DictionaryEncoding encoding = vector.getField().getDictionary();
+                if (encoding == null) {
+                    TransferPair transfer = vector.getTransferPair(allocator);
+                    transfer.transfer();
+                    vectors.add((FieldVector) transfer.getTo());
+                    continue;
+                }
+                hasDictionary = true;
+                try (ValueVector decoded = DictionaryEncoder.decode(vector, reader.lookup(encoding.getId()))) {
+                    TransferPair transfer = decoded.getTransferPair(vector.getName(), allocator);
+                    transfer.transfer();
+                    vectors.add((FieldVector) transfer.getTo());
+                }
+            }
+            if (!hasDictionary) {
+                fields = root.getSchema().getFields();
+            } else {
+                for (FieldVector vector : vectors) {
+                    fields.add(vector.getField());
+                }
+            }
+            return new FeatureTable(name, new VectorSchemaRoot(fields, vectors, root.getRowCount()));
+        }
+    }
+
+    private static boolean isFileFormat(ByteString bytes) {
+        if (bytes.size() < FILE_MAGIC.length) {
+            return false;
+        }
+        for (int i = 0; i < FILE_MAGIC.length; ++i) {
+            if (bytes.byteAt(i) != FILE_MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void write(VectorSchemaRoot root, DictionaryProvider provider, Format format,
+                              WritableByteChannel channel) throws IOException {
+        try (ArrowWriter writer = format == Format.FILE
+                ? new ArrowFileWriter(root, provider, channel)
+                : new ArrowStreamWriter(root, provider, channel)) {
+            writer.start();
+            writer.writeBatch();
+            writer.end();
+        }
+    }
+
+    /**
+     * arrow 7的ArrowStreamWriter不支持设置codec， 这里按stream格式的顺序写出schema、字典和压缩的record batch
+     */
+    private static ByteString writeCompressed(VectorSchemaRoot root, DictionaryProvider provider,
+                                              CompressionUtil.CodecType codec) throws IOException {
+        CompressionCodec compressor = PayloadCompression.createCodec(codec);
+        ByteString.Output output = ByteString.newOutput();
+        WriteChannel out = new WriteChannel(Channels.newChannel(output));
+        Set<Long> dictionaryIds = new TreeSet<>();
+        List<Field> fields = new ArrayList<>(root.getSchema().getFields().size());
+        for (Field field : root.getSchema().getFields()) {
+            fields.add(DictionaryUtility.toMessageFormat(field, provider, dictionaryIds));
+        }
+        MessageSerializer.serialize(out, new Schema(fields, root.getSchema().getCustomMetadata()));
+        for (long id : dictionaryIds) {
+            FieldVector vector = provider.lookup(id).getVector();
+            VectorSchemaRoot dictionaryRoot = new VectorSchemaRoot(Collections.singletonList(vector.getField()),
+                    Collections.singletonList(vector), vector.getValueCount());
+            // arrow 7的reader读取dictionary batch时不解压， 字典本身较小， 不压缩
+            try (ArrowDictionaryBatch batch = new ArrowDictionaryBatch(id,
+                    new VectorUnloader(dictionaryRoot).getRecordBatch(), false)) {
+                MessageSerializer.serialize(out, batch);
+            }
+        }
+        try (ArrowRecordBatch batch = compressBatch(root, compressor)) {
+            MessageSerializer.serialize(out, batch);
+        }
+        ArrowStreamWriter.writeEndOfStream(out, IpcOption.DEFAULT);
+        return output.toByteString();
+    }
+
+    /**
+     * 与VectorUnloader相同的布局， 每个buffer单独压缩
+     * arrow 7的VectorUnloader压缩时会释放vector自己的buffer， 这里先retain， 压缩后的buffer由batch持有
+     */
+    private static ArrowRecordBatch compressBatch(VectorSchemaRoot root, CompressionCodec codec) {
+        List<ArrowFieldNode> nodes = new ArrayList<>();
+        List<ArrowBuf> buffers = new ArrayList<>();
+        try {
+            for (FieldVector vector : root.getFieldVectors()) {
+                appendNodes(vector, codec, nodes, buffers);
+            }
+            return new ArrowRecordBatch(root.getRowCount(), nodes, buffers,
+                    CompressionUtil.createBodyCompression(codec), true);
+        } finally {
+            buffers.forEach(ArrowBuf::close);
+        }
+    }
+
+    private static void appendNodes(FieldVector vector, CompressionCodec codec, List<ArrowFieldNode> nodes,
+                                    List<ArrowBuf> buffers) {
+        nodes.add(new ArrowFieldNode(vector.getValueCount(), vector.getNullCount()));
+        for (ArrowBuf buf : vector.getFieldBuffers()) {
+            buf.getReferenceManager().retain();
+            buffers.add(codec.compress(vector.getAllocator(), buf));
+        }
+        for (FieldVector child : vector.getChildrenFromFields()) {
+            appendNodes(child, codec, nodes, buffers);
+        }
+    }
+
+    /**
+     * 待写出的root， 基数较低的字符串列替换为字典下标列， 其余列直接使用原table的vector
+     * close时只释放编码时新建的下标和字典vector
+     */
+    private static class DictionaryEncoded implements AutoCloseable {
+        final VectorSchemaRoot root;
+        final DictionaryProvider.MapDictionaryProvider provider;
+        final List<FieldVector> owned;
+
+        private DictionaryEncoded(VectorSchemaRoot root, DictionaryProvider.MapDictionaryProvider provider,
+                                  List<FieldVector> owned) {
+            this.root = root;
+            this.provider = provider;
+            this.owned = owned;
+        }
+
+        static DictionaryEncoded encode(VectorSchemaRoot root, DictionaryOptions options) {
+            int rows = root.getRowCount();
+            if (options == null || !options.shouldTry(rows)) {
+                return new DictionaryEncoded(root, null, List.of());
+            }
+            int maxDistinct = (int) (rows * options.getMaxCardinalityRatio());
+            DictionaryProvider.MapDictionaryProvider provider = new DictionaryProvider.MapDictionaryProvider();
+            List<FieldVector> owned = new ArrayList<>();
+            List<FieldVector> vectors = new ArrayList<>(root.getFieldVectors().size());
+            boolean encodedAny = false;
+            try {
+                for (FieldVector vector : root.getFieldVectors()) {
+                    FieldVector index = null;
+                    if (vector instanceof VarCharVector && vector.getField().getDictionary() == null) {
+                        index = encodeColumn((VarCharVector) vector, rows, maxDistinct, vectors.size(), provider, owned);
+                    }
+                    encodedAny |= index != null;
+                    vectors.add(index != null ? index : vector);
+                }
+            } catch (RuntimeException e) {
+                owned.forEach(FieldVector::close);
+                throw e;
+            }
+            if (!encodedAny) {
+                return new DictionaryEncoded(root, null, List.of());
+            }
+            List<Field> fields = new ArrayList<>(vectors.size());
+            for (FieldVector vector : vectors) {
+                fields.add(vector.getField());
+            }
+            return new DictionaryEncoded(new VectorSchemaRoot(fields, vectors, rows), provider, owned);
+        }
+
+        /**
+         * 统计不同值的个数， 超过maxDistinct时放弃编码返回null， 否则返回下标列并把字典加入provider
+         */
+        private static FieldVector encodeColumn(VarCharVector vector, int rows, int maxDistinct, long id,
+                                                DictionaryProvider.MapDictionaryProvider provider,
+                                                List<FieldVector> owned) {
+            // 一次拷贝出整列的validity、offset和字节， 避免逐行访问ArrowBuf时的边界检查
+            byte[] validity = new byte[BitVectorHelper.getValidityBufferSize(rows)];
+            vector.getValidityBuffer().getBytes(0, validity);
+            int[] offsets = new int[rows + 1];
+            vector.getOffsetBuffer().nioBuffer(0, (rows + 1) * BaseVariableWidthVector.OFFSET_WIDTH)
+                    .order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(offsets);
+            byte[] data = new byte[offsets[rows] - offsets[0]];
+            vector.getDataBuffer().getBytes(offsets[0], data);
+            for (int i = rows; i >= 0; --i) {
+                offsets[i] -= offsets[0];
+            }
+            int[] indices = new int[rows];
+            List<Integer> firstRows = new ArrayList<>();
+            if (isConstant(validity, offsets, data, rows)) {
+                firstRows.add(0);
+                return newIndexVector(vector, rows, indices, firstRows, validity, id, provider, owned);
+            }
+            Map<Slice, Integer> distinct = new HashMap<>();
+            Slice probe = new Slice(data);
+            int previous = -1;
+            for (int i = 0; i < rows; ++i) {
+                if ((validity[i >> 3] & (1 << (i & 7))) == 0) {
+                    indices[i] = -1;
+                    continue;
+                }
+                // 广播的特征大多与上一行相同， 直接比较字节， 不再查hash表
+                if (previous >= 0 && Arrays.equals(data, offsets[previous], offsets[previous + 1],
+                        data, offsets[i], offsets[i + 1])) {
+                    indices[i] = indices[previous];
+                    previous = i;
+                    continue;
+                }
+                Integer index = distinct.get(probe.reset(offsets[i], offsets[i + 1]));
+                if (index == null) {
+                    if (distinct.size() >= maxDistinct) {
+                        return null;
+                    }
+                    index = distinct.size();
+                    distinct.put(new Slice(data).reset(offsets[i], offsets[i + 1]), index);
+                    firstRows.add(i);
+                }
+                indices[i] = index;
+                previous = i;
+            }
+            return newIndexVector(vector, rows, indices, firstRows, validity, id, provider, owned);
+        }
+
+        /**
+         * 没有空值且每行长度相同时， 整列与自身错开一行的字节相同即说明所有行的值相同
+         */
+        private static boolean isConstant(byte[] validity, int[] offsets, byte[] data, int rows) {
+            for (int i = 0; i < rows >> 3; ++i) {
+                if (validity[i] != (byte) 0xff) {
+                    return false;
+                }
+            }
+            for (int i = rows & ~7; i < rows; ++i) {
+                if ((validity[i >> 3] & (1 << (i & 7))) == 0) {
+                    return false;
+                }
+            }
+            int length = offsets[1];
+            for (int i = 2; i <= rows; ++i) {
+                if (offsets[i] != i * length) {
+                    return false;
+                }
+            }
+            return Arrays.equals(data, 0, data.length - length, data, length, data.length);
+        }
+
+        private static FieldVector newIndexVector(VarCharVector vector, int rows, int[] indices, List<Integer> firstRows,
+                                                  byte[] validity, long id,
+                                                  DictionaryProvider.MapDictionaryProvider provider,
+                                                  List<FieldVector> owned) {
+            BufferAllocator allocator = vector.getAllocator();
+            VarCharVector values = new VarCharVector(vector.getName(), allocator);
+            owned.add(values);
+            values.allocateNew(firstRows.size());
+            for (int i = 0; i < firstRows.size(); ++i) {
+                values.copyFromSafe(firstRows.get(i), i, vector);
+            }
+            values.setValueCount(firstRows.size());
+
+            ArrowType.Int indexType = getIndexType(firstRows.size());
+            DictionaryEncoding encoding = new DictionaryEncoding(id, false, indexType);
+            Field field = vector.getField();
+            FieldVector index = new Field(field.getName(),
+                    new FieldType(field.isNullable(), indexType, encoding, field.getMetadata()), null)
+                    .createVector(allocator);
+            owned.add(index);
+            ((BaseFixedWidthVector) index).allocateNew(rows);
+            int width = indexType.getBitWidth() / 8;
+            ByteBuffer buffer = ByteBuffer.allocate(rows * width).order(ByteOrder.LITTLE_ENDIAN);
+            for (int i = 0; i < rows; ++i) {
+                int value = Math.max(indices[i], 0);
+                if (width == 1) {
+                    buffer.put((byte) value);
+                } else if (width == 2) {
+                    buffer.putShort((short) value);
+                } else {
+                    buffer.putInt(value);
+                }
+            }
+            index.getDataBuffer().setBytes(0, buffer.array());
+            // 下标列的空值与原列相同
+            index.getValidityBuffer().setBytes(0, validity);
+            index.setValueCount(rows);
+            provider.put(new Dictionary(values, encoding));
+            return index;
+        }
+
+        /**
+         * data中[start, end)的字节， 作为统计不同值的hash key
+         */
+        private static class Slice {
+            final byte[] data;
+            int start;
+            int end;
+            int hash;
+
+            Slice(byte[] data) {
+                this.data = data;
+            }
+
+            Slice reset(int start, int end) {
+                this.start = start;
+                this.end = end;
+                int h = 1;
+                for (int i = start; i < end; ++i) {
+                    h = 31 * h + data[i];
+                }
+                this.hash = h;
+                return this;
+            }
+
+            @Override
+            public int hashCode() {
+                return hash;
+            }
+
+            @Override
+            public boolean equals(Object o) {
+                if (!(o instanceof Slice)) {
+                    return false;
+                }
+                Slice other = (Slice) o;
+                return hash == other.hash && Arrays.equals(data, start, end, other.data, other.start, other.end);
+            }
+        }
+
+        private static ArrowType.Int getIndexType(int size) {
+            if (size <= Byte.MAX_VALUE) {
+                return new ArrowType.Int(8, true);
+            }
+            if (size <= Short.MAX_VALUE) {
+                return new ArrowType.Int(16, true);
+            }
+            return new ArrowType.Int(32, true);
+        }
+
+        @Override
+        public void close() {
+            owned.forEach(FieldVector::close);
+        }
+    }
+
+    private static class CountingChannel implements WritableByteChannel {
+        private long size;
+
+        @Override
+        public int write(ByteBuffer src) {
+            int length = src.remaining();
+            src.position(src.limit());
+            size += length;
+            return length;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static class ArrayChannel implements WritableByteChannel {
+        private final ByteBuffer buffer;
+
+        ArrayChannel(byte[] bytes) {
+            this.buffer = ByteBuffer.wrap(bytes);
+        }
+
+        @Override
+        public int write(ByteBuffer src) {
+            int length = src.remaining();
+            buffer.put(src);
+            return length;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
         }
-        VectorSchemaRoot root = reader.getVectorSchemaRoot();
-        reader.close();
-        return new FeatureTable(name, root);
     }
-}
\ No newline at end of file
+}
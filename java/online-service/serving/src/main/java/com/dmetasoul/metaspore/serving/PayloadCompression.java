@@ -0,0 +1,276 @@
+//
+// Copyright 2022 DMetaSoul
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package com.dmetasoul.metaspore.serving;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptor;
+import io.grpc.ForwardingClientCall;
+import io.grpc.ForwardingClientCallListener;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.arrow.compression.CommonsCompressionFactory;
+import org.apache.arrow.memory.ArrowBuf;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.vector.compression.CompressionCodec;
+import org.apache.arrow.vector.compression.CompressionUtil;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * predict请求和返回的压缩协商
+ * 客户端在请求的parameters中带上ACCEPT_KEY， 列出可以解压的codec， 服务端据此决定是否压缩返回的tensor
+ * 支持压缩的服务端在返回的extras中带上ACCEPT_KEY， 列出可以读取的codec， 客户端收到后， 之后的请求中超过minBytes的
+ * FeatureTable使用arrow ipc的body compression发送； 旧版serving不返回该key， 请求保持不压缩
+ * arrow的tensor消息不支持压缩， 压缩的tensor payload整体按arrow buffer压缩的格式编码：
+ * 8字节little endian的原始长度加压缩后的数据， 并在extras中记录CODEC_KEY_PREFIX + payload名对应的codec
+ * 不通过payload传递协商信息， 旧版serving会把payload中的每一项都当作模型输入解析
+ * 协商状态按副本记录： 请求在序列化之后才由ChannelPool选择副本， 因此只有所有副本都确认支持后才压缩，
+ * 滚动升级期间不会把压缩的请求发给旧版副本； 多副本时通过interceptor(replica)安装在各副本的channel上更新
+ * 注意目前cpp的serving还没有实现服务端： 不返回ACCEPT_KEY， 也不压缩返回的tensor， 对它请求始终不压缩，
+ * 压缩只在实现了该协议的服务端生效
+ */
+@Slf4j
+public class PayloadCompression {
+    public static final String ACCEPT_KEY = "arrow_compression";
+    public static final String CODEC_KEY_PREFIX = "arrow_compression.";
+    public static final long DEFAULT_MIN_BYTES = 64 * 1024;
+
+    private static final BufferAllocator allocator = ArrowAllocator.newChildAllocator("payload-compression", Long.MAX_VALUE);
+
+    private final CompressionUtil.CodecType codec;
+    private final long minBytes;
+    private final AtomicIntegerArray serverAccepts;
+
+    public PayloadCompression(CompressionUtil.CodecType codec, long minBytes) {
+        this(codec, minBytes, 1);
+    }
+
+    /**
+     * replicas为模型服务的副本数， 每个副本单独协商
+     */
+    public PayloadCompression(CompressionUtil.CodecType codec, long minBytes, int replicas) {
+        if (replicas <= 0) {
+            throw new IllegalArgumentException("replicas must be positive");
+        }
+        this.codec = codec;
+        this.minBytes = minBytes;
+        this.serverAccepts = new AtomicIntegerArray(replicas);
+    }
+
+    /**
+     * 配置中的codec名称， lz4/lz4_frame或zstd， none表示不压缩
+     * arrow 7的lz4使用commons-compress的纯java实现， 序列化比zstd慢一个数量级以上， 配置lz4时打印警告
+     */
+    public static CompressionUtil.CodecType parseCodec(String name) {
+        switch (name.trim().toLowerCase(Locale.ROOT)) {
+            case "lz4":
+            case "lz4_frame":
+                log.warn("lz4 compression in arrow 7 is pure java and much slower than zstd, use zstd instead");
+                return CompressionUtil.CodecType.LZ4_FRAME;
+            case "zstd":
+                return CompressionUtil.CodecType.ZSTD;
+            case "":
+            case "none":
+            case "no_compression":
+                return CompressionUtil.CodecType.NO_COMPRESSION;
+            default:
+                throw new IllegalArgumentException("unknown compression codec: " + name);
+        }
+    }
+
+    public static String codecName(CompressionUtil.CodecType codec) {
+        return codec.name().toLowerCase(Locale.ROOT);
+    }
+
+    public CompressionUtil.CodecType getCodec() {
+        return codec;
+    }
+
+    public long getMinBytes() {
+        return minBytes;
+    }
+
+    public int getReplicas() {
+        return serverAccepts.length();
+    }
+
+    /**
+     * 所有副本都确认可以读取压缩的请求
+     */
+    public boolean isServerAccepts() {
+        for (int i = 0; i < serverAccepts.length(); ++i) {
+            if (serverAccepts.get(i) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean isServerAccepts(int replica) {
+        return serverAccepts.get(replica) != 0;
+    }
+
+    /**
+     * 本端可以解压的codec
+     */
+    public static String acceptedCodecs() {
+        return codecName(CompressionUtil.CodecType.LZ4_FRAME) + "," + codecName(CompressionUtil.CodecType.ZSTD);
+    }
+
+    /**
+     * 所有副本都已确认支持， 且未压缩的payload不小于minBytes时使用codec， 否则不压缩
+     */
+    public CompressionUtil.CodecType chooseCodec(long bytes) {
+        if (codec == CompressionUtil.CodecType.NO_COMPRESSION || bytes < minBytes || !isServerAccepts()) {
+            return CompressionUtil.CodecType.NO_COMPRESSION;
+        }
+        return codec;
+    }
+
+    public void addParameters(PredictRequest.Builder builder) {
+        builder.putParameters(ACCEPT_KEY, acceptedCodecs());
+    }
+
+    /**
+     * 只有一个副本时， 根据返回的extras更新服务端是否可以读取压缩的请求
+     * 多个副本时无法确定reply来自哪个副本， 由各副本channel上的interceptor更新， 这里忽略
+     */
+    public void onReply(PredictReply reply) {
+        if (serverAccepts.length() == 1) {
+            onReply(0, reply);
+        }
+    }
+
+    /**
+     * 根据副本replica返回的extras更新该副本是否可以读取压缩的请求
+     */
+    public void onReply(int replica, PredictReply reply) {
+        String accepted = reply.getExtrasMap().get(ACCEPT_KEY);
+        serverAccepts.set(replica, accepted != null && accepts(accepted, codec) ? 1 : 0);
+    }
+
+    /**
+     * 安装在副本replica的channel上， 根据该副本返回的PredictReply更新协商状态
+     */
+    public ClientInterceptor interceptor(int replica) {
+        return new ClientInterceptor() {
+            @Override
+            public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method,
+                                                                       CallOptions callOptions, Channel next) {
+                return new ForwardingClientCall.SimpleForwardingClientCall<>(next.newCall(method, callOptions)) {
+                    @Override
+                    public void start(Listener<RespT> responseListener, Metadata headers) {
+                        super.start(new ForwardingClientCallListener.SimpleForwardingClientCallListener<>(responseListener) {
+                            @Override
+                            public void onMessage(RespT message) {
+                                if (message instanceof PredictReply) {
+                                    onReply(replica, (PredictReply) message);
+                                }
+                                super.onMessage(message);
+                            }
+                        }, headers);
+                    }
+                };
+            }
+        };
+    }
+
+    public static boolean accepts(String accepted, CompressionUtil.CodecType codec) {
+        for (String name : accepted.split(",")) {
+            try {
+                if (parseCodec(name) == codec) {
+                    return true;
+                }
+            } catch (IllegalArgumentException e) {
+                // 忽略本端不支持的codec
+            }
+        }
+        return false;
+    }
+
+    public static CompressionCodec createCodec(CompressionUtil.CodecType codec) {
+        return CommonsCompressionFactory.INSTANCE.createCodec(codec);
+    }
+
+    /**
+     * 按arrow buffer压缩的格式压缩整个payload
+     */
+    public static ByteString compress(ByteString payload, CompressionUtil.CodecType codec) {
+        ArrowBuf raw = allocator.buffer(Math.max(payload.size(), 1));
+        raw.setBytes(0, payload.asReadOnlyByteBuffer());
+        raw.writerIndex(payload.size());
+        // compress会释放传入的buffer， 压缩后更大时返回不压缩的原始数据
+        try (ArrowBuf compressed = createCodec(codec).compress(allocator, raw)) {
+            byte[] bytes = new byte[(int) compressed.writerIndex()];
+            compressed.getBytes(0, bytes);
+            return UnsafeByteOperations.unsafeWrap(bytes);
+        }
+    }
+
+    public static ByteString decompress(ByteString payload, CompressionUtil.CodecType codec) throws IOException {
+        if (payload.size() < CompressionUtil.SIZE_OF_UNCOMPRESSED_LENGTH) {
+            throw new IOException("Invalid compressed payload of " + payload.size() + " bytes");
+        }
+        ArrowBuf compressed = allocator.buffer(payload.size());
+        compressed.setBytes(0, payload.asReadOnlyByteBuffer());
+        compressed.writerIndex(payload.size());
+        // decompress会释放传入的buffer
+        try (ArrowBuf raw = createCodec(codec).decompress(allocator, compressed)) {
+            byte[] bytes = new byte[(int) raw.writerIndex()];
+            raw.getBytes(0, bytes);
+            return UnsafeByteOperations.unsafeWrap(bytes);
+        }
+    }
+
+    /**
+     * 取出reply中名为name的payload， extras中标记了codec时先解压
+     */
+    public static ByteString getPayload(PredictReply reply, String name) throws IOException {
+        ByteString payload = reply.getPayloadOrThrow(name);
+        String codec = reply.getExtrasMap().get(CODEC_KEY_PREFIX + name);
+        if (codec == null) {
+            return payload;
+        }
+        try {
+            return decompress(payload, parseCodec(codec));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("payload " + name + " is compressed by unsupported codec " + codec, e);
+        }
+    }
+
+    /**
+     * 服务端使用： 请求方支持时压缩超过minBytes的payload并在extras中标记
+     */
+    public static void putPayload(PredictReply.Builder builder, PredictRequest request, String name,
+                                  ByteString payload, CompressionUtil.CodecType codec, long minBytes) {
+        String accepted = request.getParametersMap().get(ACCEPT_KEY);
+        if (codec != CompressionUtil.CodecType.NO_COMPRESSION && payload.size() >= minBytes
+                && accepted != null && accepts(accepted, codec)) {
+            builder.putPayload(name, compress(payload, codec));
+            builder.putExtras(CODEC_KEY_PREFIX + name, codecName(codec));
+        } else {
+            builder.putPayload(name, payload);
+        }
+    }
+}
@@ -0,0 +1,275 @@
+//
+// Copyright 2022 DMetaSoul
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package com.dmetasoul.metaspore.serving;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.util.VectorSchemaRootAppender;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Function;
+
+/**
+ * 合并并发的predict请求
+ * 模型、参数和输入表结构都相同的调用在maxDelayMillis的时间窗口内排队， 累计行数达到maxRows或者等待超时后
+ * 合并为一个PredictRequest发送， 同名的FeatureTable按行拼接， 输出tensor沿第0维按每个调用的行数切分后返回
+ * 只有输入表行数一致的调用参与合并， 模型输出的第0维需要与输入行一一对应， 否则整个batch失败
+ * 调用方需要保持featureTables可用， 直到返回的future完成
+ */
+@Slf4j
+public class PredictBatcher implements AutoCloseable {
+    private final Function<PredictRequest, CompletableFuture<Map<String, ArrowTensor>>> sender;
+    private final long maxDelayMillis;
+    private final int maxRows;
+    private final ScheduledExecutorService timer;
+    private final boolean ownTimer;
+    private final Map<List<Object>, Batch> pending = new HashMap<>();
+    private volatile PayloadCompression compression;
+    private volatile FeatureTableSerDe.Options serDeOptions = FeatureTableSerDe.Options.DEFAULT;
+
+    public PredictBatcher(PredictGrpc.PredictStub client, long maxDelayMillis, int maxRows) {
+        this(request -> ServingClient.predictAsync(client, request), maxDelayMillis, maxRows);
+    }
+
+    /**
+     * sender负责发送合并后的请求， 如经过PredictHedger发送
+     */
+    public PredictBatcher(Function<PredictRequest, CompletableFuture<Map<String, ArrowTensor>>> sender,
+                          long maxDelayMillis, int maxRows) {
+        this(sender, maxDelayMillis, maxRows, Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "predict-batcher");
+            thread.setDaemon(true);
+            return thread;
+        }), true);
+    }
+
+    public PredictBatcher(PredictGrpc.PredictStub client, long maxDelayMillis, int maxRows, ScheduledExecutorService timer) {
+        this(request -> ServingClient.predictAsync(client, request), maxDelayMillis, maxRows, timer, false);
+    }
+
+    private PredictBatcher(Function<PredictRequest, CompletableFuture<Map<String, ArrowTensor>>> sender,
+                           long maxDelayMillis, int maxRows, ScheduledExecutorService timer, boolean ownTimer) {
+        if (maxDelayMillis <= 0 || maxRows <= 0) {
+            throw new IllegalArgumentException("maxDelayMillis and maxRows must be positive");
+        }
+        this.sender = sender;
+        this.maxDelayMillis = maxDelayMillis;
+        this.maxRows = maxRows;
+        this.timer = timer;
+        this.ownTimer = ownTimer;
+    }
+
+    /**
+     * 合并后的请求按compression协商的结果压缩， reply由sender负责更新协商状态
+     */
+    public void setCompression(PayloadCompression compression) {
+        this.compression = compression;
+    }
+
+    /**
+     * 合并后的请求按options中的格式序列化
+     */
+    public void setSerDeOptions(FeatureTableSerDe.Options options) {
+        this.serDeOptions = options == null ? FeatureTableSerDe.Options.DEFAULT : options;
+    }
+
+    private static class Call {
+        final List<FeatureTable> featureTables;
+        final int rows;
+        final CompletableFuture<Map<String, ArrowTensor>> future = new CompletableFuture<>();
+
+        Call(List<FeatureTable> featureTables, int rows) {
+            this.featureTables = featureTables;
+            this.rows = rows;
+        }
+    }
+
+    private static class Batch {
+        final String modelName;
+        final Map<String, String> parameters;
+        final List<Call> calls = new ArrayList<>();
+        int rows;
+        ScheduledFuture<?> timeout;
+
+        Batch(String modelName, Map<String, String> parameters) {
+            this.modelName = modelName;
+            this.parameters = parameters;
+        }
+    }
+
+    public CompletableFuture<Map<String, ArrowTensor>> predictAsync(String modelName, List<FeatureTable> featureTables,
+                                                                    Map<String, String> parameters) {
+        int rows = -1;
+        List<Object> schemas = new ArrayList<>(featureTables.size() * 2);
+        for (FeatureTable table : featureTables) {
+            if (rows >= 0 && rows != table.getRowCount()) {
+                // 行数不一致的输入（如广播的user表）无法按行拼接， 直接发送
+                return sendDirect(modelName, featureTables, parameters);
+            }
+            rows = table.getRowCount();
+            schemas.add(table.getName());
+            schemas.add(table.getSchema());
+        }
+        if (rows <= 0) {
+            return sendDirect(modelName, featureTables, parameters);
+        }
+        List<Object> key = List.of(modelName, Map.copyOf(parameters), schemas);
+        Call call = new Call(featureTables, rows);
+        List<Batch> ready = new ArrayList<>(2);
+        synchronized (pending) {
+            Batch batch = pending.get(key);
+            if (batch != null && batch.rows + rows > maxRows) {
+                ready.add(take(key));
+                batch = null;
+            }
+            if (batch == null) {
+                batch = new Batch(modelName, parameters);
+                pending.put(key, batch);
+                Batch scheduled = batch;
+                batch.timeout = timer.schedule(() -> flush(key, scheduled), maxDelayMillis, TimeUnit.MILLISECONDS);
+            }
+            batch.calls.add(call);
+            batch.rows += rows;
+            if (batch.rows >= maxRows) {
+                ready.add(take(key));
+            }
+        }
+        for (Batch batch : ready) {
+            send(batch);
+        }
+        return call.future;
+    }
+
+    private Batch take(List<Object> key) {
+        Batch batch = pending.remove(key);
+        batch.timeout.cancel(false);
+        return batch;
+    }
+
+    private void flush(List<Object> key, Batch batch) {
+        synchronized (pending) {
+            if (pending.get(key) != batch) {
+                return;
+            }
+            pending.remove(key);
+        }
+        send(batch);
+    }
+
+    private CompletableFuture<Map<String, ArrowTensor>> sendDirect(String modelName, List<FeatureTable> featureTables,
+                                                                   Map<String, String> parameters) {
+        try {
+            return sender.apply(ServingClient.buildRequest(modelName, featureTables, parameters, serDeOptions, compression));
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private void send(Batch batch) {
+        if (batch.calls.size() == 1) {
+            Call call = batch.calls.get(0);
+            sendDirect(batch.modelName, call.featureTables, batch.parameters).whenComplete((result, e) -> {
+                if (e != null) {
+                    call.future.completeExceptionally(e);
+                } else {
+                    call.future.complete(result);
+                }
+            });
+            return;
+        }
+        PredictRequest request;
+        try (ArrowArena arena = ArrowArena.acquire("predict-batch", ArrowArena.DEFAULT_LIMIT)) {
+            List<FeatureTable> merged = new ArrayList<>();
+            int tables = batch.calls.get(0).featureTables.size();
+            for (int i = 0; i < tables; ++i) {
+                List<FeatureTable> columns = new ArrayList<>(batch.calls.size());
+                for (Call call : batch.calls) {
+                    columns.add(call.featureTables.get(i));
+                }
+                merged.add(concat(arena, columns));
+            }
+            // 序列化时数据已拷贝到request中， arena可以立即释放
+            request = ServingClient.buildRequest(batch.modelName, merged, batch.parameters, serDeOptions, compression);
+        } catch (IOException | RuntimeException e) {
+            log.error("merge predict batch of model: {} fail!", batch.modelName, e);
+            batch.calls.forEach(call -> call.future.completeExceptionally(e));
+            return;
+        }
+        sender.apply(request).whenComplete((result, e) -> {
+            if (e != null) {
+                batch.calls.forEach(call -> call.future.completeExceptionally(e));
+                return;
+            }
+            try {
+                split(batch, result);
+            } catch (IOException | RuntimeException ex) {
+                batch.calls.forEach(call -> call.future.completeExceptionally(ex));
+            }
+        });
+    }
+
+    private static void split(Batch batch, Map<String, ArrowTensor> result) throws IOException {
+        for (Map.Entry<String, ArrowTensor> entry : result.entrySet()) {
+            long[] shape = entry.getValue().getShape();
+            if (shape.length == 0 || shape[0] != batch.rows) {
+                throw new IOException("output " + entry.getKey() + " of model " + batch.modelName + " has shape "
+                        + Arrays.toString(shape) + ", can not split into " + batch.rows + " rows");
+            }
+        }
+        int start = 0;
+        for (Call call : batch.calls) {
+            Map<String, ArrowTensor> map = new HashMap<>();
+            for (Map.Entry<String, ArrowTensor> entry : result.entrySet()) {
+                map.put(entry.getKey(), entry.getValue().sliceRows(start, call.rows));
+            }
+            start += call.rows;
+            call.future.complete(map);
+        }
+    }
+
+    private static FeatureTable concat(ArrowArena arena, List<FeatureTable> featureTables) {
+        FeatureTable first = featureTables.get(0);
+        FeatureTable merged = arena.newFeatureTable(first.getName(), first.getSchema().getFields());
+        VectorSchemaRoot[] roots = new VectorSchemaRoot[featureTables.size()];
+        for (int i = 0; i < roots.length; ++i) {
+            featureTables.get(i).finish();
+            roots[i] = featureTables.get(i).getRoot();
+        }
+        merged.getRoot().allocateNew();
+        VectorSchemaRootAppender.append(false, merged.getRoot(), roots);
+        merged.setRowCount(merged.getRoot().getRowCount());
+        return merged;
+    }
+
+    @Override
+    public void close() {
+        List<Batch> batches;
+        synchronized (pending) {
+            batches = new ArrayList<>(pending.values());
+            pending.clear();
+        }
+        for (Batch batch : batches) {
+            batch.timeout.cancel(false);
+            send(batch);
+        }
+        if (ownTimer) {
+            timer.shutdown();
+        }
+    }
+}
@@ -0,0 +1,234 @@
+//
+// Copyright 2022 DMetaSoul
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package com.dmetasoul.metaspore.serving;
+
+import io.grpc.CallOptions;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 对冲的predict请求
+ * 记录最近WINDOW次请求的耗时， 请求超过其中的percentile分位耗时仍未返回时， 再发送一个相同的请求，
+ * 耗时从逻辑请求开始计算到首个结果返回， 包括对冲前的等待， 不会因为只记录较快的一次尝试而持续缩短对冲等待时间
+ * 使用先返回的结果并取消另一个请求
+ * 对冲请求受budget限制： 每个请求积累budget个令牌， 每次对冲消耗一个， 令牌最多积累MAX_TOKENS个，
+ * 额外的请求量不超过budget的比例
+ * 已尝试过的副本记录在CallOptions的TRIED_REPLICAS中， ChannelPool据此把对冲请求发往另一个副本
+ */
+public class PredictHedger implements AutoCloseable {
+    public static final CallOptions.Key<Set<Object>> TRIED_REPLICAS = CallOptions.Key.create("triedReplicas");
+    public static final int WINDOW = 1024;
+    public static final int MIN_SAMPLES = 32;
+    private static final int RECOMPUTE_INTERVAL = 32;
+    private static final long TOKEN_SCALE = 1000;
+    private static final long MAX_TOKENS = 10 * TOKEN_SCALE;
+
+    private final PredictGrpc.PredictStub client;
+    private final double percentile;
+    private final long minDelayNanos;
+    private final long tokensPerCall;
+    private final ScheduledExecutorService timer;
+    private final boolean ownTimer;
+
+    private final long[] samples = new long[WINDOW];
+    private int sampleCount;
+    private int nextSample;
+    private volatile long delayNanos;
+    private final AtomicLong tokens = new AtomicLong(MAX_TOKENS);
+    private final AtomicLong hedgeCount = new AtomicLong();
+    private volatile PayloadCompression compression;
+
+    public PredictHedger(PredictGrpc.PredictStub client, double percentile, long minDelayMillis, double budget) {
+        this(client, percentile, minDelayMillis, budget, Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "predict-hedger");
+            thread.setDaemon(true);
+            return thread;
+        }), true);
+    }
+
+    public PredictHedger(PredictGrpc.PredictStub client, double percentile, long minDelayMillis, double budget,
+                         ScheduledExecutorService timer) {
+        this(client, percentile, minDelayMillis, budget, timer, false);
+    }
+
+    private PredictHedger(PredictGrpc.PredictStub client, double percentile, long minDelayMillis, double budget,
+                          ScheduledExecutorService timer, boolean ownTimer) {
+        if (percentile <= 0 || percentile >= 100 || budget < 0) {
+            throw new IllegalArgumentException("percentile must be in (0, 100) and budget must not be negative");
+        }
+        this.client = client;
+        this.percentile = percentile;
+        this.minDelayNanos = TimeUnit.MILLISECONDS.toNanos(minDelayMillis);
+        this.tokensPerCall = (long) (budget * TOKEN_SCALE);
+        this.timer = timer;
+        this.ownTimer = ownTimer;
+    }
+
+    /**
+     * 当前的对冲等待时间， 样本不足MIN_SAMPLES时为0， 不发送对冲请求
+     */
+    public long getDelayNanos() {
+        return delayNanos;
+    }
+
+    public long getHedgeCount() {
+        return hedgeCount.get();
+    }
+
+    /**
+     * 收到reply时更新压缩协商的状态
+     */
+    public void setCompression(PayloadCompression compression) {
+        this.compression = compression;
+    }
+
+    public CompletableFuture<Map<String, ArrowTensor>> predictAsync(PredictRequest request) {
+        tokens.getAndUpdate(value -> Math.min(MAX_TOKENS, value + tokensPerCall));
+        Hedge hedge = new Hedge(request);
+        hedge.attempt();
+        long delay = delayNanos;
+        if (delay > 0) {
+            ScheduledFuture<?> timeout = timer.schedule(() -> {
+                if (!hedge.result.isDone() && acquireToken()) {
+                    hedgeCount.incrementAndGet();
+                    hedge.attempt();
+                }
+            }, delay, TimeUnit.NANOSECONDS);
+            hedge.result.whenComplete((result, e) -> timeout.cancel(false));
+        }
+        return hedge.result;
+    }
+
+    private boolean acquireToken() {
+        while (true) {
+            long value = tokens.get();
+            if (value < TOKEN_SCALE) {
+                return false;
+            }
+            if (tokens.compareAndSet(value, value - TOKEN_SCALE)) {
+                return true;
+            }
+        }
+    }
+
+    private void record(long latencyNanos) {
+        long[] window = null;
+        synchronized (samples) {
+            samples[nextSample] = latencyNanos;
+            nextSample = (nextSample + 1) % WINDOW;
+            sampleCount = Math.min(sampleCount + 1, WINDOW);
+            if (sampleCount >= MIN_SAMPLES && (nextSample % RECOMPUTE_INTERVAL == 0 || delayNanos == 0)) {
+                window = Arrays.copyOf(samples, sampleCount);
+            }
+        }
+        if (window != null) {
+            Arrays.sort(window);
+            int index = (int) Math.min(window.length - 1, Math.ceil(percentile / 100.0 * window.length) - 1);
+            delayNanos = Math.max(minDelayNanos, window[Math.max(index, 0)]);
+        }
+    }
+
+    /**
+     * 一次逻辑请求， 包括原始请求和可能的对冲请求
+     */
+    private class Hedge {
+        final PredictRequest request;
+        final long start = System.nanoTime();
+        final CompletableFuture<Map<String, ArrowTensor>> result = new CompletableFuture<>();
+        final Set<Object> tried = ConcurrentHashMap.newKeySet();
+        final List<ClientCallStreamObserver<PredictRequest>> calls = new CopyOnWriteArrayList<>();
+        final AtomicInteger running = new AtomicInteger();
+        volatile ClientCallStreamObserver<PredictRequest> winner;
+
+        Hedge(PredictRequest request) {
+            this.request = request;
+        }
+
+        void attempt() {
+            running.incrementAndGet();
+            client.withOption(TRIED_REPLICAS, tried).predict(request, new ClientResponseObserver<PredictRequest, PredictReply>() {
+                private ClientCallStreamObserver<PredictRequest> call;
+
+                @Override
+                public void beforeStart(ClientCallStreamObserver<PredictRequest> requestStream) {
+                    call = requestStream;
+                    calls.add(requestStream);
+                }
+
+                @Override
+                public void onNext(PredictReply reply) {
+                    if (result.isDone()) {
+                        return;
+                    }
+                    try {
+                        Map<String, ArrowTensor> tensors = ServingClient.readTensors(reply, compression);
+                        if (result.complete(tensors)) {
+                            record(System.nanoTime() - start);
+                            winner = call;
+                            cancelOthers();
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        result.completeExceptionally(e);
+                    }
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                    // 还有请求在执行时等待其结果
+                    if (running.decrementAndGet() == 0) {
+                        result.completeExceptionally(t);
+                    }
+                }
+
+                @Override
+                public void onCompleted() {
+                    if (running.decrementAndGet() == 0) {
+                        result.completeExceptionally(new IOException("predict completed without reply"));
+                    }
+                }
+            });
+            // 对冲请求发出时原请求可能刚好返回
+            if (result.isDone()) {
+                cancelOthers();
+            }
+        }
+
+        void cancelOthers() {
+            for (ClientCallStreamObserver<PredictRequest> call : calls) {
+                if (call != winner) {
+                    call.cancel("hedged request finished", null);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        if (ownTimer) {
+            timer.shutdown();
+        }
+    }
+}
@@ -0,0 +1,340 @@
+//
+// Copyright 2022 DMetaSoul
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package com.dmetasoul.metaspore.serving;
+
+import io.grpc.Channel;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.arrow.vector.VectorSchemaRoot;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 使用双向流式的PredictStream发送行数较多的请求
+ * 输入表按chunkRows行切分为多个chunk， 每个chunk是一个独立的PredictRequest， 序号记录在parameters的CHUNK_KEY中，
+ * 服务端每处理完一个chunk返回一个PredictReply， 在extras的CHUNK_KEY中带回序号， 返回的顺序可以与发送的顺序不同
+ * 序列化、传输和模型推理按chunk流水线进行， 发送遵循grpc的流控， 只在isReady时序列化下一个chunk
+ * 调用方需要保持featureTables可用， 直到返回的future完成
+ * PredictStream定义在predict_stream.proto的PredictStreaming服务中， 未注册该服务的serving返回UNIMPLEMENTED， 之后的请求都改用普通的Predict
+ * 每个流式调用设置deadlineMillis的deadline， 避免服务端不返回时调用一直挂起
+ */
+@Slf4j
+public class PredictStreamer {
+    public static final String CHUNK_KEY = "chunk";
+    public static final long DEFAULT_DEADLINE_MILLIS = 10000L;
+
+    private final PredictGrpc.PredictStub client;
+    private final PredictStreamingGrpc.PredictStreamingStub streamClient;
+    private final int chunkRows;
+    private volatile long deadlineMillis = DEFAULT_DEADLINE_MILLIS;
+    private volatile PayloadCompression compression;
+    private volatile FeatureTableSerDe.Options serDeOptions = FeatureTableSerDe.Options.DEFAULT;
+    private volatile boolean unimplemented;
+
+    /**
+     * 每个chunk处理完成时调用， chunk的返回顺序不确定， startRow为该chunk在输入表中的起始行
+     */
+    public interface ChunkListener {
+        void onChunk(int startRow, int rows, Map<String, ArrowTensor> tensors) throws IOException;
+    }
+
+    public PredictStreamer(Channel channel, int chunkRows) {
+        if (chunkRows <= 0) {
+            throw new IllegalArgumentException("chunkRows must be positive");
+        }
+        this.client = PredictGrpc.newStub(channel);
+        this.streamClient = PredictStreamingGrpc.newStub(channel);
+        this.chunkRows = chunkRows;
+    }
+
+    public void setCompression(PayloadCompression compression) {
+        this.compression = compression;
+    }
+
+    public void setSerDeOptions(FeatureTableSerDe.Options options) {
+        this.serDeOptions = options == null ? FeatureTableSerDe.Options.DEFAULT : options;
+    }
+
+    /**
+     * 每个流式调用从发起开始的deadline， 不大于0时不设置
+     */
+    public void setDeadlineMillis(long deadlineMillis) {
+        this.deadlineMillis = deadlineMillis;
+    }
+
+    public int getChunkRows() {
+        return chunkRows;
+    }
+
+    /**
+     * 输入表的行数超过chunkRows且服务端支持时使用PredictStream
+     */
+    public boolean shouldStream(List<FeatureTable> featureTables) {
+        return !unimplemented && getRowCount(featureTables) > chunkRows;
+    }
+
+    /**
+     * 每个输出沿第0维按chunk顺序拼接后返回， 行数不超过chunkRows时直接使用Predict
+     */
+    public CompletableFuture<Map<String, ArrowTensor>> predictAsync(String modelName, List<FeatureTable> featureTables,
+                                                                    Map<String, String> parameters) {
+        if (!shouldStream(featureTables)) {
+            return predictUnary(modelName, featureTables, parameters);
+        }
+        // deadline在创建stub时确定， 每次调用重新设置
+        PredictStreamingGrpc.PredictStreamingStub stub = deadlineMillis > 0
+                ? streamClient.withDeadlineAfter(deadlineMillis, TimeUnit.MILLISECONDS) : streamClient;
+        return predictStream(stub, modelName, featureTables, parameters, chunkRows, serDeOptions, compression).handle((result, e) -> {
+            if (e == null) {
+                return CompletableFuture.completedFuture(result);
+            }
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof StatusRuntimeException
+                    && ((StatusRuntimeException) cause).getStatus().getCode() == Status.Code.UNIMPLEMENTED) {
+                log.warn("model serving does not support PredictStream, fall back to Predict");
+                unimplemented = true;
+                return predictUnary(modelName, featureTables, parameters);
+            }
+            return CompletableFuture.<Map<String, ArrowTensor>>failedFuture(cause);
+        }).thenCompose(future -> future);
+    }
+
+    private CompletableFuture<Map<String, ArrowTensor>> predictUnary(String modelName, List<FeatureTable> featureTables,
+                                                                     Map<String, String> parameters) {
+        try {
+            return ServingClient.predictAsync(client,
+                    ServingClient.buildRequest(modelName, featureTables, parameters, serDeOptions, compression), compression);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * 流式请求， 每个输出沿第0维按chunk顺序拼接后返回， deadline由调用方在client上设置
+     */
+    public static CompletableFuture<Map<String, ArrowTensor>> predictStream(PredictStreamingGrpc.PredictStreamingStub client,
+                                                                            String modelName,
+                                                                            List<FeatureTable> featureTables,
+                                                                            Map<String, String> parameters,
+                                                                            int chunkRows,
+                                                                            FeatureTableSerDe.Options options,
+                                                                            PayloadCompression compression) {
+        int chunks = Math.max(getChunkCount(getRowCount(featureTables), chunkRows), 0);
+        List<Map<String, ArrowTensor>> results = new ArrayList<>(chunks);
+        for (int i = 0; i < chunks; ++i) {
+            results.add(null);
+        }
+        // grpc按顺序调用同一个call的回调， 这里不需要额外的同步
+        ChunkListener listener = (startRow, rows, tensors) -> results.set(startRow / chunkRows, tensors);
+        return predictStream(client, modelName, featureTables, parameters, chunkRows, options, compression, listener)
+                .thenApply(count -> concat(results));
+    }
+
+    /**
+     * 流式请求， 每个chunk返回时调用listener， 返回的future在所有chunk处理完成后完成， 结果为chunk个数
+     */
+    public static CompletableFuture<Integer> predictStream(PredictStreamingGrpc.PredictStreamingStub client,
+                                                           String modelName,
+                                                           List<FeatureTable> featureTables,
+                                                           Map<String, String> parameters,
+                                                           int chunkRows,
+                                                           FeatureTableSerDe.Options options,
+                                                           PayloadCompression compression,
+                                                           ChunkListener listener) {
+        if (chunkRows <= 0) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("chunkRows must be positive"));
+        }
+        if (getRowCount(featureTables) < 0) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("feature tables have different row counts"));
+        }
+        StreamCall call = new StreamCall(modelName, featureTables, parameters, chunkRows, options, compression, listener);
+        if (call.chunks == 0) {
+            return CompletableFuture.completedFuture(0);
+        }
+        client.predictStream(call);
+        return call.future;
+    }
+
+    private static Map<String, ArrowTensor> concat(List<Map<String, ArrowTensor>> results) {
+        Map<String, ArrowTensor> map = new HashMap<>();
+        if (results.isEmpty()) {
+            return map;
+        }
+        for (String name : results.get(0).keySet()) {
+            List<ArrowTensor> tensors = new ArrayList<>(results.size());
+            for (Map<String, ArrowTensor> result : results) {
+                ArrowTensor tensor = result.get(name);
+                if (tensor == null) {
+                    throw new IllegalStateException("output " + name + " is missing in some chunks");
+                }
+                tensors.add(tensor);
+            }
+            map.put(name, tensors.size() == 1 ? tensors.get(0) : ArrowTensor.concatRows(tensors));
+        }
+        return map;
+    }
+
+    /**
+     * 所有输入表的行数， 各表行数不同时无法按行切分， 返回-1
+     */
+    static int getRowCount(List<FeatureTable> featureTables) {
+        int rows = -1;
+        for (FeatureTable table : featureTables) {
+            table.finish();
+            int count = table.getRoot().getRowCount();
+            if (rows >= 0 && count != rows) {
+                return -1;
+            }
+            rows = count;
+        }
+        return Math.max(rows, 0);
+    }
+
+    static int getChunkCount(int rows, int chunkRows) {
+        return (rows + chunkRows - 1) / chunkRows;
+    }
+
+    private static class StreamCall implements ClientResponseObserver<PredictRequest, PredictReply> {
+        final String modelName;
+        final List<FeatureTable> featureTables;
+        final Map<String, String> parameters;
+        final int chunkRows;
+        final int rows;
+        final int chunks;
+        final FeatureTableSerDe.Options options;
+        final PayloadCompression compression;
+        final ChunkListener listener;
+        final CompletableFuture<Integer> future = new CompletableFuture<>();
+        final boolean[] done;
+        ClientCallStreamObserver<PredictRequest> requests;
+        int nextChunk;
+        boolean halfClosed;
+        int received;
+
+        StreamCall(String modelName, List<FeatureTable> featureTables, Map<String, String> parameters, int chunkRows,
+                   FeatureTableSerDe.Options options, PayloadCompression compression, ChunkListener listener) {
+            this.modelName = modelName;
+            this.featureTables = featureTables;
+            this.parameters = parameters;
+            this.chunkRows = chunkRows;
+            this.rows = getRowCount(featureTables);
+            this.chunks = getChunkCount(rows, chunkRows);
+            this.done = new boolean[chunks];
+            this.options = options;
+            this.compression = compression;
+            this.listener = listener;
+        }
+
+        @Override
+        public void beforeStart(ClientCallStreamObserver<PredictRequest> requests) {
+            this.requests = requests;
+            requests.setOnReadyHandler(this::drain);
+        }
+
+        /**
+         * 在流可写时依次序列化并发送chunk， 全部发送后结束请求流
+         */
+        synchronized void drain() {
+            while (!halfClosed && nextChunk < chunks && requests.isReady()) {
+                PredictRequest request;
+                try {
+                    request = buildChunk(nextChunk);
+                } catch (IOException | RuntimeException e) {
+                    halfClosed = true;
+                    future.completeExceptionally(e);
+                    requests.cancel("serialize chunk " + nextChunk + " fail", e);
+                    return;
+                }
+                requests.onNext(request);
+                ++nextChunk;
+            }
+            if (!halfClosed && nextChunk == chunks) {
+                halfClosed = true;
+                requests.onCompleted();
+            }
+        }
+
+        PredictRequest buildChunk(int chunk) throws IOException {
+            int start = chunk * chunkRows;
+            int length = Math.min(chunkRows, rows - start);
+            PredictRequest.Builder builder = PredictRequest.newBuilder();
+            builder.setModelName(modelName);
+            for (FeatureTable table : featureTables) {
+                VectorSchemaRoot root = table.getRoot();
+                // 只有一个chunk时直接序列化原表， 否则截取[start, start + length)行， 序列化后释放
+                if (chunks == 1) {
+                    FeatureTableSerDe.serializeTo(table, builder, options, compression);
+                    continue;
+                }
+                try (FeatureTable slice = new FeatureTable(table.getName(), root.slice(start, length))) {
+                    FeatureTableSerDe.serializeTo(slice, builder, options, compression);
+                }
+            }
+            if (compression != null) {
+                compression.addParameters(builder);
+            }
+            builder.putAllParameters(parameters);
+            builder.putParameters(CHUNK_KEY, String.valueOf(chunk));
+            return builder.build();
+        }
+
+        @Override
+        public void onNext(PredictReply reply) {
+            if (future.isDone()) {
+                return;
+            }
+            try {
+                String value = reply.getExtrasMap().get(CHUNK_KEY);
+                int chunk = value == null ? received : Integer.parseInt(value);
+                if (chunk < 0 || chunk >= chunks || done[chunk]) {
+                    throw new IOException("invalid or duplicate chunk " + chunk + " of " + chunks + " chunks");
+                }
+                done[chunk] = true;
+                int start = chunk * chunkRows;
+                listener.onChunk(start, Math.min(chunkRows, rows - start), ServingClient.readTensors(reply, compression));
+                ++received;
+            } catch (IOException | RuntimeException e) {
+                future.completeExceptionally(e);
+                requests.cancel("read chunk reply fail", e);
+            }
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            future.completeExceptionally(t);
+        }
+
+        @Override
+        public void onCompleted() {
+            if (received != chunks) {
+                future.completeExceptionally(new IOException("predict stream completed with " + received + " of " + chunks + " chunks"));
+            } else {
+                future.complete(chunks);
+            }
+        }
+    }
+}
@@ -16,12 +16,15 @@
 
 package com.dmetasoul.metaspore.serving;
 
+import io.grpc.stub.StreamObserver;
 import lombok.extern.slf4j.Slf4j;
 import reactor.core.publisher.Mono;
 
 import java.io.IOException;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 @Slf4j
 public class ServingClient {
@@ -44,6 +47,124 @@ public class ServingClient {
         return map;
     }
 
+    /**
+     * 使用异步stub发送请求， 不阻塞调用线程， reply在grpc的回调线程中解码
+     */
+    public static CompletableFuture<Map<String, ArrowTensor>> predictAsync(PredictGrpc.PredictStub client,
+                                                                           String modelName,
+                                                                           Iterable<FeatureTable> featureTables,
+                                                                           ArrowAllocator allocator,
+                                                                           Map<String, String> parameters) throws IOException {
+        return predictAsync(client, buildRequest(modelName, featureTables, parameters));
+    }
+
+    public static PredictRequest buildRequest(String modelName, Iterable<FeatureTable> featureTables,
+                                              Map<String, String> parameters) throws IOException {
+        return buildRequest(modelName, featureTables, parameters, null);
+    }
+
+    public static PredictRequest buildRequest(String modelName, Iterable<FeatureTable> featureTables,
+                                              Map<String, String> parameters,
+                                              PayloadCompression compression) throws IOException {
+        return buildRequest(modelName, featureTables, parameters, FeatureTableSerDe.Options.DEFAULT, compression);
+    }
+
+    /**
+     * 按options序列化FeatureTable， compression不为null时在parameters中声明可以解压的codec， 并按协商结果压缩较大的FeatureTable
+     */
+    public static PredictRequest buildRequest(String modelName, Iterable<FeatureTable> featureTables,
+                                              Map<String, String> parameters,
+                                              FeatureTableSerDe.Options options,
+                                              PayloadCompression compression) throws IOException {
+        PredictRequest.Builder builder = PredictRequest.newBuilder();
+        builder.setModelName(modelName);
+        for (FeatureTable table : featureTables) {
+            FeatureTableSerDe.serializeTo(table, builder, options, compression);
+        }
+        if (compression != null) {
+            compression.addParameters(builder);
+        }
+        builder.putAllParameters(parameters);
+        return builder.build();
+    }
+
+    /**
+     * 解码reply中的所有tensor， 未压缩的tensor直接引用reply的payload
+     */
+    public static Map<String, ArrowTensor> readTensors(PredictReply reply) throws IOException {
+        Map<String, ArrowTensor> map = new HashMap<>();
+        for (String name : reply.getPayloadMap().keySet()) {
+            map.put(name, ArrowTensor.readFromByteString(PayloadCompression.getPayload(reply, name)));
+        }
+        return map;
+    }
+
+    /**
+     * 解码tensor， 并根据reply更新服务端是否支持压缩的请求
+     */
+    public static Map<String, ArrowTensor> readTensors(PredictReply reply, PayloadCompression compression) throws IOException {
+        if (compression != null) {
+            compression.onReply(reply);
+        }
+        return readTensors(reply);
+    }
+
+    public static CompletableFuture<Map<String, ArrowTensor>> predictAsync(PredictGrpc.PredictStub client,
+                                                                           PredictRequest request) {
+        return predictAsync(client, request, null);
+    }
+
+    public static CompletableFuture<Map<String, ArrowTensor>> predictAsync(PredictGrpc.PredictStub client,
+                                                                           PredictRequest request,
+                                                                           PayloadCompression compression) {
+        CompletableFuture<Map<String, ArrowTensor>> future = new CompletableFuture<>();
+        client.predict(request, new StreamObserver<>() {
+            @Override
+            public void onNext(PredictReply reply) {
+                try {
+                    future.complete(readTensors(reply, compression));
+                } catch (IOException | RuntimeException e) {
+                    future.completeExceptionally(e);
+                }
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                future.completeExceptionally(t);
+            }
+
+            @Override
+            public void onCompleted() {
+                future.completeExceptionally(new IOException("predict completed without reply"));
+            }
+        });
+        return future;
+    }
+
+    /**
+     * 使用PredictStream按chunkRows行分块发送， 每个输出沿第0维拼接后返回， 见PredictStreamer
+     * 调用方应在client上设置withDeadlineAfter
+     */
+    public static CompletableFuture<Map<String, ArrowTensor>> predictStream(PredictStreamingGrpc.PredictStreamingStub client,
+                                                                            String modelName,
+                                                                            List<FeatureTable> featureTables,
+                                                                            Map<String, String> parameters,
+                                                                            int chunkRows) {
+        return PredictStreamer.predictStream(client, modelName, featureTables, parameters, chunkRows, null, null);
+    }
+
+    /**
+     * 使用PredictStream按chunkRows行分块发送， 每个chunk返回时调用listener
+     */
+    public static CompletableFuture<Integer> predictStream(PredictStreamingGrpc.PredictStreamingStub client,
+                                                           String modelName,
+                                                           List<FeatureTable> featureTables,
+                                                           Map<String, String> parameters,
+                                                           int chunkRows,
+                                                           PredictStreamer.ChunkListener listener) {
+        return PredictStreamer.predictStream(client, modelName, featureTables, parameters, chunkRows, null, null, listener);
+    }
+
     public static Mono<Map<String, ArrowTensor>> predictReactor(ReactorPredictGrpc.ReactorPredictStub client,
                                                                 String modelName,
                                                                 Iterable<FeatureTable> featureTables,
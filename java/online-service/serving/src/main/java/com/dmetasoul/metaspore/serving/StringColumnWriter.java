@@ -0,0 +1,108 @@
+//
+// Copyright 2022 DMetaSoul
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package com.dmetasoul.metaspore.serving;
+
+import org.apache.arrow.memory.ArrowBuf;
+import org.apache.arrow.vector.BitVectorHelper;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.complex.ListVector;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.FieldType;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 字符串列的批量写入
+ * 字符串按UTF-8编码后直接写入VarCharVector的data buffer， 同时更新offset和validity buffer，
+ * 不再为每个字符串单独申请ArrowBuf， buffer空间不足时按倍数扩容
+ * 字符串list写入ListVector的子VarCharVector， 不经过UnionListWriter
+ * 值为null时写入null
+ */
+public final class StringColumnWriter {
+    private StringColumnWriter() {
+    }
+
+    public static void write(VarCharVector vector, int index, String value) {
+        write(vector, index, Arrays.asList(value));
+    }
+
+    public static void write(VarCharVector vector, int index, String[] values) {
+        write(vector, index, Arrays.asList(values));
+    }
+
+    /**
+     * 从index开始， 依次写入values到连续的行
+     */
+    public static void write(VarCharVector vector, int index, List<String> values) {
+        int size = values.size();
+        if (size == 0) {
+            return;
+        }
+        // 补齐index之前未写入的行， 之后offset[index]为本次写入的起始位置
+        vector.fillEmpties(index);
+        while (vector.getValueCapacity() < index + size) {
+            vector.reallocValidityAndOffsetBuffers();
+        }
+        ArrowBuf offsets = vector.getOffsetBuffer();
+        ArrowBuf validity = vector.getValidityBuffer();
+        ArrowBuf data = vector.getDataBuffer();
+        long position = vector.getStartOffset(index);
+        for (int i = 0; i < size; ++i) {
+            int row = index + i;
+            String value = values.get(i);
+            if (value == null) {
+                BitVectorHelper.unsetBit(validity, row);
+            } else {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                if (data.capacity() < position + bytes.length) {
+                    while (vector.getDataBuffer().capacity() < position + bytes.length) {
+                        vector.reallocDataBuffer();
+                    }
+                    data = vector.getDataBuffer();
+                }
+                data.setBytes(position, bytes);
+                position += bytes.length;
+                BitVectorHelper.setBit(validity, row);
+            }
+            offsets.setInt((long) (row + 1) * VarCharVector.OFFSET_WIDTH, (int) position);
+        }
+        vector.setLastSet(index + size - 1);
+    }
+
+    public static void writeList(ListVector vector, int index, String[] values) {
+        writeList(vector, index, Arrays.asList(values));
+    }
+
+    /**
+     * 写入第index行的字符串list， 元素追加到子VarCharVector的末尾
+     */
+    public static void writeList(ListVector vector, int index, List<String> values) {
+        VarCharVector elements = getElements(vector);
+        int start = vector.startNewValue(index);
+        write(elements, start, values);
+        vector.endValue(index, values.size());
+    }
+
+    private static VarCharVector getElements(ListVector vector) {
+        if (vector.getDataVector() instanceof VarCharVector) {
+            return (VarCharVector) vector.getDataVector();
+        }
+        return (VarCharVector) vector.addOrGetVector(FieldType.nullable(ArrowType.Utf8.INSTANCE)).getVector();
+    }
+}
@@ -0,0 +1,223 @@
+//
+// Copyright 2022 DMetaSoul
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package com.dmetasoul.metaspore.serving;
+
+import org.apache.arrow.vector.types.FloatingPointPrecision;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * float tensor的低精度编码， 用于减小embedding等输出的payload
+ * FLOAT16: arrow标准的HALF类型
+ * BFLOAT16: 保存为uint16， float的高16位， 按round-to-nearest-even截断
+ * INT8: 保存为int8， 整个tensor共用一个scale， value = q * scale， scale = max(|x|) / 127
+ * BFLOAT16和INT8在tensor message的custom metadata中记录编码和scale， 没有这些metadata的int tensor按普通整数处理
+ * 请求方在parameters的PARAMETER_KEY中指定希望的编码， 服务端不支持时按原样返回float tensor
+ * 注意目前cpp的serving还不读取PARAMETER_KEY， 总是返回float32 tensor， payload不会变小，
+ * 现在只有客户端的编码和解码， 服务端按该参数编码返回的tensor之后再实现
+ */
+public enum TensorEncoding {
+    FLOAT32("fp32", new ArrowType.FloatingPoint(FloatingPointPrecision.SINGLE), 4),
+    FLOAT16("fp16", new ArrowType.FloatingPoint(FloatingPointPrecision.HALF), 2),
+    BFLOAT16("bf16", new ArrowType.Int(16, false), 2),
+    INT8("int8", new ArrowType.Int(8, true), 1);
+
+    public static final String PARAMETER_KEY = "tensor_encoding";
+    public static final String ENCODING_METADATA_KEY = "metaspore.encoding";
+    public static final String SCALE_METADATA_KEY = "metaspore.scale";
+
+    private final String name;
+    private final ArrowType type;
+    private final int elemBytes;
+
+    TensorEncoding(String name, ArrowType type, int elemBytes) {
+        this.name = name;
+        this.type = type;
+        this.elemBytes = elemBytes;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public ArrowType getType() {
+        return type;
+    }
+
+    public int getElemBytes() {
+        return elemBytes;
+    }
+
+    /**
+     * 按名字查找编码， 名字为空时返回null
+     */
+    public static TensorEncoding fromName(String name) {
+        if (name == null || name.isEmpty()) {
+            return null;
+        }
+        for (TensorEncoding encoding : values()) {
+            if (encoding.name.equalsIgnoreCase(name) || encoding.name().equalsIgnoreCase(name)) {
+                return encoding;
+            }
+        }
+        throw new IllegalArgumentException("unknown tensor encoding " + name);
+    }
+
+    /**
+     * INT8编码使用的scale， 全0时返回1
+     */
+    public static float int8Scale(FloatBuffer values) {
+        float max = 0.0f;
+        for (int i = values.position(); i < values.limit(); ++i) {
+            max = Math.max(max, Math.abs(values.get(i)));
+        }
+        return max == 0.0f || !Float.isFinite(max) ? 1.0f : max / 127.0f;
+    }
+
+    /**
+     * 把values从position到limit编码为little endian的ByteBuffer， scale只用于INT8
+     */
+    public ByteBuffer encode(FloatBuffer values, float scale) {
+        int size = values.remaining();
+        int start = values.position();
+        ByteBuffer data = ByteBuffer.allocate(size * elemBytes).order(ByteOrder.LITTLE_ENDIAN);
+        switch (this) {
+            case FLOAT32:
+                data.asFloatBuffer().put(values.duplicate());
+                break;
+            case FLOAT16:
+                for (int i = 0; i < size; ++i) {
+                    data.putShort(i * 2, floatToHalf(values.get(start + i)));
+                }
+                break;
+            case BFLOAT16:
+                for (int i = 0; i < size; ++i) {
+                    data.putShort(i * 2, floatToBfloat16(values.get(start + i)));
+                }
+                break;
+            case INT8:
+                for (int i = 0; i < size; ++i) {
+                    data.put(i, floatToInt8(values.get(start + i), scale));
+                }
+                break;
+        }
+        return data;
+    }
+
+    /**
+     * 解码data中的count个元素到out
+     */
+    public void decode(ByteBuffer data, float scale, float[] out, int count) {
+        ByteBuffer view = data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int start = view.position();
+        switch (this) {
+            case FLOAT32:
+                view.asFloatBuffer().get(out, 0, count);
+                break;
+            case FLOAT16:
+                for (int i = 0; i < count; ++i) {
+                    out[i] = halfToFloat(view.getShort(start + i * 2));
+                }
+                break;
+            case BFLOAT16:
+                for (int i = 0; i < count; ++i) {
+                    out[i] = bfloat16ToFloat(view.getShort(start + i * 2));
+                }
+                break;
+            case INT8:
+                for (int i = 0; i < count; ++i) {
+                    out[i] = view.get(start + i) * scale;
+                }
+                break;
+        }
+    }
+
+    public static float halfToFloat(short value) {
+        int bits = value & 0xffff;
+        int sign = (bits & 0x8000) << 16;
+        int exponent = (bits >>> 10) & 0x1f;
+        int mantissa = bits & 0x3ff;
+        if (exponent == 0x1f) {
+            return Float.intBitsToFloat(sign | 0x7f800000 | (mantissa << 13));
+        }
+        if (exponent == 0) {
+            // subnormal， 值为mantissa * 2^-24
+            float result = mantissa * 0x1p-24f;
+            return sign == 0 ? result : -result;
+        }
+        return Float.intBitsToFloat(sign | ((exponent + 112) << 23) | (mantissa << 13));
+    }
+
+    public static short floatToHalf(float value) {
+        int bits = Float.floatToRawIntBits(value);
+        int sign = (bits >>> 16) & 0x8000;
+        int exponent = (bits >>> 23) & 0xff;
+        int mantissa = bits & 0x7fffff;
+        if (exponent == 0xff) {
+            // inf保持inf， nan保留quiet位
+            return (short) (sign | 0x7c00 | (mantissa == 0 ? 0 : 0x200 | (mantissa >>> 13)));
+        }
+        int halfExponent = exponent - 112;
+        if (halfExponent >= 0x1f) {
+            return (short) (sign | 0x7c00);
+        }
+        if (halfExponent <= 0) {
+            if (halfExponent < -10) {
+                return (short) sign;
+            }
+            // 转为subnormal， 加上隐含的最高位后右移
+            int shift = 14 - halfExponent;
+            int full = mantissa | 0x800000;
+            return (short) (sign | roundShift(full, shift));
+        }
+        // 舍入的进位可以进到指数位， 最大值进位后恰好是inf
+        return (short) (sign | roundShift((halfExponent << 23) | mantissa, 13));
+    }
+
+    /**
+     * 右移shift位， 按round-to-nearest-even舍入
+     */
+    private static int roundShift(int value, int shift) {
+        int result = value >>> shift;
+        int remainder = value & ((1 << shift) - 1);
+        int halfway = 1 << (shift - 1);
+        if (remainder > halfway || (remainder == halfway && (result & 1) != 0)) {
+            ++result;
+        }
+        return result;
+    }
+
+    public static float bfloat16ToFloat(short value) {
+        return Float.intBitsToFloat((value & 0xffff) << 16);
+    }
+
+    public static short floatToBfloat16(float value) {
+        int bits = Float.floatToRawIntBits(value);
+        if (Float.isNaN(value)) {
+            return (short) ((bits >>> 16) | 0x40);
+        }
+        return (short) ((bits + 0x7fff + ((bits >>> 16) & 1)) >>> 16);
+    }
+
+    public static byte floatToInt8(float value, float scale) {
+        long q = Math.round(value / scale);
+        return (byte) Math.max(-127, Math.min(127, q));
+    }
+}
@@ -27,6 +27,6 @@ public class TensorSerDe {
     }
 
     public static ArrowTensor deserializeFrom(String name, PredictReply response, ArrowAllocator alloc) throws IOException {
-        return ArrowTensor.readFromByteString(response.getPayloadOrThrow(name), alloc);
+        return ArrowTensor.readFromByteString(PayloadCompression.getPayload(response, name), alloc);
     }
 }
\ No newline at end of file
@@ -0,0 +1,200 @@
+//
+// Copyright 2022 DMetaSoul
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package com.dmetasoul.metaspore.serving;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.arrow.memory.ArrowBuf;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.Schema;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按schema复用VectorSchemaRoot
+ * 同一个模型的输入每次请求的schema都相同， 请求结束后root不再关闭， 而是reset之后放回池中：
+ * rowCount置0， validity等buffer清零， 但保留已申请的内存， 下一次请求直接写入， 不再重新创建vector和申请buffer
+ * 请求的行数偏大时buffer会随之扩容， 为避免个别大请求长期占用内存， 放回时buffer总容量超过maxRootBytes的root直接关闭
+ * 每个schema最多保留maxIdlePerSchema个空闲的root， root的内存都由池的allocator申请
+ * 池是线程安全的
+ */
+@Slf4j
+public class VectorSchemaRootPool implements AutoCloseable {
+    public static final long DEFAULT_MAX_ROOT_BYTES = 8L << 20;
+    public static final int DEFAULT_MAX_IDLE_PER_SCHEMA = 16;
+
+    private static final VectorSchemaRootPool DEFAULT =
+            new VectorSchemaRootPool("root-pool", DEFAULT_MAX_ROOT_BYTES, DEFAULT_MAX_IDLE_PER_SCHEMA);
+
+    private final BufferAllocator alloc;
+    private final long maxRootBytes;
+    private final int maxIdlePerSchema;
+    private final Map<List<Field>, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong reused = new AtomicLong();
+    private final AtomicLong discarded = new AtomicLong();
+    private volatile boolean closed;
+
+    private static class Entry {
+        final Schema schema;
+        final Queue<VectorSchemaRoot> idle = new ConcurrentLinkedQueue<>();
+        final AtomicInteger idleCount = new AtomicInteger();
+
+        Entry(List<Field> fields) {
+            this.schema = new Schema(fields);
+        }
+    }
+
+    public VectorSchemaRootPool(String name, long maxRootBytes, int maxIdlePerSchema) {
+        this.alloc = ArrowAllocator.newChildAllocator(name, Long.MAX_VALUE);
+        this.maxRootBytes = maxRootBytes;
+        this.maxIdlePerSchema = maxIdlePerSchema;
+    }
+
+    public static VectorSchemaRootPool getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * 使用池中的root创建FeatureTable， FeatureTable close时root放回池中
+     */
+    public FeatureTable newFeatureTable(String name, List<Field> fields) {
+        return new FeatureTable(name, acquire(fields), this);
+    }
+
+    public VectorSchemaRoot acquire(List<Field> fields) {
+        Entry entry = entries.get(fields);
+        if (entry == null) {
+            entry = entries.computeIfAbsent(List.copyOf(fields), Entry::new);
+        }
+        VectorSchemaRoot root = entry.idle.poll();
+        if (root != null) {
+            entry.idleCount.decrementAndGet();
+            reused.incrementAndGet();
+            return root;
+        }
+        created.incrementAndGet();
+        return VectorSchemaRoot.create(entry.schema, alloc);
+    }
+
+    /**
+     * 归还acquire得到的root， 调用后不能再使用该root
+     */
+    public void release(VectorSchemaRoot root) {
+        Entry entry = closed ? null : entries.get(root.getSchema().getFields());
+        if (entry == null || getCapacityBytes(root) > maxRootBytes) {
+            discard(root);
+            return;
+        }
+        for (FieldVector vector : root.getFieldVectors()) {
+            vector.reset();
+        }
+        root.setRowCount(0);
+        if (entry.idleCount.incrementAndGet() > maxIdlePerSchema) {
+            entry.idleCount.decrementAndGet();
+            discard(root);
+            return;
+        }
+        entry.idle.offer(root);
+        // close与release并发时， 由这里关闭刚放回的root
+        if (closed && entry.idle.remove(root)) {
+            entry.idleCount.decrementAndGet();
+            discard(root);
+        }
+    }
+
+    private void discard(VectorSchemaRoot root) {
+        discarded.incrementAndGet();
+        root.clear();
+        root.close();
+    }
+
+    /**
+     * root中所有buffer已申请的容量， 与当前的行数无关
+     */
+    public static long getCapacityBytes(VectorSchemaRoot root) {
+        long bytes = 0;
+        for (FieldVector vector : root.getFieldVectors()) {
+            bytes += getCapacityBytes(vector);
+        }
+        return bytes;
+    }
+
+    private static long getCapacityBytes(FieldVector vector) {
+        long bytes = 0;
+        for (ArrowBuf buf : vector.getFieldBuffers()) {
+            bytes += buf.capacity();
+        }
+        for (FieldVector child : vector.getChildrenFromFields()) {
+            bytes += getCapacityBytes(child);
+        }
+        return bytes;
+    }
+
+    BufferAllocator getAlloc() {
+        return alloc;
+    }
+
+    public long getCreatedCount() {
+        return created.get();
+    }
+
+    public long getReusedCount() {
+        return reused.get();
+    }
+
+    public long getDiscardedCount() {
+        return discarded.get();
+    }
+
+    public int getIdleCount(List<Field> fields) {
+        Entry entry = entries.get(fields);
+        return entry == null ? 0 : entry.idleCount.get();
+    }
+
+    public long getAllocatedMemory() {
+        return alloc.getAllocatedMemory();
+    }
+
+    /**
+     * 关闭空闲的root， 之后归还的root直接关闭， 所有root都归还后关闭allocator
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (Entry entry : entries.values()) {
+            VectorSchemaRoot root;
+            while ((root = entry.idle.poll()) != null) {
+                entry.idleCount.decrementAndGet();
+                discard(root);
+            }
+        }
+        if (alloc.getAllocatedMemory() == 0) {
+            alloc.close();
+        } else {
+            log.warn("root pool has {} bytes in use at close!", alloc.getAllocatedMemory());
+        }
+    }
+}
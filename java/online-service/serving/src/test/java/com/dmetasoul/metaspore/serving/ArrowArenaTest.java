@@ -0,0 +1,78 @@
+//
+// Copyright 2022 DMetaSoul
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package com.dmetasoul.metaspore.serving;
+
+import org.apache.arrow.memory.OutOfMemoryException;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.FieldType;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+
+public class ArrowArenaTest {
+    private static final List<Field> FIELDS = List.of(
+            new Field("item_id", FieldType.nullable(new ArrowType.Utf8()), null),
+            new Field("click", FieldType.nullable(new ArrowType.Int(64, true)), null));
+
+    private static void fill(FeatureTable table, int rows) {
+        VarCharVector items = table.getVector("item_id");
+        BigIntVector clicks = table.getVector("click");
+        for (int i = 0; i < rows; ++i) {
+            table.setString(i, "item-" + i, items);
+            table.setLong(i, i, clicks);
+        }
+        table.finish();
+    }
+
+    @Test
+    public void TestReleaseTablesOnClose() {
+        ArrowArena arena = ArrowArena.acquire("test", ArrowArena.DEFAULT_LIMIT);
+        FeatureTable first = arena.newFeatureTable("first", FIELDS);
+        FeatureTable second = arena.newFeatureTable("second", FIELDS);
+        fill(first, 100);
+        fill(second, 100);
+        first.close();
+        Assert.assertEquals(2, arena.getTableCount());
+        Assert.assertTrue(arena.getAllocatedMemory() > 0);
+        arena.close();
+        Assert.assertEquals(0, arena.getAllocatedMemory());
+        Assert.assertThrows(IllegalStateException.class, () -> arena.newFeatureTable("closed", FIELDS));
+        // 关闭后allocator放回池中， 下一个arena直接复用
+        long created = ArrowArena.getCreatedCount();
+        try (ArrowArena next = ArrowArena.acquire("next", ArrowArena.DEFAULT_LIMIT)) {
+            fill(next.newFeatureTable("table", FIELDS), 10);
+        }
+        Assert.assertEquals(created, ArrowArena.getCreatedCount());
+    }
+
+    @Test
+    public void TestMemoryLimit() {
+        try (ArrowArena arena = ArrowArena.acquire("limit", 64 * 1024)) {
+            Assert.assertEquals(64 * 1024, arena.getLimit());
+            FeatureTable table = arena.newFeatureTable("table", FIELDS);
+            Assert.assertThrows(OutOfMemoryException.class, () -> fill(table, 100000));
+        }
+        try (ArrowArena arena = ArrowArena.acquire("unlimited", ArrowArena.DEFAULT_LIMIT)) {
+            Assert.assertEquals(ArrowArena.DEFAULT_LIMIT, arena.getLimit());
+            fill(arena.newFeatureTable("table", FIELDS), 100000);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+//
+// Copyright 2022 DMetaSoul
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package com.dmetasoul.metaspore.serving;
+
+import org.apache.arrow.vector.UInt8Vector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.complex.ListVector;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.FieldType;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+public class FeatureHasherTest {
+    // 以下期望值由cpp/common/hash_utils.h中的BKDRHashWithEqualPostfix、BKDRHashOneField和CartesianHashCombine在x86上计算
+    private static final long USER_ID_SEED = 78046457090816658L;
+    private static final long USER_ID = 4939431028066865288L;
+    private static final long CITY = 803654724501L;
+    private static final long[] TAGS = {2211470954114L, 2209671349275L, 0L};
+    private static final long USER_ID_CROSS_ITEM_ID = 3907769909235471871L;
+    private static final long[] TAGS_CROSS_ITEM_ID_CROSS_CITY = {
+            -8010611445791593604L, -8010625435366260466L, -7999411607313934026L};
+
+    private static final String SCHEMA = String.join("\n",
+            "# table: item_table",
+            "",
+            "# table: user_table",
+            "",
+            "# join",
+            "item_table#user_table(user_id)=>output",
+            "",
+            "# combine",
+            "user_id",
+            "city",
+            "tags",
+            "user_id#item_id",
+            "tags#item_id#city");
+
+    private static final List<Field> FIELDS = List.of(
+            new Field("user_id", FieldType.nullable(new ArrowType.Utf8()), null),
+            new Field("item_id", FieldType.nullable(new ArrowType.Utf8()), null),
+            new Field("city", FieldType.nullable(new ArrowType.Utf8()), null),
+            new Field("tags", FieldType.nullable(new ArrowType.List()),
+                    List.of(new Field("item", FieldType.nullable(new ArrowType.Utf8()), null))));
+
+    private static FeatureTable newTable(ArrowArena arena) {
+        FeatureTable table = arena.newFeatureTable("item_table", FIELDS);
+        table.setString(0, "u_12345", table.getVector("user_id"));
+        table.setString(0, "i_678", table.getVector("item_id"));
+        table.setString(0, "北京", table.getVector("city"));
+        table.setStringList(0, Arrays.asList("sport", "music", ""), table.getVector("tags"));
+        // 第二行只有item_id， 其他特征缺失
+        table.setString(1, null, table.getVector("user_id"));
+        table.setString(1, "i_9", table.getVector("item_id"));
+        table.setString(1, "", table.getVector("city"));
+        table.setStringList(1, Arrays.asList(null, null), table.getVector("tags"));
+        table.finish();
+        return table;
+    }
+
+    @Test
+    public void TestParseSchema() {
+        FeatureHasher hasher = FeatureHasher.parse(SCHEMA);
+        Assert.assertEquals(List.of(List.of("user_id"), List.of("city"), List.of("tags"),
+                List.of("user_id", "item_id"), List.of("tags", "item_id", "city")), hasher.getCombines());
+        Assert.assertEquals(Set.of("user_id"), hasher.getJoinKeys());
+        // 旧格式每行一个组合特征， 空行结束
+        FeatureHasher old = FeatureHasher.parse("label\nuser_age#user_sex\n\nitem_color\n");
+        Assert.assertEquals(List.of(List.of("label"), List.of("user_age", "user_sex")), old.getCombines());
+        Assert.assertThrows(IllegalArgumentException.class, () -> FeatureHasher.parse("user_id#item-id"));
+    }
+
+    @Test
+    public void TestGoldenValues() {
+        Assert.assertEquals(USER_ID_SEED, FeatureHasher.nameSeed("user_id"));
+        Assert.assertEquals(Long.valueOf(USER_ID), FeatureHasher.hashValue("user_id", "u_12345"));
+        Assert.assertEquals(Long.valueOf(CITY), FeatureHasher.hashValue("city", "北京"));
+        Assert.assertNull(FeatureHasher.hashValue("city", ""));
+        FeatureHasher hasher = FeatureHasher.parse(SCHEMA);
+        try (ArrowArena arena = ArrowArena.acquire("hasher", ArrowArena.DEFAULT_LIMIT)) {
+            FeatureTable table = newTable(arena);
+            long[][] ids = hasher.compute(table, 0);
+            Assert.assertArrayEquals(new long[]{USER_ID}, ids[0]);
+            Assert.assertArrayEquals(new long[]{CITY}, ids[1]);
+            Assert.assertArrayEquals(TAGS, ids[2]);
+            Assert.assertArrayEquals(new long[]{USER_ID_CROSS_ITEM_ID}, ids[3]);
+            // 空字符串哈希为0， 也参与组合
+            Assert.assertArrayEquals(TAGS_CROSS_ITEM_ID_CROSS_CITY, ids[4]);
+            // 缺失的特征与serving一样填0
+            long[][] missing = hasher.compute(table, 1);
+            Assert.assertArrayEquals(new long[]{0L}, missing[0]);
+            Assert.assertArrayEquals(new long[]{0L}, missing[1]);
+            Assert.assertArrayEquals(new long[]{0L}, missing[2]);
+            Assert.assertArrayEquals(new long[]{0L}, missing[3]);
+            table.close();
+        }
+    }
+
+    @Test
+    public void TestHashTable() throws IOException {
+        FeatureHasher hasher = FeatureHasher.parse(SCHEMA);
+        try (ArrowArena arena = ArrowArena.acquire("hasher", ArrowArena.DEFAULT_LIMIT)) {
+            FeatureTable table = newTable(arena);
+            try (FeatureTable hashed = hasher.hashTable(table)) {
+                Assert.assertEquals(2, hashed.getRowCount());
+                // join key保持字符串， 其他特征列替换为哈希值
+                Assert.assertTrue(hashed.getVector("user_id") instanceof VarCharVector);
+                UInt8Vector city = hashed.getVector("city");
+                Assert.assertEquals(CITY, city.get(0));
+                Assert.assertTrue(city.isNull(1));
+                ListVector tags = hashed.getVector("tags");
+                Assert.assertTrue(tags.getDataVector() instanceof UInt8Vector);
+                Assert.assertEquals(List.of(), tags.getObject(1));
+                for (int row = 0; row < 2; ++row) {
+                    long[][] expected = hasher.compute(table, row);
+                    long[][] actual = hasher.compute(hashed, row);
+                    for (int i = 0; i < expected.length; ++i) {
+                        Assert.assertArrayEquals(expected[i], actual[i]);
+                    }
+                }
+                PredictRequest.Builder builder = PredictRequest.newBuilder();
+                FeatureTableSerDe.serializeTo(hashed, builder);
+                FeatureTable decoded = FeatureTableSerDe.deserializeFrom("item_table", builder.getPayloadMap().get("item_table"), arena);
+                Assert.assertEquals(CITY, ((UInt8Vector) decoded.getVector("city")).get(0));
+                decoded.close();
+            }
+            table.close();
+        }
+    }
+}
@@ -0,0 +1,249 @@
+//
+// Copyright 2022 DMetaSoul
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package com.dmetasoul.metaspore.serving;
+
+import com.google.protobuf.ByteString;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.complex.FixedSizeListVector;
+import org.apache.arrow.vector.complex.ListVector;
+import org.apache.arrow.vector.compression.CompressionUtil;
+import org.apache.arrow.vector.ipc.ArrowFileWriter;
+import org.apache.arrow.vector.ipc.ArrowStreamReader;
+import org.apache.arrow.vector.ipc.ArrowStreamWriter;
+import org.apache.arrow.vector.types.FloatingPointPrecision;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.FieldType;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.FloatBuffer;
+import java.nio.channels.Channels;
+import java.util.List;
+import java.util.Map;
+
+public class FeatureTableSerDeTest {
+    private static final List<Field> FIELDS = List.of(
+            new Field("item_id", FieldType.nullable(new ArrowType.Utf8()), null),
+            new Field("click", FieldType.nullable(new ArrowType.Int(64, true)), null),
+            new Field("score", FieldType.nullable(new ArrowType.FloatingPoint(FloatingPointPrecision.DOUBLE)), null),
+            new Field("tags", FieldType.nullable(new ArrowType.List()),
+                    List.of(new Field("item", FieldType.nullable(new ArrowType.Utf8()), null))));
+
+    private static FeatureTable newTable(ArrowArena arena, int rows) {
+        FeatureTable table = arena.newFeatureTable("rank", FIELDS);
+        VarCharVector items = table.getVector("item_id");
+        BigIntVector clicks = table.getVector("click");
+        Float8Vector scores = table.getVector("score");
+        ListVector tags = table.getVector("tags");
+        for (int i = 0; i < rows; ++i) {
+            table.setString(i, i % 10 == 0 ? null : "商品-" + i, items);
+            table.setLong(i, i * 31L, clicks);
+            table.setDouble(i, i / 7.0, scores);
+            table.setStringList(i, new String[]{"t" + i % 3, "t" + i % 5}, tags);
+        }
+        table.finish();
+        return table;
+    }
+
+    private static void assertTableEquals(FeatureTable expected, FeatureTable actual) {
+        Assert.assertEquals(expected.getRoot().getSchema(), actual.getRoot().getSchema());
+        Assert.assertEquals(expected.getRowCount(), actual.getRoot().getRowCount());
+        for (Field field : FIELDS) {
+            FieldVector left = expected.getVector(field.getName());
+            FieldVector right = actual.getVector(field.getName());
+            for (int i = 0; i < expected.getRowCount(); ++i) {
+                Assert.assertEquals(left.getObject(i), right.getObject(i));
+            }
+        }
+    }
+
+    @Test
+    public void TestRoundTrip() throws Exception {
+        try (ArrowArena arena = ArrowArena.acquire("serde", ArrowArena.DEFAULT_LIMIT)) {
+            FeatureTable table = newTable(arena, 1000);
+            for (FeatureTableSerDe.Format format : FeatureTableSerDe.Format.values()) {
+                PredictRequest.Builder builder = PredictRequest.newBuilder();
+                FeatureTableSerDe.serializeTo(table, builder, format);
+                ByteString payload = builder.getPayloadOrThrow("rank");
+                FeatureTable result = FeatureTableSerDe.deserializeFrom("rank", payload, arena);
+                assertTableEquals(table, result);
+                result.close();
+            }
+        }
+    }
+
+    @Test
+    public void TestDefaultFileFormat() throws Exception {
+        // 已部署的serving只能读取file格式， 只有显式配置时才使用stream格式
+        try (ArrowArena arena = ArrowArena.acquire("serde", ArrowArena.DEFAULT_LIMIT)) {
+            FeatureTable table = newTable(arena, 100);
+            PredictRequest.Builder builder = PredictRequest.newBuilder();
+            FeatureTableSerDe.serializeTo(table, builder);
+            Assert.assertEquals(FeatureTableSerDe.serialize(table, FeatureTableSerDe.Format.FILE), builder.getPayloadOrThrow("rank"));
+            Assert.assertEquals(builder.getPayloadOrThrow("rank"),
+                    ServingClient.buildRequest("model", List.of(table), Map.of(), null).getPayloadOrThrow("rank"));
+            FeatureTableSerDe.Options stream = new FeatureTableSerDe.Options(FeatureTableSerDe.Format.STREAM);
+            Assert.assertEquals(FeatureTableSerDe.serialize(table, FeatureTableSerDe.Format.STREAM),
+                    ServingClient.buildRequest("model", List.of(table), Map.of(), stream, null).getPayloadOrThrow("rank"));
+        }
+    }
+
+    private static final List<Field> USER_FIELDS = List.of(
+            new Field("user_id", FieldType.nullable(new ArrowType.Utf8()), null),
+            new Field("city", FieldType.nullable(new ArrowType.Utf8()), null),
+            new Field("item_id", FieldType.nullable(new ArrowType.Utf8()), null),
+            new Field("click", FieldType.nullable(new ArrowType.Int(64, true)), null));
+
+    /**
+     * user_id在每行重复， city只有少量取值且包含空值， item_id每行不同
+     */
+    private static FeatureTable newUserTable(ArrowArena arena, int rows) {
+        FeatureTable table = arena.newFeatureTable("rank", USER_FIELDS);
+        for (int i = 0; i < rows; ++i) {
+            table.setString(i, "用户-0001", table.getVector("user_id"));
+            table.setString(i, i % 9 == 0 ? null : "city-" + i % 4, table.getVector("city"));
+            table.setString(i, "item-" + i, table.getVector("item_id"));
+            table.setLong(i, i, table.getVector("click"));
+        }
+        table.finish();
+        return table;
+    }
+
+    @Test
+    public void TestDictionaryRoundTrip() throws Exception {
+        try (ArrowArena arena = ArrowArena.acquire("serde", ArrowArena.DEFAULT_LIMIT)) {
+            FeatureTable table = newUserTable(arena, 1000);
+            ByteString plain = FeatureTableSerDe.serialize(table, FeatureTableSerDe.Format.STREAM,
+                    FeatureTableSerDe.DictionaryOptions.DISABLED);
+            for (FeatureTableSerDe.Format format : FeatureTableSerDe.Format.values()) {
+                ByteString payload = FeatureTableSerDe.serialize(table, format, FeatureTableSerDe.DictionaryOptions.DEFAULT);
+                Assert.assertTrue(payload.size() < plain.size());
+                FeatureTable result = FeatureTableSerDe.deserializeFrom("rank", payload, arena);
+                Assert.assertEquals(table.getRoot().getSchema(), result.getRoot().getSchema());
+                for (Field field : USER_FIELDS) {
+                    FieldVector left = table.getVector(field.getName());
+                    FieldVector right = result.getVector(field.getName());
+                    for (int i = 0; i < 1000; ++i) {
+                        Assert.assertEquals(left.getObject(i), right.getObject(i));
+                    }
+                }
+                result.close();
+            }
+            // 只有低基数的列使用字典编码
+            ByteString payload = FeatureTableSerDe.serialize(table, FeatureTableSerDe.Format.STREAM,
+                    FeatureTableSerDe.DictionaryOptions.DEFAULT);
+            try (ArrowStreamReader reader = new ArrowStreamReader(payload.newInput(), arena.getAlloc())) {
+                List<Field> fields = reader.getVectorSchemaRoot().getSchema().getFields();
+                Assert.assertNotNull(fields.get(0).getDictionary());
+                Assert.assertNotNull(fields.get(1).getDictionary());
+                Assert.assertNull(fields.get(2).getDictionary());
+                Assert.assertEquals(2, reader.getDictionaryVectors().size());
+            }
+            // 字典编码只对传入该选项的请求生效， 其他模型服务的请求不受影响
+            FeatureTableSerDe.Options encoded = new FeatureTableSerDe.Options(FeatureTableSerDe.Format.FILE,
+                    FeatureTableSerDe.DictionaryOptions.DEFAULT);
+            Assert.assertEquals(FeatureTableSerDe.serialize(table, FeatureTableSerDe.Format.FILE, FeatureTableSerDe.DictionaryOptions.DEFAULT),
+                    ServingClient.buildRequest("model", List.of(table), Map.of(), encoded, null).getPayloadOrThrow("rank"));
+            Assert.assertEquals(FeatureTableSerDe.serialize(table, FeatureTableSerDe.Format.FILE, FeatureTableSerDe.DictionaryOptions.DISABLED),
+                    ServingClient.buildRequest("model", List.of(table), Map.of(), null).getPayloadOrThrow("rank"));
+            // 行数较少时不编码
+            FeatureTable small = newUserTable(arena, 8);
+            Assert.assertEquals(FeatureTableSerDe.serialize(small, FeatureTableSerDe.Format.STREAM,
+                            FeatureTableSerDe.DictionaryOptions.DISABLED),
+                    FeatureTableSerDe.serialize(small, FeatureTableSerDe.Format.STREAM,
+                            FeatureTableSerDe.DictionaryOptions.DEFAULT));
+        }
+    }
+
+    @Test
+    public void TestFixedSizeListRoundTrip() throws Exception {
+        Field field = new Field("embedding", FieldType.nullable(new ArrowType.FixedSizeList(4)),
+                List.of(Field.notNullable("item", new ArrowType.FloatingPoint(FloatingPointPrecision.SINGLE))));
+        float[] values = new float[1000 * 4];
+        for (int i = 0; i < values.length; ++i) {
+            values[i] = i * 0.25f;
+        }
+        try (ArrowArena arena = ArrowArena.acquire("serde", ArrowArena.DEFAULT_LIMIT)) {
+            FeatureTable table = arena.newFeatureTable("embedding", List.of(field));
+            FixedSizeListVector vector = table.getVector("embedding");
+            // 前1000行整块写入， 之后逐行写入并留一个空行
+            table.setFloatVectors(0, values, vector);
+            table.setFloatVector(1000, new float[]{1.0f, 2.0f, 3.0f, 4.0f}, vector);
+            vector.setNull(1001);
+            table.setFloatVector(1002, FloatBuffer.wrap(values, 8, 4), vector);
+            Assert.assertThrows(IllegalArgumentException.class, () -> table.setFloatVector(1003, new float[3], vector));
+            table.finish();
+            Assert.assertEquals(1003, table.getRowCount());
+            Assert.assertEquals(List.of(1.0f, 2.0f, 3.0f, 4.0f), vector.getObject(1000));
+            Assert.assertEquals(vector.getObject(2), vector.getObject(1002));
+
+            List<ByteString> payloads = List.of(FeatureTableSerDe.serialize(table, FeatureTableSerDe.Format.STREAM),
+                    FeatureTableSerDe.serialize(table, FeatureTableSerDe.Format.FILE),
+                    FeatureTableSerDe.serialize(table, FeatureTableSerDe.DictionaryOptions.DEFAULT, CompressionUtil.CodecType.LZ4_FRAME),
+                    FeatureTableSerDe.serialize(table, FeatureTableSerDe.DictionaryOptions.DEFAULT, CompressionUtil.CodecType.ZSTD));
+            for (ByteString payload : payloads) {
+                try (FeatureTable result = FeatureTableSerDe.deserializeFrom("embedding", payload, arena)) {
+                    Assert.assertEquals(table.getRoot().getSchema(), result.getRoot().getSchema());
+                    FixedSizeListVector actual = result.getVector("embedding");
+                    for (int i = 0; i < 1003; ++i) {
+                        Assert.assertEquals(vector.getObject(i), actual.getObject(i));
+                    }
+                    Assert.assertTrue(actual.isNull(1001));
+                }
+            }
+            // 与变长list相比少了每行4字节的offset buffer
+            Field listField = new Field("embedding", FieldType.nullable(new ArrowType.List()),
+                    List.of(Field.notNullable("item", new ArrowType.FloatingPoint(FloatingPointPrecision.SINGLE))));
+            FeatureTable list = arena.newFeatureTable("embedding", List.of(listField));
+            for (int i = 0; i < 1003; ++i) {
+                list.setFloatList(i, FloatBuffer.wrap(values, (i % 1000) * 4, 4), list.getVector("embedding"));
+            }
+            list.finish();
+            Assert.assertTrue(FeatureTableSerDe.serialize(list, FeatureTableSerDe.Format.STREAM).size()
+                    >= payloads.get(0).size() + 1003 * 4);
+        }
+    }
+
+    @Test
+    public void TestSameBytesAsArrowWriter() throws Exception {
+        // serving端按标准的arrow ipc格式读取， 输出需要和arrow自带writer的结果完全一致
+        try (ArrowArena arena = ArrowArena.acquire("serde", ArrowArena.DEFAULT_LIMIT)) {
+            FeatureTable table = newTable(arena, 100);
+            ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            try (ArrowStreamWriter writer = new ArrowStreamWriter(table.getRoot(), null, Channels.newChannel(stream))) {
+                writer.start();
+                writer.writeBatch();
+                writer.end();
+            }
+            Assert.assertEquals(ByteString.copyFrom(stream.toByteArray()),
+                    FeatureTableSerDe.serialize(table, FeatureTableSerDe.Format.STREAM));
+            ByteArrayOutputStream file = new ByteArrayOutputStream();
+            try (ArrowFileWriter writer = new ArrowFileWriter(table.getRoot(), null, Channels.newChannel(file))) {
+                writer.start();
+                writer.writeBatch();
+                writer.end();
+            }
+            Assert.assertEquals(ByteString.copyFrom(file.toByteArray()),
+                    FeatureTableSerDe.serialize(table, FeatureTableSerDe.Format.FILE));
+        }
+    }
+}
@@ -0,0 +1,143 @@
+//
+// Copyright 2022 DMetaSoul
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package com.dmetasoul.metaspore.serving;
+
+import com.google.protobuf.ByteString;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.compression.CompressionUtil;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+public class PayloadCompressionTest {
+    @Rule
+    public final InProcessServing serving = new InProcessServing();
+    private CompressingPredict predict;
+
+    /**
+     * advertise为true时在extras中声明支持的codec， 并按请求方的声明压缩返回的tensor
+     */
+    static class CompressingPredict extends ScoringPredict {
+        private final CompressionUtil.CodecType codec;
+        private final boolean advertise;
+
+        CompressingPredict(CompressionUtil.CodecType codec, boolean advertise) {
+            this.codec = codec;
+            this.advertise = advertise;
+        }
+
+        @Override
+        protected PredictReply.Builder reply(PredictRequest request) throws IOException {
+            if (!advertise) {
+                return super.reply(request);
+            }
+            PredictReply.Builder builder = PredictReply.newBuilder();
+            builder.putExtras(PayloadCompression.ACCEPT_KEY, PayloadCompression.acceptedCodecs());
+            PayloadCompression.putPayload(builder, request, "output", ArrowTensor.writeToByteString(score(request, rows)), codec, 1024);
+            return builder;
+        }
+    }
+
+    private void start(CompressionUtil.CodecType codec, boolean advertise) throws IOException {
+        predict = new CompressingPredict(codec, advertise);
+        serving.start(predict);
+    }
+
+    private static FeatureTable newInput(ArrowArena arena, int rows) {
+        return ScoringPredict.newInput(arena, 0L, rows);
+    }
+
+    private static void assertScores(int rows, Map<String, ArrowTensor> result) {
+        ScoringPredict.assertScores(0L, rows, result);
+    }
+
+    private Map<String, ArrowTensor> predict(FeatureTable table, PayloadCompression compression) throws Exception {
+        PredictRequest request = ServingClient.buildRequest("model", List.of(table), Map.of(), compression);
+        return ServingClient.predictAsync(PredictGrpc.newStub(serving.getChannel()), request, compression).get();
+    }
+
+    private void checkNegotiation(CompressionUtil.CodecType codec) throws Exception {
+        start(codec, true);
+        PayloadCompression compression = new PayloadCompression(codec, PayloadCompression.DEFAULT_MIN_BYTES);
+        try (ArrowArena arena = ArrowArena.acquire("client", ArrowArena.DEFAULT_LIMIT)) {
+            FeatureTable large = newInput(arena, 20000);
+            FeatureTable small = newInput(arena, 100);
+            int plain = FeatureTableSerDe.serialize(large, FeatureTableSerDe.Format.FILE).size();
+            Assert.assertTrue(plain > PayloadCompression.DEFAULT_MIN_BYTES);
+
+            // 第一个请求时还不知道服务端是否支持， 不压缩
+            assertScores(20000, predict(large, compression));
+            Assert.assertTrue(compression.isServerAccepts());
+            assertScores(20000, predict(large, compression));
+            assertScores(100, predict(small, compression));
+            Assert.assertEquals(plain, (int) predict.payloadBytes.get(0));
+            Assert.assertTrue(predict.payloadBytes.get(1) < plain / 2);
+            Assert.assertEquals(FeatureTableSerDe.serialize(small, FeatureTableSerDe.Format.FILE).size(),
+                    (int) predict.payloadBytes.get(2));
+        }
+    }
+
+    @Test
+    public void TestLz4Negotiation() throws Exception {
+        checkNegotiation(CompressionUtil.CodecType.LZ4_FRAME);
+    }
+
+    @Test
+    public void TestZstdNegotiation() throws Exception {
+        checkNegotiation(CompressionUtil.CodecType.ZSTD);
+    }
+
+    @Test
+    public void TestOldServer() throws Exception {
+        start(CompressionUtil.CodecType.NO_COMPRESSION, false);
+        PayloadCompression compression = new PayloadCompression(CompressionUtil.CodecType.LZ4_FRAME, 0);
+        try (ArrowArena arena = ArrowArena.acquire("client", ArrowArena.DEFAULT_LIMIT)) {
+            FeatureTable table = newInput(arena, 5000);
+            int plain = FeatureTableSerDe.serialize(table, FeatureTableSerDe.Format.FILE).size();
+            for (int i = 0; i < 3; ++i) {
+                assertScores(5000, predict(table, compression));
+                Assert.assertFalse(compression.isServerAccepts());
+            }
+            predict.payloadBytes.forEach(bytes -> Assert.assertEquals(plain, (int) bytes));
+        }
+    }
+
+    @Test
+    public void TestDictionaryRoundTrip() throws Exception {
+        start(CompressionUtil.CodecType.NO_COMPRESSION, false);
+        try (ArrowArena arena = ArrowArena.acquire("client", ArrowArena.DEFAULT_LIMIT)) {
+            FeatureTable table = newInput(arena, 5000);
+            for (CompressionUtil.CodecType codec : List.of(CompressionUtil.CodecType.LZ4_FRAME, CompressionUtil.CodecType.ZSTD)) {
+                ByteString bytes = FeatureTableSerDe.serialize(table, FeatureTableSerDe.DictionaryOptions.DEFAULT, codec);
+                try (FeatureTable result = FeatureTableSerDe.deserializeFrom("input", bytes, arena)) {
+                    BigIntVector ids = result.getVector("id");
+                    VarCharVector names = result.getVector("name");
+                    Assert.assertEquals(5000, result.getRoot().getRowCount());
+                    for (int i = 0; i < 5000; ++i) {
+                        Assert.assertEquals(i, ids.get(i));
+                        Assert.assertEquals(ScoringPredict.name(i), names.isNull(i) ? null : names.getObject(i).toString());
+                    }
+                }
+            }
+        }
+    }
+}
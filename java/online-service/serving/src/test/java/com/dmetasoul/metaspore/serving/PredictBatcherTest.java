@@ -0,0 +1,90 @@
+//
+// Copyright 2022 DMetaSoul
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package com.dmetasoul.metaspore.serving;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+public class PredictBatcherTest {
+    @Rule
+    public final InProcessServing serving = new InProcessServing();
+    private final ScoringPredict predict = new ScoringPredict();
+
+    @Before
+    public void setUp() throws IOException {
+        serving.start(predict);
+    }
+
+    private static List<FeatureTable> newInput(ArrowArena arena, long firstId, int rows) {
+        return List.of(ScoringPredict.newInput(arena, firstId, rows));
+    }
+
+    @Test
+    public void TestMergeConcurrentCalls() {
+        try (ArrowArena arena = ArrowArena.acquire("client", ArrowArena.DEFAULT_LIMIT);
+             PredictBatcher batcher = new PredictBatcher(PredictGrpc.newStub(serving.getChannel()), 200, 1000)) {
+            List<CompletableFuture<Map<String, ArrowTensor>>> futures = new ArrayList<>();
+            for (int i = 0; i < 10; ++i) {
+                futures.add(batcher.predictAsync("model", newInput(arena, i * 100L, 3), Map.of()));
+            }
+            for (int i = 0; i < 10; ++i) {
+                ScoringPredict.assertScores(i * 100L, 3, futures.get(i).join());
+            }
+        }
+        Assert.assertEquals(List.of(30), predict.rows);
+    }
+
+    @Test
+    public void TestMaxRows() {
+        try (ArrowArena arena = ArrowArena.acquire("client", ArrowArena.DEFAULT_LIMIT);
+             PredictBatcher batcher = new PredictBatcher(PredictGrpc.newStub(serving.getChannel()), 100, 10)) {
+            List<CompletableFuture<Map<String, ArrowTensor>>> futures = new ArrayList<>();
+            for (int i = 0; i < 5; ++i) {
+                futures.add(batcher.predictAsync("model", newInput(arena, i * 100L, 4), Map.of()));
+            }
+            // 超过maxRows的单个调用直接发送
+            futures.add(batcher.predictAsync("model", newInput(arena, 1000L, 20), Map.of()));
+            for (int i = 0; i < 5; ++i) {
+                ScoringPredict.assertScores(i * 100L, 4, futures.get(i).join());
+            }
+            ScoringPredict.assertScores(1000L, 20, futures.get(5).join());
+        }
+        Assert.assertEquals(List.of(8, 8, 4, 20), predict.rows);
+    }
+
+    @Test
+    public void TestUnsplittableOutput() {
+        try (ArrowArena arena = ArrowArena.acquire("client", ArrowArena.DEFAULT_LIMIT);
+             PredictBatcher batcher = new PredictBatcher(PredictGrpc.newStub(serving.getChannel()), 100, 1000)) {
+            CompletableFuture<Map<String, ArrowTensor>> first = batcher.predictAsync("sum", newInput(arena, 0L, 2), Map.of());
+            CompletableFuture<Map<String, ArrowTensor>> second = batcher.predictAsync("sum", newInput(arena, 10L, 2), Map.of());
+            CompletionException e = Assert.assertThrows(CompletionException.class, first::join);
+            Assert.assertTrue(e.getCause() instanceof IOException);
+            Assert.assertThrows(CompletionException.class, second::join);
+        }
+        Assert.assertEquals(List.of(4), predict.rows);
+    }
+}
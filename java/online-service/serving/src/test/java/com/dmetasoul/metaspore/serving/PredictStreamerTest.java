@@ -0,0 +1,185 @@
+//
+// Copyright 2022 DMetaSoul
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package com.dmetasoul.metaspore.serving;
+
+import io.grpc.Status;
+import io.grpc.stub.StreamObserver;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+public class PredictStreamerTest {
+    @Rule
+    public final InProcessServing serving = new InProcessServing();
+    private final ScoringPredict unary = new ScoringPredict();
+    private final List<Integer> streamRows = new CopyOnWriteArrayList<>();
+
+    /**
+     * 模拟支持PredictStream的serving， 每个chunk按ScoringPredict计算score
+     * reverse为true时收到所有chunk后逆序返回， failChunk >= 0时处理到该chunk返回错误
+     */
+    class StreamingPredict extends PredictStreamingGrpc.PredictStreamingImplBase {
+        private final boolean reverse;
+        private final int failChunk;
+
+        StreamingPredict(boolean reverse, int failChunk) {
+            this.reverse = reverse;
+            this.failChunk = failChunk;
+        }
+
+        @Override
+        public StreamObserver<PredictRequest> predictStream(StreamObserver<PredictReply> responseObserver) {
+            List<PredictReply> replies = new ArrayList<>();
+            return new StreamObserver<>() {
+                @Override
+                public void onNext(PredictRequest request) {
+                    try {
+                        if (Integer.parseInt(request.getParametersOrThrow(PredictStreamer.CHUNK_KEY)) == failChunk) {
+                            throw new IOException("chunk " + failChunk + " fail");
+                        }
+                        PredictReply reply = ScoringPredict.replyOf(request, ScoringPredict.score(request, streamRows)).build();
+                        if (reverse) {
+                            replies.add(reply);
+                        } else {
+                            responseObserver.onNext(reply);
+                        }
+                    } catch (IOException e) {
+                        responseObserver.onError(Status.INTERNAL.withCause(e).asRuntimeException());
+                    }
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                }
+
+                @Override
+                public void onCompleted() {
+                    Collections.reverse(replies);
+                    replies.forEach(responseObserver::onNext);
+                    responseObserver.onCompleted();
+                }
+            };
+        }
+    }
+
+    private static List<FeatureTable> newInput(ArrowArena arena, int rows) {
+        return List.of(ScoringPredict.newInput(arena, 0L, rows));
+    }
+
+    private static void assertScores(int rows, Map<String, ArrowTensor> result) {
+        ScoringPredict.assertScores(0L, rows, result);
+    }
+
+    @Test
+    public void TestStreamChunks() throws IOException {
+        serving.start(unary, new StreamingPredict(false, -1));
+        try (ArrowArena arena = ArrowArena.acquire("client", ArrowArena.DEFAULT_LIMIT)) {
+            List<FeatureTable> input = newInput(arena, 10500);
+            assertScores(10500, ServingClient.predictStream(PredictStreamingGrpc.newStub(serving.getChannel()), "model", input, Map.of(), 1000).join());
+            Assert.assertEquals(11, streamRows.size());
+            Assert.assertEquals(500, (int) streamRows.get(10));
+
+            // listener按chunk收到结果
+            List<Integer> starts = new CopyOnWriteArrayList<>();
+            int chunks = ServingClient.predictStream(PredictStreamingGrpc.newStub(serving.getChannel()), "model", input, Map.of(), 4000,
+                    (startRow, rows, tensors) -> {
+                        starts.add(startRow);
+                        Assert.assertEquals(rows, tensors.get("output").getShape()[0]);
+                        Assert.assertEquals(startRow, tensors.get("output").getFloatData().getFloat(0, 0), 0.0f);
+                    }).join();
+            Assert.assertEquals(3, chunks);
+            Assert.assertEquals(List.of(0, 4000, 8000), starts);
+        }
+    }
+
+    @Test
+    public void TestOutOfOrderReplies() throws IOException {
+        serving.start(unary, new StreamingPredict(true, -1));
+        try (ArrowArena arena = ArrowArena.acquire("client", ArrowArena.DEFAULT_LIMIT)) {
+            PredictStreamer streamer = new PredictStreamer(serving.getChannel(), 700);
+            assertScores(5000, streamer.predictAsync("model", newInput(arena, 5000), Map.of()).join());
+            Assert.assertEquals(8, streamRows.size());
+            // 不超过chunkRows的请求使用Predict
+            assertScores(700, streamer.predictAsync("model", newInput(arena, 700), Map.of()).join());
+            Assert.assertEquals(List.of(700), unary.rows);
+        }
+    }
+
+    @Test
+    public void TestChunkError() throws IOException {
+        serving.start(unary, new StreamingPredict(false, 2));
+        try (ArrowArena arena = ArrowArena.acquire("client", ArrowArena.DEFAULT_LIMIT)) {
+            PredictStreamer streamer = new PredictStreamer(serving.getChannel(), 100);
+            CompletionException e = Assert.assertThrows(CompletionException.class,
+                    () -> streamer.predictAsync("model", newInput(arena, 1000), Map.of()).join());
+            Assert.assertEquals(Status.Code.INTERNAL, Status.fromThrowable(e.getCause()).getCode());
+            Assert.assertTrue(streamer.shouldStream(newInput(arena, 1000)));
+        }
+    }
+
+    @Test
+    public void TestFallbackToUnary() throws IOException {
+        // 没有注册PredictStreaming服务的serving
+        serving.start(unary);
+        try (ArrowArena arena = ArrowArena.acquire("client", ArrowArena.DEFAULT_LIMIT)) {
+            PredictStreamer streamer = new PredictStreamer(serving.getChannel(), 100);
+            assertScores(1000, streamer.predictAsync("model", newInput(arena, 1000), Map.of()).join());
+            Assert.assertFalse(streamer.shouldStream(newInput(arena, 1000)));
+            assertScores(1000, streamer.predictAsync("model", newInput(arena, 1000), Map.of()).join());
+            Assert.assertEquals(List.of(1000, 1000), unary.rows);
+        }
+    }
+
+    @Test
+    public void TestStreamDeadline() throws IOException {
+        // 收下请求但从不返回的serving， 流式调用在deadline后失败， 之后仍然使用PredictStream
+        serving.start(unary, new PredictStreamingGrpc.PredictStreamingImplBase() {
+            @Override
+            public StreamObserver<PredictRequest> predictStream(StreamObserver<PredictReply> responseObserver) {
+                return new StreamObserver<>() {
+                    @Override
+                    public void onNext(PredictRequest request) {
+                    }
+
+                    @Override
+                    public void onError(Throwable t) {
+                    }
+
+                    @Override
+                    public void onCompleted() {
+                    }
+                };
+            }
+        });
+        try (ArrowArena arena = ArrowArena.acquire("client", ArrowArena.DEFAULT_LIMIT)) {
+            PredictStreamer streamer = new PredictStreamer(serving.getChannel(), 100);
+            streamer.setDeadlineMillis(200L);
+            CompletionException e = Assert.assertThrows(CompletionException.class,
+                    () -> streamer.predictAsync("model", newInput(arena, 1000), Map.of()).join());
+            Assert.assertEquals(Status.Code.DEADLINE_EXCEEDED, Status.fromThrowable(e.getCause()).getCode());
+            Assert.assertTrue(streamer.shouldStream(newInput(arena, 1000)));
+        }
+    }
+}
@@ -0,0 +1,123 @@
+//
+// Copyright 2022 DMetaSoul
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package com.dmetasoul.metaspore.serving;
+
+import com.google.protobuf.ByteString;
+import io.grpc.Status;
+import io.grpc.stub.StreamObserver;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.FieldType;
+import org.junit.Assert;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 测试用的模拟serving， 读取名为input的FeatureTable(id, name)， 检查每行name == name(id)后返回score = id
+ * 记录每个请求的行数和input payload的大小， 模型名为sum时只返回一个值
+ * 子类可以覆盖reply修改返回， 流式服务可以直接使用score和replyOf
+ */
+class ScoringPredict extends PredictGrpc.PredictImplBase {
+    static final List<Field> FIELDS = List.of(
+            new Field("id", FieldType.nullable(new ArrowType.Int(64, true)), null),
+            new Field("name", FieldType.nullable(new ArrowType.Utf8()), null));
+
+    final List<Integer> rows = new CopyOnWriteArrayList<>();
+    final List<Integer> payloadBytes = new CopyOnWriteArrayList<>();
+
+    /**
+     * 每13行有一行name为空， 切分、压缩和字典编码后需要保留validity； 取值重复， 便于压缩
+     */
+    static String name(long id) {
+        return id % 13 == 5 ? null : "item-name-" + id % 100;
+    }
+
+    static FeatureTable newInput(ArrowArena arena, long firstId, int rows) {
+        FeatureTable table = arena.newFeatureTable("input", FIELDS);
+        for (int i = 0; i < rows; ++i) {
+            table.setLong(i, firstId + i, table.getVector("id"));
+            table.setString(i, name(firstId + i), table.getVector("name"));
+        }
+        table.finish();
+        return table;
+    }
+
+    static void assertScores(long firstId, int rows, Map<String, ArrowTensor> result) {
+        ArrowTensor tensor = result.get("output");
+        Assert.assertArrayEquals(new long[]{rows, 1}, tensor.getShape());
+        for (int i = 0; i < rows; ++i) {
+            Assert.assertEquals(firstId + i, tensor.getFloatData().getFloat(i, 0), 0.0f);
+        }
+    }
+
+    /**
+     * 检查input的每一行并计算score， 行数记录到rowsLog
+     */
+    static ArrowTensor score(PredictRequest request, List<Integer> rowsLog) throws IOException {
+        try (ArrowArena arena = ArrowArena.acquire("server", ArrowArena.DEFAULT_LIMIT);
+             FeatureTable table = FeatureTableSerDe.deserializeFrom("input", request.getPayloadOrThrow("input"), arena)) {
+            int count = table.getRowCount();
+            rowsLog.add(count);
+            BigIntVector ids = table.getVector("id");
+            VarCharVector names = table.getVector("name");
+            float[] scores = new float[count];
+            for (int i = 0; i < count; ++i) {
+                String name = names.isNull(i) ? null : names.getObject(i).toString();
+                if (!Objects.equals(name, name(ids.get(i)))) {
+                    throw new IOException("row " + i + " is broken");
+                }
+                scores[i] = ids.get(i);
+            }
+            long[] shape = request.getModelName().equals("sum") ? new long[]{1} : new long[]{count, 1};
+            return ArrowTensor.createFromFloatArray(shape, scores, null, null);
+        }
+    }
+
+    /**
+     * 返回名为output的tensor， 请求带有chunk序号时在extras中带回
+     */
+    static PredictReply.Builder replyOf(PredictRequest request, ArrowTensor tensor) throws IOException {
+        PredictReply.Builder builder = PredictReply.newBuilder().putPayload("output", ArrowTensor.writeToByteString(tensor));
+        String chunk = request.getParametersMap().get(PredictStreamer.CHUNK_KEY);
+        if (chunk != null) {
+            builder.putExtras(PredictStreamer.CHUNK_KEY, chunk);
+        }
+        return builder;
+    }
+
+    protected PredictReply.Builder reply(PredictRequest request) throws IOException {
+        return replyOf(request, score(request, rows));
+    }
+
+    @Override
+    public void predict(PredictRequest request, StreamObserver<PredictReply> responseObserver) {
+        try {
+            ByteString payload = request.getPayloadOrThrow("input");
+            payloadBytes.add(payload.size());
+            responseObserver.onNext(reply(request).build());
+            responseObserver.onCompleted();
+        } catch (IOException | RuntimeException e) {
+            responseObserver.onError(Status.INTERNAL.withCause(e).asRuntimeException());
+        }
+    }
+}
@@ -0,0 +1,121 @@
+//
+// Copyright 2022 DMetaSoul
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package com.dmetasoul.metaspore.serving;
+
+import com.google.common.collect.Lists;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.complex.ListVector;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.FieldType;
+import org.apache.arrow.vector.util.Text;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+public class StringColumnWriterTest {
+    private static final List<Field> FIELDS = List.of(
+            new Field("name", FieldType.nullable(new ArrowType.Utf8()), null),
+            new Field("tags", FieldType.nullable(new ArrowType.List()),
+                    List.of(new Field("item", FieldType.nullable(new ArrowType.Utf8()), null))));
+
+    private static String randomString(Random random) {
+        if (random.nextInt(8) == 0) {
+            return null;
+        }
+        StringBuilder builder = new StringBuilder();
+        int length = random.nextInt(4) == 0 ? random.nextInt(2000) : random.nextInt(10);
+        for (int i = 0; i < length; ++i) {
+            builder.append(random.nextBoolean() ? (char) ('a' + random.nextInt(26)) : (char) (0x4e00 + random.nextInt(100)));
+        }
+        return builder.toString();
+    }
+
+    private static String toString(Object value) {
+        return value == null ? null : value.toString();
+    }
+
+    @Test
+    public void TestWriteStrings() {
+        Random random = new Random(20221017L);
+        try (ArrowArena arena = ArrowArena.acquire("strings", ArrowArena.DEFAULT_LIMIT)) {
+            FeatureTable table = arena.newFeatureTable("table", FIELDS);
+            VarCharVector names = table.getVector("name");
+            List<String> expected = Lists.newArrayList();
+            // 单行写入、 跳过若干行后批量写入交替进行
+            while (expected.size() < 5000) {
+                if (random.nextBoolean()) {
+                    String value = randomString(random);
+                    table.setString(expected.size(), value, names);
+                    expected.add(value);
+                } else {
+                    int gap = random.nextInt(3);
+                    for (int i = 0; i < gap; ++i) {
+                        expected.add(null);
+                    }
+                    String[] values = new String[random.nextInt(100)];
+                    for (int i = 0; i < values.length; ++i) {
+                        values[i] = randomString(random);
+                    }
+                    table.setStrings(expected.size(), values, names);
+                    expected.addAll(Arrays.asList(values));
+                }
+            }
+            table.finish();
+            Assert.assertEquals(expected.size(), table.getRowCount());
+            for (int i = 0; i < expected.size(); ++i) {
+                Assert.assertEquals(expected.get(i), toString(names.getObject(i)));
+                Assert.assertEquals(expected.get(i) == null, names.isNull(i));
+            }
+            // 覆盖最后一行
+            table.setString(expected.size() - 1, "最后", names);
+            Assert.assertEquals(new Text("最后"), names.getObject(expected.size() - 1));
+        }
+    }
+
+    @Test
+    public void TestWriteStringList() {
+        Random random = new Random(20221018L);
+        try (ArrowArena arena = ArrowArena.acquire("lists", ArrowArena.DEFAULT_LIMIT)) {
+            FeatureTable table = arena.newFeatureTable("table", FIELDS);
+            ListVector tags = table.getVector("tags");
+            List<List<String>> expected = Lists.newArrayList();
+            for (int row = 0; row < 2000; ++row) {
+                List<String> values = Lists.newArrayList();
+                int size = random.nextInt(20);
+                for (int i = 0; i < size; ++i) {
+                    values.add(randomString(random));
+                }
+                if (random.nextBoolean()) {
+                    table.setStringList(row, values, tags);
+                } else {
+                    table.setStringList(row, values.toArray(new String[0]), tags);
+                }
+                expected.add(values);
+            }
+            table.finish();
+            for (int i = 0; i < expected.size(); ++i) {
+                List<?> actual = tags.getObject(i);
+                Assert.assertEquals(expected.get(i), actual.stream().map(StringColumnWriterTest::toString).collect(Collectors.toList()));
+            }
+        }
+    }
+}
@@ -0,0 +1,141 @@
+//
+// Copyright 2022 DMetaSoul
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package com.dmetasoul.metaspore.serving;
+
+import com.google.protobuf.ByteString;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+
+public class TensorEncodingTest {
+    private static final int ROWS = 200;
+    private static final int DIM = 64;
+
+    private static float[] newEmbeddings(long seed) {
+        Random random = new Random(seed);
+        float[] values = new float[ROWS * DIM];
+        for (int i = 0; i < values.length; ++i) {
+            values[i] = (float) random.nextGaussian() * 0.3f;
+        }
+        return values;
+    }
+
+    private static ArrowTensor roundTrip(ArrowTensor tensor) throws IOException {
+        return ArrowTensor.readFromByteString(ArrowTensor.writeToByteString(tensor));
+    }
+
+    @Test
+    public void TestHalfConversion() {
+        // 所有非nan的fp16转为float再转回不变
+        for (int bits = 0; bits < 0x10000; ++bits) {
+            float value = TensorEncoding.halfToFloat((short) bits);
+            if (!Float.isNaN(value)) {
+                Assert.assertEquals("bits " + bits, (short) bits, TensorEncoding.floatToHalf(value));
+            }
+        }
+        Assert.assertEquals(65504.0f, TensorEncoding.halfToFloat(TensorEncoding.floatToHalf(65504.0f)), 0.0f);
+        Assert.assertEquals(Float.POSITIVE_INFINITY, TensorEncoding.halfToFloat(TensorEncoding.floatToHalf(65520.0f)), 0.0f);
+        Assert.assertEquals(0x1p-24f, TensorEncoding.halfToFloat(TensorEncoding.floatToHalf(0x1p-24f)), 0.0f);
+        Assert.assertEquals(0.0f, TensorEncoding.halfToFloat(TensorEncoding.floatToHalf(0x1p-26f)), 0.0f);
+        // 1 + 2^-11恰好在1和1 + 2^-10中间， 舍入到偶数
+        Assert.assertEquals(1.0f, TensorEncoding.halfToFloat(TensorEncoding.floatToHalf(1.0f + 0x1p-11f)), 0.0f);
+        Assert.assertTrue(Float.isNaN(TensorEncoding.halfToFloat(TensorEncoding.floatToHalf(Float.NaN))));
+        Assert.assertTrue(Float.isNaN(TensorEncoding.bfloat16ToFloat(TensorEncoding.floatToBfloat16(Float.NaN))));
+        Assert.assertEquals(1.0f, TensorEncoding.bfloat16ToFloat(TensorEncoding.floatToBfloat16(1.0f + 0x1p-8f)), 0.0f);
+    }
+
+    private static void checkEncoding(TensorEncoding encoding, float[] values, int expectBytes) throws IOException {
+        ArrowTensor tensor = roundTrip(ArrowTensor.createFromFloatArray(new long[]{ROWS, DIM}, values, null, null, encoding));
+        Assert.assertEquals(encoding, tensor.getEncoding());
+        Assert.assertArrayEquals(new long[]{ROWS, DIM}, tensor.getShape());
+        Assert.assertEquals(expectBytes, tensor.getData().remaining());
+        float[] decoded = tensor.toFloatArray();
+        float max = 0.0f;
+        for (float value : values) {
+            max = Math.max(max, Math.abs(value));
+        }
+        for (int i = 0; i < values.length; ++i) {
+            float error = Math.abs(decoded[i] - values[i]);
+            if (encoding == TensorEncoding.INT8) {
+                Assert.assertTrue("index " + i, error <= max / 127 / 2 * 1.0001f);
+            } else {
+                // 相对误差不超过半个ulp， fp16有10位尾数， bf16有7位
+                float bound = Math.abs(values[i]) * (encoding == TensorEncoding.FLOAT16 ? 0x1p-11f : 0x1p-8f);
+                // fp16在2^-14以下是subnormal， 绝对误差不超过2^-25
+                Assert.assertTrue("index " + i, error <= Math.max(bound, 0x1p-25f));
+            }
+        }
+        // 解码后的float tensor与原tensor行数和列数相同
+        ArrowTensor floats = tensor.toFloatTensor();
+        Assert.assertTrue(floats.isFloatTensor());
+        Assert.assertEquals(decoded[DIM + 3], floats.getFloatData().getFloat(1, 3), 0.0f);
+    }
+
+    @Test
+    public void TestRoundTripErrorBound() throws IOException {
+        float[] values = newEmbeddings(20221017L);
+        checkEncoding(TensorEncoding.FLOAT16, values, ROWS * DIM * 2);
+        checkEncoding(TensorEncoding.BFLOAT16, values, ROWS * DIM * 2);
+        checkEncoding(TensorEncoding.INT8, values, ROWS * DIM);
+
+        ByteString plain = ArrowTensor.writeToByteString(ArrowTensor.createFromFloatArray(new long[]{ROWS, DIM}, values, null, null));
+        ByteString half = ArrowTensor.writeToByteString(ArrowTensor.createFromFloatArray(new long[]{ROWS, DIM}, values, null, null, TensorEncoding.FLOAT16));
+        ByteString int8 = ArrowTensor.writeToByteString(ArrowTensor.createFromFloatArray(new long[]{ROWS, DIM}, values, null, null, TensorEncoding.INT8));
+        Assert.assertTrue(half.size() < plain.size() / 2 + 512);
+        Assert.assertTrue(int8.size() < plain.size() / 4 + 512);
+        // 未编码的tensor与之前的格式完全相同
+        Assert.assertNull(ArrowTensor.readFromByteString(plain).getEncoding());
+    }
+
+    @Test
+    public void TestSliceAndConcat() throws IOException {
+        float[] first = newEmbeddings(1L);
+        float[] second = newEmbeddings(2L);
+        for (int i = 0; i < second.length; ++i) {
+            second[i] *= 4;
+        }
+        for (TensorEncoding encoding : List.of(TensorEncoding.FLOAT16, TensorEncoding.BFLOAT16, TensorEncoding.INT8)) {
+            ArrowTensor a = roundTrip(ArrowTensor.createFromFloatArray(new long[]{ROWS, DIM}, first, null, null, encoding));
+            ArrowTensor b = roundTrip(ArrowTensor.createFromFloatArray(new long[]{ROWS, DIM}, second, null, null, encoding));
+            ArrowTensor slice = roundTrip(a.sliceRows(10, 5));
+            Assert.assertEquals(encoding, slice.getEncoding());
+            Assert.assertEquals(a.toFloatArray()[10 * DIM + 7], slice.toFloatArray()[7], 0.0f);
+
+            // int8的scale不同时解码为float后拼接
+            ArrowTensor concat = ArrowTensor.concatRows(List.of(a, b));
+            Assert.assertArrayEquals(new long[]{ROWS * 2, DIM}, concat.getShape());
+            Assert.assertEquals(encoding == TensorEncoding.INT8 ? null : encoding, concat.getEncoding());
+            float[] values = concat.toFloatArray();
+            Assert.assertEquals(a.toFloatArray()[5], values[5], 0.0f);
+            Assert.assertEquals(b.toFloatArray()[5], values[ROWS * DIM + 5], 0.0f);
+        }
+    }
+
+    @Test
+    public void TestInvalidEncoding() {
+        Assert.assertNull(TensorEncoding.fromName(""));
+        Assert.assertEquals(TensorEncoding.BFLOAT16, TensorEncoding.fromName("BF16"));
+        Assert.assertThrows(IllegalArgumentException.class, () -> TensorEncoding.fromName("fp8"));
+        ArrowTensor longs = ArrowTensor.createFromLongArray(new long[]{2}, new long[]{1L, 2L}, null, null);
+        Assert.assertThrows(IllegalStateException.class, () -> longs.encode(TensorEncoding.FLOAT16));
+        Assert.assertThrows(IllegalStateException.class, longs::toFloatArray);
+        Assert.assertSame(longs, longs.toFloatTensor());
+    }
+}
@@ -0,0 +1,91 @@
+//
+// Copyright 2022 DMetaSoul
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package com.dmetasoul.metaspore.serving;
+
+import com.google.protobuf.ByteString;
+import org.apache.arrow.flatbuf.Tensor;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.util.Random;
+
+public class TensorSerDeTest {
+    private static PredictReply toReply(String name, ArrowTensor tensor) throws Exception {
+        PredictRequest.Builder builder = PredictRequest.newBuilder();
+        TensorSerDe.serializeTo(name, tensor, builder);
+        // 模拟从网络收到的reply
+        PredictReply reply = PredictReply.newBuilder().putAllPayload(builder.getPayloadMap()).build();
+        return PredictReply.parseFrom(reply.toByteArray());
+    }
+
+    @Test
+    public void TestRoundTrip() throws Exception {
+        Random random = new Random(20221017L);
+        float[] floats = new float[10000];
+        for (int i = 0; i < floats.length; ++i) {
+            floats[i] = random.nextFloat();
+        }
+        PredictReply reply = toReply("score", ArrowTensor.createFromFloatArray(new long[]{5000, 2}, floats, new String[]{"batch", "score"}, null));
+        ArrowTensor tensor = ArrowTensor.readFromByteString(reply.getPayloadOrThrow("score"));
+        Assert.assertTrue(tensor.isFloatTensor());
+        Assert.assertArrayEquals(new long[]{5000, 2}, tensor.getShape());
+        Assert.assertArrayEquals(new String[]{"batch", "score"}, tensor.getNames());
+        ArrowTensor.FloatTensorAccessor accessor = tensor.getFloatData();
+        FloatBuffer buffer = tensor.getFloatBuffer();
+        Assert.assertEquals(floats.length, buffer.remaining());
+        for (int i = 0; i < 5000; ++i) {
+            Assert.assertEquals(floats[i * 2 + 1], accessor.getFloat(i, 1), 0.0f);
+            Assert.assertEquals(floats[i * 2 + 1], accessor.get(i, 1), 0.0f);
+            Assert.assertEquals(floats[i * 2], buffer.get(i * 2), 0.0f);
+        }
+        Assert.assertThrows(ReadOnlyBufferException.class, () -> buffer.put(0, 1.0f));
+        // 解码后的tensor可以再次序列化
+        ArrowTensor copy = ArrowTensor.readFromByteString(ArrowTensor.writeToByteString(tensor));
+        Assert.assertArrayEquals(tensor.getShape(), copy.getShape());
+        Assert.assertEquals(tensor.getFloatBuffer(), copy.getFloatBuffer());
+
+        long[] longs = {333L, -444L, Long.MAX_VALUE};
+        ArrowTensor longTensor = ArrowTensor.readFromByteString(toReply("id", ArrowTensor.createFromLongArray(new long[]{3}, longs, null, null)).getPayloadOrThrow("id"));
+        Assert.assertTrue(longTensor.isLongTensor());
+        Assert.assertEquals(Long.MAX_VALUE, longTensor.getLongBuffer().get(2));
+        int[] ints = {111, 222};
+        ArrowTensor intTensor = ArrowTensor.readFromByteString(toReply("id", ArrowTensor.createFromIntArray(new long[]{1, 2}, ints, null, null)).getPayloadOrThrow("id"));
+        Assert.assertEquals(222, intTensor.getIntData().getInt(0, 1));
+        double[] doubles = {0.5, -1.5};
+        ArrowTensor doubleTensor = ArrowTensor.readFromByteString(toReply("d", ArrowTensor.createFromDoubleArray(new long[]{2}, doubles, null, null)).getPayloadOrThrow("d"));
+        Assert.assertEquals(-1.5, doubleTensor.getDoubleBuffer().get(1), 0.0);
+    }
+
+    @Test
+    public void TestSameAsMessageReader() throws Exception {
+        float[] floats = {1.0f, 2.0f, 3.0f, 4.0f, 5.0f, 6.0f};
+        ByteString bytes = ArrowTensor.writeToByteString(ArrowTensor.createFromFloatArray(new long[]{2, 3}, floats, null, null));
+        // 与arrow的MessageChannelReader解析结果一致
+        try (ArrowArena arena = ArrowArena.acquire("tensor", ArrowArena.DEFAULT_LIMIT)) {
+            ArrowMessage message = ArrowMessage.readFromByteString(bytes, arena);
+            ArrowTensor expected = new ArrowTensor((Tensor) message.message.header(new Tensor()), message.body.nioBuffer());
+            ArrowTensor actual = ArrowTensor.readFromByteString(bytes);
+            Assert.assertArrayEquals(expected.getShape(), actual.getShape());
+            Assert.assertEquals(expected.getType(), actual.getType());
+            Assert.assertEquals(expected.getFloatBuffer(), actual.getFloatBuffer());
+        }
+        Assert.assertThrows(IOException.class, () -> ArrowTensor.readFromByteString(bytes.substring(0, bytes.size() - 4)));
+    }
+}
@@ -0,0 +1,141 @@
+//
+// Copyright 2022 DMetaSoul
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package com.dmetasoul.metaspore.serving;
+
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.complex.ListVector;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.FieldType;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class VectorSchemaRootPoolTest {
+    private static final List<Field> FIELDS = List.of(
+            new Field("item_id", FieldType.nullable(new ArrowType.Utf8()), null),
+            new Field("click", FieldType.nullable(new ArrowType.Int(64, true)), null),
+            new Field("tags", FieldType.nullable(new ArrowType.List()),
+                    List.of(new Field("item", FieldType.nullable(new ArrowType.Utf8()), null))));
+
+    /**
+     * 每7行留一行空值， 复用的root中不能残留上一次请求写入的值
+     */
+    private static void fill(FeatureTable table, int rows, int seed) {
+        VarCharVector items = table.getVector("item_id");
+        BigIntVector clicks = table.getVector("click");
+        ListVector tags = table.getVector("tags");
+        for (int i = 0; i < rows; ++i) {
+            if (i % 7 == 3) {
+                table.setRowCount(i + 1);
+                continue;
+            }
+            table.setString(i, "item-" + seed + "-" + i, items);
+            table.setLong(i, seed * 10000L + i, clicks);
+            table.setStringList(i, List.of("t" + seed, "t" + i), tags);
+        }
+        table.finish();
+    }
+
+    private static void check(FeatureTable table, int rows, int seed) {
+        VarCharVector items = table.getVector("item_id");
+        BigIntVector clicks = table.getVector("click");
+        ListVector tags = table.getVector("tags");
+        Assert.assertEquals(rows, table.getRoot().getRowCount());
+        for (int i = 0; i < rows; ++i) {
+            if (i % 7 == 3) {
+                Assert.assertTrue(items.isNull(i));
+                Assert.assertTrue(clicks.isNull(i));
+                Assert.assertTrue(tags.isNull(i));
+                continue;
+            }
+            Assert.assertEquals("item-" + seed + "-" + i, items.getObject(i).toString());
+            Assert.assertEquals(seed * 10000L + i, clicks.get(i));
+            Assert.assertEquals(List.of("t" + seed, "t" + i), tags.getObject(i).stream().map(Object::toString).collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    public void TestInterleavedSizes() {
+        int[] sizes = {5, 500, 1, 64, 3, 1000, 0, 2, 300, 7};
+        try (VectorSchemaRootPool pool = new VectorSchemaRootPool("test-pool", Long.MAX_VALUE, 4)) {
+            // 同时使用两个table， 交替归还， 每个table都只能看到自己写入的数据
+            FeatureTable previous = null;
+            for (int round = 0; round < 3; ++round) {
+                for (int k = 0; k < sizes.length; ++k) {
+                    int seed = round * sizes.length + k;
+                    FeatureTable table = pool.newFeatureTable("table", FIELDS);
+                    Assert.assertEquals(0, table.getRowCount());
+                    fill(table, sizes[k], seed);
+                    check(table, sizes[k], seed);
+                    if (previous != null) {
+                        check(previous, sizes[(k + sizes.length - 1) % sizes.length], seed - 1);
+                        previous.close();
+                    }
+                    previous = table;
+                }
+            }
+            previous.close();
+            previous.close();
+            Assert.assertEquals(2, pool.getCreatedCount());
+            Assert.assertEquals(3 * sizes.length - 2, pool.getReusedCount());
+            Assert.assertEquals(2, pool.getIdleCount(FIELDS));
+        }
+    }
+
+    @Test
+    public void TestHighWaterMark() {
+        try (VectorSchemaRootPool pool = new VectorSchemaRootPool("test-pool", 1L << 20, 4)) {
+            FeatureTable small = pool.newFeatureTable("small", FIELDS);
+            fill(small, 10, 1);
+            small.close();
+            Assert.assertEquals(1, pool.getIdleCount(FIELDS));
+            long idleMemory = pool.getAllocatedMemory();
+
+            // 扩容超过maxRootBytes的root不再放回池中
+            FeatureTable large = pool.newFeatureTable("large", FIELDS);
+            fill(large, 100000, 2);
+            Assert.assertTrue(VectorSchemaRootPool.getCapacityBytes(large.getRoot()) > 1L << 20);
+            large.close();
+            Assert.assertEquals(1, pool.getDiscardedCount());
+            Assert.assertEquals(0, pool.getIdleCount(FIELDS));
+            Assert.assertEquals(0, pool.getAllocatedMemory());
+
+            FeatureTable next = pool.newFeatureTable("next", FIELDS);
+            fill(next, 10, 3);
+            check(next, 10, 3);
+            next.close();
+            Assert.assertEquals(2, pool.getCreatedCount());
+            Assert.assertEquals(idleMemory, pool.getAllocatedMemory());
+        }
+    }
+
+    @Test
+    public void TestMaxIdlePerSchema() {
+        try (VectorSchemaRootPool pool = new VectorSchemaRootPool("test-pool", Long.MAX_VALUE, 2)) {
+            List<FeatureTable> tables = List.of(pool.newFeatureTable("a", FIELDS),
+                    pool.newFeatureTable("b", FIELDS), pool.newFeatureTable("c", FIELDS));
+            tables.forEach(table -> fill(table, 10, 0));
+            tables.forEach(FeatureTable::close);
+            Assert.assertEquals(2, pool.getIdleCount(FIELDS));
+            Assert.assertEquals(1, pool.getDiscardedCount());
+        }
+    }
+}